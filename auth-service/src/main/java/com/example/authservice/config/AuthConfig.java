@@ -47,6 +47,7 @@ public class AuthConfig {
                                 "/actuator/**",
                                 "/v1/auth/sendUserUpdateEmail",
                                 "/v1/auth/sendUserLockStatusEmail",
+                                "/v1/auth/internal/user-changed",
                                 "/v1/auth/refresh")
 
                         .permitAll()
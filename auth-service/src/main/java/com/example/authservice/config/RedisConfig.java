@@ -1,5 +1,6 @@
 package com.example.authservice.config;
 
+import com.example.authservice.service.UserCredentialCache;
 
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
@@ -7,9 +8,13 @@ import org.springframework.context.annotation.Configuration;
 import org.springframework.data.redis.connection.RedisStandaloneConfiguration;
 import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
 import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
 import org.springframework.data.redis.serializer.GenericJackson2JsonRedisSerializer;
 import org.springframework.data.redis.serializer.StringRedisSerializer;
 
+import java.nio.charset.StandardCharsets;
+
 @Configuration
 public class RedisConfig {
 
@@ -51,4 +56,18 @@ public class RedisConfig {
 
         return template;
     }
-}
\ No newline at end of file
+
+    /**
+     * Nhận thông báo user thay đổi (password, khóa, role) từ mọi instance
+     * để xóa credential cache cục bộ.
+     */
+    @Bean
+    public RedisMessageListenerContainer userChangedListenerContainer(UserCredentialCache userCredentialCache) {
+        RedisMessageListenerContainer container = new RedisMessageListenerContainer();
+        container.setConnectionFactory(redisConnectionFactory());
+        container.addMessageListener(
+                (message, pattern) -> userCredentialCache.evictLocal(new String(message.getBody(), StandardCharsets.UTF_8)),
+                new ChannelTopic(UserCredentialCache.USER_CHANGED_CHANNEL));
+        return container;
+    }
+}
@@ -8,14 +8,19 @@ import com.example.authservice.request.FacebookLoginRequest;
 import com.example.authservice.service.AuthService;
 import jakarta.validation.Valid;
 import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RestController;
 import org.springframework.web.bind.annotation.RequestParam;
 import com.example.authservice.request.RefreshTokenRequest;
 
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
 import java.util.Map;
 
 @RestController
@@ -24,6 +29,9 @@ import java.util.Map;
 public class AuthController {
     private final AuthService authService;
 
+    @Value("${auth.internal.secret}")
+    private String internalSecret;
+
     @PostMapping("/login")
     public ResponseEntity<TokenDto> login(@RequestBody LoginRequest request) {
         return ResponseEntity.ok(authService.login(request));
@@ -94,6 +102,21 @@ public class AuthController {
         return ResponseEntity.status(500).body(Map.of("success", false, "message", "Failed to send email"));
     }
 
+    /**
+     * Internal: user-service báo user thay đổi (password, khóa, role) để xóa credential cache.
+     * Endpoint không cần JWT nên bắt buộc có X-Internal-Secret khớp auth.internal.secret.
+     */
+    @PostMapping("/internal/user-changed")
+    public ResponseEntity<?> userChanged(@RequestHeader(value = "X-Internal-Secret", required = false) String secret,
+                                         @RequestParam String email) {
+        if (secret == null || !MessageDigest.isEqual(
+                secret.getBytes(StandardCharsets.UTF_8), internalSecret.getBytes(StandardCharsets.UTF_8))) {
+            return ResponseEntity.status(HttpStatus.FORBIDDEN).body(Map.of("success", false));
+        }
+        authService.invalidateUser(email);
+        return ResponseEntity.ok(Map.of("success", true));
+    }
+
     @PostMapping("/refresh")
     public ResponseEntity<TokenDto> refreshToken(@RequestBody RefreshTokenRequest request) {
         return ResponseEntity.ok(authService.refreshToken(request));
@@ -5,6 +5,7 @@ import java.time.Duration;
 import java.time.LocalDate;
 import java.time.LocalDateTime;
 import java.time.ZoneId;
+import java.util.List;
 import java.util.concurrent.TimeUnit;
 
 import org.springframework.data.redis.core.RedisTemplate;
@@ -30,6 +31,7 @@ import com.example.authservice.request.LoginRequest;
 import com.example.authservice.request.RegisterRequest;
 
 import feign.FeignException;
+import io.jsonwebtoken.Claims;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 
@@ -44,6 +46,8 @@ public class AuthService {
     private final EmailService emailService;
     private final GoogleOAuth2Service googleOAuth2Service;
     private final FacebookOAuth2Service facebookOAuth2Service;
+    private final UserCredentialCache userCredentialCache;
+    private final CustomUserDetailsService customUserDetailsService;
 
     private static final String OTP_KEY_PREFIX = "otp:";
     private static final String OTP_COOLDOWN_PREFIX = "otp:cooldown:";
@@ -218,6 +222,8 @@ public class AuthService {
         if (response == null || response.getBody() == null) {
             throw new RuntimeException("Failed to register user: No response from user service");
         }
+        // Email may sit in the negative cache from an earlier failed login
+        userCredentialCache.invalidate(request.getEmail());
         return response.getBody();
     }
 
@@ -225,14 +231,15 @@ public class AuthService {
         Authentication authentication = authenticationManager.authenticate(
                 new UsernamePasswordAuthenticationToken(loginRequest.getEmail(), loginRequest.getPassword()));
         if (authentication.isAuthenticated()) {
-            AuthUserDto user = userServiceClient.getUserByEmail(loginRequest.getEmail()).getBody();
-            if (user != null && !user.isActive()) {
+            // Principal was loaded from the credential cache during authenticate(), reuse it
+            CustomUserDetails user = (CustomUserDetails) authentication.getPrincipal();
+            if (!user.isAccountNonLocked()) {
                 throw new LockedException("Account is locked");
             }
 
             return TokenDto.builder()
-                    .token(jwtService.generateToken(loginRequest.getEmail()))
-                    .refreshToken(jwtService.generateRefreshToken(loginRequest.getEmail()))
+                    .token(jwtService.generateToken(user))
+                    .refreshToken(jwtService.generateRefreshToken(user))
                     .build();
         } else {
             throw new WrongCredentialsException("Invalid email or password");
@@ -266,6 +273,7 @@ public class AuthService {
                     if (created == null) {
                         throw new RuntimeException("Failed to create user - no response body");
                     }
+                    userCredentialCache.invalidate(email);
 
                     user = new AuthUserDto();
                     user.setEmail(created.getEmail());
@@ -317,6 +325,7 @@ public class AuthService {
                     if (created == null) {
                         throw new RuntimeException("Failed to create user - no response body");
                     }
+                    userCredentialCache.invalidate(email);
 
                     user = new AuthUserDto();
                     user.setEmail(created.getEmail());
@@ -346,16 +355,16 @@ public class AuthService {
                 new UsernamePasswordAuthenticationToken(loginRequest.getEmail(), loginRequest.getPassword()));
 
         if (authentication.isAuthenticated()) {
-            AuthUserDto user = userServiceClient.getUserByEmail(loginRequest.getEmail()).getBody();
+            CustomUserDetails user = (CustomUserDetails) authentication.getPrincipal();
 
-            if (user != null && !user.isActive()) {
+            if (!user.isAccountNonLocked()) {
                 throw new LockedException("Account is locked");
             }
 
-            if (user != null && user.hasRole(Role.valueOf(selectedRole.toUpperCase()))) {
+            if (user.hasRole(Role.valueOf(selectedRole.toUpperCase()))) {
                 return TokenDto.builder()
-                        .token(jwtService.generateToken(loginRequest.getEmail()))
-                        .refreshToken(jwtService.generateRefreshToken(loginRequest.getEmail()))
+                        .token(jwtService.generateToken(user))
+                        .refreshToken(jwtService.generateRefreshToken(user))
                         .build();
             } else {
                 throw new WrongCredentialsException("You don't have permission for this role");
@@ -417,20 +426,44 @@ public class AuthService {
                 request.isLocked());
     }
 
+    @SuppressWarnings("unchecked")
     public TokenDto refreshToken(com.example.authservice.request.RefreshTokenRequest request) {
         String requestRefreshToken = request.getRefreshToken();
         if (requestRefreshToken != null && jwtService.validateRefreshToken(requestRefreshToken)) {
-            String username = jwtService.getClaims(requestRefreshToken).getSubject();
+            Claims claims = jwtService.getClaims(requestRefreshToken);
+            String username = claims.getSubject();
             if (username != null) {
-                // Generate new tokens
-                String newAccessToken = jwtService.generateToken(username);
-                String newRefreshToken = jwtService.generateRefreshToken(username); // Rotate refresh token
+                String userId = claims.get("userId", String.class);
+                List<String> roles = claims.get("roles", List.class);
+
+                // Fast path: the user has not changed since this refresh token was issued,
+                // mint the new pair from its claims without touching user-service
+                if (userId != null && roles != null
+                        && !userCredentialCache.changedSince(username, claims.getIssuedAt())) {
+                    return TokenDto.builder()
+                            .token(jwtService.generateToken(userId, username, roles))
+                            .refreshToken(jwtService.generateRefreshToken(userId, username, roles)) // Rotate refresh token
+                            .build();
+                }
+
+                // Changed (password / lock / roles) or legacy token: reload the projection
+                CustomUserDetails user = (CustomUserDetails) customUserDetailsService.loadUserByUsername(username);
+                if (!user.isAccountNonLocked()) {
+                    throw new LockedException("Account is locked");
+                }
                 return TokenDto.builder()
-                        .token(newAccessToken)
-                        .refreshToken(newRefreshToken)
+                        .token(jwtService.generateToken(user))
+                        .refreshToken(jwtService.generateRefreshToken(user))
                         .build();
             }
         }
         throw new RuntimeException("Invalid refresh token");
     }
+
+    /**
+     * Called by user-service after password / lock / role changes.
+     */
+    public void invalidateUser(String email) {
+        userCredentialCache.invalidate(email);
+    }
 }
@@ -37,6 +37,10 @@ public class CustomUserDetails implements UserDetails {
         return user.getId();
     }
 
+    public boolean hasRole(Role role) {
+        return role == user.getRole() || (user.getRoles() != null && user.getRoles().contains(role));
+    }
+
     @Override
     public String getPassword() {
         return user.getPassword();
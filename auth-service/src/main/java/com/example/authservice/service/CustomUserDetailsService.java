@@ -1,6 +1,5 @@
 package com.example.authservice.service;
 
-import com.example.authservice.client.UserServiceClient;
 import org.springframework.security.core.userdetails.UserDetails;
 import org.springframework.security.core.userdetails.UserDetailsService;
 import org.springframework.security.core.userdetails.UsernameNotFoundException;
@@ -9,18 +8,18 @@ import org.springframework.stereotype.Service;
 
 @Service
 public class CustomUserDetailsService implements UserDetailsService {
-    private final UserServiceClient userServiceClient;
+    private final UserCredentialCache userCredentialCache;
 
-    public CustomUserDetailsService(UserServiceClient userServiceClient) {
-        this.userServiceClient = userServiceClient;
+    public CustomUserDetailsService(UserCredentialCache userCredentialCache) {
+        this.userCredentialCache = userCredentialCache;
     }
 
     @Override
     public UserDetails loadUserByUsername(String email) throws UsernameNotFoundException {
-        var user = userServiceClient.getUserByEmail(email)
-                .getBody();
+        // Served from the short-lived credential cache, user-service only on miss
+        var user = userCredentialCache.get(email);
         if (user == null)
             throw new UsernameNotFoundException(email);
         return new CustomUserDetails(user);
     }
-}
\ No newline at end of file
+}
@@ -20,54 +20,68 @@ public class JwtService {
     public static final String SECRET = "56928731907473259834758923975834001978431540789351748901579408315709843175089192839123821057984879453897";
 
     public String generateToken(String username) {
-        UserDetails userDetails = customUserDetailsService.loadUserByUsername(username);
-        Map<String, Object> claims = new HashMap<>();
-        CustomUserDetails custom = (CustomUserDetails) userDetails;
-        String userId = custom.getId();
-        Collection<? extends GrantedAuthority> authorities = userDetails.getAuthorities();
+        return generateToken((CustomUserDetails) customUserDetailsService.loadUserByUsername(username));
+    }
 
-        List<String> roles = authorities.stream()
-                .map(GrantedAuthority::getAuthority)
-                .collect(Collectors.toList());
+    public String generateToken(CustomUserDetails userDetails) {
+        return generateToken(userDetails.getId(), userDetails.getUsername(), roleNames(userDetails));
+    }
 
+    public String generateToken(String userId, String email, List<String> roles) {
+        Map<String, Object> claims = new HashMap<>();
         claims.put("userId", userId);
-        claims.put("username", custom.getUsername());
+        claims.put("username", email);
 
-        claims.put("email", custom.getUsername());
+        claims.put("email", email);
         claims.put("roles", roles);
         claims.put("type", "access");
 
-        return createToken(claims, userDetails);
+        return createToken(claims, email);
     }
 
     public String generateRefreshToken(String username) {
-        UserDetails userDetails = customUserDetailsService.loadUserByUsername(username);
-        Map<String, Object> claims = new HashMap<>();
-        CustomUserDetails custom = (CustomUserDetails) userDetails;
-        String userId = custom.getId();
+        return generateRefreshToken((CustomUserDetails) customUserDetailsService.loadUserByUsername(username));
+    }
 
+    public String generateRefreshToken(CustomUserDetails userDetails) {
+        return generateRefreshToken(userDetails.getId(), userDetails.getUsername(), roleNames(userDetails));
+    }
+
+    /**
+     * Refresh token carries the roles too, so a refresh can mint the next
+     * access token without fetching the user (unless the user changed since).
+     */
+    public String generateRefreshToken(String userId, String email, List<String> roles) {
+        Map<String, Object> claims = new HashMap<>();
         claims.put("userId", userId);
-        claims.put("username", custom.getUsername());
-        claims.put("email", custom.getUsername());
+        claims.put("username", email);
+        claims.put("email", email);
+        claims.put("roles", roles);
         claims.put("type", "refresh");
 
-        return createRefreshToken(claims, userDetails);
+        return createRefreshToken(claims, email);
+    }
+
+    private static List<String> roleNames(UserDetails userDetails) {
+        return userDetails.getAuthorities().stream()
+                .map(GrantedAuthority::getAuthority)
+                .collect(Collectors.toList());
     }
 
-    private String createToken(Map<String, Object> claims, UserDetails userDetails) {
+    private String createToken(Map<String, Object> claims, String subject) {
         return Jwts.builder()
                 .setClaims(claims)
-                .setSubject(userDetails.getUsername())
+                .setSubject(subject)
                 .setIssuer("auth-service")
                 .setIssuedAt(new Date(System.currentTimeMillis()))
                 .setExpiration(new Date(System.currentTimeMillis() + 1000 * 60 * 60)) // 1 hour for access token
                 .signWith(getSignKey(), SignatureAlgorithm.HS256).compact();
     }
 
-    private String createRefreshToken(Map<String, Object> claims, UserDetails userDetails) {
+    private String createRefreshToken(Map<String, Object> claims, String subject) {
         return Jwts.builder()
                 .setClaims(claims)
-                .setSubject(userDetails.getUsername())
+                .setSubject(subject)
                 .setIssuer("auth-service")
                 .setIssuedAt(new Date(System.currentTimeMillis()))
                 .setExpiration(new Date(System.currentTimeMillis() + 1000L * 60 * 60 * 24 * 7)) // 7 days
@@ -0,0 +1,188 @@
+package com.example.authservice.service;
+
+import com.example.authservice.client.UserServiceClient;
+import com.example.authservice.dto.AuthUserDto;
+import com.example.authservice.exception.GenericErrorResponse;
+import feign.FeignException;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.Date;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Short-lived, in-process projection of user credentials + roles (the
+ * {@link AuthUserDto} returned by user-service), so a login storm does not
+ * turn into one Feign call per attempt.
+ * <ul>
+ *   <li>positive entries live {@code ttl-seconds}, unknown emails are cached
+ *       as negative entries for {@code negative-ttl-seconds}</li>
+ *   <li>concurrent misses for the same email share one lookup (single-flight)</li>
+ *   <li>total concurrent lookups to user-service are capped by a semaphore,
+ *       callers over the cap fail fast with 503 instead of piling up</li>
+ *   <li>user-service notifies changes (password, lock, roles) via
+ *       {@link #invalidate(String)}: the entry is dropped on every instance
+ *       through Redis pub/sub and a change marker is kept for refresh tokens</li>
+ * </ul>
+ */
+@Component
+@Slf4j
+public class UserCredentialCache {
+
+    public static final String USER_CHANGED_CHANNEL = "auth:user-changed";
+    private static final String USER_CHANGED_KEY_PREFIX = "auth:user-changed:";
+    // Same lifetime as the refresh token: older markers can no longer matter
+    private static final Duration CHANGE_MARKER_TTL = Duration.ofDays(7);
+
+    private final UserServiceClient userServiceClient;
+    private final StringRedisTemplate stringRedisTemplate;
+
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+    private final Map<String, CompletableFuture<Entry>> inFlight = new ConcurrentHashMap<>();
+    private final Semaphore lookupPermits;
+
+    private final long ttlMillis;
+    private final long negativeTtlMillis;
+    private final int maxEntries;
+    private final long lookupWaitMillis;
+
+    public UserCredentialCache(UserServiceClient userServiceClient,
+                               StringRedisTemplate stringRedisTemplate,
+                               @Value("${auth.credential-cache.ttl-seconds:60}") long ttlSeconds,
+                               @Value("${auth.credential-cache.negative-ttl-seconds:30}") long negativeTtlSeconds,
+                               @Value("${auth.credential-cache.max-entries:50000}") int maxEntries,
+                               @Value("${auth.credential-cache.max-concurrent-lookups:64}") int maxConcurrentLookups,
+                               @Value("${auth.credential-cache.lookup-wait-ms:2000}") long lookupWaitMillis) {
+        this.userServiceClient = userServiceClient;
+        this.stringRedisTemplate = stringRedisTemplate;
+        this.ttlMillis = TimeUnit.SECONDS.toMillis(ttlSeconds);
+        this.negativeTtlMillis = TimeUnit.SECONDS.toMillis(negativeTtlSeconds);
+        this.maxEntries = maxEntries;
+        this.lookupPermits = new Semaphore(maxConcurrentLookups);
+        this.lookupWaitMillis = lookupWaitMillis;
+    }
+
+    /**
+     * @return the user projection, or {@code null} if the email is unknown
+     */
+    public AuthUserDto get(String email) {
+        String key = normalize(email);
+        Entry entry = entries.get(key);
+        if (entry != null && !entry.isExpired()) {
+            return entry.user();
+        }
+
+        CompletableFuture<Entry> mine = new CompletableFuture<>();
+        CompletableFuture<Entry> existing = inFlight.putIfAbsent(key, mine);
+        if (existing != null) {
+            try {
+                return existing.join().user();
+            } catch (CompletionException e) {
+                throw e.getCause() instanceof RuntimeException re ? re : e;
+            }
+        }
+        try {
+            Entry loaded = load(key);
+            put(key, loaded);
+            mine.complete(loaded);
+            return loaded.user();
+        } catch (RuntimeException e) {
+            mine.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlight.remove(key, mine);
+        }
+    }
+
+    /**
+     * Drop the cached projection on all instances and record the change time
+     * so refresh tokens issued before it go back to user-service once.
+     */
+    public void invalidate(String email) {
+        String key = normalize(email);
+        entries.remove(key);
+        try {
+            stringRedisTemplate.opsForValue().set(USER_CHANGED_KEY_PREFIX + key,
+                    String.valueOf(System.currentTimeMillis()), CHANGE_MARKER_TTL);
+            stringRedisTemplate.convertAndSend(USER_CHANGED_CHANNEL, key);
+        } catch (Exception e) {
+            // Other instances fall back to TTL expiry
+            log.warn("[CREDENTIAL-CACHE] Failed to publish invalidation for {}: {}", key, e.getMessage());
+        }
+    }
+
+    /**
+     * Local eviction only, called by the Redis pub/sub listener.
+     */
+    public void evictLocal(String email) {
+        entries.remove(normalize(email));
+    }
+
+    /**
+     * True if the user changed after {@code issuedAt} (or the marker cannot be read).
+     */
+    public boolean changedSince(String email, Date issuedAt) {
+        if (issuedAt == null) {
+            return true;
+        }
+        try {
+            String changedAt = stringRedisTemplate.opsForValue().get(USER_CHANGED_KEY_PREFIX + normalize(email));
+            // iat has second precision, compare conservatively
+            return changedAt != null && Long.parseLong(changedAt) >= issuedAt.getTime() - 1000;
+        } catch (Exception e) {
+            return true;
+        }
+    }
+
+    private Entry load(String email) {
+        boolean acquired;
+        try {
+            acquired = lookupPermits.tryAcquire(lookupWaitMillis, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            acquired = false;
+        }
+        if (!acquired) {
+            throw new GenericErrorResponse("Login service is busy, please try again", HttpStatus.SERVICE_UNAVAILABLE);
+        }
+        try {
+            AuthUserDto user = userServiceClient.getUserByEmail(email).getBody();
+            return user != null
+                    ? new Entry(user, System.currentTimeMillis() + ttlMillis)
+                    : new Entry(null, System.currentTimeMillis() + negativeTtlMillis);
+        } catch (FeignException.NotFound e) {
+            return new Entry(null, System.currentTimeMillis() + negativeTtlMillis);
+        } finally {
+            lookupPermits.release();
+        }
+    }
+
+    private void put(String key, Entry entry) {
+        if (entries.size() >= maxEntries) {
+            entries.values().removeIf(Entry::isExpired);
+            if (entries.size() >= maxEntries) {
+                return;
+            }
+        }
+        entries.put(key, entry);
+    }
+
+    private static String normalize(String email) {
+        return email == null ? "" : email.trim().toLowerCase();
+    }
+
+    private record Entry(AuthUserDto user, long expiresAt) {
+        boolean isExpired() {
+            return System.currentTimeMillis() > expiresAt;
+        }
+    }
+}
@@ -2,8 +2,12 @@ package com.example.gateway;
 
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+
+import com.example.gateway.config.RateLimitProperties;
 
 @SpringBootApplication
+@EnableConfigurationProperties(RateLimitProperties.class)
 public class GatewayApplication {
 
 	public static void main(String[] args) {
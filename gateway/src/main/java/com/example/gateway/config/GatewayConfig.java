@@ -6,42 +6,46 @@ import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 
 import com.example.gateway.filter.JwtAuthenticationFilter;
+import com.example.gateway.filter.RateLimitFilter;
 
 @Configuration
 public class GatewayConfig {
         private final JwtAuthenticationFilter filter;
+        private final RateLimitFilter rateLimitFilter;
 
-        public GatewayConfig(JwtAuthenticationFilter filter) {
+        public GatewayConfig(JwtAuthenticationFilter filter, RateLimitFilter rateLimitFilter) {
                 this.filter = filter;
+                this.rateLimitFilter = rateLimitFilter;
         }
 
         @Bean
         public RouteLocator routes(RouteLocatorBuilder builder) {
                 return builder.routes()
                                 .route("auth-service", r -> r.path("/v1/auth/**")
-                                                .filters(f -> f.filter(filter))
+                                                .filters(f -> f.filter(filter).filter(rateLimitFilter))
                                                 .uri("lb://auth-service"))
                                 .route("auth-user-service", r -> r.path("/v1/auth/user/**")
                                                 .filters(f -> f.rewritePath("/v1/auth/user/(?<segment>.*)",
-                                                "/v1/user/${segment}"))
+                                                "/v1/user/${segment}")
+                                                .filter(rateLimitFilter))
                                                 .uri("lb://user-service"))
                                 .route("user-service", r -> r.path("/v1/user/**")
-                                                .filters(f -> f.filter(filter))
+                                                .filters(f -> f.filter(filter).filter(rateLimitFilter))
                                                 .uri("lb://user-service"))
                                 .route("stock-domains", r -> r.path("/v1/stock/**")
-                                                .filters(f -> f.filter(filter))
+                                                .filters(f -> f.filter(filter).filter(rateLimitFilter))
                                                 .uri("lb://stock-service"))
                                 .route("file-storage", r -> r.path("/v1/file-storage/**")
-                                                .filters(f -> f.filter(filter))
+                                                .filters(f -> f.filter(filter).filter(rateLimitFilter))
                                                 .uri("lb://file-storage"))
                                 .route("notification-service", r -> r.path("/v1/notifications/**")
-                                                .filters(f -> f.filter(filter))
+                                                .filters(f -> f.filter(filter).filter(rateLimitFilter))
                                                 .uri("lb://notification-service"))
                                 .route("order-service", r -> r.path("/v1/order/**")
-                                                .filters(f -> f.filter(filter))
+                                                .filters(f -> f.filter(filter).filter(rateLimitFilter))
                                                 .uri("lb://order-service"))
                                 .route("order-service", r -> r.path("/v1/payment/**")
-                                                .filters(f -> f.filter(filter))
+                                                .filters(f -> f.filter(filter).filter(rateLimitFilter))
                                                 .uri("lb://payment-service"))
                                 .route("notification-websocket", r -> r.path("/ws/notifications/**")
                                                 .uri("lb://notification-service"))
@@ -0,0 +1,42 @@
+package com.example.gateway.config;
+
+import org.springframework.boot.actuate.data.redis.RedisReactiveHealthIndicator;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnMissingBean;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.data.redis.connection.ReactiveRedisConnectionFactory;
+import org.springframework.data.redis.core.ReactiveStringRedisTemplate;
+
+import com.example.gateway.ratelimit.InMemoryTokenBucketStore;
+import com.example.gateway.ratelimit.RedisTokenBucketStore;
+import com.example.gateway.ratelimit.TokenBucketStore;
+
+/**
+ * Chọn store cho token bucket theo gateway.rate-limit.store.
+ *
+ * Store memory không đụng tới Redis: health indicator Redis mặc định bị tắt
+ * (management.health.redis.enabled=false) và chỉ được đăng ký lại khi store=redis,
+ * để gateway không báo DOWN vì một Redis nó không dùng.
+ */
+@Configuration
+public class RateLimitConfig {
+
+    @Bean
+    @ConditionalOnProperty(prefix = "gateway.rate-limit", name = "store", havingValue = "redis")
+    public TokenBucketStore redisTokenBucketStore(ReactiveStringRedisTemplate redisTemplate) {
+        return new RedisTokenBucketStore(redisTemplate);
+    }
+
+    @Bean
+    @ConditionalOnProperty(prefix = "gateway.rate-limit", name = "store", havingValue = "redis")
+    public RedisReactiveHealthIndicator redisHealthIndicator(ReactiveRedisConnectionFactory connectionFactory) {
+        return new RedisReactiveHealthIndicator(connectionFactory);
+    }
+
+    @Bean
+    @ConditionalOnMissingBean(TokenBucketStore.class)
+    public TokenBucketStore inMemoryTokenBucketStore(RateLimitProperties properties) {
+        return new InMemoryTokenBucketStore(properties.getMaxTrackedClients());
+    }
+}
@@ -0,0 +1,87 @@
+package com.example.gateway.config;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+@Getter
+@Setter
+@ConfigurationProperties(prefix = "gateway.rate-limit")
+public class RateLimitProperties {
+
+    /**
+     * Bật/tắt rate limit và load shedding ở gateway.
+     */
+    private boolean enabled = true;
+
+    /**
+     * Nơi lưu token bucket: memory (mỗi instance gateway một bộ đếm) hoặc redis (dùng chung giữa các instance).
+     */
+    private String store = "memory";
+
+    /**
+     * Số proxy tin cậy đứng trước gateway, dùng để lấy IP client từ X-Forwarded-For.
+     * Phải khớp đúng hạ tầng triển khai: lớn hơn số proxy thật thì client tự giả được IP qua header,
+     * 0 = gateway nhận kết nối trực tiếp, dùng địa chỉ remote và bỏ qua X-Forwarded-For.
+     */
+    private int trustedProxies = 1;
+
+    /**
+     * Store memory: số bucket tối đa được giữ trước khi dọn các bucket đã đầy (client không còn hoạt động).
+     */
+    private int maxTrackedClients = 100000;
+
+    /**
+     * Quota cho request không khớp policy nào.
+     */
+    private Policy defaultPolicy = new Policy();
+
+    /**
+     * Quota theo route, xét theo thứ tự khai báo, policy đầu tiên khớp path được áp dụng.
+     */
+    private Map<String, Policy> policies = new LinkedHashMap<>();
+
+    @Getter
+    @Setter
+    public static class Policy {
+
+        /**
+         * Path pattern (vd: /v1/order/**).
+         */
+        private List<String> paths = new ArrayList<>();
+
+        /**
+         * Số request mỗi giây được nạp lại vào bucket của một client.
+         */
+        private int replenishRate = 50;
+
+        /**
+         * Dung lượng bucket = số request tối đa một client được dồn trong một burst.
+         */
+        private int burstCapacity = 100;
+
+        /**
+         * Số request đồng thời tối đa của route trên mỗi instance gateway, 0 = không giới hạn.
+         */
+        private int maxConcurrent = 0;
+
+        /**
+         * Kiểm tra lúc khởi động: rate = 0 làm Lua script chia cho 0 khi tính TTL của bucket.
+         */
+        public void validate(String name) {
+            if (replenishRate <= 0) {
+                throw new IllegalStateException(
+                        "gateway.rate-limit policy '" + name + "': replenish-rate must be > 0");
+            }
+            if (burstCapacity <= 0) {
+                throw new IllegalStateException(
+                        "gateway.rate-limit policy '" + name + "': burst-capacity must be > 0");
+            }
+        }
+    }
+}
@@ -17,6 +17,9 @@ import reactor.core.publisher.Mono;
 
 @Component
 public class JwtAuthenticationFilter implements GatewayFilter {
+    // userId của token đã xác thực, RateLimitFilter dùng làm key
+    public static final String USER_ID_ATTRIBUTE = "gateway.userId";
+
     private final JwtUtil jwtUtil;
 
     public JwtAuthenticationFilter(JwtUtil jwtUtil) {
@@ -87,7 +90,10 @@ public class JwtAuthenticationFilter implements GatewayFilter {
             }
 
             try {
-                jwtUtil.validateToken(token);
+                String userId = jwtUtil.validateToken(token).get("userId", String.class);
+                if (userId != null) {
+                    exchange.getAttributes().put(USER_ID_ATTRIBUTE, userId);
+                }
             } catch (Exception e) {
                 return onError(exchange);
             }
@@ -0,0 +1,133 @@
+package com.example.gateway.filter;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.springframework.cloud.gateway.filter.GatewayFilter;
+import org.springframework.cloud.gateway.filter.GatewayFilterChain;
+import org.springframework.cloud.gateway.support.ipresolver.RemoteAddressResolver;
+import org.springframework.cloud.gateway.support.ipresolver.XForwardedRemoteAddressResolver;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.server.PathContainer;
+import org.springframework.http.server.reactive.ServerHttpResponse;
+import org.springframework.stereotype.Component;
+import org.springframework.web.server.ServerWebExchange;
+import org.springframework.web.util.pattern.PathPattern;
+import org.springframework.web.util.pattern.PathPatternParser;
+
+import com.example.gateway.config.RateLimitProperties;
+import com.example.gateway.ratelimit.TokenBucketStore;
+
+import lombok.extern.slf4j.Slf4j;
+import reactor.core.publisher.Mono;
+
+/**
+ * Rate limit + load shedding cho các route REST.
+ *
+ * 1. Token bucket theo client (userId đã xác thực, nếu không có thì IP) và policy khớp path
+ * 2. Policy có maxConcurrent: số request đang xử lý của route vượt ngưỡng thì trả 429 ngay,
+ *    không đẩy thêm tải xuống service phía sau
+ *
+ * Phải đặt SAU JwtAuthenticationFilter trong route để lấy được userId.
+ */
+@Slf4j
+@Component
+public class RateLimitFilter implements GatewayFilter {
+
+    private static final String DEFAULT_POLICY = "default";
+
+    private final RateLimitProperties properties;
+    private final TokenBucketStore tokenBucketStore;
+    private final RemoteAddressResolver remoteAddressResolver;
+    private final List<CompiledPolicy> policies = new ArrayList<>();
+    private final CompiledPolicy defaultPolicy;
+
+    private record CompiledPolicy(String name, List<PathPattern> patterns, RateLimitProperties.Policy policy,
+            AtomicInteger inFlight) {
+        boolean matches(PathContainer path) {
+            return patterns.stream().anyMatch(pattern -> pattern.matches(path));
+        }
+    }
+
+    public RateLimitFilter(RateLimitProperties properties, TokenBucketStore tokenBucketStore) {
+        this.properties = properties;
+        this.tokenBucketStore = tokenBucketStore;
+        // Không có proxy phía trước thì X-Forwarded-For do client tự gửi, chỉ tin địa chỉ kết nối
+        this.remoteAddressResolver = properties.getTrustedProxies() > 0
+                ? XForwardedRemoteAddressResolver.maxTrustedIndex(properties.getTrustedProxies())
+                : new RemoteAddressResolver() {
+                };
+
+        PathPatternParser parser = PathPatternParser.defaultInstance;
+        for (Map.Entry<String, RateLimitProperties.Policy> entry : properties.getPolicies().entrySet()) {
+            entry.getValue().validate(entry.getKey());
+            List<PathPattern> patterns = entry.getValue().getPaths().stream().map(parser::parse).toList();
+            policies.add(new CompiledPolicy(entry.getKey(), patterns, entry.getValue(), new AtomicInteger()));
+        }
+        properties.getDefaultPolicy().validate(DEFAULT_POLICY);
+        this.defaultPolicy = new CompiledPolicy(DEFAULT_POLICY, List.of(), properties.getDefaultPolicy(),
+                new AtomicInteger());
+    }
+
+    @Override
+    public Mono<Void> filter(ServerWebExchange exchange, GatewayFilterChain chain) {
+        if (!properties.isEnabled() || HttpMethod.OPTIONS.equals(exchange.getRequest().getMethod())) {
+            return chain.filter(exchange);
+        }
+
+        CompiledPolicy policy = resolvePolicy(exchange.getRequest().getPath().pathWithinApplication());
+        String key = policy.name() + ":" + resolveClientKey(exchange);
+
+        return tokenBucketStore.tryConsume(key, policy.policy()).flatMap(allowed -> {
+            if (!allowed) {
+                log.debug("Rate limit exceeded for {}", key);
+                return onTooManyRequests(exchange);
+            }
+            return withConcurrencyLimit(exchange, chain, policy);
+        });
+    }
+
+    private Mono<Void> withConcurrencyLimit(ServerWebExchange exchange, GatewayFilterChain chain,
+            CompiledPolicy policy) {
+        int maxConcurrent = policy.policy().getMaxConcurrent();
+        if (maxConcurrent <= 0) {
+            return chain.filter(exchange);
+        }
+        if (policy.inFlight().incrementAndGet() > maxConcurrent) {
+            policy.inFlight().decrementAndGet();
+            log.debug("Shedding request to {}: {} requests in flight", policy.name(), maxConcurrent);
+            return onTooManyRequests(exchange);
+        }
+        return chain.filter(exchange).doFinally(signal -> policy.inFlight().decrementAndGet());
+    }
+
+    private CompiledPolicy resolvePolicy(PathContainer path) {
+        for (CompiledPolicy policy : policies) {
+            if (policy.matches(path)) {
+                return policy;
+            }
+        }
+        return defaultPolicy;
+    }
+
+    private String resolveClientKey(ServerWebExchange exchange) {
+        String userId = exchange.getAttribute(JwtAuthenticationFilter.USER_ID_ATTRIBUTE);
+        if (userId != null) {
+            return "u:" + userId;
+        }
+        var address = remoteAddressResolver.resolve(exchange);
+        return "ip:" + (address != null && address.getAddress() != null
+                ? address.getAddress().getHostAddress()
+                : "unknown");
+    }
+
+    private Mono<Void> onTooManyRequests(ServerWebExchange exchange) {
+        ServerHttpResponse response = exchange.getResponse();
+        response.setStatusCode(HttpStatus.TOO_MANY_REQUESTS);
+        response.getHeaders().set("Retry-After", "1");
+        return response.setComplete();
+    }
+}
@@ -0,0 +1,79 @@
+package com.example.gateway.ratelimit;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+import com.example.gateway.config.RateLimitProperties;
+
+import reactor.core.publisher.Mono;
+
+/**
+ * Token bucket trong bộ nhớ của instance gateway.
+ *
+ * Bucket được nạp lại lười (tính theo thời gian trôi qua khi có request), không cần scheduler.
+ * Khi số bucket vượt {@code maxTrackedClients}, các bucket đã nạp đầy (client ngừng gửi request) bị dọn.
+ */
+public class InMemoryTokenBucketStore implements TokenBucketStore {
+
+    private final int maxTrackedClients;
+    private final ConcurrentHashMap<String, Bucket> buckets = new ConcurrentHashMap<>();
+
+    public InMemoryTokenBucketStore(int maxTrackedClients) {
+        this.maxTrackedClients = maxTrackedClients;
+    }
+
+    @Override
+    public Mono<Boolean> tryConsume(String key, RateLimitProperties.Policy policy) {
+        long now = System.nanoTime();
+        Bucket bucket = buckets.get(key);
+        if (bucket == null) {
+            if (buckets.size() >= maxTrackedClients) {
+                evictIdle(now);
+            }
+            bucket = buckets.computeIfAbsent(key, k -> new Bucket(policy.getBurstCapacity(), now));
+        }
+        return Mono.just(bucket.tryConsume(policy, now));
+    }
+
+    private void evictIdle(long now) {
+        buckets.entrySet().removeIf(entry -> entry.getValue().isIdle(now));
+        if (buckets.size() >= maxTrackedClients) {
+            buckets.clear();
+        }
+    }
+
+    private static final class Bucket {
+        private double tokens;
+        private long lastRefillNanos;
+        private double capacity;
+        private double ratePerNano;
+
+        Bucket(int capacity, long now) {
+            this.tokens = capacity;
+            this.lastRefillNanos = now;
+        }
+
+        synchronized boolean tryConsume(RateLimitProperties.Policy policy, long now) {
+            capacity = policy.getBurstCapacity();
+            ratePerNano = policy.getReplenishRate() / 1_000_000_000d;
+            refill(now);
+            if (tokens < 1) {
+                return false;
+            }
+            tokens -= 1;
+            return true;
+        }
+
+        synchronized boolean isIdle(long now) {
+            refill(now);
+            return tokens >= capacity;
+        }
+
+        private void refill(long now) {
+            long elapsed = now - lastRefillNanos;
+            if (elapsed > 0) {
+                tokens = Math.min(capacity, tokens + elapsed * ratePerNano);
+                lastRefillNanos = now;
+            }
+        }
+    }
+}
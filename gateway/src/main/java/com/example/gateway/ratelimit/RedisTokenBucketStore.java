@@ -0,0 +1,49 @@
+package com.example.gateway.ratelimit;
+
+import java.util.List;
+
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.data.redis.core.ReactiveStringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.scripting.support.ResourceScriptSource;
+
+import com.example.gateway.config.RateLimitProperties;
+
+import lombok.extern.slf4j.Slf4j;
+import reactor.core.publisher.Mono;
+
+/**
+ * Token bucket trong Redis, dùng chung giữa các instance gateway.
+ *
+ * Mỗi lần kiểm tra là một lần gọi Lua script (nạp lại + lấy token atomic).
+ * Redis lỗi thì cho request đi tiếp (fail-open) để gateway không trở thành điểm chết.
+ */
+@Slf4j
+public class RedisTokenBucketStore implements TokenBucketStore {
+
+    private static final String KEY_PREFIX = "ratelimit:";
+
+    private final ReactiveStringRedisTemplate redisTemplate;
+    private final DefaultRedisScript<Long> script;
+
+    public RedisTokenBucketStore(ReactiveStringRedisTemplate redisTemplate) {
+        this.redisTemplate = redisTemplate;
+        this.script = new DefaultRedisScript<>();
+        this.script.setScriptSource(new ResourceScriptSource(
+                new ClassPathResource("scripts/rate_limit_token_bucket.lua")));
+        this.script.setResultType(Long.class);
+    }
+
+    @Override
+    public Mono<Boolean> tryConsume(String key, RateLimitProperties.Policy policy) {
+        return redisTemplate.execute(script, List.of(KEY_PREFIX + key),
+                        List.of(String.valueOf(policy.getReplenishRate()), String.valueOf(policy.getBurstCapacity())))
+                .next()
+                .map(result -> result == 1L)
+                .defaultIfEmpty(true)
+                .onErrorResume(e -> {
+                    log.warn("Rate limit store unavailable, allowing request: {}", e.getMessage());
+                    return Mono.just(true);
+                });
+    }
+}
@@ -0,0 +1,18 @@
+package com.example.gateway.ratelimit;
+
+import com.example.gateway.config.RateLimitProperties;
+
+import reactor.core.publisher.Mono;
+
+/**
+ * Lưu trạng thái token bucket của từng client theo policy.
+ */
+public interface TokenBucketStore {
+
+    /**
+     * Lấy một token của bucket {@code key}.
+     *
+     * @return true nếu còn token (request được đi tiếp)
+     */
+    Mono<Boolean> tryConsume(String key, RateLimitProperties.Policy policy);
+}
@@ -0,0 +1,38 @@
+-- rate_limit_token_bucket.lua
+-- KEYS[1]: ratelimit:{policy}:{client}
+-- ARGV[1]: replenishRate (token/giây)
+-- ARGV[2]: burstCapacity
+-- Trả về 1 nếu lấy được token, 0 nếu bucket rỗng
+
+local key = KEYS[1]
+local rate = tonumber(ARGV[1])
+local capacity = tonumber(ARGV[2])
+
+-- Dùng đồng hồ của Redis để mọi instance gateway tính cùng một mốc thời gian
+local time = redis.call('TIME')
+local now = tonumber(time[1]) * 1000 + math.floor(tonumber(time[2]) / 1000)
+
+local state = redis.call('HMGET', key, 'tokens', 'ts')
+local tokens = tonumber(state[1])
+local ts = tonumber(state[2])
+if tokens == nil then
+    tokens = capacity
+    ts = now
+end
+
+-- 1. Nạp lại token theo thời gian trôi qua
+local elapsed = math.max(0, now - ts)
+tokens = math.min(capacity, tokens + elapsed * rate / 1000)
+
+-- 2. Lấy một token
+local allowed = 0
+if tokens >= 1 then
+    tokens = tokens - 1
+    allowed = 1
+end
+
+-- 3. Lưu trạng thái; key tự hết hạn sau khoảng thời gian đủ để bucket nạp đầy lại
+redis.call('HSET', key, 'tokens', tokens, 'ts', now)
+redis.call('PEXPIRE', key, math.ceil(capacity / rate * 2000) + 1000)
+
+return allowed
@@ -0,0 +1,54 @@
+package com.example.gateway.ratelimit;
+
+import com.example.gateway.config.RateLimitProperties;
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class InMemoryTokenBucketStoreTest {
+
+    private final InMemoryTokenBucketStore store = new InMemoryTokenBucketStore(100);
+
+    @Test
+    void allowsBurstThenRejectsUntilRefilled() throws InterruptedException {
+        RateLimitProperties.Policy policy = policy(10, 3);
+
+        for (int i = 0; i < 3; i++) {
+            assertThat(store.tryConsume("order:u1", policy).block()).isTrue();
+        }
+        assertThat(store.tryConsume("order:u1", policy).block()).isFalse();
+
+        // 10 token/giây: sau 250ms có lại ít nhất 2 token
+        Thread.sleep(250);
+        assertThat(store.tryConsume("order:u1", policy).block()).isTrue();
+        assertThat(store.tryConsume("order:u1", policy).block()).isTrue();
+    }
+
+    @Test
+    void bucketsAreKeptPerClient() {
+        RateLimitProperties.Policy policy = policy(1, 1);
+
+        assertThat(store.tryConsume("order:u1", policy).block()).isTrue();
+        assertThat(store.tryConsume("order:u1", policy).block()).isFalse();
+        assertThat(store.tryConsume("order:u2", policy).block()).isTrue();
+    }
+
+    @Test
+    void evictsFullBucketsWhenTooManyClientsAreTracked() {
+        InMemoryTokenBucketStore small = new InMemoryTokenBucketStore(2);
+        RateLimitProperties.Policy policy = policy(1, 1);
+
+        small.tryConsume("search:a", policy).block();
+        small.tryConsume("search:b", policy).block();
+        // Đạt maxTrackedClients: các bucket cũ bị dọn, client mới vẫn có bucket riêng hoạt động bình thường
+        assertThat(small.tryConsume("search:c", policy).block()).isTrue();
+        assertThat(small.tryConsume("search:c", policy).block()).isFalse();
+    }
+
+    static RateLimitProperties.Policy policy(int replenishRate, int burstCapacity) {
+        RateLimitProperties.Policy policy = new RateLimitProperties.Policy();
+        policy.setReplenishRate(replenishRate);
+        policy.setBurstCapacity(burstCapacity);
+        return policy;
+    }
+}
@@ -0,0 +1,91 @@
+package com.example.gateway.ratelimit;
+
+import com.example.gateway.config.RateLimitProperties;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+import org.springframework.data.redis.core.ReactiveStringRedisTemplate;
+import org.testcontainers.containers.GenericContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+import org.testcontainers.utility.DockerImageName;
+
+import java.time.Duration;
+
+import static com.example.gateway.ratelimit.InMemoryTokenBucketStoreTest.policy;
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * rate_limit_token_bucket.lua trên Redis thật (cùng image với docker-compose); không có Docker thì bị bỏ qua.
+ */
+@Testcontainers(disabledWithoutDocker = true)
+class RedisTokenBucketStoreTest {
+
+    @Container
+    static final GenericContainer<?> REDIS = new GenericContainer<>(DockerImageName.parse("redis:7-alpine"))
+            .withExposedPorts(6379);
+
+    private static LettuceConnectionFactory connectionFactory;
+    private static ReactiveStringRedisTemplate redisTemplate;
+
+    @BeforeAll
+    static void connect() {
+        connectionFactory = new LettuceConnectionFactory(REDIS.getHost(), REDIS.getMappedPort(6379));
+        connectionFactory.afterPropertiesSet();
+        redisTemplate = new ReactiveStringRedisTemplate(connectionFactory);
+    }
+
+    @AfterAll
+    static void disconnect() {
+        connectionFactory.destroy();
+    }
+
+    @BeforeEach
+    void flushRedis() {
+        try (RedisConnection connection = connectionFactory.getConnection()) {
+            connection.serverCommands().flushAll();
+        }
+    }
+
+    @Test
+    void allowsBurstThenRejectsUntilRefilled() throws InterruptedException {
+        RedisTokenBucketStore store = new RedisTokenBucketStore(redisTemplate);
+        RateLimitProperties.Policy policy = policy(10, 3);
+
+        for (int i = 0; i < 3; i++) {
+            assertThat(store.tryConsume("order:u1", policy).block()).isTrue();
+        }
+        assertThat(store.tryConsume("order:u1", policy).block()).isFalse();
+
+        // 10 token/giây theo đồng hồ Redis: sau 250ms có lại ít nhất 2 token
+        Thread.sleep(250);
+        assertThat(store.tryConsume("order:u1", policy).block()).isTrue();
+        assertThat(store.tryConsume("order:u1", policy).block()).isTrue();
+    }
+
+    @Test
+    void bucketIsSharedBetweenGatewayInstances() {
+        RedisTokenBucketStore first = new RedisTokenBucketStore(redisTemplate);
+        RedisTokenBucketStore second = new RedisTokenBucketStore(redisTemplate);
+        RateLimitProperties.Policy policy = policy(1, 2);
+
+        assertThat(first.tryConsume("order:u1", policy).block()).isTrue();
+        assertThat(second.tryConsume("order:u1", policy).block()).isTrue();
+        assertThat(first.tryConsume("order:u1", policy).block()).isFalse();
+        assertThat(second.tryConsume("order:u2", policy).block()).isTrue();
+    }
+
+    @Test
+    void bucketKeyExpiresOnceItWouldBeFullAgain() {
+        RedisTokenBucketStore store = new RedisTokenBucketStore(redisTemplate);
+
+        store.tryConsume("search:u1", policy(10, 30)).block();
+
+        // capacity / rate * 2 giây + 1 giây
+        Duration ttl = redisTemplate.getExpire("ratelimit:search:u1").block();
+        assertThat(ttl).isBetween(Duration.ofSeconds(5), Duration.ofSeconds(7));
+    }
+}
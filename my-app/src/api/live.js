@@ -182,11 +182,12 @@ export const removeProductFromLive = async (roomId, productId) => {
 /**
  * Get recent chats
  * @param {string} roomId - Room ID
- * @returns {Promise<Array>} - List<LiveChatDto>
+ * @param {string} [after] - Last received chat offset; returns only newer chats (oldest first) for replay after reconnect
+ * @returns {Promise<Array>} - List<LiveChatDto> (newest first when no offset is given)
  */
-export const getRecentChats = async (roomId) => {
+export const getRecentChats = async (roomId, after) => {
     try {
-        const response = await api.get(`/rooms/${roomId}/chat`);
+        const response = await api.get(`/rooms/${roomId}/chat`, { params: after ? { after } : {} });
         return response.data;
     } catch (error) {
         console.error('Error getting recent chats:', error);
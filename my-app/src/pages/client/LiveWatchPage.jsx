@@ -21,6 +21,7 @@ export default function LiveWatchPage() {
     const containerRef = useRef(null); // Added container ref
     const chatContainerRef = useRef(null);
     const stompClientRef = useRef(null);
+    const lastChatOffsetRef = useRef(null); // Offset of the newest chat received, used to replay after reconnect
     const [room, setRoom] = useState(null);
     const [messages, setMessages] = useState([]);
 
@@ -86,6 +87,9 @@ export default function LiveWatchPage() {
                 client.subscribe(`/topic/live/${roomId}/chat`, (message) => {
                     const chatMsg = JSON.parse(message.body);
                     console.log('New chat message:', chatMsg);
+                    if (chatMsg.offset) {
+                        lastChatOffsetRef.current = chatMsg.offset;
+                    }
                     setMessages(prev => {
                         // Deduplicate based on ID
                         if (chatMsg.id && prev.some(m => m.id === chatMsg.id)) {
@@ -102,6 +106,11 @@ export default function LiveWatchPage() {
                     }
                 });
 
+                // Reconnect: replay chats missed while disconnected
+                if (lastChatOffsetRef.current) {
+                    replayChats(lastChatOffsetRef.current);
+                }
+
                 // Subscribe to product updates
                 client.subscribe(`/topic/live/${roomId}/product`, (message) => {
                     const productData = JSON.parse(message.body);
@@ -112,7 +121,14 @@ export default function LiveWatchPage() {
                 // Subscribe to reactions
                 client.subscribe(`/topic/live/${roomId}/reaction`, (message) => {
                     const reaction = JSON.parse(message.body);
-                    if (reaction && reaction.type) {
+                    // Server gộp reaction theo tick: counts = số lượng theo loại, giới hạn số icon hiển thị mỗi tick
+                    if (reaction && reaction.counts) {
+                        Object.entries(reaction.counts).forEach(([type, count]) => {
+                            for (let i = 0; i < Math.min(count, 10); i++) {
+                                handleAddReaction(type);
+                            }
+                        });
+                    } else if (reaction && reaction.type) {
                         handleAddReaction(reaction.type);
                     }
                 });
@@ -199,6 +215,9 @@ export default function LiveWatchPage() {
     const fetchChats = async () => {
         try {
             const chats = await getRecentChats(roomId);
+            if (chats.length > 0 && chats[0].offset) {
+                lastChatOffsetRef.current = chats[0].offset;
+            }
             setMessages(chats.reverse()); // Newest at bottom
 
             // Auto scroll to bottom
@@ -210,6 +229,23 @@ export default function LiveWatchPage() {
         }
     };
 
+    const replayChats = async (after) => {
+        try {
+            const missed = await getRecentChats(roomId, after);
+            if (missed.length === 0) return;
+            // Keep a newer offset if live frames arrived while replaying
+            if (lastChatOffsetRef.current === after) {
+                lastChatOffsetRef.current = missed[missed.length - 1].offset || after;
+            }
+            setMessages(prev => {
+                const known = new Set(prev.map(m => m.id));
+                return [...prev, ...missed.filter(m => !known.has(m.id))];
+            });
+        } catch (err) {
+            console.error('Error replaying chats:', err);
+        }
+    };
+
     // Auto scroll to bottom when new messages arrive
     useEffect(() => {
         if (chatContainerRef.current) {
@@ -133,7 +133,14 @@ export default function LiveManagePage() {
                     // Subscribe to reactions
                     client.subscribe(`/topic/live/${currentRoom.id}/reaction`, (message) => {
                         const reaction = JSON.parse(message.body);
-                        if (reaction && reaction.type) {
+                        // Server gộp reaction theo tick: counts = số lượng theo loại, giới hạn số icon hiển thị mỗi tick
+                        if (reaction && reaction.counts) {
+                            Object.entries(reaction.counts).forEach(([type, count]) => {
+                                for (let i = 0; i < Math.min(count, 10); i++) {
+                                    handleAddReaction(type);
+                                }
+                            });
+                        } else if (reaction && reaction.type) {
                             handleAddReaction(reaction.type);
                         }
                     });
@@ -7,6 +7,8 @@ import org.springframework.cloud.openfeign.FeignClient;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
 
 import java.util.List;
 
@@ -16,6 +18,12 @@ public interface UserServiceClient {
     @GetMapping(value = "/getUserById/{userId}", headers = "X-Internal-Call=true")
     ResponseEntity<UserDto> getUserById(@PathVariable String userId);
 
+    /**
+     * Get many users in one call (used to resolve chat participants in batch)
+     */
+    @PostMapping(value = "/getUsersByIds", headers = "X-Internal-Call=true")
+    ResponseEntity<List<UserDto>> getUsersByIds(@RequestBody List<String> ids);
+
     @GetMapping(value = "/shop-owners/{userId}", headers = "X-Internal-Call=true")
     ResponseEntity<ShopOwnerDto> getShopOwnerByUserId(@PathVariable String userId);
 
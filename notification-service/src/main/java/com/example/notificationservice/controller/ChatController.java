@@ -8,9 +8,11 @@ import com.example.notificationservice.request.StartConversationRequest;
 import com.example.notificationservice.service.ChatService;
 import jakarta.servlet.http.HttpServletRequest;
 import lombok.RequiredArgsConstructor;
+import org.springframework.format.annotation.DateTimeFormat;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
+import java.time.LocalDateTime;
 import java.util.List;
 
 @RestController
@@ -42,25 +44,42 @@ public class ChatController {
     /**
      * Lấy danh sách conversations của user
      * GET /v1/notifications/chat/conversations
+     * 
+     * Có limit: keyset pagination, trang tiếp theo truyền updatedAt + id của conversation cuối trang trước
+     * GET /v1/notifications/chat/conversations?limit=20&beforeUpdatedAt=...&beforeId=...
      */
     @GetMapping("/conversations")
-    public ResponseEntity<List<ConversationDto>> getConversations(HttpServletRequest httpRequest) {
+    public ResponseEntity<List<ConversationDto>> getConversations(
+        @RequestParam(required = false) Integer limit,
+        @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime beforeUpdatedAt,
+        @RequestParam(required = false) String beforeId,
+        HttpServletRequest httpRequest
+    ) {
         String userId = jwtUtil.ExtractUserId(httpRequest);
-        List<ConversationDto> conversations = chatService.getConversations(userId);
+        List<ConversationDto> conversations = limit == null
+            ? chatService.getConversations(userId)
+            : chatService.getConversations(userId, Math.min(Math.max(limit, 1), 100), beforeUpdatedAt, beforeId);
         return ResponseEntity.ok(conversations);
     }
     
     /**
      * Lấy messages của conversation
      * GET /v1/notifications/chat/conversations/{conversationId}/messages
+     * 
+     * Cuộn lên (keyset): truyền createdAt + id của message cũ nhất đang có
+     * GET .../messages?size=20&beforeCreatedAt=...&beforeId=...
      */
     @GetMapping("/conversations/{conversationId}/messages")
     public ResponseEntity<List<MessageDto>> getMessages(
         @PathVariable String conversationId,
         @RequestParam(defaultValue = "0") int page,
-        @RequestParam(defaultValue = "20") int size
+        @RequestParam(defaultValue = "20") int size,
+        @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime beforeCreatedAt,
+        @RequestParam(required = false) String beforeId
     ) {
-        List<MessageDto> messages = chatService.getMessages(conversationId, page, size);
+        List<MessageDto> messages = (beforeCreatedAt != null && beforeId != null)
+            ? chatService.getMessagesBefore(conversationId, size, beforeCreatedAt, beforeId)
+            : chatService.getMessages(conversationId, page, size);
         return ResponseEntity.ok(messages);
     }
     
@@ -231,12 +231,18 @@ public class LiveController {
     }
     
     /**
-     * Lấy tin nhắn gần đây
+     * Lấy tin nhắn gần đây (mới nhất trước)
      * GET /v1/notifications/live/rooms/{id}/chat
+     * Có "after" (offset cuối cùng đã nhận): trả các tin sau offset đó, cũ nhất trước (replay khi reconnect)
      */
     @GetMapping("/rooms/{id}/chat")
-    public ResponseEntity<List<LiveChatDto>> getRecentChats(@PathVariable String id) {
-        List<LiveChatDto> chats = liveService.getRecentChats(id);
+    public ResponseEntity<List<LiveChatDto>> getRecentChats(
+            @PathVariable String id,
+            @RequestParam(required = false) String after
+    ) {
+        List<LiveChatDto> chats = after != null && !after.isBlank()
+                ? liveService.getChatsAfter(id, after)
+                : liveService.getRecentChats(id);
         return ResponseEntity.ok(chats);
     }
     
@@ -3,7 +3,7 @@ package com.example.notificationservice.controller;
 import com.example.notificationservice.dto.LiveChatDto;
 import com.example.notificationservice.enums.LiveChatType;
 import com.example.notificationservice.request.LiveChatRequest;
-import com.example.notificationservice.service.LiveChatRedisService;
+import com.example.notificationservice.service.LiveRoomActivityAggregator;
 import com.example.notificationservice.service.LiveService;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
@@ -18,10 +18,6 @@ import org.springframework.stereotype.Controller;
 import java.security.Principal;
 import java.time.LocalDateTime;
 import java.util.Map;
-import java.util.Set;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ConcurrentSkipListSet;
-import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * WebSocket Controller cho Livestream
@@ -45,13 +41,9 @@ import java.util.concurrent.atomic.AtomicInteger;
 public class LiveWebSocketController {
 
     private final LiveService liveService;
-    private final LiveChatRedisService liveChatRedisService;
+    private final LiveRoomActivityAggregator liveRoomActivityAggregator;
     private final SimpMessagingTemplate messagingTemplate;
 
-    // Track unique viewers per room using Set (prevents duplicate counting on
-    // refresh)
-    private final Map<String, Set<String>> roomViewerSets = new ConcurrentHashMap<>();
-
     /**
      * Xử lý tin nhắn chat từ client
      * Client gửi đến: /app/live/{roomId}/chat
@@ -82,7 +74,7 @@ public class LiveWebSocketController {
         // isOwner từ request
         Boolean isOwner = request.getIsOwner() != null ? request.getIsOwner() : false;
 
-        log.info("Chat in room {}: {} from {} (isOwner: {})", roomId, request.getMessage(), username, isOwner);
+        log.debug("Chat in room {}: {} from {} (isOwner: {})", roomId, request.getMessage(), username, isOwner);
 
         // Tạo chat DTO và broadcast
         LiveChatDto chatDto = LiveChatDto.builder()
@@ -97,20 +89,17 @@ public class LiveWebSocketController {
                 .id(java.util.UUID.randomUUID().toString())
                 .build();
 
+        // Append vào Redis stream trước để frame broadcast mang offset (client dùng để replay khi reconnect)
+        liveService.appendChat(roomId, chatDto);
+
         // Broadcast to all subscribers
         messagingTemplate.convertAndSend("/topic/live/" + roomId + "/chat", chatDto);
-
-        // Lưu vào Redis
-        try {
-            liveChatRedisService.saveChat(roomId, chatDto);
-        } catch (Exception e) {
-            log.warn("Failed to save chat to Redis: {}", e.getMessage());
-        }
     }
 
     /**
      * Xử lý khi user join room
      * Client gửi đến: /app/live/{roomId}/join
+     * Viewer count, system message và DB được cập nhật gộp theo tick bởi LiveRoomActivityAggregator
      */
     @MessageMapping("/live/{roomId}/join")
     public void handleJoin(
@@ -119,38 +108,9 @@ public class LiveWebSocketController {
         Principal principal = headerAccessor.getUser();
         String userId = principal != null ? principal.getName() : "anonymous";
 
-        log.info("User {} joined live room {}", userId, roomId);
-
         // Add user to viewer set (automatically deduplicates on refresh)
-        Set<String> viewers = roomViewerSets.computeIfAbsent(roomId, k -> new ConcurrentSkipListSet<>());
-        boolean isNewViewer = viewers.add(userId);
-        int currentViewers = viewers.size();
-
-        if (isNewViewer) {
-            log.info("New viewer {} joined room {} (total: {})", userId, roomId, currentViewers);
-        } else {
-            log.info("Viewer {} rejoined room {} (no count increase, total: {})", userId, roomId, currentViewers);
-        }
-
-        // Broadcast viewer count
-        broadcastViewerCount(roomId, currentViewers);
-
-        // Update DB (async)
-        try {
-            liveService.updateViewerCount(roomId, currentViewers);
-        } catch (Exception e) {
-            log.warn("Failed to update viewer count in DB: {}", e.getMessage());
-        }
-
-        // Gửi system message
-        LiveChatDto systemMsg = LiveChatDto.builder()
-                .liveRoomId(roomId)
-                .type(LiveChatType.SYSTEM)
-                .message("A new person has just joined.!")
-                .createdAt(LocalDateTime.now())
-                .id(java.util.UUID.randomUUID().toString())
-                .build();
-        messagingTemplate.convertAndSend("/topic/live/" + roomId + "/chat", systemMsg);
+        boolean isNewViewer = liveRoomActivityAggregator.join(roomId, userId);
+        log.debug("User {} joined live room {} (new viewer: {})", userId, roomId, isNewViewer);
     }
 
     /**
@@ -164,63 +124,21 @@ public class LiveWebSocketController {
         Principal principal = headerAccessor.getUser();
         String userId = principal != null ? principal.getName() : "anonymous";
 
-        log.info("User {} left live room {}", userId, roomId);
-
-        // Remove user from viewer set
-        Set<String> viewers = roomViewerSets.get(roomId);
-        if (viewers != null) {
-            boolean wasRemoved = viewers.remove(userId);
-            int currentViewers = viewers.size();
-
-            if (wasRemoved) {
-                log.info("Viewer {} left room {} (total: {})", userId, roomId, currentViewers);
-            }
-
-            // Broadcast viewer count
-            broadcastViewerCount(roomId, currentViewers);
-
-            // Update DB
-            try {
-                liveService.updateViewerCount(roomId, currentViewers);
-            } catch (Exception e) {
-                log.warn("Failed to update viewer count in DB: {}", e.getMessage());
-            }
-        }
+        boolean wasRemoved = liveRoomActivityAggregator.leave(roomId, userId);
+        log.debug("User {} left live room {} (removed: {})", userId, roomId, wasRemoved);
     }
 
     /**
      * Xử lý reaction từ client (Tim, Like, Haha...)
      * Client gửi đến: /app/live/{roomId}/reaction
-     * Broadcast đến: /topic/live/{roomId}/reaction
+     * Broadcast đến: /topic/live/{roomId}/reaction - một frame mỗi tick gồm số reaction theo loại
+     * ({"type": loại nhiều nhất, "counts": {"HEART": 12, ...}, "total": 15})
      */
     @MessageMapping("/live/{roomId}/reaction")
     public void handleReaction(
             @DestinationVariable String roomId,
-            @Payload com.example.notificationservice.dto.LiveReactionDto request,
-            SimpMessageHeaderAccessor headerAccessor) {
-
-        Principal principal = headerAccessor.getUser();
-        String userId = principal != null ? principal.getName() : "anonymous";
-
-        // Thiết lập thông tin người gửi nếu chưa có
-        if (request.getUserId() == null) {
-            request.setUserId(userId);
-        }
-
-        // Có thể lấy thêm username/avatar từ session nếu cần,
-        // nhưng reaction thường cần nhanh và ẩn danh hoặc chỉ hiện icon bay lên.
-
-        // Broadcast ngay lập tức
-        messagingTemplate.convertAndSend("/topic/live/" + roomId + "/reaction", request);
-    }
-
-    /**
-     * Helper method to broadcast viewer count
-     */
-    private void broadcastViewerCount(String roomId, int count) {
-        messagingTemplate.convertAndSend(
-                "/topic/live/" + roomId + "/viewers",
-                Map.of("count", count, "timestamp", LocalDateTime.now().toString()));
+            @Payload com.example.notificationservice.dto.LiveReactionDto request) {
+        liveRoomActivityAggregator.react(roomId, request.getType());
     }
 
     /**
@@ -25,6 +25,7 @@ public class ConversationDto {
     private Integer shopOwnerUnreadCount;
     private Integer unreadCount; // Unread count cho current user
     private String status;
+    private LocalDateTime updatedAt; // Cursor cho keyset pagination của inbox (cùng với id)
     
     // Enriched data
     private UserDto opponent; // User đối diện (client hoặc shop owner)
@@ -25,4 +25,5 @@ public class LiveChatDto {
     private String productId;
     private String productName;
     private LocalDateTime createdAt;
+    private String offset; // Redis stream entry id, dùng để replay chat sau khi reconnect
 }
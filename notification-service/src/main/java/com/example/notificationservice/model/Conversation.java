@@ -3,6 +3,7 @@ package com.example.notificationservice.model;
 import com.example.notificationservice.enums.ConversationStatus;
 import jakarta.persistence.*;
 import lombok.Data;
+import org.hibernate.annotations.DynamicUpdate;
 import org.hibernate.annotations.GenericGenerator;
 
 import java.time.LocalDateTime;
@@ -15,9 +16,15 @@ import java.time.LocalDateTime;
                         name = "unique_conversation_per_product",
                         columnNames = {"client_id", "shop_owner_id", "product_id"}
                 )
+        },
+        indexes = {
+                // Inbox keyset pagination: WHERE client_id/shop_owner_id = ? ORDER BY updated_at DESC, id DESC
+                @Index(name = "idx_conv_client_updated", columnList = "client_id, updated_at, id"),
+                @Index(name = "idx_conv_shop_updated", columnList = "shop_owner_id, updated_at, id")
         }
 )
 @Data
+@DynamicUpdate // save() chỉ ghi cột thay đổi, không ghi đè unread count/read marker được cập nhật atomic
 public class Conversation {
     @Id
     @GeneratedValue(generator = "UUID")
@@ -33,6 +40,16 @@ public class Conversation {
     @Column(name = "product_id", length = 255)
     private String productId; // NULL được phép (cho conversation chung)
 
+    // Snapshot thông tin hiển thị của sản phẩm, ghi khi gắn productId (list inbox không cần gọi stock-service)
+    @Column(name = "product_name", length = 500)
+    private String productName;
+
+    @Column(name = "product_image_id", length = 255)
+    private String productImageId;
+
+    @Column(name = "product_price")
+    private Double productPrice;
+
     @Column(name = "title", length = 500)
     private String title; // "Hỏi về iPhone 15 Pro Max"
 
@@ -51,6 +68,13 @@ public class Conversation {
     @Column(name = "shop_owner_unread_count")
     private Integer shopOwnerUnreadCount = 0;
 
+    // Read marker: message có createdAt <= marker được coi là đã đọc bởi participant tương ứng
+    @Column(name = "client_last_read_at")
+    private LocalDateTime clientLastReadAt;
+
+    @Column(name = "shop_owner_last_read_at")
+    private LocalDateTime shopOwnerLastReadAt;
+
     @Enumerated(EnumType.STRING)
     @Column(nullable = false)
     private ConversationStatus status = ConversationStatus.ACTIVE;
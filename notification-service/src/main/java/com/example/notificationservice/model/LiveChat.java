@@ -3,7 +3,6 @@ package com.example.notificationservice.model;
 import com.example.notificationservice.enums.LiveChatType;
 import jakarta.persistence.*;
 import lombok.*;
-import org.hibernate.annotations.CreationTimestamp;
 import org.hibernate.annotations.GenericGenerator;
 
 import java.time.LocalDateTime;
@@ -54,7 +53,14 @@ public class LiveChat {
     @Column(name = "product_name")
     private String productName;
     
-    @CreationTimestamp
     @Column(name = "created_at", nullable = false, updatable = false)
     private LocalDateTime createdAt;
+
+    // Chat được archive từ Redis stream giữ thời điểm gửi gốc
+    @PrePersist
+    protected void onCreate() {
+        if (createdAt == null) {
+            createdAt = LocalDateTime.now();
+        }
+    }
 }
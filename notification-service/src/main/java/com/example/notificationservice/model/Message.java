@@ -10,7 +10,10 @@ import org.hibernate.annotations.GenericGenerator;
 import java.time.LocalDateTime;
 
 @Entity
-@Table(name = "messages")
+@Table(name = "messages", indexes = {
+        // Lịch sử tin nhắn: WHERE conversation_id = ? ORDER BY created_at DESC, id DESC (keyset)
+        @Index(name = "idx_msg_conv_created", columnList = "conversation_id, created_at, id")
+})
 @Data
 @Builder
 @NoArgsConstructor
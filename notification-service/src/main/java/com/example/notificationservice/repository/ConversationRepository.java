@@ -2,9 +2,12 @@ package com.example.notificationservice.repository;
 
 import com.example.notificationservice.model.Conversation;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.time.LocalDateTime;
 import java.util.List;
 import java.util.Optional;
 
@@ -42,6 +45,34 @@ public interface ConversationRepository extends JpaRepository<Conversation, Stri
     @Query("SELECT c FROM Conversation c WHERE c.clientId = ?1 OR c.shopOwnerId = ?1 ORDER BY c.updatedAt DESC")
     List<Conversation> findByUserId(String userId);
 
+    /**
+     * Trang đầu inbox (keyset pagination), mới cập nhật trước
+     * Tách 2 nhánh client/shop owner để mỗi nhánh đọc theo index (user, updated_at, id) rồi gộp lại
+     */
+    @Query(value = "(SELECT * FROM conversations WHERE client_id = :userId " +
+            "ORDER BY updated_at DESC, id DESC LIMIT :limit) " +
+            "UNION " +
+            "(SELECT * FROM conversations WHERE shop_owner_id = :userId " +
+            "ORDER BY updated_at DESC, id DESC LIMIT :limit) " +
+            "ORDER BY updated_at DESC, id DESC LIMIT :limit", nativeQuery = true)
+    List<Conversation> findInboxFirst(@Param("userId") String userId, @Param("limit") int limit);
+
+    /**
+     * Trang tiếp theo của inbox, sau conversation (updatedAt, id) cuối cùng của trang trước
+     */
+    @Query(value = "(SELECT * FROM conversations WHERE client_id = :userId " +
+            "AND (updated_at < :updatedAt OR (updated_at = :updatedAt AND id < :id)) " +
+            "ORDER BY updated_at DESC, id DESC LIMIT :limit) " +
+            "UNION " +
+            "(SELECT * FROM conversations WHERE shop_owner_id = :userId " +
+            "AND (updated_at < :updatedAt OR (updated_at = :updatedAt AND id < :id)) " +
+            "ORDER BY updated_at DESC, id DESC LIMIT :limit) " +
+            "ORDER BY updated_at DESC, id DESC LIMIT :limit", nativeQuery = true)
+    List<Conversation> findInboxAfter(@Param("userId") String userId,
+                                      @Param("updatedAt") LocalDateTime updatedAt,
+                                      @Param("id") String id,
+                                      @Param("limit") int limit);
+
     /**
      * Lấy conversations giữa client và shop (TẤT CẢ, không phân biệt product)
      * VD: Xem tất cả conversations của Client A với Shop B
@@ -49,6 +80,43 @@ public interface ConversationRepository extends JpaRepository<Conversation, Stri
     @Query("SELECT c FROM Conversation c WHERE (c.clientId = ?1 AND c.shopOwnerId = ?2) OR (c.clientId = ?2 AND c.shopOwnerId = ?1) ORDER BY c.updatedAt DESC")
     List<Conversation> findBetweenClientAndShop(String userId1, String userId2);
 
+    /**
+     * Ghi nhận message mới và tăng unread count của client trong MỘT câu UPDATE (atomic, không read-modify-write)
+     */
+    @Modifying
+    @Query("UPDATE Conversation c SET c.lastMessageContent = :content, c.lastMessageSenderId = :senderId, " +
+            "c.lastMessageAt = :sentAt, c.updatedAt = :sentAt, " +
+            "c.clientUnreadCount = COALESCE(c.clientUnreadCount, 0) + 1 WHERE c.id = :id")
+    int recordMessageForClient(@Param("id") String id, @Param("content") String content,
+                               @Param("senderId") String senderId, @Param("sentAt") LocalDateTime sentAt);
+
+    /**
+     * Ghi nhận message mới và tăng unread count của shop owner
+     */
+    @Modifying
+    @Query("UPDATE Conversation c SET c.lastMessageContent = :content, c.lastMessageSenderId = :senderId, " +
+            "c.lastMessageAt = :sentAt, c.updatedAt = :sentAt, " +
+            "c.shopOwnerUnreadCount = COALESCE(c.shopOwnerUnreadCount, 0) + 1 WHERE c.id = :id")
+    int recordMessageForShopOwner(@Param("id") String id, @Param("content") String content,
+                                  @Param("senderId") String senderId, @Param("sentAt") LocalDateTime sentAt);
+
+    /**
+     * Client đọc conversation: reset unread count, dời read marker tới message cuối cùng.
+     * Cùng một câu UPDATE nên counter và marker luôn khớp nhau, kể cả khi có message mới đến đồng thời.
+     */
+    @Modifying
+    @Query("UPDATE Conversation c SET c.clientUnreadCount = 0, c.clientLastReadAt = c.lastMessageAt " +
+            "WHERE c.id = :id AND c.clientId = :userId")
+    int markReadByClient(@Param("id") String id, @Param("userId") String userId);
+
+    /**
+     * Shop owner đọc conversation
+     */
+    @Modifying
+    @Query("UPDATE Conversation c SET c.shopOwnerUnreadCount = 0, c.shopOwnerLastReadAt = c.lastMessageAt " +
+            "WHERE c.id = :id AND c.shopOwnerId = :userId")
+    int markReadByShopOwner(@Param("id") String id, @Param("userId") String userId);
+
     /**
      * Đếm tổng số conversations chưa đọc
      */
@@ -25,6 +25,9 @@ public interface LiveChatRepository extends JpaRepository<LiveChat, String> {
     
     // Find chats after a certain time (for polling fallback)
     List<LiveChat> findByLiveRoomIdAndCreatedAtAfterOrderByCreatedAtAsc(String liveRoomId, LocalDateTime after);
+
+    // Replay sau reconnect của room đã archive: giới hạn số dòng trong query
+    List<LiveChat> findTop200ByLiveRoomIdAndCreatedAtAfterOrderByCreatedAtAsc(String liveRoomId, LocalDateTime after);
     
     // Count chats in room
     long countByLiveRoomId(String liveRoomId);
@@ -0,0 +1,93 @@
+package com.example.notificationservice.service;
+
+import com.example.notificationservice.client.UserServiceClient;
+import com.example.notificationservice.dto.UserDto;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Cache thông tin hiển thị (username, avatar) của người tham gia chat.
+ *
+ * Inbox và lịch sử tin nhắn chỉ cần tên/ảnh của vài user; user chưa có trong cache (hoặc đã hết hạn)
+ * được nạp bằng MỘT lần gọi batch sang user-service, thay vì một Feign call cho mỗi dòng.
+ */
+@Component
+@Slf4j
+public class ChatProfileCache {
+
+    private final UserServiceClient userServiceClient;
+
+    @Value("${chat.profile-cache.ttl-seconds:300}")
+    private long ttlSeconds;
+
+    @Value("${chat.profile-cache.max-entries:10000}")
+    private int maxEntries;
+
+    private final ConcurrentHashMap<String, Entry> entries = new ConcurrentHashMap<>();
+
+    private record Entry(UserDto user, long expiresAt) {
+    }
+
+    public ChatProfileCache(UserServiceClient userServiceClient) {
+        this.userServiceClient = userServiceClient;
+    }
+
+    /**
+     * @return userId -> UserDto; user không tìm thấy (hoặc user-service lỗi) không có trong map
+     */
+    public Map<String, UserDto> getUsers(Collection<String> userIds) {
+        long now = System.currentTimeMillis();
+        Map<String, UserDto> result = new HashMap<>();
+        List<String> missing = new ArrayList<>();
+
+        for (String userId : new LinkedHashSet<>(userIds)) {
+            if (userId == null) {
+                continue;
+            }
+            Entry cached = entries.get(userId);
+            if (cached != null && cached.expiresAt() > now) {
+                result.put(userId, cached.user());
+            } else {
+                missing.add(userId);
+            }
+        }
+
+        if (!missing.isEmpty()) {
+            try {
+                var response = userServiceClient.getUsersByIds(missing);
+                if (response.getBody() != null) {
+                    for (UserDto user : response.getBody()) {
+                        result.put(user.getId(), user);
+                        put(user, now);
+                    }
+                }
+            } catch (Exception e) {
+                log.error("Error fetching {} chat profiles: {}", missing.size(), e.getMessage());
+            }
+        }
+        return result;
+    }
+
+    public UserDto getUser(String userId) {
+        return userId != null ? getUsers(List.of(userId)).get(userId) : null;
+    }
+
+    private void put(UserDto user, long now) {
+        if (entries.size() >= maxEntries) {
+            entries.values().removeIf(entry -> entry.expiresAt() <= now);
+            if (entries.size() >= maxEntries) {
+                entries.clear();
+            }
+        }
+        entries.put(user.getId(), new Entry(user, now + ttlSeconds * 1000));
+    }
+}
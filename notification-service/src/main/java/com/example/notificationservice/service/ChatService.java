@@ -1,13 +1,13 @@
 package com.example.notificationservice.service;
 
 import com.example.notificationservice.client.StockServiceClient;
-import com.example.notificationservice.client.UserServiceClient;
 import com.example.notificationservice.dto.*;
 import com.example.notificationservice.enums.ConversationStatus;
 import com.example.notificationservice.model.Conversation;
 import com.example.notificationservice.model.Message;
 import com.example.notificationservice.repository.ConversationRepository;
 import com.example.notificationservice.repository.MessageRepository;
+import com.example.notificationservice.request.BatchGetProductsRequest;
 import com.example.notificationservice.request.SendMessageRequest;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
@@ -17,8 +17,11 @@ import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
 import java.time.LocalDateTime;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
 import java.util.stream.Collectors;
 
 @Slf4j
@@ -28,9 +31,9 @@ public class ChatService {
     
     private final ConversationRepository conversationRepo;
     private final MessageRepository messageRepo;
-    private final UserServiceClient userServiceClient;
     private final StockServiceClient stockServiceClient;
     private final WebSocketChatService webSocketChatService;
+    private final ChatProfileCache chatProfileCache;
     
     /**
      * Lấy hoặc tạo conversation
@@ -53,7 +56,9 @@ public class ChatService {
             conversation = existing.get();
             // Cập nhật productId hiện tại nếu có (để hiển thị sản phẩm đang hỏi)
             if (productId != null && !productId.trim().isEmpty()) {
-                conversation.setProductId(productId);
+                if (!productId.equals(conversation.getProductId()) || conversation.getProductName() == null) {
+                    applyProductSnapshot(conversation, productId);
+                }
                 conversation = conversationRepo.save(conversation);
             }
         } else {
@@ -63,33 +68,40 @@ public class ChatService {
             conversation.setShopOwnerId(shopOwnerId);
             conversation.setProductId(productId);
             conversation.setStatus(ConversationStatus.ACTIVE);
+            if (productId != null && !productId.trim().isEmpty()) {
+                applyProductSnapshot(conversation, productId);
+            }
             
             // Auto-generate title
-            try {
-                var userResponse = userServiceClient.getUserById(shopOwnerId);
-                if (userResponse.getBody() != null) {
-                    conversation.setTitle("Chat with " + userResponse.getBody().getUsername());
-                }
-            } catch (Exception e) {
-                conversation.setTitle("New Conversation");
-            }
+            UserDto shopOwner = chatProfileCache.getUser(shopOwnerId);
+            conversation.setTitle(shopOwner != null ? "Chat with " + shopOwner.getUsername() : "New Conversation");
             
             conversation = conversationRepo.save(conversation);
         }
         
-        return mapToDto(conversation, clientId);
+        return mapConversations(List.of(conversation), clientId).get(0);
     }
     
     /**
      * Lấy danh sách conversations
-     * Enrich với thông tin product
+     * Product lấy từ snapshot trên conversation, opponent lấy theo batch qua ChatProfileCache
      */
     public List<ConversationDto> getConversations(String userId) {
-        List<Conversation> conversations = conversationRepo.findByUserId(userId);
-        
-        return conversations.stream()
-            .map(conv -> mapToDto(conv, userId))
-            .collect(Collectors.toList());
+        return mapConversations(conversationRepo.findByUserId(userId), userId);
+    }
+    
+    /**
+     * Lấy một trang inbox (keyset pagination)
+     * 
+     * @param beforeUpdatedAt updatedAt của conversation cuối trang trước (null = trang đầu)
+     * @param beforeId id của conversation cuối trang trước
+     */
+    public List<ConversationDto> getConversations(String userId, int limit,
+                                                  LocalDateTime beforeUpdatedAt, String beforeId) {
+        List<Conversation> conversations = (beforeUpdatedAt == null || beforeId == null)
+            ? conversationRepo.findInboxFirst(userId, limit)
+            : conversationRepo.findInboxAfter(userId, beforeUpdatedAt, beforeId, limit);
+        return mapConversations(conversations, userId);
     }
     
     /**
@@ -97,11 +109,17 @@ public class ChatService {
      */
     public List<MessageDto> getMessages(String conversationId, int page, int size) {
         Pageable pageable = PageRequest.of(page, size);
-        List<Message> messages = messageRepo.findLatestMessages(conversationId, pageable);
-        
-        return messages.stream()
-            .map(this::mapToDto)
-            .collect(Collectors.toList());
+        return mapMessages(conversationId, messageRepo.findLatestMessages(conversationId, pageable));
+    }
+    
+    /**
+     * Lấy messages cũ hơn message (beforeCreatedAt, beforeId) - keyset pagination khi cuộn lên
+     */
+    public List<MessageDto> getMessagesBefore(String conversationId, int size,
+                                              LocalDateTime beforeCreatedAt, String beforeId) {
+        Pageable pageable = PageRequest.of(0, size);
+        return mapMessages(conversationId,
+            messageRepo.findMessagesBefore(conversationId, beforeCreatedAt, beforeId, pageable));
     }
     
     /**
@@ -134,30 +152,18 @@ public class ChatService {
         
         message = messageRepo.save(message);
         
-        // Cập nhật conversation
-        conversation.setLastMessageContent(request.getContent());
-        conversation.setLastMessageSenderId(senderId);
-        conversation.setLastMessageAt(LocalDateTime.now());
-        
-        // Tăng unread count cho người nhận
-        String receiverId = conversation.getClientId().equals(senderId)
-            ? conversation.getShopOwnerId()
-            : conversation.getClientId();
-        
-        if (conversation.getClientId().equals(receiverId)) {
-            conversation.setClientUnreadCount(
-                (conversation.getClientUnreadCount() != null ? conversation.getClientUnreadCount() : 0) + 1
-            );
+        // Cập nhật last message + tăng unread count cho người nhận bằng một UPDATE atomic
+        // (không save entity: các message đồng thời không làm mất increment của nhau)
+        if (senderType == Message.SenderType.SHOP_OWNER) {
+            conversationRepo.recordMessageForClient(
+                conversation.getId(), request.getContent(), senderId, message.getCreatedAt());
         } else {
-            conversation.setShopOwnerUnreadCount(
-                (conversation.getShopOwnerUnreadCount() != null ? conversation.getShopOwnerUnreadCount() : 0) + 1
-            );
+            conversationRepo.recordMessageForShopOwner(
+                conversation.getId(), request.getContent(), senderId, message.getCreatedAt());
         }
         
-        conversationRepo.save(conversation);
-        
         // Push qua WebSocket
-        MessageDto messageDto = mapToDto(message);
+        MessageDto messageDto = mapToDto(message, chatProfileCache.getUser(senderId), null);
         webSocketChatService.sendMessageToConversation(request.getConversationId(), messageDto);
         
         // ✅ FIX: Notify both client and shop owner about conversation update
@@ -170,30 +176,85 @@ public class ChatService {
     
     /**
      * Đánh dấu messages là đã đọc
+     * Chỉ reset unread count và dời read marker của user trên conversation (một dòng),
+     * không cập nhật từng message nên chi phí không phụ thuộc số message chưa đọc
      */
     @Transactional
     public void markMessagesAsRead(String conversationId, String userId) {
-        messageRepo.markMessagesAsRead(conversationId, userId);
-        
-        // Cập nhật unread count trong conversation
-        Conversation conversation = conversationRepo.findById(conversationId)
-            .orElseThrow(() -> new RuntimeException("Conversation not found"));
-        
-        if (conversation.getClientId().equals(userId)) {
-            conversation.setClientUnreadCount(0);
-        } else {
-            conversation.setShopOwnerUnreadCount(0);
+        int updated = conversationRepo.markReadByClient(conversationId, userId)
+            + conversationRepo.markReadByShopOwner(conversationId, userId);
+        if (updated == 0) {
+            throw new RuntimeException("Conversation not found");
         }
         
-        conversationRepo.save(conversation);
-        
         // ✅ FIX: Notify user about conversation update (unread count changed)
         // This triggers sidebar badge to update
         webSocketChatService.notifyNewConversation(userId, conversationId);
     }
     
     // Helper methods
-    private ConversationDto mapToDto(Conversation conv, String currentUserId) {
+    
+    /**
+     * Ghi snapshot tên/ảnh/giá sản phẩm lên conversation (chỉ gọi stock-service khi productId thay đổi)
+     */
+    private void applyProductSnapshot(Conversation conversation, String productId) {
+        conversation.setProductId(productId);
+        try {
+            var productResponse = stockServiceClient.getProductById(productId);
+            ProductDto product = productResponse.getBody();
+            if (product != null) {
+                conversation.setProductName(product.getName());
+                conversation.setProductImageId(product.getImageId());
+                conversation.setProductPrice(product.getPrice());
+            }
+        } catch (Exception e) {
+            log.error("Error fetching product: {}", e.getMessage());
+        }
+    }
+    
+    private List<ConversationDto> mapConversations(List<Conversation> conversations, String currentUserId) {
+        if (conversations.isEmpty()) {
+            return List.of();
+        }
+        
+        // Một lần lookup cho tất cả opponent
+        Set<String> opponentIds = conversations.stream()
+            .map(conv -> opponentId(conv, currentUserId))
+            .collect(Collectors.toSet());
+        Map<String, UserDto> opponents = chatProfileCache.getUsers(opponentIds);
+        
+        // Conversation cũ chưa có snapshot sản phẩm: lấy chung một batch
+        List<String> legacyProductIds = conversations.stream()
+            .filter(conv -> conv.getProductId() != null && conv.getProductName() == null)
+            .map(Conversation::getProductId)
+            .distinct()
+            .toList();
+        Map<String, ProductDto> legacyProducts = Map.of();
+        if (!legacyProductIds.isEmpty()) {
+            try {
+                var response = stockServiceClient.batchGetProducts(
+                    BatchGetProductsRequest.builder().productIds(legacyProductIds).build());
+                if (response.getBody() != null) {
+                    legacyProducts = response.getBody();
+                }
+            } catch (Exception e) {
+                log.error("Error fetching products: {}", e.getMessage());
+            }
+        }
+        
+        List<ConversationDto> result = new ArrayList<>(conversations.size());
+        for (Conversation conv : conversations) {
+            result.add(mapToDto(conv, currentUserId, opponents, legacyProducts));
+        }
+        return result;
+    }
+    
+    private String opponentId(Conversation conv, String currentUserId) {
+        return conv.getClientId().equals(currentUserId) ? conv.getShopOwnerId() : conv.getClientId();
+    }
+    
+    private ConversationDto mapToDto(Conversation conv, String currentUserId,
+                                     Map<String, UserDto> opponents, Map<String, ProductDto> legacyProducts) {
         ConversationDto dto = ConversationDto.builder()
             .id(conv.getId())
             .clientId(conv.getClientId())
@@ -206,6 +267,7 @@ public class ChatService {
             .clientUnreadCount(conv.getClientUnreadCount())
             .shopOwnerUnreadCount(conv.getShopOwnerUnreadCount())
             .status(conv.getStatus().name())
+            .updatedAt(conv.getUpdatedAt())
             .build();
         
         // Tính unread count cho current user
@@ -214,70 +276,79 @@ public class ChatService {
             : (conv.getShopOwnerUnreadCount() != null ? conv.getShopOwnerUnreadCount() : 0);
         dto.setUnreadCount(unreadCount);
         
-        // Lấy thông tin opponent
-        try {
-            String opponentId = conv.getClientId().equals(currentUserId)
-                ? conv.getShopOwnerId()
-                : conv.getClientId();
-            var opponentResponse = userServiceClient.getUserById(opponentId);
-            if (opponentResponse.getBody() != null) {
-                dto.setOpponent(opponentResponse.getBody());
-            }
-        } catch (Exception e) {
-            log.error("Error fetching opponent: {}", e.getMessage());
+        // Thông tin opponent
+        String opponentId = opponentId(conv, currentUserId);
+        UserDto opponent = opponents.get(opponentId);
+        if (opponent == null) {
             // Set default opponent để frontend không hiển thị "Unknown"
-            UserDto defaultOpponent = UserDto.builder()
-                .id(conv.getClientId().equals(currentUserId) ? conv.getShopOwnerId() : conv.getClientId())
+            opponent = UserDto.builder()
+                .id(opponentId)
                 .username(conv.getClientId().equals(currentUserId) ? "Shop Owner" : "Client")
                 .build();
-            dto.setOpponent(defaultOpponent);
         }
+        dto.setOpponent(opponent);
         
-        // Lấy thông tin product nếu có
+        // Thông tin product nếu có
         if (conv.getProductId() != null) {
-            try {
-                var productResponse = stockServiceClient.getProductById(conv.getProductId());
-                if (productResponse.getBody() != null) {
-                    dto.setProduct(productResponse.getBody());
-                }
-            } catch (Exception e) {
-                log.error("Error fetching product: {}", e.getMessage());
+            if (conv.getProductName() != null) {
+                dto.setProduct(ProductDto.builder()
+                    .id(conv.getProductId())
+                    .name(conv.getProductName())
+                    .imageId(conv.getProductImageId())
+                    .price(conv.getProductPrice())
+                    .build());
+            } else {
+                dto.setProduct(legacyProducts.get(conv.getProductId()));
             }
         }
         
         return dto;
     }
     
-    private MessageDto mapToDto(Message message) {
-        MessageDto dto = MessageDto.builder()
+    private List<MessageDto> mapMessages(String conversationId, List<Message> messages) {
+        if (messages.isEmpty()) {
+            return List.of();
+        }
+        Map<String, UserDto> senders = chatProfileCache.getUsers(
+            messages.stream().map(Message::getSenderId).collect(Collectors.toSet()));
+        Conversation conversation = conversationRepo.findById(conversationId).orElse(null);
+        
+        List<MessageDto> result = new ArrayList<>(messages.size());
+        for (Message message : messages) {
+            result.add(mapToDto(message, senders.get(message.getSenderId()), conversation));
+        }
+        return result;
+    }
+    
+    /**
+     * @param conversation dùng để suy ra trạng thái đã đọc từ read marker của người nhận (null = chỉ dùng cờ trên message)
+     */
+    private MessageDto mapToDto(Message message, UserDto sender, Conversation conversation) {
+        // Message do client gửi được shop owner đọc và ngược lại
+        LocalDateTime readMarker = null;
+        if (conversation != null) {
+            readMarker = message.getSenderType() == Message.SenderType.CLIENT
+                ? conversation.getShopOwnerLastReadAt()
+                : conversation.getClientLastReadAt();
+        }
+        boolean readByMarker = readMarker != null && message.getCreatedAt() != null
+            && !message.getCreatedAt().isAfter(readMarker);
+        boolean isRead = Boolean.TRUE.equals(message.getIsRead()) || readByMarker;
+        
+        return MessageDto.builder()
             .id(message.getId())
             .conversationId(message.getConversationId())
             .senderId(message.getSenderId())
+            .senderName(sender != null ? sender.getUsername() : "User")
             .senderType(message.getSenderType())
             .messageType(message.getMessageType())
             .content(message.getContent())
             .imageId(message.getImageId())
             .productId(message.getProductId())
-            .isRead(message.getIsRead())
-            .readAt(message.getReadAt())
-            .deliveryStatus(message.getDeliveryStatus())
+            .isRead(isRead)
+            .readAt(message.getReadAt() != null ? message.getReadAt() : (readByMarker ? readMarker : null))
+            .deliveryStatus(readByMarker ? Message.DeliveryStatus.READ : message.getDeliveryStatus())
             .createdAt(message.getCreatedAt())
             .build();
-        
-        // Lấy sender name
-        try {
-            var senderResponse = userServiceClient.getUserById(message.getSenderId());
-            if (senderResponse.getBody() != null) {
-                dto.setSenderName(senderResponse.getBody().getUsername());
-            } else {
-                dto.setSenderName("User");
-            }
-        } catch (Exception e) {
-            log.error("Error fetching sender: {}", e.getMessage());
-            dto.setSenderName("User");
-        }
-        
-        return dto;
     }
 }
-
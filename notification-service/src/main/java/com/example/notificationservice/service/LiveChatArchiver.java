@@ -0,0 +1,145 @@
+package com.example.notificationservice.service;
+
+import com.example.notificationservice.dto.LiveChatDto;
+import com.example.notificationservice.enums.LiveChatType;
+import com.example.notificationservice.model.LiveChat;
+import com.example.notificationservice.repository.LiveChatRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.List;
+
+/**
+ * Archive chat live room từ Redis stream xuống MySQL.
+ *
+ * Chạy nền theo {@code live.chat.archive-interval-ms}:
+ * 1. Room đang live ("live:chat:active"): ghi các entry sau offset đã archive theo batch
+ *    {@code live.chat.archive-batch-size}, lưu offset mới rồi cắt entry đã ghi nằm ngoài cửa sổ replay.
+ *    Room live quá TTL stream vẫn không mất tin vì mọi tin đã được ghi dần.
+ * 2. Room đã kết thúc (SPOP hàng đợi pending): ghi phần còn lại rồi xóa key stream.
+ * Mỗi room chỉ một instance xử lý tại một thời điểm (lock Redis có token, được gia hạn trong lúc ghi). Lỗi giữa chừng thì lần sau
+ * ghi tiếp từ offset đã lưu (batch đang ghi dở có thể bị ghi lại).
+ */
+@Component
+@Slf4j
+public class LiveChatArchiver {
+
+    private static final String ARCHIVE_LOCK_PREFIX = "live:chat:archive:lock:";
+    private static final Duration ARCHIVE_LOCK_LEASE = Duration.ofSeconds(30);
+
+    private final LiveChatRedisService liveChatRedisService;
+    private final LiveChatRepository liveChatRepository;
+    private final RedisLockService redisLockService;
+
+    @Value("${live.chat.archive-batch-size:500}")
+    private int batchSize;
+
+    public LiveChatArchiver(LiveChatRedisService liveChatRedisService, LiveChatRepository liveChatRepository,
+            RedisLockService redisLockService) {
+        this.liveChatRedisService = liveChatRedisService;
+        this.liveChatRepository = liveChatRepository;
+        this.redisLockService = redisLockService;
+    }
+
+    @Scheduled(fixedDelayString = "${live.chat.archive-interval-ms:5000}")
+    public void archivePending() {
+        try {
+            archiveEndedRooms();
+            archiveActiveRooms();
+        } catch (Exception e) {
+            log.warn("Failed to read live chat archive queues: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Ghi thẳng một tin xuống MySQL khi không append được vào Redis stream
+     */
+    public void saveDirectly(LiveChatDto chat) {
+        liveChatRepository.save(toEntity(chat));
+    }
+
+    private void archiveEndedRooms() {
+        String roomId = liveChatRedisService.popArchivePending();
+        while (roomId != null) {
+            String endedRoomId = roomId;
+            boolean locked;
+            try {
+                locked = redisLockService.runIfLocked(ARCHIVE_LOCK_PREFIX + roomId, ARCHIVE_LOCK_LEASE, () -> {
+                    int archived = archiveNewChats(endedRoomId);
+                    liveChatRedisService.clearRoomChats(endedRoomId);
+                    log.info("Archived {} live chats for ended room {}", archived, endedRoomId);
+                });
+            } catch (Exception e) {
+                log.error("Failed to archive live chats for room {}: {}", roomId, e.getMessage());
+                liveChatRedisService.scheduleArchive(roomId);
+                return;
+            }
+            if (!locked) {
+                // Instance khác đang ghi room này: để lần sau
+                liveChatRedisService.scheduleArchive(roomId);
+                return;
+            }
+            roomId = liveChatRedisService.popArchivePending();
+        }
+    }
+
+    private void archiveActiveRooms() {
+        for (String roomId : liveChatRedisService.getActiveRooms()) {
+            try {
+                redisLockService.runIfLocked(ARCHIVE_LOCK_PREFIX + roomId, ARCHIVE_LOCK_LEASE,
+                        () -> archiveActiveRoom(roomId));
+            } catch (Exception e) {
+                log.error("Failed to archive live chats for room {}: {}", roomId, e.getMessage());
+            }
+        }
+    }
+
+    private void archiveActiveRoom(String roomId) {
+        if (!liveChatRedisService.hasChatStream(roomId)) {
+            // Stream đã hết hạn (mọi tin đã được ghi ở các lần trước)
+            liveChatRedisService.clearRoomChats(roomId);
+            return;
+        }
+        int archived = archiveNewChats(roomId);
+        String archivedOffset = liveChatRedisService.getArchivedOffset(roomId);
+        long trimmed = archivedOffset != null ? liveChatRedisService.trimArchived(roomId, archivedOffset) : 0;
+        if (archived > 0) {
+            log.debug("Archived {} live chats for room {} (trimmed {})", archived, roomId, trimmed);
+        }
+    }
+
+    /**
+     * Ghi các entry sau offset đã archive, cập nhật offset sau mỗi batch
+     */
+    private int archiveNewChats(String roomId) {
+        int archived = 0;
+        String offset = liveChatRedisService.getArchivedOffset(roomId);
+        List<LiveChatDto> batch = liveChatRedisService.readChatsAfter(roomId, offset, batchSize);
+        while (!batch.isEmpty()) {
+            liveChatRepository.saveAll(batch.stream().map(this::toEntity).toList());
+            offset = batch.get(batch.size() - 1).getOffset();
+            liveChatRedisService.setArchivedOffset(roomId, offset);
+            archived += batch.size();
+            batch = liveChatRedisService.readChatsAfter(roomId, offset, batchSize);
+        }
+        return archived;
+    }
+
+    private LiveChat toEntity(LiveChatDto chat) {
+        return LiveChat.builder()
+                .liveRoomId(chat.getLiveRoomId())
+                .userId(chat.getUserId() != null ? chat.getUserId() : "anonymous")
+                .username(chat.getUsername())
+                .avatarUrl(chat.getAvatarUrl())
+                .message(chat.getMessage() != null ? chat.getMessage() : "")
+                .type(chat.getType() != null ? chat.getType() : LiveChatType.CHAT)
+                .isPinned(Boolean.TRUE.equals(chat.getIsPinned()))
+                .productId(chat.getProductId())
+                .productName(chat.getProductName())
+                .createdAt(chat.getCreatedAt())
+                .build();
+    }
+}
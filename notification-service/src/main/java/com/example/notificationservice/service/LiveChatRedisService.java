@@ -1,113 +1,220 @@
 package com.example.notificationservice.service;
 
 import com.example.notificationservice.dto.LiveChatDto;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.annotation.PostConstruct;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.data.domain.Range;
+import org.springframework.data.redis.connection.Limit;
+import org.springframework.data.redis.connection.stream.MapRecord;
 import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.scripting.support.ResourceScriptSource;
 import org.springframework.stereotype.Service;
 
 import java.time.Duration;
-import java.time.LocalDateTime;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
-import java.util.concurrent.TimeUnit;
+import java.util.Set;
 
 /**
  * Service để lưu trữ Live Chat trong Redis
  * Flow:
- * 1. Shop owner/viewer gửi chat qua WebSocket -> LiveWebSocketController
- * 2. LiveWebSocketController gọi LiveChatRedisService.saveChat()
- * 3. Chat được lưu vào Redis List với key: "live:chat:{roomId}"
- * 4. Chỉ lưu 100 tin nhắn gần nhất (FIFO)
- * 5. TTL = 24h (tự động xóa sau khi live kết thúc)
+ * 1. Shop owner/viewer gửi chat qua WebSocket/REST -> LiveWebSocketController / LiveService
+ * 2. Chat được append vào Redis Stream "live:chat:stream:{roomId}" bằng MỘT lệnh (Lua: XADD + EXPIRE),
+ *    room được ghi vào set "live:chat:active"
+ * 3. Entry id ("offset") tăng dần theo thời gian nên client reconnect có thể đọc lại các tin sau offset cuối cùng
+ * 4. Trong lúc live, LiveChatArchiver ghi dần stream xuống MySQL (offset đã ghi lưu ở "live:chat:archived:{roomId}")
+ *    và chỉ cắt entry đã ghi cũ hơn {@code live.chat.replay-window-minutes}, nên không mất tin chưa archive
+ * 5. Lịch sử chat khi đang live chỉ đọc từ stream, không chạm MySQL
+ * 6. Khi live kết thúc, room được đưa vào hàng đợi "live:chat:archive:pending";
+ *    LiveChatArchiver ghi phần còn lại rồi xóa key
  */
 @Service
 @RequiredArgsConstructor
 @Slf4j
 public class LiveChatRedisService {
-    
+
     private final RedisTemplate<String, Object> redisTemplate;
-    
-    private static final String CHAT_KEY_PREFIX = "live:chat:";
+    private final StringRedisTemplate stringRedisTemplate;
+    private final ObjectMapper objectMapper;
+
+    private static final String CHAT_STREAM_KEY_PREFIX = "live:chat:stream:";
+    private static final String ARCHIVE_PENDING_KEY = "live:chat:archive:pending";
+    private static final String ACTIVE_ROOMS_KEY = "live:chat:active";
+    private static final String ARCHIVED_OFFSET_PREFIX = "live:chat:archived:";
+    private static final String CHAT_FIELD = "chat";
     private static final String VIEWER_KEY_PREFIX = "live:viewers:";
-    private static final int MAX_CHAT_MESSAGES = 100;
     private static final long CHAT_TTL_HOURS = 24;
-    
+
+    @Value("${live.chat.replay-window-minutes:10}")
+    private long replayWindowMinutes;
+
+    @Value("${live.chat.stream-ttl-hours:24}")
+    private long streamTtlHours;
+
+    private DefaultRedisScript<String> appendScript;
+    private DefaultRedisScript<Long> trimScript;
+
+    @PostConstruct
+    public void init() {
+        appendScript = new DefaultRedisScript<>();
+        appendScript.setScriptSource(new ResourceScriptSource(
+                new ClassPathResource("scripts/live_chat_append.lua")));
+        appendScript.setResultType(String.class);
+
+        trimScript = new DefaultRedisScript<>();
+        trimScript.setScriptSource(new ResourceScriptSource(
+                new ClassPathResource("scripts/live_chat_trim.lua")));
+        trimScript.setResultType(Long.class);
+    }
+
     /**
-     * Lưu tin nhắn chat vào Redis
+     * Append tin nhắn chat vào stream của phòng (1 round trip)
      * @param roomId ID của phòng live
-     * @param chat DTO chứa thông tin chat
+     * @param chat DTO chứa thông tin chat; offset được gán bằng entry id của stream
+     * @return offset (stream entry id), null nếu Redis lỗi
      */
-    public void saveChat(String roomId, LiveChatDto chat) {
-        String key = CHAT_KEY_PREFIX + roomId;
-        
+    public String appendChat(String roomId, LiveChatDto chat) {
         try {
-            // Thêm chat vào cuối list
-            redisTemplate.opsForList().rightPush(key, chat);
-            
-            // Giữ chỉ MAX_CHAT_MESSAGES tin nhắn gần nhất
-            Long size = redisTemplate.opsForList().size(key);
-            if (size != null && size > MAX_CHAT_MESSAGES) {
-                redisTemplate.opsForList().trim(key, size - MAX_CHAT_MESSAGES, -1);
-            }
-            
-            // Set TTL nếu chưa có
-            if (!redisTemplate.hasKey(key + ":ttl")) {
-                redisTemplate.expire(key, CHAT_TTL_HOURS, TimeUnit.HOURS);
-                redisTemplate.opsForValue().set(key + ":ttl", "1", Duration.ofHours(CHAT_TTL_HOURS));
-            }
-            
-            log.debug("Saved chat to Redis for room {}: {}", roomId, chat.getMessage());
+            String offset = stringRedisTemplate.execute(appendScript,
+                    List.of(CHAT_STREAM_KEY_PREFIX + roomId, ACTIVE_ROOMS_KEY),
+                    objectMapper.writeValueAsString(chat),
+                    String.valueOf(Duration.ofHours(streamTtlHours).toSeconds()),
+                    roomId);
+            chat.setOffset(offset);
+            log.debug("Appended chat to stream for room {} at {}", roomId, offset);
+            return offset;
         } catch (Exception e) {
-            log.error("Error saving chat to Redis: {}", e.getMessage());
+            log.error("Error appending chat to Redis stream: {}", e.getMessage());
+            return null;
         }
     }
-    
+
     /**
      * Lấy danh sách tin nhắn chat gần nhất
      * @param roomId ID của phòng live
      * @param limit Số lượng tin nhắn tối đa
-     * @return Danh sách tin nhắn
+     * @return Danh sách tin nhắn, mới nhất trước
      */
     public List<LiveChatDto> getRecentChats(String roomId, int limit) {
-        String key = CHAT_KEY_PREFIX + roomId;
-        
         try {
-            Long size = redisTemplate.opsForList().size(key);
-            if (size == null || size == 0) {
-                return new ArrayList<>();
-            }
-            
-            long start = Math.max(0, size - limit);
-            List<Object> objects = redisTemplate.opsForList().range(key, start, -1);
-            
-            if (objects == null) {
-                return new ArrayList<>();
-            }
-            
-            List<LiveChatDto> chats = new ArrayList<>();
-            for (Object obj : objects) {
-                if (obj instanceof LiveChatDto) {
-                    chats.add((LiveChatDto) obj);
-                }
-            }
-            return chats;
+            List<MapRecord<String, Object, Object>> records = stringRedisTemplate.opsForStream()
+                    .reverseRange(CHAT_STREAM_KEY_PREFIX + roomId, Range.unbounded(), Limit.limit().count(limit));
+            return toChats(records);
         } catch (Exception e) {
             log.error("Error getting chats from Redis: {}", e.getMessage());
             return new ArrayList<>();
         }
     }
-    
+
+    /**
+     * Lấy các tin nhắn sau một offset (replay khi client reconnect)
+     * @param offset offset cuối cùng client đã nhận (không bao gồm)
+     * @return Danh sách tin nhắn, cũ nhất trước
+     */
+    public List<LiveChatDto> getChatsAfter(String roomId, String offset, int limit) {
+        try {
+            return readChatsAfter(roomId, offset, limit);
+        } catch (Exception e) {
+            log.error("Error replaying chats from Redis: {}", e.getMessage());
+            return new ArrayList<>();
+        }
+    }
+
+    /**
+     * Đọc các entry sau offset (không bao gồm), từ đầu stream nếu offset null; lỗi Redis ném ra ngoài
+     * (dùng khi archive)
+     */
+    public List<LiveChatDto> readChatsAfter(String roomId, String offset, int limit) {
+        if (offset == null) {
+            return toChats(stringRedisTemplate.opsForStream()
+                    .range(CHAT_STREAM_KEY_PREFIX + roomId, Range.unbounded(), Limit.limit().count(limit)));
+        }
+        // Range bao gồm offset nên đọc dư 1 entry rồi bỏ entry trùng
+        List<MapRecord<String, Object, Object>> records = stringRedisTemplate.opsForStream()
+                .range(CHAT_STREAM_KEY_PREFIX + roomId,
+                        Range.rightUnbounded(Range.Bound.inclusive(offset)),
+                        Limit.limit().count(limit + 1));
+        List<LiveChatDto> chats = toChats(records);
+        chats.removeIf(chat -> offset.equals(chat.getOffset()));
+        return chats.size() > limit ? chats.subList(0, limit) : chats;
+    }
+
     /**
-     * Xóa tất cả chat của phòng (khi live kết thúc)
+     * Phòng còn chat stream trong Redis (đang live hoặc chưa archive xong)
+     */
+    public boolean hasChatStream(String roomId) {
+        try {
+            return Boolean.TRUE.equals(stringRedisTemplate.hasKey(CHAT_STREAM_KEY_PREFIX + roomId));
+        } catch (Exception e) {
+            log.warn("Error checking chat stream for room {}: {}", roomId, e.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * Offset cuối cùng đã archive xuống MySQL, null nếu chưa archive gì
+     */
+    public String getArchivedOffset(String roomId) {
+        return stringRedisTemplate.opsForValue().get(ARCHIVED_OFFSET_PREFIX + roomId);
+    }
+
+    public void setArchivedOffset(String roomId, String offset) {
+        stringRedisTemplate.opsForValue().set(ARCHIVED_OFFSET_PREFIX + roomId, offset, Duration.ofHours(streamTtlHours));
+    }
+
+    /**
+     * Cắt các entry đã archive cũ hơn {@code live.chat.replay-window-minutes} (XTRIM MINID, không đọc stream)
+     * @return số entry đã cắt
+     */
+    public long trimArchived(String roomId, String archivedOffset) {
+        Long trimmed = stringRedisTemplate.execute(trimScript,
+                Collections.singletonList(CHAT_STREAM_KEY_PREFIX + roomId),
+                archivedOffset, String.valueOf(Duration.ofMinutes(replayWindowMinutes).toMillis()));
+        return trimmed != null ? trimmed : 0L;
+    }
+
+    /**
+     * Các room có stream cần archive dần (đang live)
+     */
+    public Set<String> getActiveRooms() {
+        Set<String> rooms = stringRedisTemplate.opsForSet().members(ACTIVE_ROOMS_KEY);
+        return rooms != null ? rooms : Set.of();
+    }
+
+    /**
+     * Đưa phòng vào hàng đợi archive (khi live kết thúc)
+     */
+    public void scheduleArchive(String roomId) {
+        try {
+            stringRedisTemplate.opsForSet().add(ARCHIVE_PENDING_KEY, roomId);
+        } catch (Exception e) {
+            log.error("Error scheduling chat archive for room {}: {}", roomId, e.getMessage());
+        }
+    }
+
+    /**
+     * Lấy (và xóa) một phòng đang chờ archive; SPOP nên mỗi phòng chỉ được một instance xử lý
+     */
+    public String popArchivePending() {
+        return stringRedisTemplate.opsForSet().pop(ARCHIVE_PENDING_KEY);
+    }
+
+    /**
+     * Xóa tất cả chat của phòng (sau khi đã archive) cùng offset archive, bỏ room khỏi set active
      */
     public void clearRoomChats(String roomId) {
-        String key = CHAT_KEY_PREFIX + roomId;
-        redisTemplate.delete(key);
-        redisTemplate.delete(key + ":ttl");
+        stringRedisTemplate.delete(List.of(CHAT_STREAM_KEY_PREFIX + roomId, ARCHIVED_OFFSET_PREFIX + roomId));
+        stringRedisTemplate.opsForSet().remove(ACTIVE_ROOMS_KEY, roomId);
         log.info("Cleared chats for room {}", roomId);
     }
-    
+
     /**
      * Lưu số lượng viewer
      */
@@ -115,7 +222,7 @@ public class LiveChatRedisService {
         String key = VIEWER_KEY_PREFIX + roomId;
         redisTemplate.opsForValue().set(key, count, Duration.ofHours(CHAT_TTL_HOURS));
     }
-    
+
     /**
      * Lấy số lượng viewer
      */
@@ -127,4 +234,25 @@ public class LiveChatRedisService {
         }
         return 0;
     }
+
+    private List<LiveChatDto> toChats(List<MapRecord<String, Object, Object>> records) {
+        List<LiveChatDto> chats = new ArrayList<>();
+        if (records == null) {
+            return chats;
+        }
+        for (MapRecord<String, Object, Object> record : records) {
+            Object json = record.getValue().get(CHAT_FIELD);
+            if (json == null) {
+                continue;
+            }
+            try {
+                LiveChatDto chat = objectMapper.readValue(json.toString(), LiveChatDto.class);
+                chat.setOffset(record.getId().getValue());
+                chats.add(chat);
+            } catch (Exception e) {
+                log.warn("Skipping unreadable chat entry {}: {}", record.getId(), e.getMessage());
+            }
+        }
+        return chats;
+    }
 }
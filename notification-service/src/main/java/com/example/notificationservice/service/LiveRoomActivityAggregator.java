@@ -0,0 +1,221 @@
+package com.example.notificationservice.service;
+
+import com.example.notificationservice.dto.LiveChatDto;
+import com.example.notificationservice.enums.LiveChatType;
+import com.example.notificationservice.enums.ReactionType;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.LocalDateTime;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Gộp hoạt động của live room (join/leave, reaction) theo tick.
+ *
+ * Thay vì broadcast + UPDATE DB cho MỖI sự kiện, các handler chỉ ghi nhận vào bộ đếm trong bộ nhớ;
+ * mỗi tick ({@code live.activity.tick-ms}) mỗi room có thay đổi nhận tối đa:
+ * - 1 frame /viewers (số người xem hiện tại)
+ * - 1 frame /reaction (số reaction theo loại trong tick)
+ * - 1 system message "có người mới tham gia"
+ * Viewer count chỉ được ghi DB khi thay đổi và cách lần ghi trước ít nhất {@code live.activity.persist-interval-ms}.
+ */
+@Component
+@Slf4j
+public class LiveRoomActivityAggregator {
+
+    private final LiveService liveService;
+    private final SimpMessagingTemplate messagingTemplate;
+
+    @Value("${live.activity.persist-interval-ms:3000}")
+    private long persistIntervalMs;
+
+    // Unique viewers per room (Set nên refresh không bị đếm trùng)
+    private final Map<String, Set<String>> roomViewerSets = new ConcurrentHashMap<>();
+
+    // Trạng thái chờ flush của từng room
+    private final Map<String, RoomActivity> pending = new ConcurrentHashMap<>();
+
+    // Viewer count đã ghi DB gần nhất và thời điểm ghi
+    private final Map<String, PersistedCount> persisted = new ConcurrentHashMap<>();
+
+    // Mỗi tick flush lấy RoomActivity ra khỏi pending rồi mới đọc, nên sự kiện đến giữa lúc flush sẽ vào tick sau
+    private static final class RoomActivity {
+        final AtomicBoolean viewersChanged = new AtomicBoolean();
+        final AtomicInteger newViewers = new AtomicInteger();
+        final Map<ReactionType, LongAdder> reactions = new ConcurrentHashMap<>();
+    }
+
+    private record PersistedCount(int count, long at) {
+    }
+
+    public LiveRoomActivityAggregator(LiveService liveService, SimpMessagingTemplate messagingTemplate) {
+        this.liveService = liveService;
+        this.messagingTemplate = messagingTemplate;
+    }
+
+    /**
+     * @return true nếu là viewer mới (chưa có trong room)
+     */
+    public boolean join(String roomId, String userId) {
+        // add trong compute để không xen giữa lúc flush dọn set rỗng của room
+        boolean[] added = new boolean[1];
+        roomViewerSets.compute(roomId, (k, viewers) -> {
+            Set<String> set = viewers != null ? viewers : new ConcurrentSkipListSet<>();
+            added[0] = set.add(userId);
+            return set;
+        });
+        boolean isNewViewer = added[0];
+        RoomActivity activity = activity(roomId);
+        activity.viewersChanged.set(true);
+        if (isNewViewer) {
+            activity.newViewers.incrementAndGet();
+        }
+        return isNewViewer;
+    }
+
+    public boolean leave(String roomId, String userId) {
+        Set<String> viewers = roomViewerSets.get(roomId);
+        if (viewers == null) {
+            return false;
+        }
+        boolean wasRemoved = viewers.remove(userId);
+        if (wasRemoved) {
+            activity(roomId).viewersChanged.set(true);
+        }
+        return wasRemoved;
+    }
+
+    public void react(String roomId, ReactionType type) {
+        if (type == null) {
+            return;
+        }
+        activity(roomId).reactions.computeIfAbsent(type, k -> new LongAdder()).increment();
+    }
+
+    public int getViewerCount(String roomId) {
+        Set<String> viewers = roomViewerSets.get(roomId);
+        return viewers != null ? viewers.size() : 0;
+    }
+
+    @Scheduled(fixedDelayString = "${live.activity.tick-ms:500}")
+    public void flush() {
+        long now = System.currentTimeMillis();
+        for (String roomId : pending.keySet()) {
+            // Tách snapshot ra khỏi map (atomic swap): sự kiện đến sau đó tạo RoomActivity mới cho tick sau,
+            // room không còn hoạt động thì không còn trạng thái nào trong map
+            RoomActivity snapshot = pending.remove(roomId);
+            if (snapshot == null) {
+                continue;
+            }
+            try {
+                flushRoom(roomId, snapshot, now);
+            } catch (Exception e) {
+                log.warn("Failed to flush live activity for room {}: {}", roomId, e.getMessage());
+            }
+        }
+        persistSettledCounts(now);
+    }
+
+    private void flushRoom(String roomId, RoomActivity activity, long now) {
+        if (activity.viewersChanged.get()) {
+            int count = getViewerCount(roomId);
+            messagingTemplate.convertAndSend("/topic/live/" + roomId + "/viewers",
+                    Map.of("count", count, "timestamp", LocalDateTime.now().toString()));
+            persistIfDue(roomId, count, now);
+            if (count == 0) {
+                roomViewerSets.computeIfPresent(roomId, (k, viewers) -> viewers.isEmpty() ? null : viewers);
+            }
+        }
+
+        int newViewers = activity.newViewers.get();
+        if (newViewers > 0) {
+            LiveChatDto systemMsg = LiveChatDto.builder()
+                    .liveRoomId(roomId)
+                    .type(LiveChatType.SYSTEM)
+                    .message(newViewers == 1 ? "A new person has just joined.!"
+                            : newViewers + " new people have just joined!")
+                    .createdAt(LocalDateTime.now())
+                    .id(UUID.randomUUID().toString())
+                    .build();
+            messagingTemplate.convertAndSend("/topic/live/" + roomId + "/chat", systemMsg);
+        }
+
+        broadcastReactions(roomId, activity.reactions);
+    }
+
+    /**
+     * Một frame cho tất cả reaction của room trong tick: "type" là loại nhiều nhất
+     * (client cũ chỉ đọc type vẫn hiển thị được), "counts" là số lượng theo từng loại
+     */
+    private void broadcastReactions(String roomId, Map<ReactionType, LongAdder> reactions) {
+        Map<ReactionType, Long> counts = new EnumMap<>(ReactionType.class);
+        ReactionType top = null;
+        long total = 0;
+        for (Map.Entry<ReactionType, LongAdder> entry : reactions.entrySet()) {
+            long count = entry.getValue().sum();
+            if (count == 0) {
+                continue;
+            }
+            counts.put(entry.getKey(), count);
+            total += count;
+            if (top == null || count > counts.get(top)) {
+                top = entry.getKey();
+            }
+        }
+
+        if (total == 0) {
+            return;
+        }
+
+        Map<String, Object> frame = new HashMap<>();
+        frame.put("roomId", roomId);
+        frame.put("type", top);
+        frame.put("counts", counts);
+        frame.put("total", total);
+        messagingTemplate.convertAndSend("/topic/live/" + roomId + "/reaction", frame);
+    }
+
+    /**
+     * Ghi DB cho các room đã ngừng thay đổi nhưng lần ghi cuối bị bỏ qua do chưa đủ interval
+     */
+    private void persistSettledCounts(long now) {
+        for (Map.Entry<String, PersistedCount> entry : persisted.entrySet()) {
+            String roomId = entry.getKey();
+            int current = getViewerCount(roomId);
+            if (entry.getValue().count() != current) {
+                persistIfDue(roomId, current, now);
+            } else if (current == 0) {
+                persisted.remove(roomId);
+            }
+        }
+    }
+
+    private void persistIfDue(String roomId, int count, long now) {
+        PersistedCount last = persisted.get(roomId);
+        if (last != null && (last.count() == count || now - last.at() < persistIntervalMs)) {
+            return;
+        }
+        try {
+            liveService.persistViewerCount(roomId, count);
+            persisted.put(roomId, new PersistedCount(count, now));
+        } catch (Exception e) {
+            log.warn("Failed to update viewer count in DB: {}", e.getMessage());
+        }
+    }
+
+    private RoomActivity activity(String roomId) {
+        return pending.computeIfAbsent(roomId, k -> new RoomActivity());
+    }
+}
@@ -22,8 +22,11 @@ import org.springframework.messaging.simp.SimpMessagingTemplate;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
+import java.time.Instant;
 import java.time.LocalDateTime;
+import java.time.ZoneId;
 import java.util.List;
+import java.util.UUID;
 import java.util.stream.Collectors;
 
 @Slf4j
@@ -37,6 +40,12 @@ public class LiveService {
     private final StockServiceClient stockServiceClient;
     private final UserServiceClient userServiceClient;
     private final SimpMessagingTemplate messagingTemplate;
+    private final LiveChatRedisService liveChatRedisService;
+    private final LiveChatArchiver liveChatArchiver;
+
+    private static final int RECENT_CHAT_LIMIT = 50;
+    // Khớp với findTop200ByLiveRoomIdAndCreatedAtAfterOrderByCreatedAtAsc cho room đã archive
+    private static final int REPLAY_CHAT_LIMIT = 200;
 
     private static final String HLS_BASE_URL = "/hls/";
 
@@ -132,6 +141,7 @@ public class LiveService {
         room = liveRoomRepository.save(room);
 
         log.info("Live room {} ended by shop {}", roomId, shopOwnerId);
+        liveChatRedisService.scheduleArchive(roomId);
 
         // Broadcast status change
         broadcastRoomStatus(room);
@@ -165,6 +175,7 @@ public class LiveService {
         liveRoomRepository.save(room);
 
         log.info("Stream ended via OBS for room {}", room.getId());
+        liveChatRedisService.scheduleArchive(room.getId());
         broadcastRoomStatus(room);
     }
 
@@ -330,7 +341,6 @@ public class LiveService {
 
     // ==================== CHAT MANAGEMENT ====================
 
-    @Transactional
     public LiveChatDto sendChat(String roomId, String userId, String username, String avatarUrl,
             LiveChatRequest request) {
         LiveRoom room = liveRoomRepository.findById(roomId)
@@ -340,18 +350,20 @@ public class LiveService {
             throw new RuntimeException("Live room is not active");
         }
 
-        LiveChat chat = LiveChat.builder()
+        LiveChatDto chatDto = LiveChatDto.builder()
+                .id(UUID.randomUUID().toString())
                 .liveRoomId(roomId)
                 .userId(userId)
                 .username(username)
                 .avatarUrl(avatarUrl)
                 .message(request.getMessage())
                 .type(LiveChatType.CHAT)
+                .isPinned(false)
+                .createdAt(LocalDateTime.now())
                 .build();
 
-        chat = liveChatRepository.save(chat);
-
-        LiveChatDto chatDto = mapToDto(chat);
+        // Append vào Redis stream; MySQL được ghi theo batch bởi LiveChatArchiver
+        appendChat(roomId, chatDto);
 
         // Broadcast to room
         messagingTemplate.convertAndSend("/topic/live/" + roomId + "/chat", chatDto);
@@ -359,13 +371,56 @@ public class LiveService {
         return chatDto;
     }
 
+    /**
+     * Append chat vào Redis stream; Redis lỗi thì ghi thẳng MySQL để không mất tin
+     * (tin đó không có offset nên không replay được qua stream)
+     */
+    public void appendChat(String roomId, LiveChatDto chatDto) {
+        if (liveChatRedisService.appendChat(roomId, chatDto) != null) {
+            return;
+        }
+        try {
+            liveChatArchiver.saveDirectly(chatDto);
+        } catch (Exception e) {
+            log.error("Failed to save live chat of room {} to DB after Redis failure: {}", roomId, e.getMessage());
+        }
+    }
+
+    /**
+     * Chat gần nhất (mới nhất trước): đọc từ Redis stream khi room còn stream,
+     * chỉ fallback MySQL cho room đã archive
+     */
     public List<LiveChatDto> getRecentChats(String roomId) {
+        if (liveChatRedisService.hasChatStream(roomId)) {
+            return liveChatRedisService.getRecentChats(roomId, RECENT_CHAT_LIMIT);
+        }
         return liveChatRepository.findTop50ByLiveRoomIdOrderByCreatedAtDesc(roomId)
                 .stream()
                 .map(this::mapToDto)
                 .collect(Collectors.toList());
     }
 
+    /**
+     * Replay chat sau offset client nhận cuối cùng (cũ nhất trước)
+     */
+    public List<LiveChatDto> getChatsAfter(String roomId, String offset) {
+        if (liveChatRedisService.hasChatStream(roomId)) {
+            return liveChatRedisService.getChatsAfter(roomId, offset, REPLAY_CHAT_LIMIT);
+        }
+        // Room đã archive: offset của stream có dạng "{epochMillis}-{seq}"
+        LocalDateTime after;
+        try {
+            long millis = Long.parseLong(offset.split("-")[0]);
+            after = LocalDateTime.ofInstant(Instant.ofEpochMilli(millis), ZoneId.systemDefault());
+        } catch (NumberFormatException e) {
+            throw new RuntimeException("Invalid chat offset");
+        }
+        return liveChatRepository.findTop200ByLiveRoomIdAndCreatedAtAfterOrderByCreatedAtAsc(roomId, after)
+                .stream()
+                .map(this::mapToDto)
+                .collect(Collectors.toList());
+    }
+
     // ==================== VIEWER COUNT ====================
 
     @Transactional
@@ -377,6 +432,15 @@ public class LiveService {
                 java.util.Map.of("count", count));
     }
 
+    /**
+     * Chỉ ghi viewer count (và peak) vào DB, không broadcast
+     * Dùng bởi LiveRoomActivityAggregator - việc broadcast đã được gộp theo tick
+     */
+    @Transactional
+    public void persistViewerCount(String roomId, int count) {
+        liveRoomRepository.updateViewerCount(roomId, count);
+    }
+
     // ==================== BROADCAST HELPERS ====================
 
     private void broadcastRoomStatus(LiveRoom room) {
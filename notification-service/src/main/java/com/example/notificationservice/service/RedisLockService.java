@@ -0,0 +1,122 @@
+package com.example.notificationservice.service;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.scripting.support.ResourceScriptSource;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Distributed lock trên Redis cho các job nền chạy trên nhiều instance.
+ *
+ * - Lock lưu token của người giữ (SET NX PX); nhả lock bằng Lua compare-and-delete nên instance chậm
+ *   (lock đã hết hạn và thuộc về instance khác) không xóa nhầm lock của người khác
+ * - Trong lúc action chạy, watchdog gia hạn lease mỗi lease/3 (cũng chỉ khi token còn khớp)
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class RedisLockService {
+
+    private final StringRedisTemplate redisTemplate;
+
+    private DefaultRedisScript<Long> releaseScript;
+    private DefaultRedisScript<Long> extendScript;
+
+    private final ScheduledExecutorService watchdog = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "redis-lock-watchdog");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    @PostConstruct
+    public void init() {
+        releaseScript = new DefaultRedisScript<>();
+        releaseScript.setScriptSource(new ResourceScriptSource(new ClassPathResource("scripts/lock_release.lua")));
+        releaseScript.setResultType(Long.class);
+
+        extendScript = new DefaultRedisScript<>();
+        extendScript.setScriptSource(new ResourceScriptSource(new ClassPathResource("scripts/lock_extend.lua")));
+        extendScript.setResultType(Long.class);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        watchdog.shutdownNow();
+    }
+
+    /**
+     * Thử lấy lock một lần.
+     *
+     * @return token của người giữ (dùng để unlock/extend), null nếu lock đang bị giữ
+     */
+    public String tryLock(String lockKey, Duration lease) {
+        String token = UUID.randomUUID().toString();
+        Boolean acquired = redisTemplate.opsForValue().setIfAbsent(lockKey, token, lease);
+        return Boolean.TRUE.equals(acquired) ? token : null;
+    }
+
+    /**
+     * Nhả lock nếu vẫn thuộc về token.
+     *
+     * @return false nếu lock đã hết hạn (có thể instance khác đang giữ)
+     */
+    public boolean unlock(String lockKey, String token) {
+        Long released = redisTemplate.execute(releaseScript, List.of(lockKey), token);
+        if (!Long.valueOf(1).equals(released)) {
+            log.warn("[LOCK] {} expired before release, another instance may hold it now", lockKey);
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Gia hạn lease của lock nếu vẫn thuộc về token.
+     */
+    public boolean extend(String lockKey, String token, Duration lease) {
+        Long extended = redisTemplate.execute(extendScript, List.of(lockKey), token,
+                String.valueOf(lease.toMillis()));
+        return Long.valueOf(1).equals(extended);
+    }
+
+    /**
+     * Chạy action nếu lấy được lock ngay, không chờ; lease được watchdog gia hạn trong lúc action chạy.
+     *
+     * @return false nếu lock đang bị giữ (action không chạy)
+     */
+    public boolean runIfLocked(String lockKey, Duration lease, Runnable action) {
+        String token = tryLock(lockKey, lease);
+        if (token == null) {
+            return false;
+        }
+        long renewMs = Math.max(100, lease.toMillis() / 3);
+        ScheduledFuture<?> renewal = watchdog.scheduleAtFixedRate(() -> {
+            try {
+                if (!extend(lockKey, token, lease)) {
+                    log.warn("[LOCK] Lost {} while still running", lockKey);
+                }
+            } catch (Exception e) {
+                log.warn("[LOCK] Failed to extend {}: {}", lockKey, e.getMessage());
+            }
+        }, renewMs, renewMs, TimeUnit.MILLISECONDS);
+        try {
+            action.run();
+            return true;
+        } finally {
+            renewal.cancel(false);
+            unlock(lockKey, token);
+        }
+    }
+}
@@ -0,0 +1,19 @@
+-- live_chat_append.lua
+-- KEYS[1]: live:chat:stream:{roomId}
+-- KEYS[2]: live:chat:active (set room có stream đang được archive dần)
+-- ARGV[1]: chat JSON (LiveChatDto)
+-- ARGV[2]: ttlSeconds
+-- ARGV[3]: roomId
+--
+-- Không cắt stream ở đây: chỉ entry đã archive mới được cắt (live_chat_trim.lua)
+
+local streamKey = KEYS[1]
+
+-- 1. Append vào stream
+local id = redis.call('XADD', streamKey, '*', 'chat', ARGV[1])
+
+-- 2. Gia hạn TTL (room bị bỏ quên không giữ key mãi) và đăng ký room cho archiver
+redis.call('EXPIRE', streamKey, tonumber(ARGV[2]))
+redis.call('SADD', KEYS[2], ARGV[3])
+
+return id
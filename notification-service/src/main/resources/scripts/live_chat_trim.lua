@@ -0,0 +1,30 @@
+-- live_chat_trim.lua
+-- KEYS[1]: live:chat:stream:{roomId}
+-- ARGV[1]: entry id cuối cùng đã archive xuống MySQL (live:chat:archived:{roomId})
+-- ARGV[2]: replayWindowMs - tin trong khoảng thời gian gần nhất luôn giữ lại cho replay
+--
+-- Chỉ xóa entry vừa đã archive vừa cũ hơn cửa sổ replay. Entry id là "{epochMillis}-{seq}" nên
+-- ngưỡng thời gian tính thẳng từ TIME, không cần đọc stream
+
+local streamKey = KEYS[1]
+local windowMs = tonumber(ARGV[2])
+
+local function parse(id)
+    local dash = string.find(id, '-', 1, true)
+    return tonumber(string.sub(id, 1, dash - 1)), tonumber(string.sub(id, dash + 1))
+end
+
+-- 1. Entry ngay sau entry đã archive cuối cùng
+local minMs, minSeq = parse(ARGV[1])
+minSeq = minSeq + 1
+
+-- 2. Đầu cửa sổ replay theo đồng hồ Redis (cùng đồng hồ sinh entry id)
+local now = redis.call('TIME')
+local windowStartMs = tonumber(now[1]) * 1000 + math.floor(tonumber(now[2]) / 1000) - windowMs
+
+-- 3. MINID xóa entry có id nhỏ hơn ngưỡng: lấy ngưỡng nhỏ hơn trong hai
+if windowStartMs < minMs then
+    minMs, minSeq = windowStartMs, 0
+end
+
+return redis.call('XTRIM', streamKey, 'MINID', minMs .. '-' .. minSeq)
@@ -0,0 +1,9 @@
+-- lock_release.lua
+-- KEYS[1]: lock key
+-- ARGV[1]: owner token
+-- Chỉ xóa lock nếu token khớp (lock có thể đã hết hạn và thuộc về instance khác)
+
+if redis.call('GET', KEYS[1]) == ARGV[1] then
+    return redis.call('DEL', KEYS[1])
+end
+return 0
@@ -115,12 +115,14 @@ public interface StockServiceClient {
 
         /**
          * Request DTO for reservation operations
+         * userId: người mua, stock-service cần khi sản phẩm đang trong Flash Sale (giới hạn mỗi user)
          */
         record ReserveRequest(
                         String orderId,
                         String productId,
                         String sizeId,
-                        int quantity) {
+                        int quantity,
+                        String userId) {
         }
 
         /**
@@ -6,18 +6,21 @@ import com.example.orderservice.dto.ShopLedgerEntryDTO;
 import com.example.orderservice.model.PayoutBatch;
 import com.example.orderservice.service.ShopLedgerService;
 import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.domain.Sort;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 import java.util.List;
 
 @RestController
 @RequestMapping("/v1/order/ledger")
 @RequiredArgsConstructor
+@Slf4j
 public class LedgerController {
 
     private final ShopLedgerService shopLedgerService;
@@ -68,33 +71,39 @@ public class LedgerController {
             PayoutBatch payout = payoutBatchRepository.findById(payoutId)
                     .orElseThrow(() -> new RuntimeException("Payout not found"));
 
-            byte[] bytes = invoiceService.generatePayoutInvoice(payout);
+            // Hóa đơn chỉ một dòng: dựng đồng bộ để lỗi vẫn trả về 500
+            java.io.ByteArrayOutputStream bytes = new java.io.ByteArrayOutputStream();
+            invoiceService.writePayoutInvoice(payout, bytes);
 
             return ResponseEntity.ok()
                     .header("Content-Disposition",
                             "attachment; filename=invoice_" + payout.getTransactionRef() + ".xlsx")
                     .header("Content-Type", "application/vnd.openxmlformats-officedocument.spreadsheetml.sheet")
-                    .body(bytes);
+                    .body(bytes.toByteArray());
         } catch (Exception e) {
+            log.error("Failed to generate invoice for payout {}: {}", payoutId, e.getMessage());
             return ResponseEntity.internalServerError().build();
         }
     }
 
+    // File được ghi dần vào response (đọc DB theo trang), không dựng toàn bộ workbook trong bộ nhớ
     @GetMapping("/payout/history/export/{shopOwnerId}")
-    public ResponseEntity<byte[]> exportPayoutHistory(@PathVariable String shopOwnerId) {
-        try {
-            List<PayoutBatch> history = shopLedgerService.getPayoutHistory(shopOwnerId);
-            byte[] bytes = invoiceService.generatePayoutHistoryReport(history);
-
-            String filename = "payout_history_" + java.time.LocalDate.now() + ".xlsx";
-
-            return ResponseEntity.ok()
-                    .header("Content-Disposition", "attachment; filename=" + filename)
-                    .header("Content-Type", "application/vnd.openxmlformats-officedocument.spreadsheetml.sheet")
-                    .body(bytes);
-        } catch (Exception e) {
-            e.printStackTrace();
-            return ResponseEntity.internalServerError().build();
-        }
+    public ResponseEntity<StreamingResponseBody> exportPayoutHistory(@PathVariable String shopOwnerId) {
+        StreamingResponseBody body = out -> {
+            try {
+                invoiceService.writePayoutHistoryReport(shopOwnerId, out);
+            } catch (Exception e) {
+                // Response đã bắt đầu gửi nên không thể trả 500: log và để client nhận file bị cắt
+                log.error("Failed to export payout history for shop {}: {}", shopOwnerId, e.getMessage());
+                throw e;
+            }
+        };
+
+        String filename = "payout_history_" + java.time.LocalDate.now() + ".xlsx";
+
+        return ResponseEntity.ok()
+                .header("Content-Disposition", "attachment; filename=" + filename)
+                .header("Content-Type", "application/vnd.openxmlformats-officedocument.spreadsheetml.sheet")
+                .body(body);
     }
-}
\ No newline at end of file
+}
@@ -703,18 +703,21 @@ public class OrderController {
     }
 
     @GetMapping("/shop-owner/analytics/export")
-    public ResponseEntity<byte[]> exportAnalytics(
+    public ResponseEntity<org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody> exportAnalytics(
             HttpServletRequest request,
             @RequestParam(required = false) @org.springframework.format.annotation.DateTimeFormat(iso = org.springframework.format.annotation.DateTimeFormat.ISO.DATE) java.time.LocalDate startDate,
             @RequestParam(required = false) @org.springframework.format.annotation.DateTimeFormat(iso = org.springframework.format.annotation.DateTimeFormat.ISO.DATE) java.time.LocalDate endDate) {
+        // Feign và phần tổng hợp chạy trên request thread (lỗi vẫn trả về status lỗi, Authorization vẫn được forward);
+        // async thread chỉ ghi dần các dòng order item vào response
         String shopOwnerId = jwtUtil.ExtractUserId(request);
-        byte[] csvData = orderService.exportAnalytics(shopOwnerId, startDate, endDate);
+        com.example.orderservice.dto.AnalyticsExport export = orderService.prepareAnalyticsExport(shopOwnerId,
+                startDate, endDate);
 
         return ResponseEntity.ok()
                 .header(org.springframework.http.HttpHeaders.CONTENT_DISPOSITION,
                         "attachment; filename=sales_report.csv")
-                .header(org.springframework.http.HttpHeaders.CONTENT_TYPE, "text/csv")
-                .body(csvData);
+                .header(org.springframework.http.HttpHeaders.CONTENT_TYPE, "text/csv; charset=UTF-8")
+                .body(out -> orderService.writeAnalyticsExport(export, out));
     }
 
     @PutMapping("/shop-owner/orders/{orderId}/status")
@@ -0,0 +1,23 @@
+package com.example.orderservice.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.List;
+
+/**
+ * Dữ liệu của báo cáo doanh thu CSV được chuẩn bị trên request thread (Feign + aggregate query),
+ * để phần ghi vào response chỉ còn đọc order item theo trang
+ */
+@Getter
+@AllArgsConstructor
+public class AnalyticsExport {
+    private LocalDate startDate;
+    private LocalDate endDate;
+    private LocalDateTime from;
+    private LocalDateTime to;
+    private List<String> productIds;
+    private AnalyticsDto analytics;
+}
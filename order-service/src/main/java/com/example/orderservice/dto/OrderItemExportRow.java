@@ -0,0 +1,27 @@
+package com.example.orderservice.dto;
+
+import com.example.orderservice.enums.OrderStatus;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+/**
+ * Một dòng order item khi export báo cáo (JPQL projection, không phải entity nên không bị giữ trong persistence context)
+ */
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class OrderItemExportRow {
+    private String itemId;
+    private String orderId;
+    private LocalDateTime createdAt;
+    private OrderStatus orderStatus;
+    private String productId;
+    private String sizeId;
+    private int quantity;
+    private double unitPrice;
+    private double totalPrice;
+    private Boolean isFlashSale;
+}
@@ -16,7 +16,7 @@ public class PaymentEvent {
     private String paymentId;
     private String txnRef;
     private String orderId; // May be null if order not created yet
-    private String status; // PAID, FAILED
+    private String status; // PAID, FAILED, EXPIRED
     private BigDecimal amount;
     private String currency;
     private String method; // VNPAY, CARD, etc.
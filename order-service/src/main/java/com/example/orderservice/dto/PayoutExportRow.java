@@ -0,0 +1,26 @@
+package com.example.orderservice.dto;
+
+import com.example.orderservice.enums.PayoutStatus;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+
+/**
+ * Một dòng lịch sử rút tiền khi export báo cáo (JPQL projection)
+ */
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class PayoutExportRow {
+    private String id;
+    private LocalDateTime createdAt;
+    private String transactionRef;
+    private BigDecimal amount;
+    private PayoutStatus status;
+    private String bankName;
+    private String bankAccountNumber;
+    private String description;
+}
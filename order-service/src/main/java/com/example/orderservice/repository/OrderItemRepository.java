@@ -1,11 +1,14 @@
 package com.example.orderservice.repository;
 
+import com.example.orderservice.dto.OrderItemExportRow;
 import com.example.orderservice.model.OrderItem;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.time.LocalDateTime;
 import java.util.List;
 import java.util.Set;
 
@@ -29,4 +32,24 @@ public interface OrderItemRepository extends JpaRepository<OrderItem, String> {
     Set<OrderItem> findDistinctOrderIdsByProductIdIn(@Param("productIds") List<String> productIds);
 
     List<OrderItem> findByProductId(String productId);
+
+    // Export theo keyset (createdAt, id): mỗi trang đọc tiếp sau dòng cuối của trang trước, không OFFSET
+    @Query("SELECT new com.example.orderservice.dto.OrderItemExportRow(oi.id, o.id, o.createdAt, o.orderStatus, "
+            + "oi.productId, oi.sizeId, oi.quantity, oi.unitPrice, oi.totalPrice, oi.isFlashSale) "
+            + "FROM OrderItem oi JOIN oi.order o "
+            + "WHERE oi.productId IN :productIds AND o.createdAt BETWEEN :startDate AND :endDate "
+            + "ORDER BY o.createdAt, oi.id")
+    List<OrderItemExportRow> findExportRows(@Param("productIds") List<String> productIds,
+            @Param("startDate") LocalDateTime startDate, @Param("endDate") LocalDateTime endDate, Pageable pageable);
+
+    @Query("SELECT new com.example.orderservice.dto.OrderItemExportRow(oi.id, o.id, o.createdAt, o.orderStatus, "
+            + "oi.productId, oi.sizeId, oi.quantity, oi.unitPrice, oi.totalPrice, oi.isFlashSale) "
+            + "FROM OrderItem oi JOIN oi.order o "
+            + "WHERE oi.productId IN :productIds AND o.createdAt BETWEEN :startDate AND :endDate "
+            + "AND (o.createdAt > :afterCreatedAt OR (o.createdAt = :afterCreatedAt AND oi.id > :afterId)) "
+            + "ORDER BY o.createdAt, oi.id")
+    List<OrderItemExportRow> findExportRowsAfter(@Param("productIds") List<String> productIds,
+            @Param("startDate") LocalDateTime startDate, @Param("endDate") LocalDateTime endDate,
+            @Param("afterCreatedAt") LocalDateTime afterCreatedAt, @Param("afterId") String afterId,
+            Pageable pageable);
 }
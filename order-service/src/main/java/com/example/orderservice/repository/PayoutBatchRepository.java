@@ -1,10 +1,15 @@
 package com.example.orderservice.repository;
 
+import com.example.orderservice.dto.PayoutExportRow;
 import com.example.orderservice.enums.PayoutStatus;
 import com.example.orderservice.model.PayoutBatch;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.time.LocalDateTime;
 import java.util.List;
 
 @Repository
@@ -12,5 +17,20 @@ public interface PayoutBatchRepository extends JpaRepository<PayoutBatch, String
     List<PayoutBatch> findByShopOwnerIdOrderByCreatedAtDesc(String shopOwnerId);
     List<PayoutBatch> findByStatus(PayoutStatus status);
     boolean existsByTransactionRef(String transactionRef);
+
+    // Export theo keyset (createdAt, id) giảm dần: trang sau đọc tiếp trước dòng cuối của trang trước
+    @Query("SELECT new com.example.orderservice.dto.PayoutExportRow(p.id, p.createdAt, p.transactionRef, p.amount, "
+            + "p.status, p.bankName, p.bankAccountNumber, p.description) "
+            + "FROM PayoutBatch p WHERE p.shopOwnerId = :shopOwnerId ORDER BY p.createdAt DESC, p.id DESC")
+    List<PayoutExportRow> findExportRows(@Param("shopOwnerId") String shopOwnerId, Pageable pageable);
+
+    @Query("SELECT new com.example.orderservice.dto.PayoutExportRow(p.id, p.createdAt, p.transactionRef, p.amount, "
+            + "p.status, p.bankName, p.bankAccountNumber, p.description) "
+            + "FROM PayoutBatch p WHERE p.shopOwnerId = :shopOwnerId "
+            + "AND (p.createdAt < :beforeCreatedAt OR (p.createdAt = :beforeCreatedAt AND p.id < :beforeId)) "
+            + "ORDER BY p.createdAt DESC, p.id DESC")
+    List<PayoutExportRow> findExportRowsBefore(@Param("shopOwnerId") String shopOwnerId,
+            @Param("beforeCreatedAt") LocalDateTime beforeCreatedAt, @Param("beforeId") String beforeId,
+            Pageable pageable);
 }
 
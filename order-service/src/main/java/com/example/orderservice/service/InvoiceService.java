@@ -1,21 +1,45 @@
 package com.example.orderservice.service;
 
+import com.example.orderservice.dto.PayoutExportRow;
 import com.example.orderservice.model.PayoutBatch;
+import com.example.orderservice.repository.PayoutBatchRepository;
+import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.poi.ss.usermodel.*;
+import org.apache.poi.xssf.streaming.SXSSFSheet;
+import org.apache.poi.xssf.streaming.SXSSFWorkbook;
 import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.stereotype.Service;
 
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.time.format.DateTimeFormatter;
-
+import java.util.List;
+
+/**
+ * Xuất file Excel cho payout.
+ *
+ * Báo cáo nhiều dòng được ghi thẳng vào OutputStream của response: dữ liệu đọc theo trang (keyset,
+ * {@code order.export.page-size} dòng/trang) và ghi bằng SXSSF, chỉ giữ {@code ROW_WINDOW} dòng trong bộ nhớ
+ * (phần còn lại flush ra file tạm), nên bộ nhớ dùng cho export không phụ thuộc độ lớn báo cáo.
+ */
 @Service
 @Slf4j
+@RequiredArgsConstructor
 public class InvoiceService {
 
-    public byte[] generatePayoutInvoice(PayoutBatch payout) throws IOException {
-        try (Workbook workbook = new XSSFWorkbook(); ByteArrayOutputStream out = new ByteArrayOutputStream()) {
+    private static final int ROW_WINDOW = 100;
+    private static final DateTimeFormatter DATE_TIME_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+
+    private final PayoutBatchRepository payoutBatchRepository;
+
+    @Value("${order.export.page-size:500}")
+    private int pageSize;
+
+    public void writePayoutInvoice(PayoutBatch payout, OutputStream out) throws IOException {
+        try (Workbook workbook = new XSSFWorkbook()) {
             Sheet sheet = workbook.createSheet("Invoice");
 
             // Header Style
@@ -47,7 +71,7 @@ public class InvoiceService {
 
             // Date
             String dateStr = payout.getCreatedAt() != null
-                    ? payout.getCreatedAt().format(DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss"))
+                    ? payout.getCreatedAt().format(DATE_TIME_FORMAT)
                     : "N/A";
             createRow(sheet, rowIdx++, "Date:", dateStr, dataStyle);
 
@@ -71,13 +95,17 @@ public class InvoiceService {
             sheet.autoSizeColumn(1);
 
             workbook.write(out);
-            return out.toByteArray();
         }
     }
 
-    public byte[] generatePayoutHistoryReport(java.util.List<PayoutBatch> payouts) throws IOException {
-        try (Workbook workbook = new XSSFWorkbook(); ByteArrayOutputStream out = new ByteArrayOutputStream()) {
-            Sheet sheet = workbook.createSheet("Payout History");
+    /**
+     * Lịch sử rút tiền của shop (mới nhất trước), ghi trực tiếp vào {@code out}
+     */
+    public void writePayoutHistoryReport(String shopOwnerId, OutputStream out) throws IOException {
+        SXSSFWorkbook workbook = new SXSSFWorkbook(ROW_WINDOW);
+        workbook.setCompressTempFiles(true);
+        try {
+            SXSSFSheet sheet = workbook.createSheet("Payout History");
 
             // Header Style
             CellStyle headerStyle = workbook.createCellStyle();
@@ -90,55 +118,44 @@ public class InvoiceService {
             Row headerRow = sheet.createRow(0);
             String[] columns = { "Date", "Transaction Ref", "Amount", "Status", "Bank", "Account Number",
                     "Description" };
+            // Độ rộng cố định (ký tự): autoSizeColumn cần đọc lại mọi dòng, không dùng được khi dòng đã flush
+            int[] widths = { 20, 36, 16, 12, 24, 20, 40 };
             for (int i = 0; i < columns.length; i++) {
                 Cell cell = headerRow.createCell(i);
                 cell.setCellValue(columns[i]);
                 cell.setCellStyle(headerStyle);
+                sheet.setColumnWidth(i, widths[i] * 256);
             }
 
-            // Data Style
-            CellStyle dataStyle = workbook.createCellStyle();
-            dataStyle.setBorderBottom(BorderStyle.THIN);
-            dataStyle.setBorderRight(BorderStyle.THIN);
-            dataStyle.setBorderLeft(BorderStyle.THIN);
-
             int rowIdx = 1;
-
-            for (PayoutBatch payout : payouts) {
-                Row row = sheet.createRow(rowIdx++);
-
-                // Date
-                String dateStr = payout.getCreatedAt() != null
-                        ? payout.getCreatedAt().format(DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss"))
-                        : "";
-                row.createCell(0).setCellValue(dateStr);
-
-                // Ref
-                row.createCell(1).setCellValue(payout.getTransactionRef());
-
-                // Amount
-                row.createCell(2).setCellValue(payout.getAmount().doubleValue());
-
-                // Status
-                row.createCell(3).setCellValue(payout.getStatus().name());
-
-                // Bank
-                row.createCell(4).setCellValue(payout.getBankName());
-
-                // Account
-                row.createCell(5).setCellValue(payout.getBankAccountNumber());
-
-                // Description
-                row.createCell(6).setCellValue(payout.getDescription() != null ? payout.getDescription() : "");
-            }
-
-            // Auto-size columns
-            for (int i = 0; i < columns.length; i++) {
-                sheet.autoSizeColumn(i);
+            List<PayoutExportRow> page = payoutBatchRepository.findExportRows(shopOwnerId,
+                    PageRequest.of(0, pageSize));
+            while (!page.isEmpty()) {
+                for (PayoutExportRow payout : page) {
+                    Row row = sheet.createRow(rowIdx++);
+                    row.createCell(0).setCellValue(
+                            payout.getCreatedAt() != null ? payout.getCreatedAt().format(DATE_TIME_FORMAT) : "");
+                    row.createCell(1).setCellValue(payout.getTransactionRef());
+                    row.createCell(2).setCellValue(payout.getAmount().doubleValue());
+                    row.createCell(3).setCellValue(payout.getStatus().name());
+                    row.createCell(4).setCellValue(payout.getBankName());
+                    row.createCell(5).setCellValue(payout.getBankAccountNumber());
+                    row.createCell(6).setCellValue(payout.getDescription() != null ? payout.getDescription() : "");
+                }
+                if (page.size() < pageSize) {
+                    break;
+                }
+                PayoutExportRow last = page.get(page.size() - 1);
+                page = payoutBatchRepository.findExportRowsBefore(shopOwnerId, last.getCreatedAt(), last.getId(),
+                        PageRequest.of(0, pageSize));
             }
 
             workbook.write(out);
-            return out.toByteArray();
+            log.info("Exported {} payouts for shop {}", rowIdx - 1, shopOwnerId);
+        } finally {
+            // Xóa file tạm của các dòng đã flush
+            workbook.dispose();
+            workbook.close();
         }
     }
 
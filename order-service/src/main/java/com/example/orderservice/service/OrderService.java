@@ -16,7 +16,11 @@ public interface OrderService {
         com.example.orderservice.dto.AnalyticsDto getAnalytics(String shopOwnerId, java.time.LocalDate startDate,
                         java.time.LocalDate endDate);
 
-        byte[] exportAnalytics(String shopOwnerId, java.time.LocalDate startDate, java.time.LocalDate endDate);
+        com.example.orderservice.dto.AnalyticsExport prepareAnalyticsExport(String shopOwnerId,
+                        java.time.LocalDate startDate, java.time.LocalDate endDate);
+
+        void writeAnalyticsExport(com.example.orderservice.dto.AnalyticsExport export, java.io.OutputStream out)
+                        throws java.io.IOException;
 
         Order returnOrder(String orderId, String reason);
 
@@ -23,6 +23,7 @@ import java.util.stream.Collectors;
 import org.apache.kafka.clients.admin.NewTopic;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
@@ -42,12 +43,14 @@ import com.example.orderservice.client.UserServiceClient;
 import com.example.orderservice.dto.AddRefundRequestDto;
 import com.example.orderservice.dto.AddressDto;
 import com.example.orderservice.dto.AnalyticsDto;
+import com.example.orderservice.dto.AnalyticsExport;
 import com.example.orderservice.dto.BatchGetProductsRequest;
 import com.example.orderservice.dto.FrontendOrderRequest;
 import com.example.orderservice.dto.GhnAvailableServicesResponse;
 import com.example.orderservice.dto.GhnCreateOrderRequest;
 import com.example.orderservice.dto.GhnCreateOrderResponse;
 import com.example.orderservice.dto.GhnItemDto;
+import com.example.orderservice.dto.OrderItemExportRow;
 import com.example.orderservice.dto.OrderCompensationEvent;
 import com.example.orderservice.dto.PaymentDto;
 import com.example.orderservice.dto.PaymentEvent;
@@ -104,6 +107,9 @@ public class OrderServiceImpl implements OrderService {
     private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
     private final TrackingEmitterService trackingEmitterService;
 
+    @Value("${order.export.page-size:500}")
+    private int exportPageSize;
+
     @Override
     public Order returnOrder(String orderId, String reason) {
         return orderRepository.findById(orderId).map(order -> {
@@ -118,6 +124,10 @@ public class OrderServiceImpl implements OrderService {
     public AnalyticsDto getAnalytics(String shopOwnerId, LocalDate startDate, LocalDate endDate) {
         // 1. Get product IDs
         List<String> productIds = stockServiceClient.getProductIdsByShopOwner(shopOwnerId).getBody();
+        return computeAnalytics(productIds, startDate, endDate);
+    }
+
+    private AnalyticsDto computeAnalytics(List<String> productIds, LocalDate startDate, LocalDate endDate) {
         if (productIds == null || productIds.isEmpty()) {
             return AnalyticsDto.builder()
                     .todayRevenue(0.0)
@@ -250,21 +260,43 @@ public class OrderServiceImpl implements OrderService {
                 .build();
     }
 
+    /**
+     * Chuẩn bị báo cáo doanh thu trên request thread: danh sách sản phẩm (Feign, forward Authorization của caller)
+     * và phần tổng hợp, để lỗi ở stock-service/DB vẫn trả về response lỗi thay vì file CSV bị cắt
+     */
+    @Override
+    public AnalyticsExport prepareAnalyticsExport(String shopOwnerId, LocalDate startDate, LocalDate endDate) {
+        List<String> productIds = stockServiceClient.getProductIdsByShopOwner(shopOwnerId).getBody();
+        AnalyticsDto analytics = computeAnalytics(productIds, startDate, endDate);
+        LocalDateTime from = (startDate != null ? startDate : LocalDate.now().minusDays(6)).atStartOfDay();
+        LocalDateTime to = (endDate != null ? endDate : LocalDate.now()).atTime(LocalTime.MAX);
+        return new AnalyticsExport(startDate, endDate, from, to,
+                productIds != null ? productIds : List.of(), analytics);
+    }
+
+    /**
+     * Báo cáo doanh thu CSV, ghi thẳng vào {@code out}: phần tổng hợp đã chuẩn bị sẵn (kích thước theo số ngày),
+     * phần chi tiết order item đọc theo trang keyset ({@code order.export.page-size} dòng) và ghi ngay từng trang,
+     * nên bộ nhớ không tăng theo số đơn trong khoảng thời gian.
+     */
     @Override
-    public byte[] exportAnalytics(String shopOwnerId, java.time.LocalDate startDate, java.time.LocalDate endDate) {
-        AnalyticsDto analytics = getAnalytics(shopOwnerId, startDate, endDate);
+    public void writeAnalyticsExport(AnalyticsExport export, java.io.OutputStream out) throws java.io.IOException {
+        LocalDate startDate = export.getStartDate();
+        LocalDate endDate = export.getEndDate();
+        AnalyticsDto analytics = export.getAnalytics();
+        java.io.Writer csv = new java.io.BufferedWriter(
+                new java.io.OutputStreamWriter(out, java.nio.charset.StandardCharsets.UTF_8));
 
-        StringBuilder csv = new StringBuilder();
         csv.append("Sales Report\n");
-        csv.append("Period,").append(startDate != null ? startDate : "Last 7 days").append(" - ")
-                .append(endDate != null ? endDate : "Today").append("\n\n");
+        csv.append("Period,").append(startDate != null ? startDate.toString() : "Last 7 days").append(" - ")
+                .append(endDate != null ? endDate.toString() : "Today").append("\n\n");
 
         csv.append("Summary\n");
         csv.append("Total Revenue,").append(String.format("%.0f", analytics.getTodayRevenue())).append("\n");
-        csv.append("Total Orders,").append(analytics.getTodayOrders()).append("\n");
+        csv.append("Total Orders,").append(String.valueOf(analytics.getTodayOrders())).append("\n");
         csv.append("Avg Order Value,").append(String.format("%.0f", analytics.getAverageOrderValue())).append("\n");
-        csv.append("Cancelled Orders,").append(analytics.getTotalCancelled()).append("\n");
-        csv.append("Returned Orders,").append(analytics.getTotalReturned()).append("\n\n");
+        csv.append("Cancelled Orders,").append(String.valueOf(analytics.getTotalCancelled())).append("\n");
+        csv.append("Returned Orders,").append(String.valueOf(analytics.getTotalReturned())).append("\n\n");
 
         csv.append("Daily Revenue\n");
         csv.append("Date,Revenue\n");
@@ -279,15 +311,55 @@ public class OrderServiceImpl implements OrderService {
         csv.append("Product Performance (Top 5)\n");
         csv.append("Product Name,Sold,Revenue\n");
         if (analytics.getTopProducts() != null) {
-            for (com.example.orderservice.dto.TopProductDto p : analytics.getTopProducts()) {
-                csv.append("\"").append(p.getProductName().replace("\"", "\"\"")).append("\",")
-                        .append(p.getSold()).append(",")
-                        .append(String.format("%.0f", p.getRevenue())).append("\n"); // assuming total field matches
-                                                                                     // matches
+            for (TopProductDto p : analytics.getTopProducts()) {
+                csv.append(csvField(p.getProductName())).append(",")
+                        .append(String.valueOf(p.getSold())).append(",")
+                        .append(String.format("%.0f", p.getRevenue())).append("\n");
             }
         }
+        csv.append("\n");
 
-        return csv.toString().getBytes(java.nio.charset.StandardCharsets.UTF_8);
+        csv.append("Order Items\n");
+        csv.append("Order ID,Created At,Status,Product ID,Size ID,Quantity,Unit Price,Total Price,Flash Sale\n");
+        if (!export.getProductIds().isEmpty()) {
+            writeOrderItemRows(csv, export.getProductIds(), export.getFrom(), export.getTo());
+        }
+        csv.flush();
+    }
+
+    private void writeOrderItemRows(java.io.Writer csv, List<String> productIds, LocalDateTime from, LocalDateTime to)
+            throws java.io.IOException {
+        Pageable firstPage = PageRequest.of(0, exportPageSize);
+        List<OrderItemExportRow> page = orderItemRepository.findExportRows(productIds,
+                from, to, firstPage);
+        while (!page.isEmpty()) {
+            for (OrderItemExportRow row : page) {
+                csv.append(row.getOrderId()).append(",")
+                        .append(String.valueOf(row.getCreatedAt())).append(",")
+                        .append(String.valueOf(row.getOrderStatus())).append(",")
+                        .append(csvField(row.getProductId())).append(",")
+                        .append(csvField(row.getSizeId())).append(",")
+                        .append(String.valueOf(row.getQuantity())).append(",")
+                        .append(String.format("%.0f", row.getUnitPrice())).append(",")
+                        .append(String.format("%.0f", row.getTotalPrice())).append(",")
+                        .append(Boolean.TRUE.equals(row.getIsFlashSale()) ? "Yes" : "No").append("\n");
+            }
+            // Đẩy từng trang ra client thay vì giữ trong buffer
+            csv.flush();
+            if (page.size() < exportPageSize) {
+                break;
+            }
+            OrderItemExportRow last = page.get(page.size() - 1);
+            page = orderItemRepository.findExportRowsAfter(productIds, from, to, last.getCreatedAt(),
+                    last.getItemId(), firstPage);
+        }
+    }
+
+    private static String csvField(String value) {
+        if (value == null) {
+            return "";
+        }
+        return "\"" + value.replace("\"", "\"\"") + "\"";
     }
 
     @Override
@@ -1370,7 +1442,8 @@ public class OrderServiceImpl implements OrderService {
                             tempOrderId,
                             item.getProductId(),
                             item.getSizeId(),
-                            item.getQuantity());
+                            item.getQuantity(),
+                            userId);
 
                     ResponseEntity<java.util.Map<String, Object>> response = stockServiceClient
                             .reserveStock(reserveReq);
@@ -1453,7 +1526,8 @@ public class OrderServiceImpl implements OrderService {
                             tempOrderId,
                             item.productId(),
                             item.sizeId(),
-                            0);
+                            0,
+                            userId);
                     stockServiceClient.cancelReservation(cancelReq);
                 }
                 log.info("[ROLLBACK] Cancelled reservation: product={}, size={}, isFS={}",
@@ -1492,7 +1566,8 @@ public class OrderServiceImpl implements OrderService {
                             tempOrderId,
                             item.getProductId(),
                             item.getSizeId(),
-                            0);
+                            0,
+                            null);
                     stockServiceClient.confirmReservation(confirmReq);
                 }
                 log.debug("[CONFIRM-RESERVATION] Confirmed: tempOrderId={}, product={}, size={}",
@@ -1678,7 +1753,8 @@ public class OrderServiceImpl implements OrderService {
                             tempOrderId,
                             item.getProductId(),
                             item.getSizeId(),
-                            item.getQuantity());
+                            item.getQuantity(),
+                            userId);
 
                     ResponseEntity<java.util.Map<String, Object>> response = stockServiceClient
                             .reserveStock(reserveReq);
@@ -2591,6 +2667,20 @@ public class OrderServiceImpl implements OrderService {
                                 "[BATCH-PAYMENT-CONSUMER] Payment failed but no order was created, no rollback needed: txnRef={}",
                                 event.getTxnRef());
                     }
+                } else if ("EXPIRED".equals(event.getStatus())) {
+                    // Callback never arrived - payment-service swept it to EXPIRED
+                    if (event.getOrderId() != null && !event.getOrderId().trim().isEmpty()) {
+                        rollbackOrderStock(event.getOrderId());
+                        log.info("[BATCH-PAYMENT-CONSUMER] Rolled back order {} due to payment expiry",
+                                event.getOrderId());
+                    } else {
+                        releaseReservationsForExpiredPayment(event);
+                    }
+                } else if ("REFUND_PENDING".equals(event.getStatus())) {
+                    // Gateway confirmed the money after the payment had EXPIRED: the order / reservations
+                    // are already released, so it is not reinstated - payment-service flags it for refund
+                    log.error("[BATCH-PAYMENT-CONSUMER] Payment captured after expiry, refund required: txnRef={}, orderId={}, userId={}",
+                            event.getTxnRef(), event.getOrderId(), event.getUserId());
                 }
 
                 successCount++;
@@ -2607,6 +2697,42 @@ public class OrderServiceImpl implements OrderService {
         log.info("[BATCH-PAYMENT-CONSUMER]========================================");
     }
 
+    /**
+     * Payment expired before any order was created: release the reservations held
+     * under the tempOrderId stored in orderData so the stock goes back on sale
+     * immediately instead of waiting for the reservation TTL.
+     */
+    @SuppressWarnings("unchecked")
+    private void releaseReservationsForExpiredPayment(PaymentEvent event) {
+        if (event.getOrderDataJson() == null || event.getOrderDataJson().trim().isEmpty()) {
+            log.info("[BATCH-PAYMENT-CONSUMER] Payment expired without order data, nothing to release: txnRef={}",
+                    event.getTxnRef());
+            return;
+        }
+        try {
+            Map<String, Object> orderDataMap = objectMapper.readValue(event.getOrderDataJson(), Map.class);
+            String tempOrderId = (String) orderDataMap.get("tempOrderId");
+            List<Map<String, Object>> selectedItemsList = (List<Map<String, Object>>) orderDataMap
+                    .get("selectedItems");
+            if (tempOrderId == null || tempOrderId.isEmpty() || selectedItemsList == null) {
+                return;
+            }
+
+            List<ReservedItem> reservedItems = selectedItemsList.stream()
+                    .map(item -> new ReservedItem(
+                            (String) item.get("productId"),
+                            (String) item.get("sizeId"),
+                            Boolean.TRUE.equals(item.get("isFlashSale"))))
+                    .collect(java.util.stream.Collectors.toList());
+            rollbackReservations(tempOrderId, reservedItems, event.getUserId());
+            log.info("[BATCH-PAYMENT-CONSUMER] Released {} reservations for expired payment: txnRef={}, tempOrderId={}",
+                    reservedItems.size(), event.getTxnRef(), tempOrderId);
+        } catch (Exception e) {
+            log.error("[BATCH-PAYMENT-CONSUMER] Failed to release reservations for expired payment {}: {}",
+                    event.getTxnRef(), e.getMessage());
+        }
+    }
+
     /////////////////////////////////////////////////////////////////////////////////////
     @Override
     public void createShippingOrderForOrder(String orderId) {
@@ -1,13 +1,16 @@
 package com.example.paymentservice;
 
+import com.example.paymentservice.config.GatewayClientProperties;
 import com.example.paymentservice.config.MomoProperties;
 import com.example.paymentservice.config.VnpayProperties;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
 import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.scheduling.annotation.EnableScheduling;
 
 @SpringBootApplication
-@EnableConfigurationProperties({VnpayProperties.class, MomoProperties.class})
+@EnableScheduling
+@EnableConfigurationProperties({VnpayProperties.class, MomoProperties.class, GatewayClientProperties.class})
 public class PaymentServiceApplication {
 
     public static void main(String[] args) {
@@ -0,0 +1,92 @@
+package com.example.paymentservice.config;
+
+import jakarta.validation.constraints.Min;
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.validation.annotation.Validated;
+
+@Getter
+@Setter
+@Validated
+@ConfigurationProperties(prefix = "payment.gateway")
+public class GatewayClientProperties {
+
+    /**
+     * Timeout mở kết nối TCP tới gateway (ms).
+     */
+    @Min(1)
+    private int connectTimeoutMs = 2000;
+
+    /**
+     * Timeout chờ response từ gateway (ms).
+     */
+    @Min(1)
+    private int readTimeoutMs = 5000;
+
+    /**
+     * Timeout chờ lấy connection từ pool (ms) - pool cạn thì fail nhanh.
+     */
+    @Min(1)
+    private int poolAcquireTimeoutMs = 500;
+
+    /**
+     * Tổng số connection tối đa trong pool.
+     */
+    @Min(1)
+    private int maxConnections = 200;
+
+    /**
+     * Số connection tối đa cho mỗi host gateway.
+     */
+    @Min(1)
+    private int maxConnectionsPerRoute = 100;
+
+    /**
+     * Bulkhead: số call đồng thời tối đa tới mỗi gateway.
+     */
+    @Min(1)
+    private int maxConcurrentCalls = 100;
+
+    /**
+     * Bulkhead: thời gian chờ slot trống (ms), 0 = từ chối ngay.
+     */
+    @Min(0)
+    private int maxWaitMs = 0;
+
+    /**
+     * Circuit breaker: % call lỗi để mở mạch.
+     */
+    @Min(1)
+    private float failureRateThreshold = 50;
+
+    /**
+     * Circuit breaker: call chậm hơn ngưỡng này (ms) được tính là slow call.
+     */
+    @Min(1)
+    private int slowCallDurationMs = 3000;
+
+    /**
+     * Circuit breaker: % slow call để mở mạch.
+     */
+    @Min(1)
+    private float slowCallRateThreshold = 80;
+
+    /**
+     * Circuit breaker: số call gần nhất dùng để tính tỉ lệ lỗi.
+     */
+    @Min(1)
+    private int slidingWindowSize = 50;
+
+    /**
+     * Circuit breaker: số call tối thiểu trước khi tính tỉ lệ lỗi.
+     */
+    @Min(1)
+    private int minimumNumberOfCalls = 20;
+
+    /**
+     * Circuit breaker: thời gian giữ trạng thái OPEN trước khi thử lại (ms).
+     */
+    @Min(1)
+    private int openStateWaitMs = 10000;
+}
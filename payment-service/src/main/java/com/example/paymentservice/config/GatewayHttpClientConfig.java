@@ -0,0 +1,81 @@
+package com.example.paymentservice.config;
+
+import io.github.resilience4j.bulkhead.BulkheadConfig;
+import io.github.resilience4j.bulkhead.BulkheadRegistry;
+import io.github.resilience4j.circuitbreaker.CircuitBreakerConfig;
+import io.github.resilience4j.circuitbreaker.CircuitBreakerRegistry;
+import org.apache.hc.client5.http.config.ConnectionConfig;
+import org.apache.hc.client5.http.config.RequestConfig;
+import org.apache.hc.client5.http.impl.classic.CloseableHttpClient;
+import org.apache.hc.client5.http.impl.classic.HttpClients;
+import org.apache.hc.client5.http.impl.io.PoolingHttpClientConnectionManager;
+import org.apache.hc.client5.http.impl.io.PoolingHttpClientConnectionManagerBuilder;
+import org.apache.hc.core5.util.TimeValue;
+import org.apache.hc.core5.util.Timeout;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.http.client.HttpComponentsClientHttpRequestFactory;
+import org.springframework.web.client.RestTemplate;
+
+import java.time.Duration;
+
+/**
+ * HTTP client and resilience setup for outbound payment gateway calls.
+ * Pooled connections with connect / read / pool-acquire timeouts, plus
+ * per-gateway circuit breaker and bulkhead registries (one instance per
+ * gateway name, created lazily by PaymentGatewayExecutor).
+ */
+@Configuration
+public class GatewayHttpClientConfig {
+
+    @Bean(destroyMethod = "close")
+    public CloseableHttpClient gatewayHttpClient(GatewayClientProperties props) {
+        PoolingHttpClientConnectionManager connectionManager = PoolingHttpClientConnectionManagerBuilder.create()
+                .setMaxConnTotal(props.getMaxConnections())
+                .setMaxConnPerRoute(props.getMaxConnectionsPerRoute())
+                .setDefaultConnectionConfig(ConnectionConfig.custom()
+                        .setConnectTimeout(Timeout.ofMilliseconds(props.getConnectTimeoutMs()))
+                        .setSocketTimeout(Timeout.ofMilliseconds(props.getReadTimeoutMs()))
+                        .build())
+                .build();
+
+        RequestConfig requestConfig = RequestConfig.custom()
+                .setConnectionRequestTimeout(Timeout.ofMilliseconds(props.getPoolAcquireTimeoutMs()))
+                .setResponseTimeout(Timeout.ofMilliseconds(props.getReadTimeoutMs()))
+                .build();
+
+        return HttpClients.custom()
+                .setConnectionManager(connectionManager)
+                .setDefaultRequestConfig(requestConfig)
+                .evictIdleConnections(TimeValue.ofSeconds(30))
+                .evictExpiredConnections()
+                .build();
+    }
+
+    @Bean
+    public RestTemplate gatewayRestTemplate(CloseableHttpClient gatewayHttpClient) {
+        return new RestTemplate(new HttpComponentsClientHttpRequestFactory(gatewayHttpClient));
+    }
+
+    @Bean
+    public CircuitBreakerRegistry gatewayCircuitBreakerRegistry(GatewayClientProperties props) {
+        return CircuitBreakerRegistry.of(CircuitBreakerConfig.custom()
+                .slidingWindowType(CircuitBreakerConfig.SlidingWindowType.COUNT_BASED)
+                .slidingWindowSize(props.getSlidingWindowSize())
+                .minimumNumberOfCalls(props.getMinimumNumberOfCalls())
+                .failureRateThreshold(props.getFailureRateThreshold())
+                .slowCallDurationThreshold(Duration.ofMillis(props.getSlowCallDurationMs()))
+                .slowCallRateThreshold(props.getSlowCallRateThreshold())
+                .waitDurationInOpenState(Duration.ofMillis(props.getOpenStateWaitMs()))
+                .automaticTransitionFromOpenToHalfOpenEnabled(true)
+                .build());
+    }
+
+    @Bean
+    public BulkheadRegistry gatewayBulkheadRegistry(GatewayClientProperties props) {
+        return BulkheadRegistry.of(BulkheadConfig.custom()
+                .maxConcurrentCalls(props.getMaxConcurrentCalls())
+                .maxWaitDuration(Duration.ofMillis(props.getMaxWaitMs()))
+                .build());
+    }
+}
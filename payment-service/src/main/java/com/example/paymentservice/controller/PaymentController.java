@@ -18,6 +18,7 @@ import org.springframework.web.bind.annotation.*;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
 
 @RestController
 @RequestMapping("/v1/payment")
@@ -48,9 +49,9 @@ public class PaymentController {
     // ============ MOMO ENDPOINTS ============
 
     @PostMapping("/momo/create")
-    public ResponseEntity<PaymentUrlResponse> createMomoPayment(@RequestBody Map<String, Object> request) {
-        PaymentUrlResponse response = momoPaymentService.createPayment(request);
-        return ResponseEntity.ok(response);
+    public CompletableFuture<ResponseEntity<PaymentUrlResponse>> createMomoPayment(@RequestBody Map<String, Object> request) {
+        // Async servlet: the Tomcat thread is released while the MoMo call is in flight
+        return momoPaymentService.createPayment(request).thenApply(ResponseEntity::ok);
     }
 
     @PostMapping("/momo/ipn")
@@ -1,8 +1,11 @@
 package com.example.paymentservice.controller;
 
+import com.example.paymentservice.config.VnpayProperties;
 import com.example.paymentservice.dto.CreateVnpayPaymentRequest;
 import com.example.paymentservice.repository.PaymentRepository;
+import com.example.paymentservice.service.PaymentGatewayExecutor;
 import com.example.paymentservice.service.VnpayPaymentService;
+import com.example.paymentservice.util.VnpayUtil;
 import jakarta.servlet.http.HttpServletRequest;
 import lombok.Data;
 import lombok.RequiredArgsConstructor;
@@ -10,9 +13,17 @@ import lombok.extern.slf4j.Slf4j;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.StandardCharsets;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
 
 /**
  * PAYMENT THROUGHPUT TEST CONTROLLER
@@ -23,6 +34,13 @@ import java.util.concurrent.atomic.AtomicInteger;
  * Endpoints:
  * - POST /v1/test/payment/throughput - Test payment throughput với số lượng tùy chỉnh
  * - GET /v1/test/payment/stats - Xem thống kê payments đã xử lý
+ * - POST /v1/test/payment/signing-benchmark - So sánh ký HMAC cũ (Mac mới mỗi lần) với HmacSigner
+ * - POST /v1/test/payment/stub-gateway/momo/create - MoMo giả lập có latency/lỗi cấu hình được
+ * - PUT  /v1/test/payment/stub-gateway/config - Đặt latency (ms) và tỉ lệ lỗi cho stub gateway
+ * - GET  /v1/test/payment/gateway-state - Trạng thái circuit breaker / bulkhead theo gateway
+ *
+ * Test gateway chậm: đặt momo.api-url=http://localhost:6007/v1/test/payment/stub-gateway/momo/create,
+ * tăng latency của stub rồi bắn /v1/payment/momo/create → circuit mở, request trả "98" ngay lập tức.
  */
 @Slf4j
 @RestController
@@ -33,6 +51,12 @@ public class PaymentThroughputTestController {
     private final VnpayPaymentService vnpayPaymentService;
     private final PaymentRepository paymentRepository;
     private final HttpServletRequest httpServletRequest;
+    private final VnpayProperties vnpayProperties;
+    private final PaymentGatewayExecutor paymentGatewayExecutor;
+
+    // Giới hạn tham số của signing benchmark
+    private static final int MAX_BENCHMARK_ITERATIONS = 2_000_000;
+    private static final int MAX_BENCHMARK_THREADS = 64;
 
     // Counter để track số payments đã được xử lý
     private static final AtomicInteger totalProcessed = new AtomicInteger(0);
@@ -40,6 +64,10 @@ public class PaymentThroughputTestController {
     private static long lastTestEndTime = 0;
     private static int lastTestTotalPayments = 0;
 
+    // Cấu hình stub gateway (dùng chung cho mọi request tới stub)
+    private static volatile long stubLatencyMs = 0;
+    private static volatile double stubFailureRate = 0;
+
     /**
      * Test payment throughput: Tạo nhiều payment requests và đo tốc độ xử lý
      * 
@@ -227,6 +255,179 @@ public class PaymentThroughputTestController {
         return ResponseEntity.ok(stats);
     }
 
+    /**
+     * Stub MoMo create API: trả response hợp lệ sau stubLatencyMs,
+     * hoặc HTTP 503 theo stubFailureRate (0.0 - 1.0)
+     */
+    @PostMapping("/stub-gateway/momo/create")
+    public ResponseEntity<Map<String, Object>> stubMomoCreate(@RequestBody Map<String, Object> body) {
+        if (stubLatencyMs > 0) {
+            try {
+                Thread.sleep(stubLatencyMs);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        if (stubFailureRate > 0 && java.util.concurrent.ThreadLocalRandom.current().nextDouble() < stubFailureRate) {
+            return ResponseEntity.status(503).build();
+        }
+        Map<String, Object> response = new HashMap<>();
+        response.put("partnerCode", body.get("partnerCode"));
+        response.put("orderId", body.get("orderId"));
+        response.put("requestId", body.get("requestId"));
+        response.put("amount", body.get("amount"));
+        response.put("resultCode", 0);
+        response.put("message", "Successful.");
+        response.put("payUrl", "http://localhost/stub-gateway/pay/" + body.get("orderId"));
+        return ResponseEntity.ok(response);
+    }
+
+    /**
+     * PUT /v1/test/payment/stub-gateway/config?latencyMs=8000&failureRate=0.5
+     */
+    @PutMapping("/stub-gateway/config")
+    public ResponseEntity<Map<String, Object>> configureStubGateway(
+            @RequestParam(defaultValue = "0") long latencyMs,
+            @RequestParam(defaultValue = "0") double failureRate) {
+        stubLatencyMs = Math.max(0, latencyMs);
+        stubFailureRate = Math.min(1, Math.max(0, failureRate));
+        log.info("[STUB-GATEWAY] latency={} ms, failureRate={}", stubLatencyMs, stubFailureRate);
+        Map<String, Object> response = new HashMap<>();
+        response.put("latencyMs", stubLatencyMs);
+        response.put("failureRate", stubFailureRate);
+        return ResponseEntity.ok(response);
+    }
+
+    @GetMapping("/gateway-state")
+    public ResponseEntity<Map<String, Object>> getGatewayState() {
+        return ResponseEntity.ok(paymentGatewayExecutor.snapshot());
+    }
+
+    /**
+     * Benchmark ký + verify VNPay (CPU only, không gọi DB / gateway)
+     *
+     * Request Body:
+     * {
+     *   "iterations": 100000,
+     *   "threads": 8
+     * }
+     *
+     * Response: ops/sec của cách cũ (Mac.getInstance + String.format mỗi lần)
+     * và cách mới (HmacSigner cache Mac theo thread + hex lookup table)
+     */
+    @PostMapping("/signing-benchmark")
+    public ResponseEntity<Map<String, Object>> signingBenchmark(@RequestBody(required = false) SigningBenchmarkRequest request) {
+        SigningBenchmarkRequest req = request != null ? request : new SigningBenchmarkRequest();
+        // Clamp so a single request cannot pin the service with an unbounded pool or run
+        int iterations = Math.min(MAX_BENCHMARK_ITERATIONS,
+                Math.max(1, req.getIterations() != null ? req.getIterations() : 100000));
+        int threads = Math.min(MAX_BENCHMARK_THREADS,
+                Math.max(1, req.getThreads() != null ? req.getThreads() : Runtime.getRuntime().availableProcessors()));
+        String secret = vnpayProperties.getHashSecret();
+
+        Map<String, String> params = sampleVnpayParams();
+        String signedQuery = VnpayUtil.buildQueryAndHash(params, secret);
+        Map<String, String> callback = new HashMap<>(params);
+        callback.put("vnp_SecureHash", signedQuery.substring(signedQuery.lastIndexOf('=') + 1));
+
+        // Warm up both paths so JIT does not skew the first measurement
+        runBenchmark(Math.min(iterations, 10000), threads, () -> legacyBuildQueryAndHash(params, secret));
+        runBenchmark(Math.min(iterations, 10000), threads, () -> VnpayUtil.buildQueryAndHash(params, secret));
+
+        double legacySign = runBenchmark(iterations, threads, () -> legacyBuildQueryAndHash(params, secret));
+        double cachedSign = runBenchmark(iterations, threads, () -> VnpayUtil.buildQueryAndHash(params, secret));
+        double cachedVerify = runBenchmark(iterations, threads, () -> VnpayUtil.verifySecureHash(callback, secret));
+
+        log.info("[SIGNING-BENCHMARK] iterations={}, threads={}, legacy={} ops/s, cached={} ops/s, verify={} ops/s",
+                iterations, threads, String.format("%.0f", legacySign), String.format("%.0f", cachedSign),
+                String.format("%.0f", cachedVerify));
+
+        Map<String, Object> response = new HashMap<>();
+        response.put("iterations", iterations);
+        response.put("threads", threads);
+        response.put("legacySignOpsPerSec", String.format("%.0f", legacySign));
+        response.put("cachedSignOpsPerSec", String.format("%.0f", cachedSign));
+        response.put("cachedVerifyOpsPerSec", String.format("%.0f", cachedVerify));
+        response.put("speedup", String.format("%.2fx", legacySign > 0 ? cachedSign / legacySign : 0));
+        return ResponseEntity.ok(response);
+    }
+
+    private double runBenchmark(int iterations, int threads, Supplier<Object> task) {
+        try (ExecutorService executor = Executors.newFixedThreadPool(threads)) {
+            int perThread = Math.max(1, iterations / threads);
+            long start = System.nanoTime();
+            Future<?>[] futures = new Future<?>[threads];
+            for (int t = 0; t < threads; t++) {
+                futures[t] = executor.submit(() -> {
+                    Object sink = null;
+                    for (int i = 0; i < perThread; i++) {
+                        sink = task.get();
+                    }
+                    return sink;
+                });
+            }
+            for (Future<?> f : futures) {
+                f.get();
+            }
+            long elapsedNanos = System.nanoTime() - start;
+            return (perThread * (double) threads) * 1_000_000_000.0 / elapsedNanos;
+        } catch (Exception e) {
+            log.warn("[SIGNING-BENCHMARK] Benchmark failed: {}", e.getMessage());
+            if (e instanceof InterruptedException) {
+                Thread.currentThread().interrupt();
+            }
+            return 0;
+        }
+    }
+
+    private Map<String, String> sampleVnpayParams() {
+        Map<String, String> params = new HashMap<>();
+        params.put("vnp_Version", "2.1.0");
+        params.put("vnp_Command", "pay");
+        params.put("vnp_TmnCode", vnpayProperties.getTmnCode());
+        params.put("vnp_Amount", "10000000");
+        params.put("vnp_CurrCode", "VND");
+        params.put("vnp_TxnRef", "123456789012");
+        params.put("vnp_OrderInfo", "Thanh toan don hang - OrderId: benchmark");
+        params.put("vnp_OrderType", "other");
+        params.put("vnp_Locale", "vn");
+        params.put("vnp_ReturnUrl", vnpayProperties.getReturnUrl());
+        params.put("vnp_IpAddr", "127.0.0.1");
+        params.put("vnp_CreateDate", "20250101120000");
+        params.put("vnp_ExpireDate", "20250101121500");
+        return params;
+    }
+
+    /**
+     * Cách ký cũ (trước HmacSigner) - chỉ giữ lại để so sánh trong benchmark
+     */
+    private static String legacyBuildQueryAndHash(Map<String, String> params, String secret) {
+        StringBuilder hashData = new StringBuilder();
+        StringBuilder query = new StringBuilder();
+        for (Map.Entry<String, String> e : new TreeMap<>(params).entrySet()) {
+            if (hashData.length() > 0) {
+                hashData.append('&');
+                query.append('&');
+            }
+            String encoded = java.net.URLEncoder.encode(e.getValue(), StandardCharsets.US_ASCII);
+            hashData.append(e.getKey()).append('=').append(encoded);
+            query.append(java.net.URLEncoder.encode(e.getKey(), StandardCharsets.US_ASCII)).append('=')
+                    .append(java.net.URLEncoder.encode(e.getValue(), StandardCharsets.US_ASCII));
+        }
+        try {
+            Mac hmac512 = Mac.getInstance("HmacSHA512");
+            hmac512.init(new SecretKeySpec(secret.getBytes(StandardCharsets.UTF_8), "HmacSHA512"));
+            byte[] result = hmac512.doFinal(hashData.toString().getBytes(StandardCharsets.UTF_8));
+            StringBuilder sb = new StringBuilder(2 * result.length);
+            for (byte b : result) {
+                sb.append(String.format("%02x", b & 0xff));
+            }
+            return query.append("&vnp_SecureHash=").append(sb).toString();
+        } catch (Exception e) {
+            return "";
+        }
+    }
+
     /**
      * Log kết quả
      */
@@ -271,5 +472,14 @@ public class PaymentThroughputTestController {
         private Integer batchSize = 100;       // Số requests tạo mỗi batch
         private Long amount = 100000L;        // Số tiền (VND) - mặc định 100k
     }
+
+    /**
+     * Request DTO cho signing benchmark
+     */
+    @Data
+    public static class SigningBenchmarkRequest {
+        private Integer iterations = 100000;  // Tổng số lần ký
+        private Integer threads;              // Mặc định = số CPU
+    }
 }
 
@@ -5,5 +5,8 @@ public enum PaymentStatus {
     PENDING,
     PAID,
     FAILED,
-    REFUNDED
+    REFUNDED,
+    EXPIRED,
+    // Gateway confirmed success after the payment was already EXPIRED (order cancelled): money must be refunded
+    REFUND_PENDING
 }
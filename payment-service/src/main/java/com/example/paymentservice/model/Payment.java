@@ -14,7 +14,10 @@ import java.math.BigDecimal;
 import java.time.Instant;
 
 @Entity
-@Table(name = "payments")
+@Table(name = "payments", indexes = {
+        @Index(name = "idx_payments_status_created_at", columnList = "status, created_at"),
+        @Index(name = "idx_payments_order_id", columnList = "order_id")
+})
 @Data
 @Builder
 @NoArgsConstructor
@@ -67,14 +70,7 @@ public class Payment {
     @Column(name = "return_url", length = 1024)
     private String returnUrl;
 
-    @Lob
-    @Column(name = "raw_callback", columnDefinition = "TEXT")
-    private String rawCallback;
-
-    // Store order data temporarily before order is created
-    @Lob
-    @Column(name = "order_data", columnDefinition = "TEXT")
-    private String orderData; // JSON string: {userId, addressId, selectedItems}
+    // rawCallback / orderData live in PaymentPayload (payment_payloads) to keep this row small
 
     @CreationTimestamp
     @Column(name = "created_at", updatable = false)
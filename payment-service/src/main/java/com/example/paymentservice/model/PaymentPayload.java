@@ -0,0 +1,46 @@
+package com.example.paymentservice.model;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.hibernate.annotations.CreationTimestamp;
+import org.hibernate.annotations.UpdateTimestamp;
+
+import java.time.Instant;
+
+/**
+ * Large TEXT payloads of a payment (order snapshot + raw gateway callback).
+ * Kept out of the payments table so status lookups and the expiry sweep
+ * only touch small rows. One row per payment, keyed by payment id.
+ */
+@Entity
+@Table(name = "payment_payloads")
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class PaymentPayload {
+
+    @Id
+    @Column(name = "payment_id", columnDefinition = "VARCHAR(36)")
+    private String paymentId;
+
+    // Store order data temporarily before order is created
+    @Lob
+    @Column(name = "order_data", columnDefinition = "TEXT")
+    private String orderData; // JSON string: {userId, addressId, selectedItems}
+
+    @Lob
+    @Column(name = "raw_callback", columnDefinition = "TEXT")
+    private String rawCallback;
+
+    @CreationTimestamp
+    @Column(name = "created_at", updatable = false)
+    private Instant createdAt;
+
+    @UpdateTimestamp
+    @Column(name = "updated_at")
+    private Instant updatedAt;
+}
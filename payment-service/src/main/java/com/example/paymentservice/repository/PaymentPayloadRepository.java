@@ -0,0 +1,46 @@
+package com.example.paymentservice.repository;
+
+import com.example.paymentservice.model.PaymentPayload;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+public interface PaymentPayloadRepository extends JpaRepository<PaymentPayload, String> {
+
+    /**
+     * Whether the legacy payments.order_data column (before payment_payloads) still exists.
+     */
+    @Query(value = "SELECT COUNT(*) FROM information_schema.columns WHERE table_schema = DATABASE() "
+            + "AND table_name = 'payments' AND column_name = 'order_data'", nativeQuery = true)
+    int countLegacyPayloadColumns();
+
+    /**
+     * Copy one batch of legacy order_data/raw_callback values into payment_payloads.
+     * INSERT IGNORE + NOT EXISTS keep it idempotent when several instances run it.
+     */
+    @Modifying
+    @Query(value = "INSERT IGNORE INTO payment_payloads (payment_id, order_data, raw_callback, created_at, updated_at) "
+            + "SELECT p.id, p.order_data, p.raw_callback, p.created_at, NOW() FROM payments p "
+            + "WHERE (p.order_data IS NOT NULL OR p.raw_callback IS NOT NULL) "
+            + "AND NOT EXISTS (SELECT 1 FROM payment_payloads pp WHERE pp.payment_id = p.id) "
+            + "LIMIT :limit", nativeQuery = true)
+    int backfillFromLegacyColumns(@Param("limit") int limit);
+
+    /**
+     * Null one batch of legacy payments.order_data/raw_callback values that already live in payment_payloads,
+     * so the payments row itself shrinks. A row is only cleared when every non-null legacy value is present
+     * in its payload.
+     */
+    @Modifying
+    @Query(value = "UPDATE payments p SET p.order_data = NULL, p.raw_callback = NULL "
+            + "WHERE (p.order_data IS NOT NULL OR p.raw_callback IS NOT NULL) "
+            + "AND EXISTS (SELECT 1 FROM payment_payloads pp WHERE pp.payment_id = p.id "
+            + "AND (p.order_data IS NULL OR pp.order_data IS NOT NULL) "
+            + "AND (p.raw_callback IS NULL OR pp.raw_callback IS NOT NULL)) "
+            + "LIMIT :limit", nativeQuery = true)
+    int clearBackfilledLegacyColumns(@Param("limit") int limit);
+
+    @Query(value = "SELECT order_data FROM payments WHERE id = :paymentId", nativeQuery = true)
+    String findLegacyOrderData(@Param("paymentId") String paymentId);
+}
@@ -1,8 +1,15 @@
 package com.example.paymentservice.repository;
 
+import com.example.paymentservice.enums.PaymentStatus;
 import com.example.paymentservice.model.Payment;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 
+import java.time.Instant;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
@@ -10,4 +17,41 @@ public interface PaymentRepository extends JpaRepository<Payment, String> {
     Optional<Payment> findByTxnRef(String txnRef);
     Optional<Payment> findByOrderId(String orderId);
     List<Payment> findByOrderIdOrderByCreatedAtDesc(String orderId);
-}
\ No newline at end of file
+
+    /**
+     * Oldest payments stuck in {@code status} since before {@code cutoff}.
+     * Uses idx_payments_status_created_at; page size bounds the batch.
+     */
+    @Query("SELECT p.id FROM Payment p WHERE p.status = :status AND p.createdAt < :cutoff ORDER BY p.createdAt")
+    List<String> findIdsByStatusCreatedBefore(@Param("status") PaymentStatus status,
+                                              @Param("cutoff") Instant cutoff,
+                                              Pageable pageable);
+
+    /**
+     * Set-based status transition. The {@code from} guard makes it safe against
+     * a callback that flipped the row between select and update.
+     */
+    @Modifying(clearAutomatically = true)
+    @Query("UPDATE Payment p SET p.status = :to, p.updatedAt = :now WHERE p.id IN :ids AND p.status = :from")
+    int transitionStatus(@Param("ids") Collection<String> ids,
+                         @Param("from") PaymentStatus from,
+                         @Param("to") PaymentStatus to,
+                         @Param("now") Instant now);
+
+    /**
+     * Apply a gateway callback to one payment, only if it is still in {@code from}.
+     * Returns 0 when the sweeper (EXPIRED) or an earlier callback already moved it.
+     */
+    @Modifying(clearAutomatically = true)
+    @Query("UPDATE Payment p SET p.status = :to, p.responseCode = :responseCode, p.gatewayTxnNo = :gatewayTxnNo, "
+            + "p.bankCode = :bankCode, p.cardType = :cardType, p.updatedAt = :now "
+            + "WHERE p.id = :id AND p.status = :from")
+    int applyCallback(@Param("id") String id,
+                      @Param("from") PaymentStatus from,
+                      @Param("to") PaymentStatus to,
+                      @Param("responseCode") String responseCode,
+                      @Param("gatewayTxnNo") String gatewayTxnNo,
+                      @Param("bankCode") String bankCode,
+                      @Param("cardType") String cardType,
+                      @Param("now") Instant now);
+}
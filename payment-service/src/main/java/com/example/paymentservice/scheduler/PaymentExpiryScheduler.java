@@ -0,0 +1,43 @@
+package com.example.paymentservice.scheduler;
+
+import com.example.paymentservice.service.PaymentExpiryService;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+/**
+ * Sweeps stale PENDING payments (no MoMo/VNPay callback) to EXPIRED.
+ * Works in bounded batches, each in its own transaction, and caps the
+ * number of batches per run so a large backlog drains over several runs.
+ */
+@Component
+@Slf4j
+@RequiredArgsConstructor
+public class PaymentExpiryScheduler {
+
+    private final PaymentExpiryService paymentExpiryService;
+
+    @Value("${payment.expiry.max-batches-per-run:10}")
+    private int maxBatchesPerRun;
+
+    @Scheduled(fixedDelayString = "${payment.expiry.sweep-interval-ms:60000}")
+    public void sweepExpiredPayments() {
+        try {
+            int total = 0;
+            for (int i = 0; i < maxBatchesPerRun; i++) {
+                int expired = paymentExpiryService.expireBatch();
+                total += expired;
+                if (expired < paymentExpiryService.getBatchSize()) {
+                    break;
+                }
+            }
+            if (total > 0) {
+                log.info("[PAYMENT-EXPIRY] Sweep finished, {} payments expired", total);
+            }
+        } catch (Exception e) {
+            log.error("[PAYMENT-EXPIRY] Sweep error: {}", e.getMessage(), e);
+        }
+    }
+}
@@ -10,12 +10,13 @@ import com.example.paymentservice.repository.PaymentRepository;
 import com.example.paymentservice.util.MomoUtil;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import io.github.resilience4j.bulkhead.BulkheadFullException;
+import io.github.resilience4j.circuitbreaker.CallNotPermittedException;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
-import org.springframework.beans.factory.annotation.Value;
 import org.springframework.http.*;
-import org.springframework.kafka.core.KafkaTemplate;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 import org.springframework.util.StringUtils;
 import org.springframework.web.client.RestTemplate;
 
@@ -24,6 +25,8 @@ import java.time.Instant;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 
 @Service
 @RequiredArgsConstructor
@@ -32,18 +35,19 @@ public class MomoPaymentService {
 
     private final MomoProperties props;
     private final PaymentRepository paymentRepository;
-    private final KafkaTemplate<String, PaymentEvent> kafkaTemplate;
+    private final PendingPaymentService pendingPaymentService;
     private final ObjectMapper objectMapper;
-    private final RestTemplate restTemplate = new RestTemplate();
-
-    @Value("${kafka.topic.payment}")
-    private String paymentTopic;
+    private final RestTemplate gatewayRestTemplate;
+    private final PaymentGatewayExecutor gatewayExecutor;
+    private final PaymentCallbackService paymentCallbackService;
 
     /**
      * Create MoMo payment request.
      * Returns payUrl, qrCodeUrl, deeplink for client to proceed with payment.
+     * The gateway call runs on a virtual thread behind the MoMo bulkhead and
+     * circuit breaker, so a slow or failing gateway never holds a Tomcat thread.
      */
-    public PaymentUrlResponse createPayment(Map<String, Object> request) {
+    public CompletableFuture<PaymentUrlResponse> createPayment(Map<String, Object> request) {
         long amount = Long.parseLong(request.get("amount").toString());
         String orderId = request.get("orderId") != null ? request.get("orderId").toString() : null;
         String orderInfo = request.get("orderInfo") != null ? request.get("orderInfo").toString() : "Thanh toan don hang";
@@ -82,26 +86,26 @@ public class MomoPaymentService {
         requestBody.put("signature", signature);
         requestBody.put("lang", "vi");
 
-        try {
-            // Call MoMo API
-            HttpHeaders headers = new HttpHeaders();
-            headers.setContentType(MediaType.APPLICATION_JSON);
-            HttpEntity<Map<String, Object>> entity = new HttpEntity<>(requestBody, headers);
+        HttpHeaders headers = new HttpHeaders();
+        headers.setContentType(MediaType.APPLICATION_JSON);
+        HttpEntity<Map<String, Object>> entity = new HttpEntity<>(requestBody, headers);
 
-            ResponseEntity<String> response = restTemplate.postForEntity(
-                    props.getApiUrl(),
-                    entity,
-                    String.class
-            );
+        // Call MoMo API
+        return gatewayExecutor.execute(PaymentMethod.MOMO,
+                        () -> gatewayRestTemplate.postForEntity(props.getApiUrl(), entity, String.class).getBody())
+                .thenApply(body -> handleCreateResponse(body, request, orderId, momoOrderId, amount))
+                .exceptionally(ex -> handleCreateError(ex, momoOrderId));
+    }
 
-            JsonNode responseJson = objectMapper.readTree(response.getBody());
+    private PaymentUrlResponse handleCreateResponse(String body, Map<String, Object> request, String orderId,
+                                                    String momoOrderId, long amount) {
+        try {
+            JsonNode responseJson = objectMapper.readTree(body);
             int resultCode = responseJson.get("resultCode").asInt();
 
             if (resultCode == 0) {
                 // Success - extract payment URLs
                 String payUrl = responseJson.has("payUrl") ? responseJson.get("payUrl").asText() : null;
-                String qrCodeUrl = responseJson.has("qrCodeUrl") ? responseJson.get("qrCodeUrl").asText() : null;
-                String deeplink = responseJson.has("deeplink") ? responseJson.get("deeplink").asText() : null;
 
                 // Build orderData JSON if provided
                 String orderDataJson = null;
@@ -119,9 +123,8 @@ public class MomoPaymentService {
                         .status(PaymentStatus.PENDING)
                         .paymentUrl(payUrl)
                         .returnUrl(props.getReturnUrl())
-                        .orderData(orderDataJson)
                         .build();
-                paymentRepository.save(payment);
+                pendingPaymentService.create(payment, orderDataJson);
 
                 log.info("[MOMO] Payment created: orderId={}, momoOrderId={}, amount={}", 
                         orderId, momoOrderId, amount);
@@ -139,10 +142,26 @@ public class MomoPaymentService {
         }
     }
 
+    private PaymentUrlResponse handleCreateError(Throwable ex, String momoOrderId) {
+        Throwable cause = ex instanceof CompletionException && ex.getCause() != null ? ex.getCause() : ex;
+        if (cause instanceof CallNotPermittedException) {
+            log.warn("[MOMO] Circuit open, rejecting payment: momoOrderId={}", momoOrderId);
+            return new PaymentUrlResponse("98", "MoMo gateway temporarily unavailable, please try again later", null, null);
+        }
+        if (cause instanceof BulkheadFullException) {
+            log.warn("[MOMO] Gateway bulkhead full, rejecting payment: momoOrderId={}", momoOrderId);
+            return new PaymentUrlResponse("97", "MoMo gateway is busy, please try again later", null, null);
+        }
+        log.error("[MOMO] Error creating payment: {}", cause.getMessage(), cause);
+        return new PaymentUrlResponse("99", "System error: " + cause.getMessage(), null, null);
+    }
+
     /**
      * Handle IPN callback from MoMo.
-     * Verifies signature and updates payment status.
+     * Verifies signature and moves the payment out of PENDING (see PaymentCallbackService);
+     * duplicate or late callbacks publish nothing.
      */
+    @Transactional
     public PaymentStatus handleIpnCallback(Map<String, Object> callbackData) {
         try {
             String partnerCode = callbackData.get("partnerCode").toString();
@@ -175,9 +194,7 @@ public class MomoPaymentService {
                     resultCode,
                     transId
             );
-            String calculatedSignature = MomoUtil.hmacSHA256(props.getSecretKey(), rawSignature);
-
-            if (!calculatedSignature.equalsIgnoreCase(signatureFromMomo)) {
+            if (!MomoUtil.verifyHmacSHA256(props.getSecretKey(), rawSignature, signatureFromMomo)) {
                 log.error("[MOMO] IPN signature verification failed for orderId: {}", orderId);
                 return PaymentStatus.FAILED;
             }
@@ -189,18 +206,21 @@ public class MomoPaymentService {
                 return PaymentStatus.FAILED;
             }
 
-            // Update payment status
+            // Update payment status (guarded: only from PENDING)
             boolean success = resultCode == 0;
-            payment.setStatus(success ? PaymentStatus.PAID : PaymentStatus.FAILED);
-            payment.setResponseCode(String.valueOf(resultCode));
-            payment.setGatewayTxnNo(String.valueOf(transId));
-            payment.setRawCallback(objectMapper.writeValueAsString(callbackData));
-            paymentRepository.save(payment);
+            PaymentCallbackService.Outcome outcome = paymentCallbackService.applyCallback(payment, success,
+                    String.valueOf(resultCode), String.valueOf(transId), null, null);
+            String orderData = paymentCallbackService.saveRawCallback(payment,
+                    objectMapper.writeValueAsString(callbackData));
 
             log.info("[MOMO] IPN processed: orderId={}, resultCode={}, status={}", 
                     orderId, resultCode, payment.getStatus());
 
-            // Publish payment event to Kafka
+            if (!outcome.changed()) {
+                return outcome.status();
+            }
+
+            // Publish payment event to Kafka (after commit)
             try {
                 PaymentEvent event = PaymentEvent.builder()
                         .paymentId(payment.getId())
@@ -212,17 +232,15 @@ public class MomoPaymentService {
                         .method(PaymentMethod.MOMO.name())
                         .gatewayTxnNo(payment.getGatewayTxnNo())
                         .responseCode(payment.getResponseCode())
-                        .userId(extractFromOrderData(payment.getOrderData(), "userId"))
-                        .addressId(extractFromOrderData(payment.getOrderData(), "addressId"))
-                        .orderDataJson(payment.getOrderData())
-                        .platformVoucherCode(extractFromOrderData(payment.getOrderData(), "platformVoucherCode"))
-                        .platformVoucherDiscount(extractDiscountFromOrderData(payment.getOrderData()))
+                        .userId(extractFromOrderData(orderData, "userId"))
+                        .addressId(extractFromOrderData(orderData, "addressId"))
+                        .orderDataJson(orderData)
+                        .platformVoucherCode(extractFromOrderData(orderData, "platformVoucherCode"))
+                        .platformVoucherDiscount(extractDiscountFromOrderData(orderData))
                         .timestamp(Instant.now())
                         .build();
 
-                kafkaTemplate.send(paymentTopic, payment.getTxnRef(), event);
-                log.info("[MOMO] Published payment event to Kafka: txnRef={}, status={}",
-                        payment.getTxnRef(), payment.getStatus());
+                paymentCallbackService.publishAfterCommit(event);
             } catch (Exception e) {
                 log.error("[MOMO] Failed to publish payment event to Kafka: {}", e.getMessage(), e);
             }
@@ -239,6 +257,7 @@ public class MomoPaymentService {
      * Handle return URL redirect from MoMo.
      * Similar to IPN but for user redirect.
      */
+    @Transactional
     public PaymentStatus handleReturn(Map<String, String[]> parameterMap) {
         try {
             Map<String, Object> params = new HashMap<>();
@@ -0,0 +1,127 @@
+package com.example.paymentservice.service;
+
+import com.example.paymentservice.dto.PaymentEvent;
+import com.example.paymentservice.enums.PaymentStatus;
+import com.example.paymentservice.model.Payment;
+import com.example.paymentservice.model.PaymentPayload;
+import com.example.paymentservice.repository.PaymentPayloadRepository;
+import com.example.paymentservice.repository.PaymentRepository;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.Instant;
+
+/**
+ * Shared status transition for MoMo / VNPay callbacks.
+ *
+ * A callback only moves a payment out of PENDING (guarded UPDATE), so it can never overwrite
+ * an EXPIRED set by PaymentExpiryService or a result from an earlier callback. A successful
+ * callback arriving after EXPIRED (order already cancelled) moves the payment to REFUND_PENDING
+ * and raises an alert instead of reporting PAID. Events are published after commit.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class PaymentCallbackService {
+
+    private final PaymentRepository paymentRepository;
+    private final PaymentPayloadRepository paymentPayloadRepository;
+    private final PaymentPayloadBackfill paymentPayloadBackfill;
+    private final KafkaTemplate<String, PaymentEvent> kafkaTemplate;
+
+    @Value("${kafka.topic.payment}")
+    private String paymentTopic;
+
+    /**
+     * @param status  status of the payment after the callback
+     * @param changed false for a duplicate / late callback that changed nothing (no event to publish)
+     */
+    public record Outcome(PaymentStatus status, boolean changed) {
+    }
+
+    /**
+     * Apply the gateway result. Must run inside the caller's transaction.
+     * The fields of {@code payment} are updated in memory to the stored values for building the event.
+     */
+    public Outcome applyCallback(Payment payment, boolean success, String responseCode, String gatewayTxnNo,
+                                 String bankCode, String cardType) {
+        Instant now = Instant.now();
+        PaymentStatus target = success ? PaymentStatus.PAID : PaymentStatus.FAILED;
+
+        int updated = paymentRepository.applyCallback(payment.getId(), PaymentStatus.PENDING, target,
+                responseCode, gatewayTxnNo, bankCode, cardType, now);
+        if (updated == 0) {
+            PaymentStatus current = paymentRepository.findById(payment.getId())
+                    .map(Payment::getStatus)
+                    .orElse(payment.getStatus());
+            if (current != PaymentStatus.EXPIRED || !success) {
+                log.info("[PAYMENT] Ignoring callback for txnRef={}: status already {}", payment.getTxnRef(), current);
+                payment.setStatus(current);
+                return new Outcome(current, false);
+            }
+
+            target = PaymentStatus.REFUND_PENDING;
+            updated = paymentRepository.applyCallback(payment.getId(), PaymentStatus.EXPIRED, target,
+                    responseCode, gatewayTxnNo, bankCode, cardType, now);
+            if (updated == 0) {
+                return new Outcome(current, false);
+            }
+            log.error("[PAYMENT][ALERT] Payment captured after expiry, order was cancelled - refund required: "
+                    + "txnRef={}, gatewayTxnNo={}, amount={}", payment.getTxnRef(), gatewayTxnNo, payment.getAmount());
+        }
+
+        payment.setStatus(target);
+        payment.setResponseCode(responseCode);
+        payment.setGatewayTxnNo(gatewayTxnNo);
+        payment.setBankCode(bankCode);
+        payment.setCardType(cardType);
+        return new Outcome(target, true);
+    }
+
+    /**
+     * Store the raw callback and return the order snapshot of the payment
+     * (legacy payments.order_data for payments created before payment_payloads).
+     */
+    public String saveRawCallback(Payment payment, String rawCallback) {
+        PaymentPayload payload = paymentPayloadRepository.findById(payment.getId())
+                .orElseGet(() -> PaymentPayload.builder().paymentId(payment.getId()).build());
+        if (payload.getOrderData() == null) {
+            payload.setOrderData(paymentPayloadBackfill.legacyOrderData(payment.getId()));
+        }
+        payload.setRawCallback(rawCallback);
+        paymentPayloadRepository.save(payload);
+        return payload.getOrderData();
+    }
+
+    /**
+     * Send the event once the status change is committed, so order-service never acts on a
+     * transition that was rolled back.
+     */
+    public void publishAfterCommit(PaymentEvent event) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    send(event);
+                }
+            });
+        } else {
+            send(event);
+        }
+    }
+
+    private void send(PaymentEvent event) {
+        try {
+            kafkaTemplate.send(paymentTopic, event.getTxnRef(), event);
+            log.info("[PAYMENT] Published payment event to Kafka: txnRef={}, status={}",
+                    event.getTxnRef(), event.getStatus());
+        } catch (Exception e) {
+            log.error("[PAYMENT] Failed to publish payment event to Kafka: {}", e.getMessage(), e);
+        }
+    }
+}
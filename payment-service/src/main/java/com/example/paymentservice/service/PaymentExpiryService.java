@@ -0,0 +1,144 @@
+package com.example.paymentservice.service;
+
+import com.example.paymentservice.dto.PaymentEvent;
+import com.example.paymentservice.enums.PaymentStatus;
+import com.example.paymentservice.model.Payment;
+import com.example.paymentservice.model.PaymentPayload;
+import com.example.paymentservice.repository.PaymentPayloadRepository;
+import com.example.paymentservice.repository.PaymentRepository;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Expires PENDING payments whose gateway callback never arrived.
+ * Each call handles one bounded batch: select ids (index range scan),
+ * flip them with a single UPDATE, then publish one EXPIRED PaymentEvent
+ * per payment so order-service can release the held order / reservations.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class PaymentExpiryService {
+
+    private final PaymentRepository paymentRepository;
+    private final PaymentPayloadRepository paymentPayloadRepository;
+    private final KafkaTemplate<String, PaymentEvent> kafkaTemplate;
+    private final ObjectMapper objectMapper;
+
+    @Value("${kafka.topic.payment}")
+    private String paymentTopic;
+
+    // VNPay link expires after 15 minutes, leave some slack for late callbacks
+    @Value("${payment.expiry.pending-ttl-minutes:30}")
+    private long pendingTtlMinutes;
+
+    @Value("${payment.expiry.batch-size:200}")
+    private int batchSize;
+
+    /**
+     * Expire one batch of stale PENDING payments.
+     *
+     * @return number of payments transitioned to EXPIRED (0 when nothing is left)
+     */
+    @Transactional
+    public int expireBatch() {
+        Instant now = Instant.now();
+        Instant cutoff = now.minus(Duration.ofMinutes(pendingTtlMinutes));
+
+        List<String> ids = paymentRepository.findIdsByStatusCreatedBefore(
+                PaymentStatus.PENDING, cutoff, PageRequest.of(0, batchSize));
+        if (ids.isEmpty()) {
+            return 0;
+        }
+
+        int updated = paymentRepository.transitionStatus(ids, PaymentStatus.PENDING, PaymentStatus.EXPIRED, now);
+        if (updated == 0) {
+            return 0;
+        }
+
+        // Re-read: a callback may have won the race for some ids, only publish real expiries
+        List<Payment> expired = paymentRepository.findAllById(ids).stream()
+                .filter(p -> p.getStatus() == PaymentStatus.EXPIRED)
+                .toList();
+        Map<String, String> orderDataById = paymentPayloadRepository.findAllById(ids).stream()
+                .filter(p -> p.getOrderData() != null)
+                .collect(Collectors.toMap(PaymentPayload::getPaymentId, PaymentPayload::getOrderData));
+
+        List<PaymentEvent> events = expired.stream()
+                .map(payment -> toEvent(payment, orderDataById.get(payment.getId()), now))
+                .toList();
+        // Publish only once the EXPIRED transition is committed
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                publish(events);
+            }
+        });
+
+        log.info("[PAYMENT-EXPIRY] Expired {} pending payments older than {}", expired.size(), cutoff);
+        return updated;
+    }
+
+    private void publish(List<PaymentEvent> events) {
+        for (PaymentEvent event : events) {
+            try {
+                kafkaTemplate.send(paymentTopic, event.getTxnRef(), event);
+            } catch (Exception e) {
+                log.error("[PAYMENT-EXPIRY] Failed to publish expiry event: txnRef={}, error={}",
+                        event.getTxnRef(), e.getMessage());
+            }
+        }
+        // Producer batches the sends; flush once per sweep batch instead of per record
+        kafkaTemplate.flush();
+    }
+
+    public int getBatchSize() {
+        return batchSize;
+    }
+
+    private PaymentEvent toEvent(Payment payment, String orderData, Instant now) {
+        Function<String, String> field = name -> extractFromOrderData(orderData, name);
+        return PaymentEvent.builder()
+                .paymentId(payment.getId())
+                .txnRef(payment.getTxnRef())
+                .orderId(payment.getOrderId())
+                .status(PaymentStatus.EXPIRED.name())
+                .amount(payment.getAmount())
+                .currency(payment.getCurrency())
+                .method(payment.getMethod().name())
+                .userId(field.apply("userId"))
+                .addressId(field.apply("addressId"))
+                .orderDataJson(orderData)
+                .timestamp(now)
+                .build();
+    }
+
+    private String extractFromOrderData(String orderDataJson, String field) {
+        if (orderDataJson == null || orderDataJson.trim().isEmpty()) {
+            return null;
+        }
+        try {
+            JsonNode node = objectMapper.readTree(orderDataJson).get(field);
+            return node != null ? node.asText(null) : null;
+        } catch (Exception e) {
+            log.warn("[PAYMENT-EXPIRY] Failed to extract {} from orderData: {}", field, e.getMessage());
+            return null;
+        }
+    }
+}
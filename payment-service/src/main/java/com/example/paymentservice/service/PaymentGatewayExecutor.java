@@ -0,0 +1,68 @@
+package com.example.paymentservice.service;
+
+import com.example.paymentservice.enums.PaymentMethod;
+import io.github.resilience4j.bulkhead.Bulkhead;
+import io.github.resilience4j.bulkhead.BulkheadRegistry;
+import io.github.resilience4j.circuitbreaker.CircuitBreaker;
+import io.github.resilience4j.circuitbreaker.CircuitBreakerRegistry;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.stereotype.Component;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Supplier;
+
+/**
+ * Runs outbound gateway calls off the Tomcat request thread.
+ * <p>
+ * Each call executes on a virtual thread, guarded by the gateway's bulkhead
+ * (caps concurrent calls, rejects immediately when full) and circuit breaker
+ * (opens on high failure / slow-call rate). Bulkhead is the outer decorator so
+ * rejections for capacity are not counted as gateway failures.
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class PaymentGatewayExecutor implements DisposableBean {
+
+    private final CircuitBreakerRegistry gatewayCircuitBreakerRegistry;
+    private final BulkheadRegistry gatewayBulkheadRegistry;
+    private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+
+    public <T> CompletableFuture<T> execute(PaymentMethod gateway, Supplier<T> call) {
+        CircuitBreaker circuitBreaker = gatewayCircuitBreakerRegistry.circuitBreaker(gateway.name());
+        Bulkhead bulkhead = gatewayBulkheadRegistry.bulkhead(gateway.name());
+        Supplier<T> guarded = Bulkhead.decorateSupplier(bulkhead,
+                CircuitBreaker.decorateSupplier(circuitBreaker, call));
+        return CompletableFuture.supplyAsync(guarded, executor);
+    }
+
+    /**
+     * Circuit breaker / bulkhead state per gateway, for monitoring and the stub gateway test.
+     */
+    public Map<String, Object> snapshot() {
+        Map<String, Object> result = new HashMap<>();
+        for (PaymentMethod gateway : PaymentMethod.values()) {
+            CircuitBreaker cb = gatewayCircuitBreakerRegistry.circuitBreaker(gateway.name());
+            Bulkhead bh = gatewayBulkheadRegistry.bulkhead(gateway.name());
+            Map<String, Object> state = new HashMap<>();
+            state.put("circuitState", cb.getState().name());
+            state.put("failureRate", cb.getMetrics().getFailureRate());
+            state.put("slowCallRate", cb.getMetrics().getSlowCallRate());
+            state.put("notPermittedCalls", cb.getMetrics().getNumberOfNotPermittedCalls());
+            state.put("availableConcurrentCalls", bh.getMetrics().getAvailableConcurrentCalls());
+            result.put(gateway.name(), state);
+        }
+        return result;
+    }
+
+    @Override
+    public void destroy() {
+        executor.shutdown();
+    }
+}
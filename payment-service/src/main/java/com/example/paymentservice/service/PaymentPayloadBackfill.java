@@ -0,0 +1,70 @@
+package com.example.paymentservice.service;
+
+import com.example.paymentservice.repository.PaymentPayloadRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+/**
+ * Moves order_data / raw_callback written before payment_payloads existed into the side table and nulls the
+ * copied legacy columns. Runs in bounded batches on startup. While the legacy columns exist, {@link #legacyOrderData}
+ * lets a callback that races the backfill still read the order snapshot of an in-flight payment.
+ */
+@Component
+@Slf4j
+public class PaymentPayloadBackfill {
+
+    private final PaymentPayloadRepository paymentPayloadRepository;
+    private final TransactionTemplate transactionTemplate;
+
+    @Value("${payment.payload-backfill.batch-size:500}")
+    private int batchSize;
+
+    private volatile boolean legacyColumnsPresent;
+
+    public PaymentPayloadBackfill(PaymentPayloadRepository paymentPayloadRepository,
+                                  PlatformTransactionManager transactionManager) {
+        this.paymentPayloadRepository = paymentPayloadRepository;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void backfill() {
+        try {
+            legacyColumnsPresent = paymentPayloadRepository.countLegacyPayloadColumns() > 0;
+            if (!legacyColumnsPresent) {
+                return;
+            }
+            int total = 0;
+            int cleared = 0;
+            int[] batch;
+            do {
+                // Copy and clear in one transaction per batch: a row is only nulled once its payload is committed
+                batch = transactionTemplate.execute(status -> new int[] {
+                        paymentPayloadRepository.backfillFromLegacyColumns(batchSize),
+                        paymentPayloadRepository.clearBackfilledLegacyColumns(batchSize) });
+                total += batch[0];
+                cleared += batch[1];
+            } while (batch[0] >= batchSize || batch[1] >= batchSize);
+            if (total > 0 || cleared > 0) {
+                log.info("[PAYMENT-PAYLOAD] Backfilled {} payloads, cleared {} legacy payments rows", total, cleared);
+            }
+        } catch (Exception e) {
+            log.error("[PAYMENT-PAYLOAD] Backfill failed, callbacks fall back to legacy columns: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * order_data still stored on the legacy payments row, or null when the column is gone.
+     */
+    public String legacyOrderData(String paymentId) {
+        if (!legacyColumnsPresent) {
+            return null;
+        }
+        return paymentPayloadRepository.findLegacyOrderData(paymentId);
+    }
+}
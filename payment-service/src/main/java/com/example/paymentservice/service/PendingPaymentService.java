@@ -0,0 +1,36 @@
+package com.example.paymentservice.service;
+
+import com.example.paymentservice.model.Payment;
+import com.example.paymentservice.model.PaymentPayload;
+import com.example.paymentservice.repository.PaymentPayloadRepository;
+import com.example.paymentservice.repository.PaymentRepository;
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+/**
+ * Creates a PENDING payment together with its payment_payloads row.
+ */
+@Service
+@RequiredArgsConstructor
+public class PendingPaymentService {
+
+    private final PaymentRepository paymentRepository;
+    private final PaymentPayloadRepository paymentPayloadRepository;
+
+    /**
+     * Save the payment and, when present, its order snapshot in one transaction, so a failure between
+     * the two inserts never leaves a payment whose order cannot be rebuilt on callback.
+     */
+    @Transactional
+    public Payment create(Payment payment, String orderDataJson) {
+        Payment saved = paymentRepository.save(payment);
+        if (orderDataJson != null) {
+            paymentPayloadRepository.save(PaymentPayload.builder()
+                    .paymentId(saved.getId())
+                    .orderData(orderDataJson)
+                    .build());
+        }
+        return saved;
+    }
+}
@@ -9,9 +9,8 @@ import java.util.Map;
 import java.util.Random;
 import java.util.TimeZone;
 
-import org.springframework.beans.factory.annotation.Value;
-import org.springframework.kafka.core.KafkaTemplate;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 import org.springframework.util.StringUtils;
 
 import com.example.paymentservice.config.VnpayProperties;
@@ -36,11 +35,9 @@ public class VnpayPaymentService {
 
     private final VnpayProperties props;
     private final PaymentRepository paymentRepository;
-    private final KafkaTemplate<String, PaymentEvent> kafkaTemplate;
+    private final PendingPaymentService pendingPaymentService;
+    private final PaymentCallbackService paymentCallbackService;
     private final ObjectMapper objectMapper = new ObjectMapper();
-    
-    @Value("${kafka.topic.payment}")
-    private String paymentTopic;
 
     public PaymentUrlResponse createPayment(CreateVnpayPaymentRequest req, HttpServletRequest servletRequest) {
         long amountVnd = req.getAmount();
@@ -101,13 +98,18 @@ public class VnpayPaymentService {
                 .status(PaymentStatus.PENDING)
                 .paymentUrl(paymentUrl)
                 .returnUrl(vnpParams.get("vnp_ReturnUrl"))
-                .orderData(orderDataJson) // Store order data temporarily
                 .build();
-        paymentRepository.save(payment);
+        // Order data goes to the side table, not the hot payments row
+        pendingPaymentService.create(payment, orderDataJson);
 
         return new PaymentUrlResponse("00", "success", paymentUrl, vnpTxnRef);
     }
 
+    /**
+     * Return / IPN from VNPay. Only moves the payment out of PENDING (see PaymentCallbackService);
+     * duplicate or late callbacks publish nothing.
+     */
+    @Transactional
     public PaymentStatus handleReturn(Map<String, String[]> parameterMap) {
         Map<String, String> params = flattenParams(parameterMap);
         if (!VnpayUtil.verifySecureHash(params, props.getHashSecret())) {
@@ -127,25 +129,25 @@ public class VnpayPaymentService {
         }
 
         boolean success = "00".equals(responseCode) && "00".equals(transactionStatus);
-        payment.setStatus(success ? PaymentStatus.PAID : PaymentStatus.FAILED);
-        payment.setResponseCode(responseCode);
-        payment.setGatewayTxnNo(gatewayTxnNo);
-        payment.setBankCode(bankCode);
-        payment.setCardType(cardType);
-        
+        PaymentCallbackService.Outcome outcome = paymentCallbackService.applyCallback(payment, success,
+                responseCode, gatewayTxnNo, bankCode, cardType);
+
         // Store raw callback as JSON string (more readable and compact)
+        String rawCallbackJson;
         try {
-            String rawCallbackJson = objectMapper.writeValueAsString(params);
-            payment.setRawCallback(rawCallbackJson);
+            rawCallbackJson = objectMapper.writeValueAsString(params);
         } catch (Exception e) {
             // Fallback to toString if JSON conversion fails
             log.warn("[PAYMENT] Failed to convert params to JSON, using toString: {}", e.getMessage());
-            payment.setRawCallback(params.toString());
+            rawCallbackJson = params.toString();
+        }
+        String orderData = paymentCallbackService.saveRawCallback(payment, rawCallbackJson);
+
+        if (!outcome.changed()) {
+            return outcome.status();
         }
-        
-        paymentRepository.save(payment);
 
-        // Publish payment event to Kafka for order-service to consume
+        // Publish payment event to Kafka for order-service to consume (after commit)
         try {
             PaymentEvent event = PaymentEvent.builder()
                     .paymentId(payment.getId())
@@ -159,17 +161,15 @@ public class VnpayPaymentService {
                     .cardType(payment.getCardType())
                     .gatewayTxnNo(payment.getGatewayTxnNo())
                     .responseCode(payment.getResponseCode())
-                    .userId(extractUserIdFromOrderData(payment.getOrderData()))
-                    .addressId(extractAddressIdFromOrderData(payment.getOrderData()))
-                    .orderDataJson(payment.getOrderData())
-                    .platformVoucherCode(extractPlatformVoucherCodeFromOrderData(payment.getOrderData()))
-                    .platformVoucherDiscount(extractPlatformVoucherDiscountFromOrderData(payment.getOrderData()))
+                    .userId(extractUserIdFromOrderData(orderData))
+                    .addressId(extractAddressIdFromOrderData(orderData))
+                    .orderDataJson(orderData)
+                    .platformVoucherCode(extractPlatformVoucherCodeFromOrderData(orderData))
+                    .platformVoucherDiscount(extractPlatformVoucherDiscountFromOrderData(orderData))
                     .timestamp(Instant.now())
                     .build();
 
-            kafkaTemplate.send(paymentTopic, payment.getTxnRef(), event);
-            log.info("[PAYMENT] Published payment event to Kafka: txnRef={}, status={}", 
-                    payment.getTxnRef(), payment.getStatus());
+            paymentCallbackService.publishAfterCommit(event);
         } catch (Exception e) {
             log.error("[PAYMENT] Failed to publish payment event to Kafka: {}", e.getMessage(), e);
             // Don't fail payment processing, but log error
@@ -0,0 +1,82 @@
+package com.example.paymentservice.util;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Thread-safe HMAC signer bound to one algorithm + merchant secret.
+ * <p>
+ * {@link Mac} is not thread-safe and {@code Mac.getInstance + init} is costly
+ * (provider lookup, key schedule), so each thread keeps its own initialized
+ * instance and only calls {@code doFinal} per signature. Signers are cached
+ * per (algorithm, key), which keeps one set of Macs per merchant key.
+ */
+public final class HmacSigner {
+
+    public static final String HMAC_SHA256 = "HmacSHA256";
+    public static final String HMAC_SHA512 = "HmacSHA512";
+
+    private static final Map<String, HmacSigner> SIGNERS = new ConcurrentHashMap<>();
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    private final ThreadLocal<Mac> mac;
+
+    private HmacSigner(String algorithm, String key) {
+        SecretKeySpec secretKey = new SecretKeySpec(key.getBytes(StandardCharsets.UTF_8), algorithm);
+        // Fail fast on a bad algorithm/key instead of on the first payment
+        newMac(algorithm, secretKey);
+        this.mac = ThreadLocal.withInitial(() -> newMac(algorithm, secretKey));
+    }
+
+    /**
+     * Cached signer for the given algorithm and secret key.
+     */
+    public static HmacSigner of(String algorithm, String key) {
+        return SIGNERS.computeIfAbsent(algorithm + ':' + key, k -> new HmacSigner(algorithm, key));
+    }
+
+    /**
+     * Sign UTF-8 data and return lower-case hex.
+     */
+    public String signHex(String data) {
+        // doFinal resets the Mac, so the instance is ready for the next call
+        return toHex(mac.get().doFinal(data.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    /**
+     * Verify a hex signature (case-insensitive) in constant time.
+     */
+    public boolean verifyHex(String data, String signatureHex) {
+        if (signatureHex == null) {
+            return false;
+        }
+        byte[] expected = signHex(data).getBytes(StandardCharsets.US_ASCII);
+        byte[] actual = signatureHex.toLowerCase().getBytes(StandardCharsets.US_ASCII);
+        return MessageDigest.isEqual(expected, actual);
+    }
+
+    static String toHex(byte[] bytes) {
+        char[] out = new char[bytes.length * 2];
+        for (int i = 0, j = 0; i < bytes.length; i++) {
+            int v = bytes[i] & 0xff;
+            out[j++] = HEX[v >>> 4];
+            out[j++] = HEX[v & 0x0f];
+        }
+        return new String(out);
+    }
+
+    private static Mac newMac(String algorithm, SecretKeySpec secretKey) {
+        try {
+            Mac m = Mac.getInstance(algorithm);
+            m.init(secretKey);
+            return m;
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("Cannot initialize " + algorithm, e);
+        }
+    }
+}
@@ -1,12 +1,8 @@
 package com.example.paymentservice.util;
 
-import javax.crypto.Mac;
-import javax.crypto.spec.SecretKeySpec;
-import java.nio.charset.StandardCharsets;
-
 /**
  * Utility class for MoMo payment signature generation and verification.
- * MoMo uses HMAC SHA256 for signature.
+ * MoMo uses HMAC SHA256 for signature (cached per key, see {@link HmacSigner}).
  */
 public final class MomoUtil {
     
@@ -21,20 +17,23 @@ public final class MomoUtil {
      */
     public static String hmacSHA256(String key, String data) {
         try {
-            Mac hmac256 = Mac.getInstance("HmacSHA256");
-            SecretKeySpec secretKey = new SecretKeySpec(key.getBytes(StandardCharsets.UTF_8), "HmacSHA256");
-            hmac256.init(secretKey);
-            byte[] result = hmac256.doFinal(data.getBytes(StandardCharsets.UTF_8));
-            StringBuilder sb = new StringBuilder(2 * result.length);
-            for (byte b : result) {
-                sb.append(String.format("%02x", b & 0xff));
-            }
-            return sb.toString();
+            return HmacSigner.of(HmacSigner.HMAC_SHA256, key).signHex(data);
         } catch (Exception e) {
             return "";
         }
     }
 
+    /**
+     * Verify a MoMo signature in constant time.
+     */
+    public static boolean verifyHmacSHA256(String key, String data, String signature) {
+        try {
+            return HmacSigner.of(HmacSigner.HMAC_SHA256, key).verifyHex(data, signature);
+        } catch (Exception e) {
+            return false;
+        }
+    }
+
     /**
      * Build signature raw data for MoMo payment request.
      * Format: accessKey=$accessKey&amount=$amount&extraData=$extraData&ipnUrl=$ipnUrl
@@ -1,54 +1,50 @@
 package com.example.paymentservice.util;
 
-import javax.crypto.Mac;
-import javax.crypto.spec.SecretKeySpec;
 import java.net.URLEncoder;
 import java.nio.charset.StandardCharsets;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 
 public final class VnpayUtil {
+
+    private static final String SECURE_HASH = "vnp_SecureHash";
+    private static final String SECURE_HASH_TYPE = "vnp_SecureHashType";
+
+    // vnp_* field names are a small fixed set, encode each one only once
+    private static final Map<String, String> ENCODED_FIELD_NAMES = new ConcurrentHashMap<>();
+
     private VnpayUtil() {
     }
 
     public static String hmacSHA512(String key, String data) {
         try {
-            Mac hmac512 = Mac.getInstance("HmacSHA512");
-            SecretKeySpec secretKey = new SecretKeySpec(key.getBytes(StandardCharsets.UTF_8), "HmacSHA512");
-            hmac512.init(secretKey);
-            byte[] result = hmac512.doFinal(data.getBytes(StandardCharsets.UTF_8));
-            StringBuilder sb = new StringBuilder(2 * result.length);
-            for (byte b : result) {
-                sb.append(String.format("%02x", b & 0xff));
-            }
-            return sb.toString();
+            return HmacSigner.of(HmacSigner.HMAC_SHA512, key).signHex(data);
         } catch (Exception e) {
             return "";
         }
     }
 
+    /**
+     * Canonical VNPay query: fields sorted by name, empty values dropped,
+     * values URL-encoded once and shared between hash data and query string.
+     */
     public static String buildQueryAndHash(Map<String, String> params, String secret) {
-        List<String> fieldNames = new ArrayList<>(params.keySet());
-        Collections.sort(fieldNames);
+        String[] fieldNames = sortedFieldNames(params);
 
-        StringBuilder hashData = new StringBuilder();
-        StringBuilder query = new StringBuilder();
-        Iterator<String> itr = fieldNames.iterator();
-        while (itr.hasNext()) {
-            String fieldName = itr.next();
+        StringBuilder hashData = new StringBuilder(256);
+        StringBuilder query = new StringBuilder(384);
+        for (String fieldName : fieldNames) {
             String fieldValue = params.get(fieldName);
-            if (fieldValue != null && !fieldValue.trim().isEmpty()) {
-                hashData.append(fieldName);
-                hashData.append("=");
-                hashData.append(encode(fieldValue));
-
-                query.append(encode(fieldName));
-                query.append("=");
-                query.append(encode(fieldValue));
-                if (itr.hasNext()) {
-                    query.append("&");
-                    hashData.append("&");
-                }
+            if (isEmpty(fieldValue)) {
+                continue;
+            }
+            String encodedValue = encode(fieldValue);
+            if (hashData.length() > 0) {
+                hashData.append('&');
+                query.append('&');
             }
+            hashData.append(fieldName).append('=').append(encodedValue);
+            query.append(encodeFieldName(fieldName)).append('=').append(encodedValue);
         }
 
         String secureHash = hmacSHA512(secret, hashData.toString());
@@ -57,40 +53,49 @@ public final class VnpayUtil {
     }
 
     public static boolean verifySecureHash(Map<String, String> params, String secret) {
-        if (params == null || !params.containsKey("vnp_SecureHash")) {
+        if (params == null || !params.containsKey(SECURE_HASH)) {
             return false;
         }
-        String receivedHash = params.get("vnp_SecureHash");
-        Map<String, String> toHash = new HashMap<>(params);
-        toHash.remove("vnp_SecureHash");
-        toHash.remove("vnp_SecureHashType");
+        String receivedHash = params.get(SECURE_HASH);
 
-        List<String> fieldNames = new ArrayList<>(toHash.keySet());
-        Collections.sort(fieldNames);
-        StringBuilder hashData = new StringBuilder();
-        Iterator<String> itr = fieldNames.iterator();
-        while (itr.hasNext()) {
-            String fieldName = itr.next();
-            String fieldValue = toHash.get(fieldName);
-            if (fieldValue != null && !fieldValue.trim().isEmpty()) {
-                hashData.append(fieldName);
-                hashData.append("=");
-                hashData.append(encode(fieldValue));
-                if (itr.hasNext()) {
-                    hashData.append("&");
-                }
+        // Skip the hash fields while walking instead of copying the whole map
+        String[] fieldNames = sortedFieldNames(params);
+        StringBuilder hashData = new StringBuilder(256);
+        for (String fieldName : fieldNames) {
+            if (SECURE_HASH.equals(fieldName) || SECURE_HASH_TYPE.equals(fieldName)) {
+                continue;
             }
+            String fieldValue = params.get(fieldName);
+            if (isEmpty(fieldValue)) {
+                continue;
+            }
+            if (hashData.length() > 0) {
+                hashData.append('&');
+            }
+            hashData.append(fieldName).append('=').append(encode(fieldValue));
         }
-        String calcHash = hmacSHA512(secret, hashData.toString());
-        return calcHash.equalsIgnoreCase(receivedHash);
-    }
-
-    private static String encode(String input) {
         try {
-            return URLEncoder.encode(input, StandardCharsets.US_ASCII.name());
+            return HmacSigner.of(HmacSigner.HMAC_SHA512, secret).verifyHex(hashData.toString(), receivedHash);
         } catch (Exception e) {
-            return input;
+            return false;
         }
     }
-}
 
+    private static String[] sortedFieldNames(Map<String, String> params) {
+        String[] fieldNames = params.keySet().toArray(new String[0]);
+        Arrays.sort(fieldNames);
+        return fieldNames;
+    }
+
+    private static boolean isEmpty(String value) {
+        return value == null || value.isBlank();
+    }
+
+    private static String encodeFieldName(String fieldName) {
+        return ENCODED_FIELD_NAMES.computeIfAbsent(fieldName, VnpayUtil::encode);
+    }
+
+    private static String encode(String input) {
+        return URLEncoder.encode(input, StandardCharsets.US_ASCII);
+    }
+}
@@ -2,6 +2,7 @@ package com.example.stockservice.controller;
 
 import com.example.stockservice.dto.BatchDecreaseStockRequest;
 import com.example.stockservice.dto.BatchGetProductsRequest;
+import com.example.stockservice.dto.CursorPageDto;
 import com.example.stockservice.dto.ProductDto;
 import com.example.stockservice.jwt.JwtUtil;
 import com.example.stockservice.dto.SizeDto;
@@ -283,6 +284,24 @@ public class ProductController {
         return ResponseEntity.ok(dtoPage);
     }
 
+    @GetMapping("/listShopOwnerCursor")
+    public ResponseEntity<CursorPageDto<ProductDto>> getShopProductsByCursor(
+            HttpServletRequest httpServletRequest,
+            @RequestParam(required = false) String cursor,
+            @RequestParam(defaultValue = "20") Integer pageSize,
+            @RequestParam(required = false) String status,
+            @RequestParam(required = false) String keyword) {
+
+        String userId = jwtUtil.ExtractUserId(httpServletRequest);
+        CursorPageDto<Product> page = productService.getProductsByUserIdAfter(userId, status, keyword, cursor,
+                pageSize);
+        return ResponseEntity.ok(CursorPageDto.<ProductDto>builder()
+                .items(page.getItems().stream().map(this::toDto).collect(Collectors.toList()))
+                .nextCursor(page.getNextCursor())
+                .hasNext(page.isHasNext())
+                .build());
+    }
+
     @GetMapping("/listShopOwner")
     public ResponseEntity<List<ProductDto>> getAllShopProducts(HttpServletRequest request) {
         String userId = jwtUtil.ExtractUserId(request);
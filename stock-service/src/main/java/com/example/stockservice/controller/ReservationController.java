@@ -22,15 +22,19 @@ public class ReservationController {
     private final com.example.stockservice.service.flashsale.FlashSaleService flashSaleService;
     private final com.example.stockservice.repository.FlashSaleProductRepository flashSaleProductRepository;
     private final org.springframework.data.redis.core.StringRedisTemplate stringRedisTemplate;
+    private final com.example.stockservice.jwt.JwtUtil jwtUtil;
 
     /**
      * Reserve stock for an order
      * POST /v1/stock/reservation/reserve
-     * Request body: { orderId, productId, sizeId, quantity }
+     * Request body: { orderId, productId, sizeId, quantity, userId? }
      * Response: { success: true/false, status, reservedQuantity/message }
+     * Flash Sale item cần biết người mua để áp giới hạn mỗi user: lấy từ JWT nếu có,
+     * không thì từ userId trong body (internal call từ order-service); thiếu cả hai thì từ chối.
      */
     @PostMapping("/reserve")
-    public ResponseEntity<?> reserveStock(@RequestBody ReserveRequest request) {
+    public ResponseEntity<?> reserveStock(@RequestBody ReserveRequest request,
+            jakarta.servlet.http.HttpServletRequest httpRequest) {
         log.info("[API] Reserve request: orderId={}, product={}, size={}, qty={}",
                 request.orderId(), request.productId(), request.sizeId(), request.quantity());
 
@@ -40,14 +44,20 @@ public class ReservationController {
         if (isFlashSale) {
             // Route to Flash Sale Service
             log.info("[API] Routing to Flash Sale service for product={}", request.productId());
+            String userId = resolveBuyerId(request, httpRequest);
+            if (userId == null) {
+                return ResponseEntity.badRequest().body(Map.of(
+                        "success", false,
+                        "status", "FLASH_SALE_ERROR",
+                        "message", "Flash Sale reservation requires the buyer's userId"));
+            }
             try {
                 boolean reserved = flashSaleService.reserveFlashSaleStock(
                         request.orderId(),
                         request.productId(),
                         request.sizeId(),
                         request.quantity(),
-                        "system" // userId - can be extracted from context if needed
-                );
+                        userId);
 
                 if (reserved) {
                     return ResponseEntity.ok(Map.of(
@@ -89,6 +99,22 @@ public class ReservationController {
         }
     }
 
+    /**
+     * Người mua của request: ưu tiên JWT (client gọi trực tiếp), sau đó userId trong body (internal call)
+     */
+    private String resolveBuyerId(ReserveRequest request, jakarta.servlet.http.HttpServletRequest httpRequest) {
+        String authHeader = httpRequest.getHeader("Authorization");
+        if (authHeader != null && authHeader.startsWith("Bearer ")) {
+            try {
+                return jwtUtil.ExtractUserId(httpRequest);
+            } catch (Exception e) {
+                log.warn("[API] Failed to extract userId from token: {}", e.getMessage());
+                return null;
+            }
+        }
+        return request.userId() != null && !request.userId().isBlank() ? request.userId() : null;
+    }
+
     /**
      * Check if product is currently in an active Flash Sale
      * Simply check if product has APPROVED Flash Sale registration
@@ -178,6 +204,7 @@ public class ReservationController {
             String orderId,
             String productId,
             String sizeId,
-            int quantity) {
+            int quantity,
+            String userId) {
     }
 }
@@ -15,9 +15,9 @@ import java.util.List;
  * 
  * ENDPOINTS:
  * - GET /v1/stock/analytics/shop/overview - Tổng hợp analytics
- * - GET /v1/stock/analytics/shop/top-products - Top sản phẩm được xem nhiều
+ * - GET /v1/stock/analytics/shop/top-products - Top sản phẩm được xem nhiều (phân trang)
  * - GET /v1/stock/analytics/shop/funnel - Conversion funnel
- * - GET /v1/stock/analytics/shop/abandoned - Sản phẩm bị bỏ rơi
+ * - GET /v1/stock/analytics/shop/abandoned - Sản phẩm bị bỏ rơi (phân trang)
  * 
  * AUTHENTICATION: Yêu cầu JWT token của shop owner
  */
@@ -66,17 +66,19 @@ public class ShopAnalyticsController {
     /**
      * Lấy danh sách sản phẩm được xem nhiều nhất
      * 
-     * Endpoint: GET /v1/stock/analytics/shop/top-products?limit=10
+     * Endpoint: GET /v1/stock/analytics/shop/top-products?limit=10&page=0
      * Auth: Yêu cầu JWT token (shop owner)
      * 
-     * @param limit Số lượng sản phẩm tối đa (default: 10)
+     * @param limit Số lượng sản phẩm mỗi trang (default: 10, tối đa 100)
+     * @param page Trang, bắt đầu từ 0 (default: 0)
      * @return Danh sách TopProductDTO
      */
     @GetMapping("/top-products")
     public ResponseEntity<List<TopProductDTO>> getTopProducts(
-            @RequestParam(defaultValue = "10") int limit
+            @RequestParam(defaultValue = "10") int limit,
+            @RequestParam(defaultValue = "0") int page
     ) {
-        log.info("API: Getting top {} viewed products", limit);
+        log.info("API: Getting top {} viewed products (page {})", limit, page);
         
         try {
             // Validate limit
@@ -85,14 +87,7 @@ public class ShopAnalyticsController {
             }
             
             // Service will extract shopId from JWT internally
-            ShopAnalyticsDTO analytics = analyticsService.getShopAnalytics();
-            List<TopProductDTO> topProducts = analytics.getTopViewedProducts();
-            
-            // Limit if needed
-            if (topProducts.size() > limit) {
-                topProducts = topProducts.subList(0, limit);
-            }
-            
+            List<TopProductDTO> topProducts = analyticsService.getTopViewedProducts(Math.max(page, 0), limit);
             return ResponseEntity.ok(topProducts);
             
         } catch (Exception e) {
@@ -124,8 +119,7 @@ public class ShopAnalyticsController {
         log.info("API: Getting conversion funnel");
         
         try {
-            ShopAnalyticsDTO analytics = analyticsService.getShopAnalytics();
-            return ResponseEntity.ok(analytics.getConversionFunnel());
+            return ResponseEntity.ok(analyticsService.getConversionFunnel());
             
         } catch (Exception e) {
             log.error("Error getting conversion funnel: {}", e.getMessage());
@@ -137,17 +131,19 @@ public class ShopAnalyticsController {
      * Lấy danh sách sản phẩm bị bỏ rơi (abandoned)
      * Sản phẩm có views cao nhưng purchases thấp
      * 
-     * Endpoint: GET /v1/stock/analytics/shop/abandoned?limit=10
+     * Endpoint: GET /v1/stock/analytics/shop/abandoned?limit=10&page=0
      * Auth: Yêu cầu JWT token (shop owner)
      * 
-     * @param limit Số lượng sản phẩm tối đa (default: 10)
+     * @param limit Số lượng sản phẩm mỗi trang (default: 10, tối đa 100)
+     * @param page Trang, bắt đầu từ 0 (default: 0)
      * @return Danh sách AbandonedProductDTO
      */
     @GetMapping("/abandoned")
     public ResponseEntity<List<AbandonedProductDTO>> getAbandonedProducts(
-            @RequestParam(defaultValue = "10") int limit
+            @RequestParam(defaultValue = "10") int limit,
+            @RequestParam(defaultValue = "0") int page
     ) {
-        log.info("API: Getting abandoned products with limit {}", limit);
+        log.info("API: Getting abandoned products with limit {} (page {})", limit, page);
         
         try {
             // Validate limit
@@ -155,14 +151,8 @@ public class ShopAnalyticsController {
                 limit = 10;
             }
             
-            ShopAnalyticsDTO analytics = analyticsService.getShopAnalytics();
-            List<AbandonedProductDTO> abandonedProducts = analytics.getAbandonedProducts();
-            
-            // Limit if needed
-            if (abandonedProducts.size() > limit) {
-                abandonedProducts = abandonedProducts.subList(0, limit);
-            }
-            
+            List<AbandonedProductDTO> abandonedProducts =
+                    analyticsService.getAbandonedProducts(Math.max(page, 0), limit);
             return ResponseEntity.ok(abandonedProducts);
             
         } catch (Exception e) {
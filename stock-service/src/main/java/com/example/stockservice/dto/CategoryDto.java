@@ -3,6 +3,8 @@ package com.example.stockservice.dto;
 import com.fasterxml.jackson.annotation.JsonInclude;
 import lombok.Data;
 
+import java.util.List;
+
 @Data
 @JsonInclude(JsonInclude.Include.NON_NULL)
 public class CategoryDto {
@@ -12,4 +14,6 @@ public class CategoryDto {
     private String ImageUrl;
     private Boolean active;
     private Long productCount;
+    private String parentId;
+    private List<String> childIds;
 }
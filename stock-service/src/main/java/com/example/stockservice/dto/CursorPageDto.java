@@ -0,0 +1,22 @@
+package com.example.stockservice.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+/**
+ * Trang dữ liệu theo keyset (cursor): gửi lại nextCursor để lấy trang kế tiếp.
+ * Chi phí mỗi trang không phụ thuộc vị trí trang như OFFSET.
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class CursorPageDto<T> {
+    private List<T> items;
+    private String nextCursor; // null khi không còn trang sau
+    private boolean hasNext;
+}
@@ -0,0 +1,44 @@
+package com.example.stockservice.dto;
+
+import com.example.stockservice.enums.ProductStatus;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Snapshot gọn của product + sizes dùng để enrich giỏ hàng (giá, trạng thái, tồn kho)
+ * mà không phải query DB cho từng item.
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class RedisCartProductDto {
+    private String id;
+    private String name;
+    private String description;
+    private double price;
+    private double originalPrice;
+    private double discountPercent;
+    private ProductStatus status;
+    private String imageId;
+    private String userId;
+    @Builder.Default
+    private List<SizeInfo> sizes = new ArrayList<>();
+
+    @Data
+    @Builder
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class SizeInfo {
+        private String id;
+        private String name;
+        private double priceModifier;
+        private int stock;
+        private Integer weight;
+    }
+}
@@ -41,5 +41,5 @@ public class SearchRequest {
     /**
      * Sort by field
      */
-    private String sortBy; // "relevance", "price-asc", "price-desc", "newest", "bestselling"
+    private String sortBy; // "relevance", "price-asc", "price-desc", "newest", "bestselling", "rating"
 }
@@ -1,7 +1,8 @@
 package com.example.stockservice.listener;
 
 import com.example.stockservice.event.ProductUpdateKafkaEvent;
-import com.example.stockservice.service.cart.CartService;
+import com.example.stockservice.service.analytic.RecommendationCacheStore;
+import com.example.stockservice.service.cart.CartResyncDebouncer;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.kafka.annotation.KafkaListener;
@@ -9,23 +10,28 @@ import org.springframework.stereotype.Component;
 
 /**
  * Listens for product update events from Kafka.
- * Proactively syncs cart items when product info changes (price, status, etc.)
+ * Proactively syncs cart items when product info changes (price, status, etc.).
+ * Bursts of updates for the same product are coalesced by {@link CartResyncDebouncer}.
+ * Also drops the product's precomputed similar-products list so it is rebuilt with the new data.
+ * (One listener per topic: a second container in the same group would split the partitions.)
  */
 @Component
 @RequiredArgsConstructor
 @Slf4j
 public class CartEventListener {
 
-    private final CartService cartService;
+    private final CartResyncDebouncer cartResyncDebouncer;
+    private final RecommendationCacheStore recommendationCacheStore;
 
     @KafkaListener(topics = "${kafka.topic.product-updates}", groupId = "${spring.kafka.consumer.group-id}")
     public void handleProductUpdatedEvent(ProductUpdateKafkaEvent event) {
         log.info("Received Kafka ProductUpdatedEvent for productId: {}", event.getProductId());
         try {
-            // Proactive sync: Update all cart items that reference this product
-            cartService.syncCartItemsForProduct(event.getProductId());
+            // Proactive sync: Update all cart items that reference this product (debounced)
+            cartResyncDebouncer.request(event.getProductId());
         } catch (Exception e) {
-            log.error("Error syncing cart items for productId: {}", event.getProductId(), e);
+            log.error("Error scheduling cart sync for productId: {}", event.getProductId(), e);
         }
+        recommendationCacheStore.evictSimilarProducts(event.getProductId());
     }
 }
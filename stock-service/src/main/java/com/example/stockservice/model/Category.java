@@ -23,6 +23,8 @@ public class Category extends BaseEntity {
     @OneToMany(mappedBy = "category")
     private List<Product> products;
     private String imageId;
+    // Category cha (null = root). Lưu id thay vì quan hệ để snapshot không phải lazy-load
+    private String parentId;
     // @Builder.Default
     // private Boolean active = true;
 }
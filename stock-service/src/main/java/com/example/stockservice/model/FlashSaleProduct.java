@@ -36,6 +36,9 @@ public class FlashSaleProduct extends BaseEntity {
     @Column(nullable = false)
     private int soldCount;
 
+    // Số lượng tối đa mỗi user được mua; null/0 = dùng stock.flash-sale.default-limit-per-user
+    private Integer limitPerUser;
+
     @Enumerated(EnumType.STRING)
     @Column(nullable = false)
     private FlashSaleStatus status;
@@ -7,6 +7,12 @@ import lombok.*;
 import java.util.List;
 
 @Entity(name = "products")
+@Table(name = "products", indexes = {
+        @Index(name = "idx_products_user_created", columnList = "userId, createdTimestamp, id"),
+        @Index(name = "idx_products_user_status_created", columnList = "userId, status, createdTimestamp, id"),
+        @Index(name = "idx_products_sold_count", columnList = "soldCount"),
+        @Index(name = "idx_products_average_rating", columnList = "averageRating")
+})
 @Builder
 @AllArgsConstructor
 @NoArgsConstructor
@@ -42,4 +48,18 @@ public class Product extends BaseEntity {
     @Lob
     @Column(columnDefinition = "TEXT")
     private String attributeJson;
+
+    // Tổng hợp đánh giá / lượt bán, chỉ cập nhật bằng câu UPDATE nguyên tử trong ProductRepository
+    // (không insert/update qua entity để save() không ghi đè giá trị cũ)
+    @Column(insertable = false, updatable = false, columnDefinition = "BIGINT DEFAULT 0")
+    private long ratingSum;
+
+    @Column(insertable = false, updatable = false, columnDefinition = "BIGINT DEFAULT 0")
+    private long ratingCount;
+
+    @Column(insertable = false, updatable = false)
+    private Double averageRating; // null khi chưa có đánh giá
+
+    @Column(insertable = false, updatable = false, columnDefinition = "BIGINT DEFAULT 0")
+    private long soldCount;
 }
\ No newline at end of file
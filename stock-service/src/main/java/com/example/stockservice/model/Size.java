@@ -7,6 +7,9 @@ import lombok.*;
 import java.util.List;
 
 @Entity(name = "sizes")
+@Table(name = "sizes", indexes = {
+        @Index(name = "idx_sizes_product_stock", columnList = "product_id, stock")
+})
 @Builder
 @AllArgsConstructor
 @NoArgsConstructor
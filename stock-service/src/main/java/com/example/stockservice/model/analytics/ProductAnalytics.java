@@ -12,7 +12,10 @@ import java.time.LocalDateTime;
 @Entity(name = "product_analytics")
 @Table(name = "product_analytics", indexes = {
     @Index(name = "idx_pa_shop_id", columnList = "shopId"),
-    @Index(name = "idx_pa_view_count", columnList = "viewCount")
+    @Index(name = "idx_pa_view_count", columnList = "viewCount"),
+    // Covering index cho shop analytics: tổng stats, top viewed (ORDER BY viewCount) và abandoned
+    // (lọc viewCount/purchaseCount) đều đọc trên index, không quét toàn bộ bảng
+    @Index(name = "idx_pa_shop_stats", columnList = "shopId, viewCount, purchaseCount, cartCount")
 })
 @Builder
 @Data
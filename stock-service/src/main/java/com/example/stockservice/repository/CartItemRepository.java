@@ -2,8 +2,12 @@ package com.example.stockservice.repository;
 
 import com.example.stockservice.model.CartItem;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
@@ -27,4 +31,63 @@ public interface CartItemRepository extends JpaRepository<CartItem, String> {
     
     // Find all cart items by product ID (for proactive sync)
     List<CartItem> findAllByProduct_Id(String productId);
+
+    // ============ Async persistence from Redis cart ============
+
+    @Modifying
+    @Query(value = "INSERT INTO cart_items (id, cart_id, product_id, size_id, quantity, unit_price, total_price, "
+            + "is_flash_sale, live_room_id, live_product_id, live_price, original_price, is_from_live, "
+            + "created_timestamp, updated_timestamp) "
+            + "VALUES (:id, :cartId, :productId, :sizeId, :quantity, :unitPrice, :totalPrice, "
+            + ":isFlashSale, :liveRoomId, :liveProductId, :livePrice, :originalPrice, :isFromLive, NOW(), NOW()) "
+            + "ON DUPLICATE KEY UPDATE size_id = VALUES(size_id), quantity = VALUES(quantity), "
+            + "unit_price = VALUES(unit_price), total_price = VALUES(total_price), "
+            + "is_flash_sale = VALUES(is_flash_sale), original_price = VALUES(original_price), "
+            + "updated_timestamp = NOW()", nativeQuery = true)
+    int upsertItem(@Param("id") String id,
+            @Param("cartId") String cartId,
+            @Param("productId") String productId,
+            @Param("sizeId") String sizeId,
+            @Param("quantity") int quantity,
+            @Param("unitPrice") double unitPrice,
+            @Param("totalPrice") double totalPrice,
+            @Param("isFlashSale") boolean isFlashSale,
+            @Param("liveRoomId") String liveRoomId,
+            @Param("liveProductId") String liveProductId,
+            @Param("livePrice") Double livePrice,
+            @Param("originalPrice") Double originalPrice,
+            @Param("isFromLive") Boolean isFromLive);
+
+    @Modifying
+    @Query("DELETE FROM cart_items c WHERE c.cart.id = :cartId AND c.id NOT IN :keepIds")
+    int deleteByCartIdExcept(@Param("cartId") String cartId, @Param("keepIds") Collection<String> keepIds);
+
+    @Modifying
+    @Query("DELETE FROM cart_items c WHERE c.cart.id = :cartId")
+    int deleteAllInCart(@Param("cartId") String cartId);
+
+    // ============ Product-driven resync (set-based) ============
+
+    @Modifying
+    @Query("UPDATE cart_items c SET c.unitPrice = :unitPrice, c.totalPrice = :unitPrice * c.quantity, "
+            + "c.isFlashSale = :isFlashSale, c.originalPrice = :originalPrice "
+            + "WHERE c.product.id = :productId AND c.size.id = :sizeId "
+            + "AND (c.isFromLive IS NULL OR c.isFromLive = false) "
+            + "AND (ABS(c.unitPrice - :unitPrice) > 0.01 OR c.isFlashSale <> :isFlashSale)")
+    int repriceBySize(@Param("productId") String productId,
+            @Param("sizeId") String sizeId,
+            @Param("unitPrice") double unitPrice,
+            @Param("originalPrice") Double originalPrice,
+            @Param("isFlashSale") boolean isFlashSale);
+
+    @Modifying
+    @Query("UPDATE cart_items c SET c.unitPrice = :unitPrice, c.totalPrice = :unitPrice * c.quantity, "
+            + "c.isFlashSale = :isFlashSale, c.originalPrice = :originalPrice "
+            + "WHERE c.product.id = :productId AND c.size IS NULL "
+            + "AND (c.isFromLive IS NULL OR c.isFromLive = false) "
+            + "AND (ABS(c.unitPrice - :unitPrice) > 0.01 OR c.isFlashSale <> :isFlashSale)")
+    int repriceWithoutSize(@Param("productId") String productId,
+            @Param("unitPrice") double unitPrice,
+            @Param("originalPrice") Double originalPrice,
+            @Param("isFlashSale") boolean isFlashSale);
 }
@@ -12,4 +12,22 @@ public interface CartRepository extends JpaRepository<Cart, String> {
     @org.springframework.data.jpa.repository.Lock(jakarta.persistence.LockModeType.PESSIMISTIC_WRITE)
     @org.springframework.data.jpa.repository.Query("SELECT c FROM carts c WHERE c.userId = :userId")
     Optional<Cart> findByUserIdWithLock(@org.springframework.data.repository.query.Param("userId") String userId);
+
+    // Ghi bền giỏ hàng từ Redis (id do Redis cấp nên dùng upsert thay vì save)
+    @org.springframework.data.jpa.repository.Modifying
+    @org.springframework.data.jpa.repository.Query(value = "INSERT INTO carts (id, user_id, total_amount, created_timestamp, updated_timestamp) "
+            + "VALUES (:id, :userId, :totalAmount, NOW(), NOW()) "
+            + "ON DUPLICATE KEY UPDATE total_amount = VALUES(total_amount), updated_timestamp = NOW()", nativeQuery = true)
+    int upsertCart(@org.springframework.data.repository.query.Param("id") String id,
+            @org.springframework.data.repository.query.Param("userId") String userId,
+            @org.springframework.data.repository.query.Param("totalAmount") double totalAmount);
+
+    // Tính lại tổng tiền cho mọi giỏ hàng chứa product trong một câu lệnh
+    @org.springframework.data.jpa.repository.Modifying
+    @org.springframework.data.jpa.repository.Query(value = "UPDATE carts c JOIN ("
+            + "SELECT ci.cart_id, SUM(ci.total_price) AS total FROM cart_items ci "
+            + "WHERE ci.cart_id IN (SELECT p.cart_id FROM cart_items p WHERE p.product_id = :productId) "
+            + "GROUP BY ci.cart_id) t ON t.cart_id = c.id "
+            + "SET c.total_amount = t.total, c.updated_timestamp = NOW()", nativeQuery = true)
+    int recalculateTotalsForProduct(@org.springframework.data.repository.query.Param("productId") String productId);
 }
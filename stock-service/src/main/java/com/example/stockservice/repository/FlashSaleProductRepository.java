@@ -3,8 +3,11 @@ package com.example.stockservice.repository;
 import com.example.stockservice.enums.FlashSaleStatus;
 import com.example.stockservice.model.FlashSaleProduct;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.util.Collection;
 import java.util.List;
 
 @Repository
@@ -20,4 +23,10 @@ public interface FlashSaleProductRepository extends JpaRepository<FlashSaleProdu
     int countBySessionId(String sessionId);
 
     List<FlashSaleProduct> findByProductId(String productId);
+
+    // Nạp kèm sizes trong một query (dùng cho snapshot flash sale trong bộ nhớ)
+    @Query("SELECT DISTINCT p FROM FlashSaleProduct p LEFT JOIN FETCH p.productSizes "
+            + "WHERE p.sessionId IN :sessionIds AND p.status = :status")
+    List<FlashSaleProduct> findWithSizesBySessionIdInAndStatus(@Param("sessionIds") Collection<String> sessionIds,
+            @Param("status") FlashSaleStatus status);
 }
@@ -1,10 +1,12 @@
 package com.example.stockservice.repository;
 
+import java.util.Collection;
 import java.util.List;
 
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.JpaSpecificationExecutor;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
@@ -13,10 +15,15 @@ import com.example.stockservice.enums.ProductStatus;
 import com.example.stockservice.model.Product;
 
 @Repository
-public interface ProductRepository extends JpaRepository<Product, String> {
+public interface ProductRepository extends JpaRepository<Product, String>, JpaSpecificationExecutor<Product> {
     @Query("SELECT p FROM products p WHERE p.name LIKE CONCAT('%', :keyword, '%')")
     List<Product> searchProductByName(@Param("keyword") String keyword);
 
+    // Phân trang trong DB (LIMIT/OFFSET + COUNT) thay vì nạp toàn bộ kết quả LIKE
+    @Query(value = "SELECT p FROM products p WHERE p.name LIKE CONCAT('%', :keyword, '%')",
+            countQuery = "SELECT COUNT(p) FROM products p WHERE p.name LIKE CONCAT('%', :keyword, '%')")
+    Page<Product> searchProductByName(@Param("keyword") String keyword, Pageable pageable);
+
     @Query("SELECT p.id FROM products p WHERE p.category.name = :categoryName")
     List<String> findIdsByCategoryName(@Param("categoryName") String categoryName);
 
@@ -29,6 +36,9 @@ public interface ProductRepository extends JpaRepository<Product, String> {
 
     long countByCategory_Id(String categoryId);
 
+    @Query("SELECT p.category.id, COUNT(p) FROM products p WHERE p.category IS NOT NULL GROUP BY p.category.id")
+    List<Object[]> countGroupByCategoryId();
+
     @Query("SELECT COUNT(p) FROM products p WHERE p.userId = :userId")
     long countByUserId(@Param("userId") String userId);
 
@@ -42,6 +52,14 @@ public interface ProductRepository extends JpaRepository<Product, String> {
     @Query("SELECT p.category.name, COUNT(p) FROM products p WHERE p.userId = :userId GROUP BY p.category.name")
     List<Object[]> countProductsByCategory(@Param("userId") String userId);
 
+    // Thông tin tóm tắt (id, name, imageId, price) của nhiều product, không fetch sizes
+    @Query("SELECT p.id, p.name, p.imageId, p.price FROM products p WHERE p.id IN :ids")
+    List<Object[]> findSummariesByIdIn(@Param("ids") Collection<String> ids);
+
+    // Các id trong danh sách còn tồn tại (lọc item giỏ hàng trỏ tới product đã xóa)
+    @Query("SELECT p.id FROM products p WHERE p.id IN :ids")
+    List<String> findExistingIds(@Param("ids") Collection<String> ids);
+
     // Batch API: Fetch multiple products in one query
     @Query("SELECT p FROM products p LEFT JOIN FETCH p.sizes WHERE p.id IN :ids")
     List<Product> findAllByIdIn(@Param("ids") List<String> ids);
@@ -58,6 +76,76 @@ public interface ProductRepository extends JpaRepository<Product, String> {
 
     // Multi-category recommendation
     Page<Product> findByCategoryIdInAndIdNotIn(List<String> categoryIds, List<String> excludedIds, Pageable pageable);
+
+    // Gợi ý cá nhân hóa: xếp hạng theo lượt xem trong DB, id làm tiebreak để các trang nối tiếp ổn định
+    @Query("SELECT p FROM products p LEFT JOIN product_analytics a ON a.productId = p.id " +
+            "WHERE p.category.id IN :categoryIds AND p.id NOT IN :excludedIds " +
+            "ORDER BY COALESCE(a.viewCount, 0) DESC, p.id ASC")
+    List<Product> findRankedByCategoryIdIn(@Param("categoryIds") List<String> categoryIds,
+            @Param("excludedIds") List<String> excludedIds, Pageable pageable);
     Page<Product> findByUserIdAndStatus(String userId, ProductStatus status, Pageable pageable);
 
+    // ==================== SELLER LISTING (phân trang trong DB) ====================
+
+    @Query(value = "SELECT p FROM products p WHERE p.userId = :userId AND p.name LIKE CONCAT('%', :keyword, '%')",
+            countQuery = "SELECT COUNT(p) FROM products p WHERE p.userId = :userId AND p.name LIKE CONCAT('%', :keyword, '%')")
+    Page<Product> searchByUserIdAndName(@Param("userId") String userId, @Param("keyword") String keyword,
+            Pageable pageable);
+
+    // Keyset: trang đầu (không cursor), dùng index (user_id, [status,] created_timestamp, id)
+    @Query("SELECT p FROM products p WHERE p.userId = :userId "
+            + "AND (:status IS NULL OR p.status = :status) "
+            + "AND (:keyword IS NULL OR p.name LIKE CONCAT('%', :keyword, '%')) "
+            + "ORDER BY p.createdTimestamp DESC, p.id DESC")
+    List<Product> findSellerPageFirst(@Param("userId") String userId, @Param("status") ProductStatus status,
+            @Param("keyword") String keyword, Pageable limit);
+
+    // Keyset: các trang sau, bắt đầu ngay sau (createdTimestamp, id) của phần tử cuối trang trước
+    @Query("SELECT p FROM products p WHERE p.userId = :userId "
+            + "AND (:status IS NULL OR p.status = :status) "
+            + "AND (:keyword IS NULL OR p.name LIKE CONCAT('%', :keyword, '%')) "
+            + "AND (p.createdTimestamp < :cursorTime OR (p.createdTimestamp = :cursorTime AND p.id < :cursorId)) "
+            + "ORDER BY p.createdTimestamp DESC, p.id DESC")
+    List<Product> findSellerPageAfter(@Param("userId") String userId, @Param("status") ProductStatus status,
+            @Param("keyword") String keyword, @Param("cursorTime") java.time.LocalDateTime cursorTime,
+            @Param("cursorId") String cursorId, Pageable limit);
+
+    // Sản phẩm sắp hết hàng: lọc bằng JOIN sizes (index sizes(product_id, stock)) thay vì nạp toàn bộ sản phẩm
+    @Query("SELECT DISTINCT p FROM products p JOIN p.sizes s WHERE p.userId = :userId "
+            + "AND p.status NOT IN :excludedStatuses AND s.stock <= :threshold")
+    List<Product> findLowStockByUserId(@Param("userId") String userId, @Param("threshold") int threshold,
+            @Param("excludedStatuses") List<ProductStatus> excludedStatuses);
+
+    // ==================== RATING / SOLD AGGREGATES ====================
+
+    // Cộng một đánh giá; MySQL gán SET từ trái sang phải nên average_rating dùng giá trị vừa cộng
+    @org.springframework.data.jpa.repository.Modifying
+    @Query(value = "UPDATE products SET rating_sum = rating_sum + :rating, rating_count = rating_count + 1, "
+            + "average_rating = rating_sum / rating_count WHERE id = :productId", nativeQuery = true)
+    int addRating(@Param("productId") String productId, @Param("rating") int rating);
+
+    @org.springframework.data.jpa.repository.Modifying
+    @Query(value = "UPDATE products SET sold_count = sold_count + :quantity WHERE id = :productId", nativeQuery = true)
+    int increaseSoldCount(@Param("productId") String productId, @Param("quantity") int quantity);
+
+    @org.springframework.data.jpa.repository.Modifying
+    @Query(value = "UPDATE products SET sold_count = GREATEST(sold_count - :quantity, 0) WHERE id = :productId", nativeQuery = true)
+    int decreaseSoldCount(@Param("productId") String productId, @Param("quantity") int quantity);
+
+    // Dựng lại tổng hợp đánh giá từ bảng reviews (chạy một lần khi nâng cấp)
+    @org.springframework.data.jpa.repository.Modifying
+    @Query(value = "UPDATE products p JOIN ("
+            + "SELECT product_id, SUM(rating) AS total, COUNT(*) AS cnt FROM reviews GROUP BY product_id) r "
+            + "ON r.product_id = p.id "
+            + "SET p.rating_sum = r.total, p.rating_count = r.cnt, p.average_rating = r.total / r.cnt", nativeQuery = true)
+    int rebuildRatingAggregates();
+
+    // Dựng lại lượt bán từ inventory_logs: ORDER (số âm) trừ đi CANCEL/RETURN (số dương)
+    @org.springframework.data.jpa.repository.Modifying
+    @Query(value = "UPDATE products p JOIN ("
+            + "SELECT product_id, SUM(-change_amount) AS sold FROM inventory_logs "
+            + "WHERE type IN ('ORDER', 'CANCEL', 'RETURN') GROUP BY product_id) l "
+            + "ON l.product_id = p.id "
+            + "SET p.sold_count = GREATEST(l.sold, 0)", nativeQuery = true)
+    int rebuildSoldCounts();
 }
@@ -2,8 +2,11 @@ package com.example.stockservice.repository;
 
 import com.example.stockservice.model.Size;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.util.Collection;
 import java.util.List;
 
 @Repository
@@ -13,4 +16,7 @@ public interface SizeRepository extends JpaRepository<Size, String> {
     Size findByProductIdAndName(String productId, String name);
 
     long countByProductIdAndStockGreaterThan(String productId, int stock);
+
+    @Query("SELECT s.id FROM sizes s WHERE s.id IN :ids")
+    List<String> findExistingIds(@Param("ids") Collection<String> ids);
 }
@@ -8,4 +8,5 @@ public class CategoryCreateRequest {
     @NotBlank(message = "Category name cannot be blank")
     private String name;
     private String description;
+    private String parentId;
 }
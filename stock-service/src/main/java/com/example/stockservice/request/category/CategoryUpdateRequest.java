@@ -9,4 +9,5 @@ public class CategoryUpdateRequest {
     private String id;
     private String name;
     private String description;
+    private String parentId;
 }
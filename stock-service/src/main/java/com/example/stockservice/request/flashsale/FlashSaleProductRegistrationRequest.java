@@ -12,6 +12,7 @@ public class FlashSaleProductRegistrationRequest {
     // ShopId will be extracted from token
     private Double originalPrice;
     private double salePrice;
+    private Integer limitPerUser; // Optional: giới hạn mua mỗi user
     // PREVIOUS: private int flashSaleStock;
     // NEW: List of sizes
     private List<FlashSaleSizeReq> sizes;
@@ -15,6 +15,7 @@ public class FlashSaleProductResponse {
     private double salePrice;
     private int flashSaleStock;
     private int soldCount;
+    private Integer limitPerUser;
     private FlashSaleStatus status;
     private String rejectionReason;
 
@@ -8,7 +8,9 @@ import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
 
 import com.example.stockservice.client.ShopCoinClient;
 import com.example.stockservice.dto.ReviewDto;
@@ -16,18 +18,36 @@ import com.example.stockservice.model.Review;
 import com.example.stockservice.repository.ReviewRepository;
 import com.example.stockservice.request.ReviewRequest;
 
-import lombok.RequiredArgsConstructor;
-
 @Service
-@RequiredArgsConstructor
 public class ReviewService {
     private final ReviewRepository reviewRepository;
     private final ShopCoinClient shopCoinClient;
     private final com.example.stockservice.repository.ProductRepository productRepository;
     private final com.example.stockservice.client.UserServiceClient userServiceClient;
     private final com.example.stockservice.client.ShopOwnerClient shopOwnerClient;
+    private final TransactionTemplate transactionTemplate;
+
+    public ReviewService(ReviewRepository reviewRepository, ShopCoinClient shopCoinClient,
+            com.example.stockservice.repository.ProductRepository productRepository,
+            com.example.stockservice.client.UserServiceClient userServiceClient,
+            com.example.stockservice.client.ShopOwnerClient shopOwnerClient,
+            PlatformTransactionManager transactionManager) {
+        this.reviewRepository = reviewRepository;
+        this.shopCoinClient = shopCoinClient;
+        this.productRepository = productRepository;
+        this.userServiceClient = userServiceClient;
+        this.shopOwnerClient = shopOwnerClient;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+    }
 
+    /**
+     * Gọi Feign (avatar, ShopCoin) nằm ngoài transaction: chỉ insert review + cộng rating
+     * giữ connection DB, không giữ nó trong lúc chờ service khác.
+     */
     public ReviewDto createReview(String token, ReviewRequest request) {
+        // Lookup từ xa trước khi mở transaction ghi
+        String freshAvatar = resolveAvatar(request.getUserId(), request.getUserAvatar());
+
         Review review = Review.builder()
                 .userId(request.getUserId())
                 .username(request.getUsername())
@@ -38,15 +58,21 @@ public class ReviewService {
                 .imageIds(request.getImageIds() == null ? List.of() : request.getImageIds())
                 .build();
 
-        Review saved = reviewRepository.save(review);
+        Review saved = transactionTemplate.execute(status -> {
+            Review persisted = reviewRepository.save(review);
+            // Cập nhật tổng hợp đánh giá của sản phẩm trong cùng transaction
+            productRepository.addRating(persisted.getProductId(), persisted.getRating());
+            return persisted;
+        });
 
+        // Thưởng ShopCoin sau khi review đã commit
         try {
             shopCoinClient.completeReviewMission(token, request.getUserId());
         } catch (Exception e) {
             System.err.println("Failed to award ShopCoins for review: " + e.getMessage());
         }
 
-        return mapToDto(saved);
+        return mapToDto(saved, freshAvatar);
     }
 
     public List<ReviewDto> getReviewsByProductId(String productId) {
@@ -77,9 +103,12 @@ public class ReviewService {
     }
 
     private ReviewDto mapToDto(Review review) {
+        return mapToDto(review, resolveAvatar(review.getUserId(), review.getUserAvatar()));
+    }
+
+    private ReviewDto mapToDto(Review review, String freshAvatar) {
         String pName = "";
         String pImage = "";
-        String freshAvatar = review.getUserAvatar();
 
         try {
             com.example.stockservice.model.Product p = productRepository.findById(review.getProductId()).orElse(null);
@@ -93,23 +122,6 @@ public class ReviewService {
             // ignore
         }
 
-        try {
-            org.springframework.http.ResponseEntity<com.example.stockservice.dto.UserDto> userRes = userServiceClient
-                    .getUserById(review.getUserId());
-            if (userRes != null && userRes.getBody() != null && userRes.getBody().getImageUrl() != null) {
-                freshAvatar = userRes.getBody().getImageUrl();
-            } else {
-                org.springframework.http.ResponseEntity<com.example.stockservice.dto.ShopOwnerDto> shopRes = shopOwnerClient
-                        .getShopOwnerByUserId(review.getUserId());
-                if (shopRes != null && shopRes.getBody() != null && shopRes.getBody().getImageUrl() != null) {
-                    freshAvatar = shopRes.getBody().getImageUrl();
-                }
-            }
-        } catch (Exception e) {
-            // System.out.println("DEBUG: Failed to fetch fresh avatar for user " +
-            // review.getUserId() + ": " + e.getMessage());
-        }
-
         return ReviewDto.builder()
                 .id(review.getId())
                 .userId(review.getUserId())
@@ -127,6 +139,30 @@ public class ReviewService {
                 .build();
     }
 
+    /**
+     * Avatar mới nhất của user (user-service, rồi shop owner), fallback về avatar lưu trong review
+     */
+    private String resolveAvatar(String userId, String fallback) {
+        String freshAvatar = fallback;
+        try {
+            org.springframework.http.ResponseEntity<com.example.stockservice.dto.UserDto> userRes = userServiceClient
+                    .getUserById(userId);
+            if (userRes != null && userRes.getBody() != null && userRes.getBody().getImageUrl() != null) {
+                freshAvatar = userRes.getBody().getImageUrl();
+            } else {
+                org.springframework.http.ResponseEntity<com.example.stockservice.dto.ShopOwnerDto> shopRes = shopOwnerClient
+                        .getShopOwnerByUserId(userId);
+                if (shopRes != null && shopRes.getBody() != null && shopRes.getBody().getImageUrl() != null) {
+                    freshAvatar = shopRes.getBody().getImageUrl();
+                }
+            }
+        } catch (Exception e) {
+            // System.out.println("DEBUG: Failed to fetch fresh avatar for user " +
+            // userId + ": " + e.getMessage());
+        }
+        return freshAvatar;
+    }
+
     @Transactional(readOnly = true)
     public boolean hasUserReviewedToday(String userId) {
         // Implement logic to check if user has a review with createdDate == Today
@@ -3,22 +3,23 @@ package com.example.stockservice.service.ai;
 import com.example.stockservice.dto.AIChatRequest;
 import com.example.stockservice.dto.AIChatResponse;
 import com.example.stockservice.dto.ProductSuggestionDto;
-import com.example.stockservice.repository.CategoryRepository;
+import com.example.stockservice.service.category.CategoryTreeCache;
 import com.example.stockservice.service.product.ProductService;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.ai.chat.client.ChatClient;
 import org.springframework.ai.chat.model.ChatModel;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnClass;
 import org.springframework.stereotype.Service;
 
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
-import java.util.ArrayList;
+import java.util.ArrayDeque;
+import java.util.Deque;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
 import java.util.UUID;
-import java.util.concurrent.ConcurrentHashMap;
 
 @Service
 @Slf4j
@@ -27,14 +28,10 @@ public class AIChatService {
 
     private final ChatClient chatClient;
     private final LanguageFilter languageFilter;
-    private final CategoryRepository categoryRepository;
+    private final CategoryTreeCache categoryTreeCache;
 
-    // Lưu conversation history (conversationId -> list of messages)
-    private final Map<String, List<ChatMessage>> conversationHistory = new ConcurrentHashMap<>();
-
-    // Record để lưu message
-    private record ChatMessage(String role, String content) {
-    }
+    // Conversation history: bounded (TTL + LRU), tin cũ được gộp thành bản tóm tắt
+    private final ConversationMemory conversationMemory;
 
     private static final String SYSTEM_PROMPT = """
             ROLE:
@@ -128,19 +125,39 @@ public class AIChatService {
             {conversation_history}
             """;
 
+    private static final CompiledPrompt SYSTEM_PROMPT_TEMPLATE = CompiledPrompt.compile(SYSTEM_PROMPT, List.of(
+            "current_time", "current_date", "day_of_week", "language", "user_id",
+            "available_categories", "flash_sale_context", "live_context", "conversation_history"));
+
+    // Ước lượng thô số token từ số ký tự (tiếng Việt có dấu ~3 ký tự/token)
+    private static final int CHARS_PER_TOKEN = 3;
+
+    private static final DateTimeFormatter TIME_FORMAT = DateTimeFormatter.ofPattern("HH:mm");
+    private static final DateTimeFormatter DATE_FORMAT = DateTimeFormatter.ofPattern("dd/MM/yyyy");
+    private static final DateTimeFormatter DAY_OF_WEEK_FORMAT = DateTimeFormatter.ofPattern("EEEE",
+            Locale.of("vi", "VN"));
+
     private final FlashSaleTools flashSaleTools;
     private final AdvancedProductTools advancedProductTools;
     private final LiveSessionTools liveSessionTools;
+    private final ToolResultCache toolResultCache;
+
+    // Tổng số token tối đa cho phần context động (danh mục + lịch sử hội thoại) chèn vào system prompt
+    @Value("${stock.ai.prompt.context-token-budget:1500}")
+    private int contextTokenBudget;
 
     public AIChatService(ChatModel chatModel, LanguageFilter languageFilter, ProductTools productTools,
-            ProductService productService, CategoryRepository categoryRepository,
+            ProductService productService, CategoryTreeCache categoryTreeCache,
             ContextualSuggestTool contextualSuggestTool, FlashSaleTools flashSaleTools,
-            AdvancedProductTools advancedProductTools, LiveSessionTools liveSessionTools) {
+            AdvancedProductTools advancedProductTools, LiveSessionTools liveSessionTools,
+            ConversationMemory conversationMemory, ToolResultCache toolResultCache) {
         this.languageFilter = languageFilter;
-        this.categoryRepository = categoryRepository;
+        this.categoryTreeCache = categoryTreeCache;
+        this.conversationMemory = conversationMemory;
         this.flashSaleTools = flashSaleTools;
         this.advancedProductTools = advancedProductTools;
         this.liveSessionTools = liveSessionTools;
+        this.toolResultCache = toolResultCache;
 
         // Build ChatClient với các tools
         this.chatClient = ChatClient.builder(chatModel)
@@ -176,11 +193,19 @@ public class AIChatService {
                 .build();
     }
 
-    private String getAvailableCategories() {
+    private String getAvailableCategories(int maxChars) {
         try {
-            return this.categoryRepository.findAll().stream()
-                    .map(category -> category.getName())
-                    .collect(java.util.stream.Collectors.joining(", "));
+            StringBuilder categories = new StringBuilder();
+            for (CategoryTreeCache.Node node : this.categoryTreeCache.all()) {
+                if (categories.length() + node.name().length() + 2 > maxChars) {
+                    break;
+                }
+                if (categories.length() > 0) {
+                    categories.append(", ");
+                }
+                categories.append(node.name());
+            }
+            return categories.toString();
         } catch (Exception e) {
             log.error("Failed to fetch categories context", e);
             return "Fashion, Electronics, Home & Living"; // Fallback
@@ -189,12 +214,15 @@ public class AIChatService {
 
     private String getFlashSaleContext() {
         try {
-            var response = flashSaleTools.getCurrentFlashSales()
-                    .apply(new FlashSaleTools.GetCurrentFlashSalesRequest());
-            if (response.total() > 0) {
-                return String.format("%d Flash Sale đang hoạt động", response.total());
-            }
-            return "Không có Flash Sale";
+            // Giống nhau cho mọi user: dùng chung kết quả trong TTL thay vì query ở mỗi lượt chat
+            return toolResultCache.get("context:flash-sale", () -> {
+                var response = flashSaleTools.getCurrentFlashSales()
+                        .apply(new FlashSaleTools.GetCurrentFlashSalesRequest());
+                if (response.total() > 0) {
+                    return String.format("%d Flash Sale đang hoạt động", response.total());
+                }
+                return "Không có Flash Sale";
+            });
         } catch (Exception e) {
             log.warn("Could not fetch flash sale context", e);
             return "N/A";
@@ -224,6 +252,40 @@ public class AIChatService {
          */
     }
 
+    /**
+     * Lịch sử hội thoại trong giới hạn ký tự: ưu tiên tin nhắn gần nhất, tin cũ và bản tóm tắt
+     * bị bỏ/cắt trước khi vượt ngân sách
+     */
+    private String buildHistoryContext(ConversationMemory.Conversation conversation, int maxChars) {
+        List<ConversationMemory.Message> history = conversation.messages();
+        Deque<String> lines = new ArrayDeque<>();
+        int used = 0;
+        for (int i = history.size() - 1; i >= 0; i--) {
+            ConversationMemory.Message msg = history.get(i);
+            String line = ("user".equals(msg.role()) ? "User: " : "AI: ") + msg.content() + "\n";
+            if (used + line.length() > maxChars) {
+                break;
+            }
+            lines.addFirst(line);
+            used += line.length();
+        }
+
+        StringBuilder historyBuilder = new StringBuilder();
+        String summary = conversation.summary();
+        int summaryBudget = maxChars - used;
+        if (!summary.isEmpty() && summaryBudget > 0) {
+            // Giữ phần cuối (mới nhất) của bản tóm tắt
+            String kept = summary.length() <= summaryBudget ? summary
+                    : summary.substring(summary.length() - summaryBudget);
+            historyBuilder.append("\nTÓM TẮT HỘI THOẠI TRƯỚC ĐÓ:\n").append(kept).append("\n");
+        }
+        if (!lines.isEmpty()) {
+            historyBuilder.append("\nLỊCH SỬ HỘI THOẠI:\n");
+            lines.forEach(historyBuilder::append);
+        }
+        return historyBuilder.toString();
+    }
+
     // Product IN Stock
     public AIChatResponse chat(AIChatRequest request) {
         try {
@@ -244,8 +306,9 @@ public class AIChatService {
             boolean isVietnamese = languageFilter.isVietnamese(userMessage);
             String language = isVietnamese ? "Tiếng Việt" : "English";
 
-            // 3. Get available categories context
-            String categoriesContext = getAvailableCategories();
+            // 3. Get available categories context (tối đa 1/3 ngân sách token, phần còn lại cho lịch sử)
+            int contextCharBudget = contextTokenBudget * CHARS_PER_TOKEN;
+            String categoriesContext = getAvailableCategories(contextCharBudget / 3);
 
             // 4. Get Flash Sale and Live context
             String flashSaleContext = getFlashSaleContext();
@@ -259,48 +322,30 @@ public class AIChatService {
 
             // 4. Build context with time
             LocalDateTime now = LocalDateTime.now();
-            String currentTime = now.format(DateTimeFormatter.ofPattern("HH:mm"));
-            String currentDate = now.format(DateTimeFormatter.ofPattern("dd/MM/yyyy"));
-            String dayOfWeek = now.format(DateTimeFormatter.ofPattern("EEEE", new Locale("vi", "VN")));
 
             // 5. Get conversation history
-            List<ChatMessage> history = conversationHistory.computeIfAbsent(
-                    conversationId, k -> new ArrayList<>());
-
-            // Build history string for prompt
-            StringBuilder historyBuilder = new StringBuilder();
-            if (!history.isEmpty()) {
-                historyBuilder.append("\nLỊCH SỬ HỘI THOẠI:\n");
-                // Keep last 6 messages for context
-                int startIdx = Math.max(0, history.size() - 6);
-                for (int i = startIdx; i < history.size(); i++) {
-                    ChatMessage msg = history.get(i);
-                    if ("user".equals(msg.role())) {
-                        historyBuilder.append("User: ").append(msg.content()).append("\n");
-                    } else {
-                        historyBuilder.append("AI: ").append(msg.content()).append("\n");
-                    }
-                }
-            }
+            ConversationMemory.Conversation conversation = conversationMemory.load(conversationId);
+            String historyContext = buildHistoryContext(conversation,
+                    Math.max(0, contextCharBudget - categoriesContext.length()));
 
             // 6. Get userId from request
             String userId = request.getUserId();
             if (userId == null)
                 userId = "not_logged_in";
 
-            String systemPrompt = SYSTEM_PROMPT
-                    .replace("{current_time}", currentTime)
-                    .replace("{current_date}", currentDate)
-                    .replace("{day_of_week}", dayOfWeek)
-                    .replace("{language}", language)
-                    .replace("{user_id}", userId)
-                    .replace("{available_categories}", categoriesContext)
-                    .replace("{flash_sale_context}", flashSaleContext)
-                    .replace("{live_context}", liveContext)
-                    .replace("{conversation_history}", historyBuilder.toString());
+            String systemPrompt = SYSTEM_PROMPT_TEMPLATE.render(Map.of(
+                    "current_time", now.format(TIME_FORMAT),
+                    "current_date", now.format(DATE_FORMAT),
+                    "day_of_week", now.format(DAY_OF_WEEK_FORMAT),
+                    "language", language,
+                    "user_id", userId,
+                    "available_categories", categoriesContext,
+                    "flash_sale_context", flashSaleContext,
+                    "live_context", liveContext,
+                    "conversation_history", historyContext));
 
             log.info("Processing: '{}' (ConvId: {}, UserId: {}, History: {} msgs)",
-                    userMessage, conversationId.substring(0, 8), userId, history.size());
+                    userMessage, conversationId.substring(0, 8), userId, conversation.messages().size());
 
             // 6. Call AI with Function Calling
             String aiResponse = chatClient.prompt()
@@ -314,14 +359,8 @@ public class AIChatService {
                 aiResponse = languageFilter.filterBlockedLanguage(aiResponse);
             }
 
-            // 8. Save to history
-            history.add(new ChatMessage("user", userMessage));
-            history.add(new ChatMessage("assistant", aiResponse));
-
-            // Keep history size manageable (max 20 messages)
-            while (history.size() > 20) {
-                history.removeFirst();
-            }
+            // 8. Save to history (bounded window + rolling summary)
+            conversationMemory.append(conversationId, userMessage, aiResponse);
 
             log.info("AI Response: {}", aiResponse);
 
@@ -367,7 +406,7 @@ public class AIChatService {
     }
 
     public void clearConversation(String conversationId) {
-        conversationHistory.remove(conversationId);
+        conversationMemory.clear(conversationId);
         log.info("Cleared conversation: {}", conversationId);
     }
 }
@@ -2,18 +2,17 @@ package com.example.stockservice.service.ai;
 
 import com.example.stockservice.dto.ProductSuggestionDto;
 import com.example.stockservice.enums.ProductStatus;
-import com.example.stockservice.model.Category;
 import com.example.stockservice.model.Product;
-import com.example.stockservice.repository.CategoryRepository;
+import com.example.stockservice.service.category.CategoryTreeCache;
 import com.example.stockservice.service.product.ProductService;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Description;
-import org.springframework.data.domain.Page;
 import org.springframework.stereotype.Component;
 
 import java.time.LocalDateTime;
+import java.util.Comparator;
 import java.util.List;
 import java.util.function.Function;
 import java.util.stream.Collectors;
@@ -28,7 +27,10 @@ import java.util.stream.Collectors;
 public class AdvancedProductTools {
 
     private final ProductService productService;
-    private final CategoryRepository categoryRepository;
+    private final CategoryTreeCache categoryTreeCache;
+    private final ToolResultCache toolResultCache;
+
+    private static final int CATALOG_SIZE = 100;
 
     // ThreadLocal to store products for carousel display
     private static final ThreadLocal<List<ProductSuggestionDto>> LAST_PRODUCTS = new ThreadLocal<>();
@@ -79,6 +81,14 @@ public class AdvancedProductTools {
             String createdAt) {
     }
 
+    private record CatalogEntry(
+            String categoryId,
+            LocalDateTime createdAt,
+            double discountPercent,
+            ProductInfo info,
+            ProductSuggestionDto suggestion) {
+    }
+
     public record CategoryInfo(
             String id,
             String name,
@@ -101,57 +111,22 @@ public class AdvancedProductTools {
                 int limit = request.limit() != null ? request.limit() : 10;
 
                 // Tạm thời lấy sản phẩm có discount cao nhất (giả định là trending)
-                Page<Product> allProducts = productService.getAllProducts(1, 100);
-
-                List<ProductInfo> trendingProducts = allProducts.getContent().stream()
-                        .filter(p -> p.getDiscountPercent() > 0)
-                        .sorted((p1, p2) -> Double.compare(p2.getDiscountPercent(), p1.getDiscountPercent()))
+                List<CatalogEntry> catalog = catalog();
+                List<CatalogEntry> selected = catalog.stream()
+                        .filter(e -> e.discountPercent() > 0)
+                        .sorted(Comparator.comparingDouble(CatalogEntry::discountPercent).reversed())
                         .limit(limit)
-                        .map(this::toProductInfo)
-                        .collect(Collectors.toList());
+                        .toList();
 
-                if (trendingProducts.isEmpty()) {
+                if (selected.isEmpty()) {
                     // Fallback: lấy sản phẩm mới nhất
-                    trendingProducts = allProducts.getContent().stream()
-                            .limit(limit)
-                            .map(this::toProductInfo)
-                            .collect(Collectors.toList());
+                    selected = catalog.stream().limit(limit).toList();
                 }
 
-                // Store products in ThreadLocal for carousel
-                List<ProductSuggestionDto> productDtos = allProducts.getContent().stream()
-                        .filter(p -> p.getDiscountPercent() > 0)
-                        .sorted((p1, p2) -> Double.compare(p2.getDiscountPercent(), p1.getDiscountPercent()))
-                        .limit(limit)
-                        .map(p -> ProductSuggestionDto.builder()
-                                .id(p.getId())
-                                .name(p.getName())
-                                .description(p.getDescription())
-                                .price(p.getPrice())
-                                .originalPrice(p.getOriginalPrice())
-                                .discountPercent(p.getDiscountPercent())
-                                .status(ProductStatus.IN_STOCK.name())
-                                .imageUrl(p.getImageId())
-                                .build())
-                        .collect(Collectors.toList());
-
-                if (productDtos.isEmpty()) {
-                    productDtos = allProducts.getContent().stream()
-                            .limit(limit)
-                            .map(p -> ProductSuggestionDto.builder()
-                                    .id(p.getId())
-                                    .name(p.getName())
-                                    .description(p.getDescription())
-                                    .price(p.getPrice())
-                                    .originalPrice(p.getOriginalPrice())
-                                    .discountPercent(p.getDiscountPercent())
-                                    .status(ProductStatus.IN_STOCK.name())
-                                    .imageUrl(p.getImageId())
-                                    .build())
-                            .collect(Collectors.toList());
-                }
+                List<ProductInfo> trendingProducts = infos(selected);
 
-                LAST_PRODUCTS.set(productDtos);
+                // Store products in ThreadLocal for carousel
+                LAST_PRODUCTS.set(suggestions(selected));
 
                 StringBuilder message = new StringBuilder();
                 message.append("📈 **Sản phẩm đang trending:**\n\n");
@@ -196,34 +171,17 @@ public class AdvancedProductTools {
 
                 LocalDateTime cutoffDate = LocalDateTime.now().minusDays(days);
 
-                // Lấy tất cả sản phẩm và filter theo ngày tạo
-                Page<Product> allProducts = productService.getAllProducts(1, 100);
-
-                List<ProductInfo> newProducts = allProducts.getContent().stream()
-                        .filter(p -> p.getCreatedTimestamp() != null && p.getCreatedTimestamp().isAfter(cutoffDate))
-                        .sorted((p1, p2) -> p2.getCreatedTimestamp().compareTo(p1.getCreatedTimestamp()))
+                // Filter snapshot sản phẩm theo ngày tạo
+                List<CatalogEntry> selected = catalog().stream()
+                        .filter(e -> e.createdAt() != null && e.createdAt().isAfter(cutoffDate))
+                        .sorted(Comparator.comparing(CatalogEntry::createdAt).reversed())
                         .limit(limit)
-                        .map(this::toProductInfo)
-                        .collect(Collectors.toList());
+                        .toList();
 
-                // Store products in ThreadLocal for carousel
-                List<ProductSuggestionDto> productDtos = allProducts.getContent().stream()
-                        .filter(p -> p.getCreatedTimestamp() != null && p.getCreatedTimestamp().isAfter(cutoffDate))
-                        .sorted((p1, p2) -> p2.getCreatedTimestamp().compareTo(p1.getCreatedTimestamp()))
-                        .limit(limit)
-                        .map(p -> ProductSuggestionDto.builder()
-                                .id(p.getId())
-                                .name(p.getName())
-                                .description(p.getDescription())
-                                .price(p.getPrice())
-                                .originalPrice(p.getOriginalPrice())
-                                .discountPercent(p.getDiscountPercent())
-                                .status(ProductStatus.IN_STOCK.name())
-                                .imageUrl(p.getImageId())
-                                .build())
-                        .collect(Collectors.toList());
+                List<ProductInfo> newProducts = infos(selected);
 
-                LAST_PRODUCTS.set(productDtos);
+                // Store products in ThreadLocal for carousel
+                LAST_PRODUCTS.set(suggestions(selected));
 
                 StringBuilder message = new StringBuilder();
                 if (newProducts.isEmpty()) {
@@ -273,11 +231,8 @@ public class AdvancedProductTools {
             try {
                 int limit = request.limit() != null ? request.limit() : 10;
 
-                // Tìm category theo tên
-                List<Category> categories = categoryRepository.findAll();
-                Category matchedCategory = categories.stream()
-                        .filter(cat -> cat.getName().toLowerCase().contains(request.categoryName().toLowerCase()))
-                        .findFirst()
+                // Tìm category theo tên (tên, alias hoặc chứa chuỗi) từ snapshot
+                CategoryTreeCache.Node matchedCategory = categoryTreeCache.findByName(request.categoryName())
                         .orElse(null);
 
                 if (matchedCategory == null) {
@@ -288,33 +243,18 @@ public class AdvancedProductTools {
                 }
 
                 // Lấy sản phẩm trong category
-                Page<Product> allProducts = productService.getAllProducts(1, 100);
-                List<ProductInfo> categoryProducts = allProducts.getContent().stream()
-                        .filter(p -> p.getCategory() != null && p.getCategory().getId().equals(matchedCategory.getId()))
+                List<CatalogEntry> selected = catalog().stream()
+                        .filter(e -> matchedCategory.id().equals(e.categoryId()))
                         .limit(limit)
-                        .map(this::toProductInfo)
-                        .collect(Collectors.toList());
+                        .toList();
 
-                // Store products in ThreadLocal for carousel
-                List<ProductSuggestionDto> productDtos = allProducts.getContent().stream()
-                        .filter(p -> p.getCategory() != null && p.getCategory().getId().equals(matchedCategory.getId()))
-                        .limit(limit)
-                        .map(p -> ProductSuggestionDto.builder()
-                                .id(p.getId())
-                                .name(p.getName())
-                                .description(p.getDescription())
-                                .price(p.getPrice())
-                                .originalPrice(p.getOriginalPrice())
-                                .discountPercent(p.getDiscountPercent())
-                                .status(ProductStatus.IN_STOCK.name())
-                                .imageUrl(p.getImageId())
-                                .build())
-                        .collect(Collectors.toList());
+                List<ProductInfo> categoryProducts = infos(selected);
 
-                LAST_PRODUCTS.set(productDtos);
+                // Store products in ThreadLocal for carousel
+                LAST_PRODUCTS.set(suggestions(selected));
 
                 StringBuilder message = new StringBuilder();
-                message.append("🏷️ **Sản phẩm trong '").append(matchedCategory.getName()).append("':**\n\n");
+                message.append("🏷️ **Sản phẩm trong '").append(matchedCategory.name()).append("':**\n\n");
                 if (categoryProducts.isEmpty()) {
                     message.append("Chưa có sản phẩm nào trong danh mục này.");
                 } else {
@@ -324,10 +264,10 @@ public class AdvancedProductTools {
                     }
                 }
 
-                log.info("Found {} products in category {}", categoryProducts.size(), matchedCategory.getName());
+                log.info("Found {} products in category {}", categoryProducts.size(), matchedCategory.name());
                 return new GetProductsByCategoryResponse(
                         categoryProducts,
-                        matchedCategory.getName(),
+                        matchedCategory.name(),
                         message.toString());
 
             } catch (Exception e) {
@@ -351,23 +291,13 @@ public class AdvancedProductTools {
             log.info("=== Tool called: getCategories() ===");
 
             try {
-                List<Category> categories = categoryRepository.findAll();
-
-                // Get product count for each category
-                Page<Product> allProducts = productService.getAllProducts(1, 1000);
-
-                List<CategoryInfo> categoryInfos = categories.stream()
-                        .map(cat -> {
-                            int productCount = (int) allProducts.getContent().stream()
-                                    .filter(p -> p.getCategory() != null && p.getCategory().getId().equals(cat.getId()))
-                                    .count();
-
-                            return new CategoryInfo(
-                                    cat.getId(),
-                                    cat.getName(),
-                                    cat.getDescription(),
-                                    productCount);
-                        })
+                // Snapshot đã có sẵn product count, không cần load toàn bộ sản phẩm
+                List<CategoryInfo> categoryInfos = categoryTreeCache.all().stream()
+                        .map(cat -> new CategoryInfo(
+                                cat.id(),
+                                cat.name(),
+                                cat.description(),
+                                (int) cat.productCount()))
                         .collect(Collectors.toList());
 
                 StringBuilder message = new StringBuilder();
@@ -398,6 +328,44 @@ public class AdvancedProductTools {
 
     // ============ Helper Methods ============
 
+    /**
+     * Snapshot sản phẩm IN_STOCK dùng chung cho trending / hàng mới / theo danh mục.
+     * Được cache ngắn hạn nên nhiều lượt gọi tool liên tiếp không load lại cả trang sản phẩm từ DB;
+     * ProductInfo/DTO được dựng sẵn khi còn persistence context (category là LAZY).
+     */
+    private List<CatalogEntry> catalog() {
+        return toolResultCache.get("advanced:catalog", () -> productService.getAllProducts(1, CATALOG_SIZE)
+                .getContent().stream()
+                .map(p -> new CatalogEntry(
+                        p.getCategory() != null ? p.getCategory().getId() : null,
+                        p.getCreatedTimestamp(),
+                        p.getDiscountPercent(),
+                        toProductInfo(p),
+                        toSuggestion(p)))
+                .toList());
+    }
+
+    private static List<ProductInfo> infos(List<CatalogEntry> entries) {
+        return entries.stream().map(CatalogEntry::info).collect(Collectors.toList());
+    }
+
+    private static List<ProductSuggestionDto> suggestions(List<CatalogEntry> entries) {
+        return entries.stream().map(CatalogEntry::suggestion).collect(Collectors.toList());
+    }
+
+    private ProductSuggestionDto toSuggestion(Product p) {
+        return ProductSuggestionDto.builder()
+                .id(p.getId())
+                .name(p.getName())
+                .description(p.getDescription())
+                .price(p.getPrice())
+                .originalPrice(p.getOriginalPrice())
+                .discountPercent(p.getDiscountPercent())
+                .status(ProductStatus.IN_STOCK.name())
+                .imageUrl(p.getImageId())
+                .build();
+    }
+
     private ProductInfo toProductInfo(Product product) {
         String categoryName = product.getCategory() != null ? product.getCategory().getName() : null;
         String createdAt = product.getCreatedTimestamp() != null
@@ -0,0 +1,75 @@
+package com.example.stockservice.service.ai;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Template prompt được tách sẵn (một lần, lúc khởi tạo) thành các đoạn literal và placeholder "{name}".
+ * Mỗi lượt chat chỉ cần nối các đoạn vào một StringBuilder, thay vì chạy chuỗi {@code replace}
+ * trên toàn bộ system prompt cho từng placeholder.
+ */
+final class CompiledPrompt {
+
+    private final List<String> literals;
+    private final List<String> placeholders;
+    private final int literalLength;
+
+    private CompiledPrompt(List<String> literals, List<String> placeholders) {
+        this.literals = literals;
+        this.placeholders = placeholders;
+        this.literalLength = literals.stream().mapToInt(String::length).sum();
+    }
+
+    /**
+     * @param names tên các placeholder được nhận diện; "{...}" khác giữ nguyên như literal
+     */
+    static CompiledPrompt compile(String template, List<String> names) {
+        List<String> literals = new ArrayList<>();
+        List<String> placeholders = new ArrayList<>();
+        StringBuilder literal = new StringBuilder();
+
+        int i = 0;
+        while (i < template.length()) {
+            String matched = null;
+            if (template.charAt(i) == '{') {
+                for (String name : names) {
+                    if (template.startsWith("{" + name + "}", i)) {
+                        matched = name;
+                        break;
+                    }
+                }
+            }
+            if (matched != null) {
+                literals.add(literal.toString());
+                placeholders.add(matched);
+                literal.setLength(0);
+                i += matched.length() + 2;
+            } else {
+                literal.append(template.charAt(i++));
+            }
+        }
+        literals.add(literal.toString());
+        return new CompiledPrompt(List.copyOf(literals), List.copyOf(placeholders));
+    }
+
+    /**
+     * Placeholder không có giá trị được thay bằng chuỗi rỗng
+     */
+    String render(Map<String, String> values) {
+        int capacity = literalLength;
+        for (String value : values.values()) {
+            capacity += value != null ? value.length() : 0;
+        }
+        StringBuilder out = new StringBuilder(capacity);
+        for (int i = 0; i < placeholders.size(); i++) {
+            out.append(literals.get(i));
+            String value = values.get(placeholders.get(i));
+            if (value != null) {
+                out.append(value);
+            }
+        }
+        out.append(literals.get(literals.size() - 1));
+        return out.toString();
+    }
+}
@@ -14,7 +14,10 @@ import org.springframework.context.annotation.Configuration;
 import org.springframework.context.annotation.Description;
 import org.springframework.data.domain.Page;
 
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
 import java.util.function.Function;
 import java.util.stream.Collectors;
 
@@ -23,6 +26,10 @@ import java.util.stream.Collectors;
 @RequiredArgsConstructor
 public class ContextualSuggestTool {
     private final ProductService productService;
+    private final ToolResultCache toolResultCache;
+
+    private static final int KEYWORD_PAGE_SIZE = 10;
+    private static final int MAX_SUGGESTIONS = 6;
     
     // ThreadLocal to store products from last function call
     private static final ThreadLocal<List<ProductSuggestionDto>> LAST_PRODUCTS = new ThreadLocal<>();
@@ -44,59 +51,31 @@ public class ContextualSuggestTool {
     public Function<SuggestionRequest, SuggestionResponse> suggestProductsByScenario() {
         return (request) -> {
             try {
-                log.info("🔍 AI requesting product suggestions for scenario: {}", request.scenario());
+                log.info("AI requesting product suggestions for scenario: {}", request.scenario());
 
-                // Parse keywords
-                List<String> keywords = List.of(request.scenario().split(","));
-                log.info("📝 Parsed keywords: {}", keywords);
-                
-                // Search products for EACH keyword separately and combine results
-                List<Product> allProducts = new java.util.ArrayList<>();
-                for (String keyword : keywords) {
+                // Search products for EACH keyword separately and combine results (dedup by id, max 6)
+                Map<String, ProductSuggestionDto> merged = new LinkedHashMap<>();
+                for (String keyword : request.scenario().split(",")) {
                     String trimmedKeyword = keyword.trim();
-                    if (!trimmedKeyword.isEmpty()) {
-                        try {
-                            log.info("Searching for keyword: '{}'", trimmedKeyword);
-                            Page<Product> page = productService.searchProductByKeyword(trimmedKeyword, 0, 10);
-                            log.info("Found {} products for keyword '{}'", page.getContent().size(), trimmedKeyword);
-                            allProducts.addAll(page.getContent());
-                        } catch (Exception e) {
-                            log.warn(" Failed to search for keyword: {}", trimmedKeyword, e);
+                    if (trimmedKeyword.isEmpty()) {
+                        continue;
+                    }
+                    try {
+                        for (ProductSuggestionDto dto : searchKeyword(trimmedKeyword)) {
+                            merged.putIfAbsent(dto.getId(), dto);
                         }
+                    } catch (Exception e) {
+                        log.warn("Failed to search for keyword: {}", trimmedKeyword, e);
+                    }
+                    if (merged.size() >= MAX_SUGGESTIONS) {
+                        break;
                     }
                 }
-                
-                log.info("📊 Total products found (before dedup): {}", allProducts.size());
-                
-                // Remove duplicates and limit to 6
-                List<ProductSuggestionDto> products = allProducts.stream()
-                        .distinct()  // Remove duplicates
-                        .limit(6)    // Limit to 6 products
-                        .map(p -> {
-                            log.info("=== Product Mapping ===");
-                            log.info("Product Name: {}", p.getName());
-                            log.info("Product ID: {}", p.getId());
-                            log.info("Category ID: {}", p.getCategory() != null ? p.getCategory().getId() : "null");
-                            log.info("Image ID: {}", p.getImageId());
-                            log.info("Price: {}", p.getPrice());
-                            log.info("======================");
-                            
-                            return ProductSuggestionDto.builder()
-                                    .id(p.getId())  // ← Product ID here
-                                    .name(p.getName())
-                                    .description(p.getDescription())
-                                    .price(p.getPrice())
-                                    .originalPrice(p.getOriginalPrice())
-                                    .discountPercent(p.getDiscountPercent())
-                                    .status(ProductStatus.IN_STOCK.name())
-                                    .imageUrl(p.getImageId() != null && !p.getImageId().isEmpty()
-                                            ? p.getImageId()  // ← Image ID here (not product ID!)
-                                            : null)
-                                    .build();
-                        })
+                List<ProductSuggestionDto> products = merged.values().stream()
+                        .limit(MAX_SUGGESTIONS)
                         .collect(Collectors.toList());
 
-                log.info("🎯 Final result: {} products", products.size());
+                log.debug("Scenario '{}' -> {} products", request.scenario(), products.size());
 
                 // Store products in ThreadLocal for AIChatService to retrieve
                 LAST_PRODUCTS.set(products);
@@ -127,6 +106,35 @@ public class ContextualSuggestTool {
         };
     }
 
+    /**
+     * Kết quả tìm theo một keyword, cache ngắn hạn: cùng keyword lặp lại giữa các lượt chat không query lại DB
+     */
+    private List<ProductSuggestionDto> searchKeyword(String keyword) {
+        String normalized = keyword.toLowerCase(Locale.ROOT);
+        return toolResultCache.get("suggest:keyword:" + normalized, () -> {
+            Page<Product> page = productService.searchProductByKeyword(keyword, 0, KEYWORD_PAGE_SIZE);
+            log.debug("Found {} products for keyword '{}'", page.getNumberOfElements(), keyword);
+            return page.getContent().stream()
+                    .map(ContextualSuggestTool::toSuggestion)
+                    .toList();
+        });
+    }
+
+    private static ProductSuggestionDto toSuggestion(Product p) {
+        return ProductSuggestionDto.builder()
+                .id(p.getId())
+                .name(p.getName())
+                .description(p.getDescription())
+                .price(p.getPrice())
+                .originalPrice(p.getOriginalPrice())
+                .discountPercent(p.getDiscountPercent())
+                .status(ProductStatus.IN_STOCK.name())
+                .imageUrl(p.getImageId() != null && !p.getImageId().isEmpty()
+                        ? p.getImageId()  // ← Image ID here (not product ID!)
+                        : null)
+                .build();
+    }
+
     @JsonClassDescription("Request for product suggestions based on user scenario")
     public record SuggestionRequest(
             @JsonProperty(required = true, value = "scenario")
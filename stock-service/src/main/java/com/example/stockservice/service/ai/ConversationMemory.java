@@ -0,0 +1,206 @@
+package com.example.stockservice.service.ai;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Bộ nhớ hội thoại của AI chat, giới hạn cả về thời gian lẫn kích thước.
+ *
+ * Mỗi hội thoại chỉ giữ {@code recent-messages} tin nhắn gần nhất; tin cũ hơn được gộp vào một
+ * bản tóm tắt ngắn (tối đa {@code summary-max-chars} ký tự), nên kích thước mỗi hội thoại là hằng số.
+ *
+ * Store:
+ * - memory (mặc định): LRU tối đa {@code max-conversations} hội thoại, hết hạn sau {@code ttl-minutes}
+ * không hoạt động
+ * - redis: key "ai:conv:{conversationId}" (JSON) có TTL, dùng chung giữa các instance và giữ qua restart
+ */
+@Component
+@Slf4j
+public class ConversationMemory {
+
+    private static final String REDIS_KEY_PREFIX = "ai:conv:";
+
+    private final StringRedisTemplate stringRedisTemplate;
+    private final ObjectMapper objectMapper;
+
+    @Value("${stock.ai.memory.store:memory}")
+    private String store;
+
+    @Value("${stock.ai.memory.ttl-minutes:30}")
+    private long ttlMinutes;
+
+    @Value("${stock.ai.memory.max-conversations:10000}")
+    private int maxConversations;
+
+    @Value("${stock.ai.memory.recent-messages:6}")
+    private int recentMessages;
+
+    @Value("${stock.ai.memory.summary-max-chars:600}")
+    private int summaryMaxChars;
+
+    @Value("${stock.ai.memory.max-message-chars:1000}")
+    private int maxMessageChars;
+
+    // Access-order LinkedHashMap = LRU; truy cập luôn trong synchronized(localStore)
+    private final LinkedHashMap<String, Conversation> localStore = new LinkedHashMap<>(256, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Conversation> eldest) {
+            return size() > maxConversations;
+        }
+    };
+
+    public ConversationMemory(StringRedisTemplate stringRedisTemplate, ObjectMapper objectMapper) {
+        this.stringRedisTemplate = stringRedisTemplate;
+        this.objectMapper = objectMapper;
+    }
+
+    public record Message(String role, String content) {
+    }
+
+    /**
+     * @param summary   tóm tắt các tin nhắn đã bị đẩy ra khỏi cửa sổ (rỗng nếu chưa có)
+     * @param messages  các tin nhắn gần nhất, cũ trước
+     * @param updatedAt epoch millis lần ghi cuối (dùng cho TTL của store memory)
+     */
+    public record Conversation(String summary, List<Message> messages, long updatedAt) {
+        static Conversation empty() {
+            return new Conversation("", List.of(), System.currentTimeMillis());
+        }
+    }
+
+    public Conversation load(String conversationId) {
+        Conversation conversation = isRedis() ? loadFromRedis(conversationId) : loadLocal(conversationId);
+        return conversation != null ? conversation : Conversation.empty();
+    }
+
+    /**
+     * Thêm một lượt hỏi/đáp; tin nhắn vượt cửa sổ được gộp vào bản tóm tắt
+     */
+    public void append(String conversationId, String userMessage, String aiResponse) {
+        Conversation current = load(conversationId);
+        List<Message> messages = new ArrayList<>(current.messages());
+        messages.add(new Message("user", truncate(userMessage, maxMessageChars)));
+        messages.add(new Message("assistant", truncate(aiResponse, maxMessageChars)));
+
+        StringBuilder summary = new StringBuilder(current.summary());
+        while (messages.size() > recentMessages) {
+            Message evicted = messages.removeFirst();
+            if (summary.length() > 0) {
+                summary.append('\n');
+            }
+            // User: giữ ý chính của câu hỏi; AI: chỉ giữ phần mở đầu của câu trả lời
+            summary.append("user".equals(evicted.role()) ? "- User: " + truncate(evicted.content(), 120)
+                    : "  AI: " + truncate(evicted.content(), 80));
+        }
+
+        Conversation updated = new Conversation(trimSummary(summary.toString()), List.copyOf(messages),
+                System.currentTimeMillis());
+        if (isRedis()) {
+            saveToRedis(conversationId, updated);
+        } else {
+            synchronized (localStore) {
+                localStore.put(conversationId, updated);
+            }
+        }
+    }
+
+    public void clear(String conversationId) {
+        if (isRedis()) {
+            stringRedisTemplate.delete(REDIS_KEY_PREFIX + conversationId);
+        } else {
+            synchronized (localStore) {
+                localStore.remove(conversationId);
+            }
+        }
+    }
+
+    /**
+     * Dọn các hội thoại hết hạn của store memory (store redis dùng TTL của key)
+     */
+    @Scheduled(fixedDelayString = "${stock.ai.memory.sweep-interval-ms:60000}")
+    public void evictExpired() {
+        if (isRedis()) {
+            return;
+        }
+        long cutoff = System.currentTimeMillis() - Duration.ofMinutes(ttlMinutes).toMillis();
+        int removed = 0;
+        synchronized (localStore) {
+            Iterator<Conversation> it = localStore.values().iterator();
+            while (it.hasNext()) {
+                if (it.next().updatedAt() < cutoff) {
+                    it.remove();
+                    removed++;
+                }
+            }
+        }
+        if (removed > 0) {
+            log.debug("Evicted {} expired AI conversations", removed);
+        }
+    }
+
+    private Conversation loadLocal(String conversationId) {
+        long cutoff = System.currentTimeMillis() - Duration.ofMinutes(ttlMinutes).toMillis();
+        synchronized (localStore) {
+            Conversation conversation = localStore.get(conversationId);
+            if (conversation != null && conversation.updatedAt() < cutoff) {
+                localStore.remove(conversationId);
+                return null;
+            }
+            return conversation;
+        }
+    }
+
+    private Conversation loadFromRedis(String conversationId) {
+        try {
+            String json = stringRedisTemplate.opsForValue().get(REDIS_KEY_PREFIX + conversationId);
+            return json != null ? objectMapper.readValue(json, Conversation.class) : null;
+        } catch (Exception e) {
+            log.warn("Failed to load AI conversation {}: {}", conversationId, e.getMessage());
+            return null;
+        }
+    }
+
+    private void saveToRedis(String conversationId, Conversation conversation) {
+        try {
+            stringRedisTemplate.opsForValue().set(REDIS_KEY_PREFIX + conversationId,
+                    objectMapper.writeValueAsString(conversation), Duration.ofMinutes(ttlMinutes));
+        } catch (Exception e) {
+            log.warn("Failed to save AI conversation {}: {}", conversationId, e.getMessage());
+        }
+    }
+
+    /**
+     * Giữ phần mới nhất của bản tóm tắt, cắt theo dòng
+     */
+    private String trimSummary(String summary) {
+        if (summary.length() <= summaryMaxChars) {
+            return summary;
+        }
+        String tail = summary.substring(summary.length() - summaryMaxChars);
+        int lineStart = tail.indexOf('\n');
+        return lineStart >= 0 ? tail.substring(lineStart + 1) : tail;
+    }
+
+    private boolean isRedis() {
+        return "redis".equalsIgnoreCase(store);
+    }
+
+    private static String truncate(String text, int maxChars) {
+        if (text == null) {
+            return "";
+        }
+        String compact = text.replaceAll("\\s+", " ").trim();
+        return compact.length() <= maxChars ? compact : compact.substring(0, maxChars) + "…";
+    }
+}
@@ -0,0 +1,72 @@
+package com.example.stockservice.service.ai;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+/**
+ * Cache ngắn hạn (trong JVM) cho kết quả của các AI tool và context dựng prompt.
+ *
+ * Mỗi lượt chat có thể gọi nhiều tool với cùng tham số (danh sách sản phẩm, tìm theo keyword,
+ * số Flash Sale đang chạy...). Dữ liệu này chấp nhận trễ vài chục giây, nên kết quả được giữ
+ * {@code ttl-seconds} giây theo key "tool:tham số" thay vì query lại DB ở mỗi lượt.
+ *
+ * Giá trị lưu phải là object đã tách khỏi persistence context (DTO/record), không lưu entity JPA.
+ */
+@Component
+@Slf4j
+public class ToolResultCache {
+
+    @Value("${stock.ai.tool-cache.ttl-seconds:30}")
+    private long ttlSeconds;
+
+    @Value("${stock.ai.tool-cache.max-entries:2000}")
+    private int maxEntries;
+
+    private final ConcurrentHashMap<String, Entry> entries = new ConcurrentHashMap<>();
+
+    private record Entry(Object value, long expiresAt) {
+    }
+
+    /**
+     * Trả kết quả còn hạn của key, hoặc gọi loader rồi lưu lại. Kết quả null không được cache.
+     */
+    @SuppressWarnings("unchecked")
+    public <T> T get(String key, Supplier<T> loader) {
+        long now = System.currentTimeMillis();
+        Entry cached = entries.get(key);
+        if (cached != null && cached.expiresAt() > now) {
+            return (T) cached.value();
+        }
+
+        T value = loader.get();
+        if (value != null) {
+            if (entries.size() >= maxEntries) {
+                evictExpired();
+            }
+            if (entries.size() < maxEntries) {
+                entries.put(key, new Entry(value, now + ttlSeconds * 1000));
+            }
+        }
+        return value;
+    }
+
+    public void invalidateAll() {
+        entries.clear();
+    }
+
+    @Scheduled(fixedDelayString = "${stock.ai.tool-cache.sweep-interval-ms:60000}")
+    public void evictExpired() {
+        long now = System.currentTimeMillis();
+        int before = entries.size();
+        entries.values().removeIf(entry -> entry.expiresAt() <= now);
+        int removed = before - entries.size();
+        if (removed > 0) {
+            log.debug("Evicted {} expired AI tool results", removed);
+        }
+    }
+}
@@ -2,13 +2,23 @@ package com.example.stockservice.service.analytic;
 
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.connection.zset.Aggregate;
+import org.springframework.data.redis.connection.zset.Weights;
 import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 
 import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
@@ -32,11 +42,13 @@ import com.example.stockservice.dto.analytics.SystemAnalyticsTrendDto;
  * Value: danh sách productId (mới nhất ở đầu)
  * Max: 20 items, TTL: 30 ngày
  * 4. TRENDING PRODUCTS (Sorted Set):
- * Key: "analytics:trending_products"
- * Value: productId với score = số lượt xem
+ * Bucket theo giờ: "analytics:trending_products:{yyyyMMddHH}" (score = số lượt xem trong giờ đó)
+ * Top-N đã gộp: "analytics:trending_products" (score = tổng lượt xem có trọng số suy giảm theo tuổi bucket)
  * 5. TRENDING KEYWORDS (Sorted Set):
- * Key: "analytics:trending_search"
- * Value: keyword với score = số lượt search
+ * Bucket theo giờ: "analytics:trending_search:{yyyyMMddHH}" (score = số lượt search trong giờ đó)
+ * Top-N đã gộp: "analytics:trending_search"
+ * Bucket tự hết hạn sau cửa sổ trending; top-N được dựng lại định kỳ bằng ZUNIONSTORE có WEIGHTS
+ * nên đọc trending luôn là ZREVRANGE trên một set có kích thước giới hạn.
  */
 @Service
 @RequiredArgsConstructor
@@ -63,6 +75,18 @@ public class AnalyticsRedisService {
     private static final long DAILY_STATS_TTL_DAYS = 365; // Daily stats giữ 1 năm
     private static final int MAX_RECENT_VIEWS = 20; // Tối đa 20 sản phẩm đã xem
 
+    private static final DateTimeFormatter TRENDING_BUCKET_FORMAT = DateTimeFormatter.ofPattern("yyyyMMddHH");
+
+    // Cửa sổ trending (giờ), chu kỳ bán rã của trọng số (giờ), số phần tử giữ lại trong top-N
+    @Value("${stock.trending.window-hours:24}")
+    private int trendingWindowHours;
+
+    @Value("${stock.trending.half-life-hours:6}")
+    private double trendingHalfLifeHours;
+
+    @Value("${stock.trending.top-size:500}")
+    private int trendingTopSize;
+
     // ==================== VIEW COUNTERS (Đếm lượt xem) ====================
 
     /**
@@ -71,7 +95,7 @@ public class AnalyticsRedisService {
      * Hoạt động:
      * 1. INCR: Tăng counter cho productId
      * 2. EXPIRE: Set TTL 7 ngày
-     * 3. ZINCRBY: Tăng score trong Sorted Set trending_products
+     * 3. ZINCRBY: Tăng score trong bucket trending_products của giờ hiện tại
      * 
      * @param productId ID sản phẩm
      */
@@ -81,8 +105,8 @@ public class AnalyticsRedisService {
             redisTemplate.opsForValue().increment(key);
             redisTemplate.expire(key, VIEW_COUNT_TTL_DAYS, TimeUnit.DAYS);
 
-            // Cập nhật Sorted Set để tracking sản phẩm trending
-            redisTemplate.opsForZSet().incrementScore(TRENDING_PRODUCTS_KEY, productId, 1);
+            // Cập nhật bucket giờ hiện tại để tracking sản phẩm trending
+            incrementTrendingBucket(TRENDING_PRODUCTS_KEY, productId);
             log.debug("Đã tăng view count cho sản phẩm: {}", productId);
         } catch (Exception e) {
             log.warn("Lỗi tăng view count cho {}: {}", productId, e.getMessage());
@@ -106,6 +130,31 @@ public class AnalyticsRedisService {
         }
     }
 
+    /**
+     * Lấy số lượt xem của nhiều sản phẩm bằng một lần MGET
+     * 
+     * @param productIds Danh sách ID sản phẩm
+     * @return productId → số lượt xem (0 nếu không tồn tại)
+     */
+    public Map<String, Long> getViewCounts(Collection<String> productIds) {
+        List<String> ids = new ArrayList<>(new LinkedHashSet<>(productIds));
+        Map<String, Long> result = new HashMap<>();
+        if (ids.isEmpty()) {
+            return result;
+        }
+        try {
+            List<Object> values = redisTemplate.opsForValue()
+                    .multiGet(ids.stream().map(id -> VIEW_COUNT_PREFIX + id).toList());
+            for (int i = 0; i < ids.size(); i++) {
+                result.put(ids.get(i), toLong(values != null ? values.get(i) : null));
+            }
+        } catch (Exception e) {
+            log.warn("Lỗi lấy view count cho {} sản phẩm: {}", ids.size(), e.getMessage());
+            ids.forEach(id -> result.putIfAbsent(id, 0L));
+        }
+        return result;
+    }
+
     // ==================== SEARCH COUNTERS (Đếm lượt tìm kiếm) ====================
 
     /**
@@ -113,7 +162,7 @@ public class AnalyticsRedisService {
      * Hoạt động:
      * 1. Chuẩn hóa keyword (lowercase, trim)
      * 2. INCR: Tăng counter cho keyword
-     * 3. ZINCRBY: Tăng score trong Sorted Set trending_search
+     * 3. ZINCRBY: Tăng score trong bucket trending_search của giờ hiện tại
      * 
      * @param keyword Từ khóa tìm kiếm
      */
@@ -124,8 +173,8 @@ public class AnalyticsRedisService {
             redisTemplate.opsForValue().increment(key);
             redisTemplate.expire(key, VIEW_COUNT_TTL_DAYS, TimeUnit.DAYS);
 
-            // Cập nhật Sorted Set để tracking từ khóa trending
-            redisTemplate.opsForZSet().incrementScore(TRENDING_SEARCH_KEY, normalizedKeyword, 1);
+            // Cập nhật bucket giờ hiện tại để tracking từ khóa trending
+            incrementTrendingBucket(TRENDING_SEARCH_KEY, normalizedKeyword);
             log.debug("Đã tăng search count cho từ khóa: {}", normalizedKeyword);
         } catch (Exception e) {
             log.warn("Lỗi tăng search count cho {}: {}", keyword, e.getMessage());
@@ -236,7 +285,7 @@ public class AnalyticsRedisService {
             }
             return result.stream()
                     .map(Object::toString)
-                    .collect(Collectors.toSet());
+                    .collect(Collectors.toCollection(LinkedHashSet::new));
         } catch (Exception e) {
             log.warn("Lỗi lấy trending keywords: {}", e.getMessage());
             return Collections.emptySet();
@@ -261,7 +310,7 @@ public class AnalyticsRedisService {
             }
             return result.stream()
                     .map(Object::toString)
-                    .collect(Collectors.toSet());
+                    .collect(Collectors.toCollection(LinkedHashSet::new));
         } catch (Exception e) {
             log.warn("Lỗi lấy trending products: {}", e.getMessage());
             return Collections.emptySet();
@@ -291,20 +340,78 @@ public class AnalyticsRedisService {
         }
     }
 
+    /**
+     * Dựng lại top-N trending từ các bucket giờ trong cửa sổ.
+     * Bucket tuổi h giờ có trọng số 0.5^(h / halfLife), nên nhu cầu hiện tại lấn át lượt xem cũ.
+     * Gộp vào key tạm rồi RENAME để người đọc không bao giờ thấy set rỗng giữa chừng.
+     */
+    @Scheduled(fixedDelayString = "${stock.trending.rebuild-interval-ms:60000}")
+    public void rebuildTrending() {
+        rebuildTrending(TRENDING_PRODUCTS_KEY);
+        rebuildTrending(TRENDING_SEARCH_KEY);
+    }
+
+    private void rebuildTrending(String trendingKey) {
+        try {
+            LocalDateTime now = LocalDateTime.now();
+            List<String> buckets = new ArrayList<>(trendingWindowHours);
+            double[] weights = new double[trendingWindowHours];
+            for (int age = 0; age < trendingWindowHours; age++) {
+                buckets.add(trendingBucketKey(trendingKey, now.minusHours(age)));
+                weights[age] = Math.pow(0.5, age / trendingHalfLifeHours);
+            }
+
+            String tmpKey = trendingKey + ":tmp";
+            Long size = redisTemplate.opsForZSet().unionAndStore(buckets.get(0), buckets.subList(1, buckets.size()),
+                    tmpKey, Aggregate.SUM, Weights.of(weights));
+            if (size == null || size == 0) {
+                redisTemplate.delete(trendingKey);
+                return;
+            }
+            if (size > trendingTopSize) {
+                // Giữ top-N: xóa các phần tử score thấp (rank tăng dần)
+                redisTemplate.opsForZSet().removeRange(tmpKey, 0, size - trendingTopSize - 1);
+            }
+            redisTemplate.rename(tmpKey, trendingKey);
+        } catch (Exception e) {
+            log.warn("Lỗi dựng lại trending {}: {}", trendingKey, e.getMessage());
+        }
+    }
+
     /**
      * Reset dữ liệu trending (có thể gọi hàng ngày bởi scheduler)
-     * Xóa cả trending_search và trending_products
+     * Xóa top-N và các bucket trong cửa sổ của cả trending_search và trending_products
      */
     public void resetTrendingData() {
         try {
-            redisTemplate.delete(TRENDING_SEARCH_KEY);
-            redisTemplate.delete(TRENDING_PRODUCTS_KEY);
+            LocalDateTime now = LocalDateTime.now();
+            List<String> keys = new ArrayList<>();
+            keys.add(TRENDING_SEARCH_KEY);
+            keys.add(TRENDING_PRODUCTS_KEY);
+            for (int age = 0; age < trendingWindowHours; age++) {
+                keys.add(trendingBucketKey(TRENDING_SEARCH_KEY, now.minusHours(age)));
+                keys.add(trendingBucketKey(TRENDING_PRODUCTS_KEY, now.minusHours(age)));
+            }
+            redisTemplate.delete(keys);
             log.info("Đã reset dữ liệu trending");
         } catch (Exception e) {
             log.error("Lỗi reset trending data: {}", e.getMessage());
         }
     }
 
+    /**
+     * ZINCRBY vào bucket giờ hiện tại; bucket hết hạn sau cửa sổ trending (+1 giờ cho giờ đang chạy)
+     */
+    private void incrementTrendingBucket(String trendingKey, String member) {
+        String bucketKey = trendingBucketKey(trendingKey, LocalDateTime.now());
+        redisTemplate.opsForZSet().incrementScore(bucketKey, member, 1);
+        redisTemplate.expire(bucketKey, trendingWindowHours + 1L, TimeUnit.HOURS);
+    }
+
+    private String trendingBucketKey(String trendingKey, LocalDateTime hour) {
+        return trendingKey + ":" + TRENDING_BUCKET_FORMAT.format(hour);
+    }
+
     // ==================== SYSTEM ANALYTICS (Thống kê toàn hệ thống)
     // ====================
 
@@ -391,34 +498,35 @@ public class AnalyticsRedisService {
     }
 
     /**
-     * Get system analytics trend for a date range
+     * Get system analytics trend for a date range.
+     * Toàn bộ key (visits/views/cart adds của mỗi ngày) được đọc bằng một lần MGET,
+     * nên số round trip không phụ thuộc độ dài khoảng ngày.
      */
     public List<SystemAnalyticsTrendDto> getSystemAnalyticsTrend(LocalDate startDate, LocalDate endDate) {
         List<SystemAnalyticsTrendDto> result = new ArrayList<>();
 
         try {
-            LocalDate current = startDate;
-            while (!current.isAfter(endDate)) {
+            List<LocalDate> dates = new ArrayList<>();
+            List<String> keys = new ArrayList<>();
+            for (LocalDate current = startDate; !current.isAfter(endDate); current = current.plusDays(1)) {
                 String dateStr = current.toString();
+                dates.add(current);
+                keys.add(SYSTEM_VISITS_KEY + ":" + dateStr);
+                keys.add(SYSTEM_VIEWS_KEY + ":" + dateStr);
+                keys.add(SYSTEM_CART_ADDS_KEY + ":" + dateStr);
+            }
+            if (keys.isEmpty()) {
+                return result;
+            }
 
-                // Construct keys
-                String visitKey = SYSTEM_VISITS_KEY + ":" + dateStr;
-                String viewKey = SYSTEM_VIEWS_KEY + ":" + dateStr;
-                String cartKey = SYSTEM_CART_ADDS_KEY + ":" + dateStr;
-
-                // Get values
-                Object visitVal = redisTemplate.opsForValue().get(visitKey);
-                Object viewVal = redisTemplate.opsForValue().get(viewKey);
-                Object cartVal = redisTemplate.opsForValue().get(cartKey);
-
+            List<Object> values = redisTemplate.opsForValue().multiGet(keys);
+            for (int i = 0; i < dates.size(); i++) {
                 result.add(SystemAnalyticsTrendDto.builder()
-                        .date(current)
-                        .visits(visitVal != null ? Long.parseLong(visitVal.toString()) : 0L)
-                        .views(viewVal != null ? Long.parseLong(viewVal.toString()) : 0L)
-                        .cartAdds(cartVal != null ? Long.parseLong(cartVal.toString()) : 0L)
+                        .date(dates.get(i))
+                        .visits(toLong(values != null ? values.get(i * 3) : null))
+                        .views(toLong(values != null ? values.get(i * 3 + 1) : null))
+                        .cartAdds(toLong(values != null ? values.get(i * 3 + 2) : null))
                         .build());
-
-                current = current.plusDays(1);
             }
         } catch (Exception e) {
             log.error("Error fetching system analytics trend", e);
@@ -426,4 +534,8 @@ public class AnalyticsRedisService {
 
         return result;
     }
+
+    private long toLong(Object value) {
+        return value != null ? Long.parseLong(value.toString()) : 0L;
+    }
 }
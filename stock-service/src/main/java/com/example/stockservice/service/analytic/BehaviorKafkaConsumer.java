@@ -31,6 +31,7 @@ import java.time.LocalDateTime;
  * 3. search_analytics - Thống kê tìm kiếm theo ngày
  * Chứa: keyword, date, searchCount
  * Cập nhật khi có event SEARCH
+ * Ngoài ra, event của user đã đăng nhập đánh dấu gợi ý cá nhân hóa cần tính lại.
  * Kafka (analytics-topic) → Consumer.consume() → MySQL (3 bảng)
  */
 @Service
@@ -41,6 +42,7 @@ public class BehaviorKafkaConsumer {
     private final BehaviorLogRepository behaviorLogRepository;
     private final ProductAnalyticsRepository productAnalyticsRepository;
     private final SearchAnalyticsRepository searchAnalyticsRepository;
+    private final RecommendationService recommendationService;
 
     /**
      * Lắng nghe và xử lý behavior events từ Kafka
@@ -54,6 +56,7 @@ public class BehaviorKafkaConsumer {
      * 1. Lưu behavior log chi tiết
      * 2. Cập nhật product analytics (nếu có productId)
      * 3. Cập nhật search analytics (nếu có keyword)
+     * 4. Đánh dấu tính lại gợi ý cá nhân hóa (nếu có userId + productId)
      */
     @KafkaListener(topics = "${kafka.topic.analytics:analytics-topic}", groupId = "${spring.kafka.consumer.group-id:stock-service}-analytics", containerFactory = "analyticsKafkaListenerContainerFactory")
     @Transactional
@@ -75,6 +78,11 @@ public class BehaviorKafkaConsumer {
                 updateSearchAnalytics(event);
             }
 
+            // Bước 4: Gợi ý cá nhân hóa được tính lại bất đồng bộ theo lô
+            if (event.getProductId() != null) {
+                recommendationService.onUserBehavior(event.getUserId());
+            }
+
             log.debug("Đã xử lý behavior event thành công: {}", event.getEventId());
 
         } catch (Exception e) {
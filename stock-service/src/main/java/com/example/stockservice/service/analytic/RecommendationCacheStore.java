@@ -0,0 +1,112 @@
+package com.example.stockservice.service.analytic;
+
+import com.example.stockservice.dto.analytics.RecommendationResponse;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Lưu danh sách gợi ý đã tính sẵn trên Redis (JSON, đã xếp hạng, sẵn sàng trả về).
+ *
+ * CẤU TRÚC DỮ LIỆU REDIS:
+ * 1. "reco:user:{userId}" - gợi ý cá nhân hóa của user
+ * 2. "reco:similar:{productId}" - sản phẩm tương tự
+ * 3. "reco:trending" - top sản phẩm trending kèm thông tin chi tiết
+ * 4. "reco:dirty" (Set) - user có hành vi mới, chờ job tính lại gợi ý
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class RecommendationCacheStore {
+
+    private static final String USER_KEY_PREFIX = "reco:user:";
+    private static final String SIMILAR_KEY_PREFIX = "reco:similar:";
+    private static final String TRENDING_KEY = "reco:trending";
+    private static final String DIRTY_USERS_KEY = "reco:dirty";
+
+    private static final TypeReference<List<RecommendationResponse>> LIST_TYPE = new TypeReference<>() {
+    };
+
+    private final StringRedisTemplate stringRedisTemplate;
+    private final ObjectMapper objectMapper;
+
+    /**
+     * @return danh sách đã tính sẵn, null nếu chưa có (hoặc đã hết hạn)
+     */
+    public List<RecommendationResponse> getUserRecommendations(String userId) {
+        return read(USER_KEY_PREFIX + userId);
+    }
+
+    public void putUserRecommendations(String userId, List<RecommendationResponse> items, Duration ttl) {
+        write(USER_KEY_PREFIX + userId, items, ttl);
+    }
+
+    public List<RecommendationResponse> getSimilarProducts(String productId) {
+        return read(SIMILAR_KEY_PREFIX + productId);
+    }
+
+    public void putSimilarProducts(String productId, List<RecommendationResponse> items, Duration ttl) {
+        write(SIMILAR_KEY_PREFIX + productId, items, ttl);
+    }
+
+    /**
+     * Xóa danh sách tương tự của product (gọi khi product thay đổi); danh sách khác có chứa
+     * product này tự hết hạn theo TTL
+     */
+    public void evictSimilarProducts(String productId) {
+        try {
+            stringRedisTemplate.delete(SIMILAR_KEY_PREFIX + productId);
+        } catch (Exception e) {
+            log.warn("Lỗi xóa gợi ý tương tự của product {}: {}", productId, e.getMessage());
+        }
+    }
+
+    public List<RecommendationResponse> getTrending() {
+        return read(TRENDING_KEY);
+    }
+
+    public void putTrending(List<RecommendationResponse> items, Duration ttl) {
+        write(TRENDING_KEY, items, ttl);
+    }
+
+    /**
+     * Đánh dấu user cần tính lại gợi ý (gộp nhiều event của cùng user thành một lần tính)
+     */
+    public void markUserDirty(String userId) {
+        try {
+            stringRedisTemplate.opsForSet().add(DIRTY_USERS_KEY, userId);
+        } catch (Exception e) {
+            log.warn("Lỗi đánh dấu gợi ý cần tính lại cho user {}: {}", userId, e.getMessage());
+        }
+    }
+
+    public List<String> popDirtyUsers(int count) {
+        List<String> userIds = stringRedisTemplate.opsForSet().pop(DIRTY_USERS_KEY, count);
+        return userIds != null ? userIds : Collections.emptyList();
+    }
+
+    private List<RecommendationResponse> read(String key) {
+        try {
+            String json = stringRedisTemplate.opsForValue().get(key);
+            return json != null ? objectMapper.readValue(json, LIST_TYPE) : null;
+        } catch (Exception e) {
+            log.warn("Lỗi đọc gợi ý {}: {}", key, e.getMessage());
+            return null;
+        }
+    }
+
+    private void write(String key, List<RecommendationResponse> items, Duration ttl) {
+        try {
+            stringRedisTemplate.opsForValue().set(key, objectMapper.writeValueAsString(items), ttl);
+        } catch (Exception e) {
+            log.warn("Lỗi lưu gợi ý {}: {}", key, e.getMessage());
+        }
+    }
+}
@@ -1,8 +1,11 @@
 package com.example.stockservice.service.analytic;
 
+import java.time.Duration;
 import java.util.*;
 import java.util.stream.Collectors;
 
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 import org.springframework.web.context.request.RequestContextHolder;
 import org.springframework.web.context.request.ServletRequestAttributes;
@@ -37,12 +40,15 @@ import lombok.extern.slf4j.Slf4j;
  * 
  * 3. PERSONALIZED (Có thể bạn quan tâm)
  *    - Logic: Tìm sản phẩm cùng category với sản phẩm đã xem
- *    - Fallback: Nếu không có history → trả về trending
+ *    - Tính sẵn top N vào "reco:user:{userId}" khi có behavior event mới, request chỉ đọc cache;
+ *      trang vượt quá N thì tính trực tiếp
+ *    - Fallback: Nếu không có history/cache → trả về trending
  *    - Chỉ dành cho user đã đăng nhập
  *    - Hiển thị: Section "Có thể bạn quan tâm" trên HomePage
  * 
  * 4. SIMILAR PRODUCTS (Sản phẩm tương tự)
  *    - Logic: Tìm sản phẩm cùng category hoặc cùng shop
+ *    - Cache theo sản phẩm "reco:similar:{productId}" (TTL, xóa khi sản phẩm được cập nhật)
  *    - Dành cho tất cả
  *    - Hiển thị: Section "Sản phẩm tương tự" trên ProductDetailPage
  */
@@ -52,9 +58,29 @@ import lombok.extern.slf4j.Slf4j;
 public class RecommendationService {
     
     private final AnalyticsRedisService redisService;
+    private final RecommendationCacheStore cacheStore;
     private final ProductRepository productRepository;
     private final JwtUtil jwtUtil;
     
+    // Số phần tử tính sẵn cho mỗi danh sách và thời gian sống của chúng
+    @Value("${stock.recommendation.personalized-size:60}")
+    private int personalizedSize;
+    
+    @Value("${stock.recommendation.trending-size:100}")
+    private int trendingSize;
+    
+    @Value("${stock.recommendation.similar-size:20}")
+    private int similarSize;
+    
+    @Value("${stock.recommendation.user-ttl-hours:1}")
+    private long userTtlHours;
+    
+    @Value("${stock.recommendation.similar-ttl-minutes:10}")
+    private long similarTtlMinutes;
+    
+    @Value("${stock.recommendation.refresh-batch-size:100}")
+    private int refreshBatchSize;
+    
     // ==================== API METHODS (Phương thức API) ====================
     
     /**
@@ -78,40 +104,40 @@ public class RecommendationService {
             return List.of();
         }
         
-        return productIds.stream()
-                .map(id -> buildRecommendation(id, "recently_viewed", null))
-                .filter(Objects::nonNull)
-                .collect(Collectors.toList());
+        return buildRecommendations(productIds, "recently_viewed", null);
     }
     
     /**
      * Lấy sản phẩm XU HƯỚNG (được xem nhiều nhất) với đầy đủ thông tin
      * Dành cho: Tất cả users (Guest + Logged-in)
+     * Đọc từ danh sách "reco:trending" tính sẵn; trang vượt quá danh sách (hoặc chưa có cache) thì tính trực tiếp.
      * @param page Trang
      * @param limit Số lượng sản phẩm tối đa
      * @return Danh sách sản phẩm trending
      */
     public List<RecommendationResponse> getTrendingProductsWithDetails(int page, int limit) {
         int offset = (page - 1) * limit;
+        List<RecommendationResponse> cached = cacheStore.getTrending();
+        if (cached != null && offset + limit <= cached.size()) {
+            return slice(cached, offset, limit);
+        }
+        
         List<String> productIds = redisService.getTrendingProducts(offset, limit);
         if (productIds.isEmpty()) {
             return List.of();
         }
         
-        return productIds.stream()
-                .map(id -> buildRecommendation(id, "trending", null))
-                .filter(Objects::nonNull)
-                .collect(Collectors.toList());
+        return buildRecommendations(productIds, "trending", null);
     }
     
     /**
      * Lấy gợi ý CÁ NHÂN HÓA dựa trên hành vi user (Phân trang)
-     * Logic gợi ý:
-     * 1. Lấy sản phẩm đã xem gần đây (để xác định category)
-     * 2. Nếu không có history → trả về trending (phân trang)
-     * 3. ✨ MỚI: Lấy TOP 3 CATEGORY từ recently viewed
-     * 4. Tìm sản phẩm trong các category đó (loại bỏ sản phẩm đã xem)
-     * 5. Nếu kết quả < 50% limit → bổ sung bằng trending products
+     * Danh sách được tính sẵn bởi {@link #refreshDirtyUsers()} mỗi khi user có hành vi mới,
+     * nên request chỉ là một lần đọc cache:
+     * 1. Guest hoặc chưa có danh sách tính sẵn → trả về trending (và đánh dấu để tính)
+     * 2. Cắt trang từ danh sách đã xếp hạng; danh sách tính sẵn bị cắt ở personalizedSize nên
+     *    trang vượt quá thì tính trực tiếp với đủ số phần tử
+     * 3. Nếu kết quả < 50% limit → bổ sung bằng trending products
      * 
      * @param page Trang
      * @param limit Số lượng sản phẩm
@@ -124,63 +150,22 @@ public class RecommendationService {
             return getTrendingProductsWithDetails(page, limit);
         }
         
-        // Lấy 10 sản phẩm đã xem gần đây để loại trừ
-        List<String> recentlyViewed = redisService.getRecentlyViewed(userId, 10);
-        if (recentlyViewed.isEmpty()) {
-            // Không có history → trả về trending products
+        List<RecommendationResponse> cached = cacheStore.getUserRecommendations(userId);
+        if (cached == null) {
+            // Chưa tính sẵn (user mới hoặc cache hết hạn) → tính ở lần refresh kế tiếp
+            cacheStore.markUserDirty(userId);
             return getTrendingProductsWithDetails(page, limit);
         }
         
-        //  MỚI: Lấy TOP 3 CATEGORY từ recently viewed
-        List<String> topCategoryIds = new ArrayList<>();
-        Set<String> seenCategories = new HashSet<>();
-        
-        for (String productId : recentlyViewed) {
-            if (topCategoryIds.size() >= 3) break;
-            
-            try {
-                Optional<Product> productOpt = productRepository.findById(productId);
-                if (productOpt.isPresent()) {
-                    String categoryId = getCategoryIdFromProduct(productOpt.get());
-                    if (categoryId != null && !seenCategories.contains(categoryId)) {
-                        topCategoryIds.add(categoryId);
-                        seenCategories.add(categoryId);
-                    }
-                }
-            } catch (Exception e) {
-                log.warn("Failed to get category for product {}: {}", productId, e.getMessage());
-            }
-        }
-        
-        // Nếu không tìm được category nào → fallback trending
-        if (topCategoryIds.isEmpty()) {
-            log.warn("No categories found from recently viewed, fallback to trending");
-            return getTrendingProductsWithDetails(page, limit);
+        int offset = (page - 1) * limit;
+        List<RecommendationResponse> results;
+        if (offset + limit > cached.size() && cached.size() >= personalizedSize) {
+            // Danh sách tính sẵn là các phần tử đầu của cùng thứ tự xếp hạng nên trang sâu nối tiếp được
+            results = new ArrayList<>(computePersonalized(userId, page - 1, limit));
+        } else {
+            results = new ArrayList<>(slice(cached, offset, limit));
         }
         
-        log.debug("Found {} categories from recently viewed: {}", topCategoryIds.size(), topCategoryIds);
-        
-        List<RecommendationResponse> results = new ArrayList<>();
-        
-        // Query sản phẩm từ các category (OR query)
-        org.springframework.data.domain.Pageable pageable = 
-                org.springframework.data.domain.PageRequest.of(page - 1, limit);
-        
-        org.springframework.data.domain.Page<Product> productPage = 
-                productRepository.findByCategoryIdInAndIdNotIn(topCategoryIds, recentlyViewed, pageable);
-        
-        // Thêm sản phẩm vào kết quả
-        results = productPage.getContent().stream()
-                .map(p -> buildRecommendationFromProduct(
-                    p, 
-                    "personalized", 
-                    "Dựa trên sở thích của bạn"
-                ))
-                .collect(Collectors.toList());
-        
-        log.debug("Found {} personalized products for user {} from {} categories", 
-                results.size(), userId, topCategoryIds.size());
-        
         //  FALLBACK: Nếu kết quả < 50% limit → bổ sung bằng trending
         int minRequired = limit / 2;
         if (results.size() < minRequired) {
@@ -193,14 +178,11 @@ public class RecommendationService {
             // Lấy trending products
             List<RecommendationResponse> trending = getTrendingProductsWithDetails(page, trendingNeeded);
             
-            // Lọc bỏ những sản phẩm đã có trong results (tránh duplicate)
-            Set<String> existingIds = results.stream()
+            // Lọc bỏ những sản phẩm đã có trong danh sách gợi ý (tránh duplicate)
+            Set<String> existingIds = cached.stream()
                     .map(RecommendationResponse::getProductId)
                     .collect(Collectors.toSet());
             
-            // Lọc bỏ cả sản phẩm đã xem gần đây
-            existingIds.addAll(recentlyViewed);
-            
             List<RecommendationResponse> filteredTrending = trending.stream()
                     .filter(r -> !existingIds.contains(r.getProductId()))
                     .limit(trendingNeeded)
@@ -219,17 +201,143 @@ public class RecommendationService {
      * Lấy sản phẩm TƯƠNG TỰ với một sản phẩm cụ thể
      * Dùng cho: ProductDetailPage
      * Logic:
-     * 1. Tìm sản phẩm cùng category
-     * 2. Nếu không đủ → thêm sản phẩm cùng shop
+     * 1. Đọc danh sách tính sẵn "reco:similar:{productId}"
+     * 2. Chưa có → tìm sản phẩm cùng category, không đủ thì thêm sản phẩm cùng shop, rồi lưu cache
      * 
      * @param productId ID sản phẩm gốc
      * @param limit Số lượng sản phẩm tối đa
      * @return Danh sách sản phẩm tương tự
      */
     public List<RecommendationResponse> getSimilarProducts(String productId, int limit) {
+        List<RecommendationResponse> cached = cacheStore.getSimilarProducts(productId);
+        if (cached != null && (limit <= similarSize || cached.size() < similarSize)) {
+            return slice(cached, 0, limit);
+        }
+        
+        int size = Math.max(limit, similarSize);
+        List<RecommendationResponse> similar = computeSimilarProducts(productId, size);
+        if (similar == null) {
+            return List.of();
+        }
+        if (size == similarSize) {
+            cacheStore.putSimilarProducts(productId, similar, Duration.ofMinutes(similarTtlMinutes));
+        }
+        return slice(similar, 0, limit);
+    }
+    
+    // ==================== PRECOMPUTE (Tính sẵn gợi ý) ====================
+    
+    /**
+     * Đánh dấu user cần tính lại gợi ý - gọi khi có behavior event mới
+     */
+    public void onUserBehavior(String userId) {
+        if (userId != null && !userId.isEmpty()) {
+            cacheStore.markUserDirty(userId);
+        }
+    }
+    
+    /**
+     * Tính lại gợi ý cá nhân hóa cho các user có hành vi mới (SPOP theo lô, nhiều event của
+     * cùng user chỉ tính một lần)
+     */
+    @Scheduled(fixedDelayString = "${stock.recommendation.refresh-interval-ms:5000}")
+    public void refreshDirtyUsers() {
+        List<String> userIds;
+        try {
+            userIds = cacheStore.popDirtyUsers(refreshBatchSize);
+        } catch (Exception e) {
+            log.warn("Lỗi đọc danh sách user cần tính lại gợi ý: {}", e.getMessage());
+            return;
+        }
+        
+        for (String userId : userIds) {
+            try {
+                cacheStore.putUserRecommendations(userId, computePersonalized(userId, 0, personalizedSize),
+                        Duration.ofHours(userTtlHours));
+            } catch (Exception e) {
+                log.warn("Lỗi tính gợi ý cho user {}: {}", userId, e.getMessage());
+            }
+        }
+        if (!userIds.isEmpty()) {
+            log.debug("Refreshed personalized recommendations for {} users", userIds.size());
+        }
+    }
+    
+    /**
+     * Tính sẵn top trending kèm thông tin chi tiết; TTL dài hơn chu kỳ refresh để không hụt cache giữa hai lần tính
+     */
+    @Scheduled(fixedDelayString = "${stock.recommendation.trending-refresh-ms:60000}")
+    public void refreshTrending() {
+        try {
+            List<String> productIds = redisService.getTrendingProducts(0, trendingSize);
+            cacheStore.putTrending(buildRecommendations(productIds, "trending", null), Duration.ofMinutes(10));
+        } catch (Exception e) {
+            log.warn("Lỗi tính sẵn trending: {}", e.getMessage());
+        }
+    }
+    
+    /**
+     * Gợi ý cá nhân hóa cho user:
+     * 1. Lấy TOP 3 CATEGORY từ 10 sản phẩm đã xem gần đây
+     * 2. Tìm sản phẩm trong các category đó (loại bỏ sản phẩm đã xem)
+     * 3. Xếp hạng theo lượt xem ngay trong DB (lượt xem giảm dần, id tăng dần), danh sách tính sẵn
+     *    và trang tính trực tiếp dùng chung thứ tự này
+     * Không có history/category → danh sách rỗng (request sẽ bổ sung trending)
+     * @param page Trang (từ 0) theo thứ tự xếp hạng
+     * @param size Số sản phẩm mỗi trang
+     */
+    private List<RecommendationResponse> computePersonalized(String userId, int page, int size) {
+        // Lấy 10 sản phẩm đã xem gần đây để loại trừ
+        List<String> recentlyViewed = redisService.getRecentlyViewed(userId, 10);
+        if (recentlyViewed.isEmpty()) {
+            return List.of();
+        }
+        
+        List<String> topCategoryIds = new ArrayList<>();
+        Set<String> seenCategories = new HashSet<>();
+        
+        // Một query batch cho toàn bộ sản phẩm đã xem, duyệt theo thứ tự mới nhất trước
+        Map<String, Product> viewedProducts = findProductsByIds(recentlyViewed);
+        for (String productId : recentlyViewed) {
+            if (topCategoryIds.size() >= 3) break;
+            
+            Product viewed = viewedProducts.get(productId);
+            if (viewed != null) {
+                String categoryId = getCategoryIdFromProduct(viewed);
+                if (categoryId != null && !seenCategories.contains(categoryId)) {
+                    topCategoryIds.add(categoryId);
+                    seenCategories.add(categoryId);
+                }
+            }
+        }
+        
+        if (topCategoryIds.isEmpty()) {
+            log.debug("No categories found from recently viewed of user {}", userId);
+            return List.of();
+        }
+        
+        // Query sản phẩm từ các category (OR query), đã xếp hạng trong DB
+        List<Product> ranked = productRepository.findRankedByCategoryIdIn(
+                topCategoryIds, recentlyViewed, org.springframework.data.domain.PageRequest.of(page, size));
+        
+        List<RecommendationResponse> results = buildRecommendationsFromProducts(
+                ranked,
+                "personalized",
+                "Dựa trên sở thích của bạn");
+        
+        log.debug("Computed {} personalized products for user {} from {} categories", 
+                results.size(), userId, topCategoryIds.size());
+        return results;
+    }
+    
+    /**
+     * Sản phẩm tương tự: cùng category trước, không đủ thì thêm sản phẩm cùng shop
+     * @return null nếu sản phẩm gốc không tồn tại
+     */
+    private List<RecommendationResponse> computeSimilarProducts(String productId, int limit) {
         Optional<Product> productOpt = productRepository.findById(productId);
         if (productOpt.isEmpty()) {
-            return List.of();
+            return null;
         }
         
         Product product = productOpt.get();
@@ -267,9 +375,7 @@ public class RecommendationService {
             similar.addAll(shopProducts);
         }
         
-        return similar.stream()
-                .map(p -> buildRecommendationFromProduct(p, "similar", "Sản phẩm tương tự"))
-                .collect(Collectors.toList());
+        return buildRecommendationsFromProducts(similar, "similar", "Sản phẩm tương tự");
     }
     
     // ==================== HELPER METHODS (Phương thức hỗ trợ) ====================
@@ -292,23 +398,40 @@ public class RecommendationService {
     }
     
     /**
-     * Tạo RecommendationResponse từ productId
+     * Tạo RecommendationResponse từ danh sách productId (giữ thứ tự, bỏ qua sản phẩm không tồn tại).
+     * Product lấy bằng một query batch, view count bằng một lần MGET.
      */
-    private RecommendationResponse buildRecommendation(String productId, String source, String reason) {
+    private List<RecommendationResponse> buildRecommendations(List<String> productIds, String source, String reason) {
         try {
-            Optional<Product> productOpt = productRepository.findById(productId);
-            return productOpt.map(product -> buildRecommendationFromProduct(product, source, reason)).orElse(null);
+            Map<String, Product> products = findProductsByIds(productIds);
+            List<Product> ordered = productIds.stream()
+                    .map(products::get)
+                    .filter(Objects::nonNull)
+                    .collect(Collectors.toList());
+            return buildRecommendationsFromProducts(ordered, source, reason);
         } catch (Exception e) {
-            log.warn("Lỗi tạo recommendation cho sản phẩm {}: {}", productId, e.getMessage());
-            return null;
+            log.warn("Lỗi tạo recommendation cho {} sản phẩm: {}", productIds.size(), e.getMessage());
+            return List.of();
         }
     }
     
+    /**
+     * Tạo RecommendationResponse từ danh sách Product entity, view count đọc một lần cho cả danh sách
+     */
+    private List<RecommendationResponse> buildRecommendationsFromProducts(List<Product> products, String source,
+            String reason) {
+        Map<String, Long> viewCounts = redisService.getViewCounts(
+                products.stream().map(Product::getId).collect(Collectors.toList()));
+        return products.stream()
+                .map(p -> buildRecommendationFromProduct(p, viewCounts.getOrDefault(p.getId(), 0L), source, reason))
+                .collect(Collectors.toList());
+    }
+    
     /**
      * Tạo RecommendationResponse từ Product entity
      */
-    private RecommendationResponse buildRecommendationFromProduct(Product product, String source, String reason) {
-        Long viewCount = redisService.getViewCount(product.getId());
+    private RecommendationResponse buildRecommendationFromProduct(Product product, Long viewCount, String source,
+            String reason) {
         String categoryId = getCategoryIdFromProduct(product);
         
         return RecommendationResponse.builder()
@@ -320,11 +443,28 @@ public class RecommendationService {
                 .shopId(product.getUserId())
                 .categoryId(categoryId)
                 .viewCount(viewCount)
+                .rating(product.getAverageRating())
+                .soldCount(product.getSoldCount())
                 .source(source)
                 .reason(reason)
                 .build();
     }
     
+    private List<RecommendationResponse> slice(List<RecommendationResponse> items, int offset, int limit) {
+        if (offset >= items.size()) {
+            return List.of();
+        }
+        return items.subList(offset, Math.min(items.size(), offset + limit));
+    }
+    
+    private Map<String, Product> findProductsByIds(List<String> productIds) {
+        if (productIds.isEmpty()) {
+            return Map.of();
+        }
+        return productRepository.findAllByIdIn(productIds).stream()
+                .collect(Collectors.toMap(Product::getId, p -> p, (a, b) -> a));
+    }
+    
     /**
      * Lấy userId hiện tại từ JWT token
      */
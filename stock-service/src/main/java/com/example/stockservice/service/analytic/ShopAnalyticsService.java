@@ -2,7 +2,6 @@ package com.example.stockservice.service.analytic;
 
 import com.example.stockservice.dto.analytics.*;
 import com.example.stockservice.jwt.JwtUtil;
-import com.example.stockservice.model.Product;
 import com.example.stockservice.model.analytics.ProductAnalytics;
 import com.example.stockservice.repository.ProductRepository;
 import com.example.stockservice.repository.analytics.ProductAnalyticsRepository;
@@ -14,9 +13,9 @@ import org.springframework.stereotype.Service;
 import org.springframework.web.context.request.RequestContextHolder;
 import org.springframework.web.context.request.ServletRequestAttributes;
 
-import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
-import java.util.Optional;
+import java.util.Map;
 import java.util.stream.Collectors;
 
 /**
@@ -46,6 +45,9 @@ public class ShopAnalyticsService {
     private static final long MIN_VIEWS_FOR_ABANDONED = 50;  // Tối thiểu 50 views
     private static final long MAX_PURCHASES_FOR_ABANDONED = 5; // Tối đa 5 purchases
     
+    // Số sản phẩm trong mỗi danh sách của trang overview
+    private static final int OVERVIEW_LIST_SIZE = 10;
+    
     // ==================== MAIN API METHODS ====================
     
     /**
@@ -59,13 +61,11 @@ public class ShopAnalyticsService {
         
         log.info("Getting shop analytics for shopId: {}", shopId);
         
-        // Lấy tổng stats một lần để tránh query nhiều lần
-        List<Object[]> statsList = analyticsRepository.getShopTotalStats(shopId);
-        Object[] stats = (statsList != null && !statsList.isEmpty()) ? statsList.get(0) : null;
-        
-        Long totalViews = extractLongValue(stats, 0);
-        Long totalCarts = extractLongValue(stats, 1);
-        Long totalPurchases = extractLongValue(stats, 2);
+        // Lấy tổng stats một lần để tránh query nhiều lần (aggregate trên covering index)
+        long[] totals = getShopTotals(shopId);
+        Long totalViews = totals[0];
+        Long totalCarts = totals[1];
+        Long totalPurchases = totals[2];
         Double conversionRate = calculateRate(totalPurchases, totalViews);
         
         return ShopAnalyticsDTO.builder()
@@ -73,29 +73,53 @@ public class ShopAnalyticsService {
                 .totalCarts(totalCarts)
                 .totalPurchases(totalPurchases)
                 .conversionRate(conversionRate)
-                .topViewedProducts(getTopViewedProducts(shopId, 10))
+                .topViewedProducts(getTopViewedProducts(shopId, 0, OVERVIEW_LIST_SIZE))
                 .conversionFunnel(buildConversionFunnel(totalViews, totalCarts, totalPurchases))
-                .abandonedProducts(getAbandonedProducts(shopId, 10))
+                .abandonedProducts(getAbandonedProducts(shopId, 0, OVERVIEW_LIST_SIZE))
                 .build();
     }
     
+    /**
+     * Top sản phẩm được xem nhiều nhất của shop owner hiện tại (phân trang)
+     */
+    public List<TopProductDTO> getTopViewedProducts(int page, int size) {
+        return getTopViewedProducts(getCurrentShopId(), page, size);
+    }
+    
+    /**
+     * Sản phẩm bị bỏ rơi của shop owner hiện tại (phân trang)
+     */
+    public List<AbandonedProductDTO> getAbandonedProducts(int page, int size) {
+        return getAbandonedProducts(getCurrentShopId(), page, size);
+    }
+    
+    /**
+     * Conversion funnel của shop owner hiện tại, chỉ cần một query aggregate
+     */
+    public ConversionFunnelDTO getConversionFunnel() {
+        long[] totals = getShopTotals(getCurrentShopId());
+        return buildConversionFunnel(totals[0], totals[1], totals[2]);
+    }
+    
     /**
      * Lấy danh sách sản phẩm được xem nhiều nhất
      * 
      * @param shopId ID shop owner
-     * @param limit Số lượng sản phẩm tối đa
+     * @param page Trang (bắt đầu từ 0)
+     * @param size Số lượng sản phẩm mỗi trang
      * @return Danh sách TopProductDTO
      */
-    public List<TopProductDTO> getTopViewedProducts(String shopId, int limit) {
-        log.info("Getting top {} viewed products for shopId: {}", limit, shopId);
+    public List<TopProductDTO> getTopViewedProducts(String shopId, int page, int size) {
+        log.info("Getting top viewed products for shopId: {} (page={}, size={})", shopId, page, size);
         
         List<ProductAnalytics> topAnalytics = analyticsRepository.findByShopIdOrderByViewCountDesc(
                 shopId, 
-                PageRequest.of(0, limit)
+                PageRequest.of(page, size)
         );
+        Map<String, ProductSummary> products = loadProductSummaries(topAnalytics);
         
         return topAnalytics.stream()
-                .map(this::convertToTopProductDTO)
+                .map(analytics -> convertToTopProductDTO(analytics, products.get(analytics.getProductId())))
                 .filter(dto -> dto != null) // Lọc bỏ products không tìm thấy
                 .collect(Collectors.toList());
     }
@@ -124,27 +148,44 @@ public class ShopAnalyticsService {
      * Điều kiện: views >= MIN_VIEWS_FOR_ABANDONED và purchases <= MAX_PURCHASES_FOR_ABANDONED
      * 
      * @param shopId ID shop owner
-     * @param limit Số lượng sản phẩm tối đa
+     * @param page Trang (bắt đầu từ 0)
+     * @param size Số lượng sản phẩm mỗi trang
      * @return Danh sách AbandonedProductDTO
      */
-    public List<AbandonedProductDTO> getAbandonedProducts(String shopId, int limit) {
-        log.info("Getting abandoned products for shopId: {}", shopId);
+    public List<AbandonedProductDTO> getAbandonedProducts(String shopId, int page, int size) {
+        log.info("Getting abandoned products for shopId: {} (page={}, size={})", shopId, page, size);
         
         List<ProductAnalytics> abandonedAnalytics = analyticsRepository.findAbandonedProducts(
                 shopId,
                 MIN_VIEWS_FOR_ABANDONED,
                 MAX_PURCHASES_FOR_ABANDONED,
-                PageRequest.of(0, limit)
+                PageRequest.of(page, size)
         );
+        Map<String, ProductSummary> products = loadProductSummaries(abandonedAnalytics);
         
         return abandonedAnalytics.stream()
-                .map(this::convertToAbandonedProductDTO)
+                .map(analytics -> convertToAbandonedProductDTO(analytics, products.get(analytics.getProductId())))
                 .filter(dto -> dto != null)
                 .collect(Collectors.toList());
     }
     
     // ==================== HELPER METHODS (Statistics) ====================
     
+    /**
+     * Tổng views/carts/purchases của shop
+     * 
+     * @return {views, carts, purchases}
+     */
+    private long[] getShopTotals(String shopId) {
+        List<Object[]> statsList = analyticsRepository.getShopTotalStats(shopId);
+        Object[] stats = (statsList != null && !statsList.isEmpty()) ? statsList.get(0) : null;
+        return new long[] {
+                extractLongValue(stats, 0),
+                extractLongValue(stats, 1),
+                extractLongValue(stats, 2)
+        };
+    }
+    
     /**
      * Trích xuất giá trị Long từ Object array một cách an toàn
      * Xử lý việc SQL aggregate query có thể trả về null hoặc các kiểu Number khác nhau
@@ -186,68 +227,75 @@ public class ShopAnalyticsService {
     
     // ==================== HELPER METHODS (DTO Conversion) ====================
     
+    /**
+     * Thông tin product cần hiển thị cho một trang analytics, nạp bằng một query duy nhất
+     */
+    private Map<String, ProductSummary> loadProductSummaries(List<ProductAnalytics> analytics) {
+        if (analytics.isEmpty()) {
+            return Map.of();
+        }
+        List<String> productIds = analytics.stream()
+                .map(ProductAnalytics::getProductId)
+                .toList();
+        
+        Map<String, ProductSummary> summaries = new HashMap<>();
+        for (Object[] row : productRepository.findSummariesByIdIn(productIds)) {
+            summaries.put((String) row[0], new ProductSummary(
+                    (String) row[0],
+                    (String) row[1],
+                    (String) row[2],
+                    row[3] != null ? ((Number) row[3]).doubleValue() : 0.0));
+        }
+        return summaries;
+    }
+    
+    private record ProductSummary(String id, String name, String imageId, double price) {
+    }
+    
     /**
      * Convert ProductAnalytics thành TopProductDTO
      */
-    private TopProductDTO convertToTopProductDTO(ProductAnalytics analytics) {
-        try {
-            Optional<Product> productOpt = productRepository.findById(analytics.getProductId());
-            if (productOpt.isEmpty()) {
-                log.warn("Product not found: {}", analytics.getProductId());
-                return null;
-            }
-            
-            Product product = productOpt.get();
-            
-            return TopProductDTO.builder()
-                    .productId(product.getId())
-                    .productName(product.getName())
-                    .imageId(product.getImageId())
-                    .price(product.getPrice())
-                    .viewCount(analytics.getViewCount())
-                    .cartCount(analytics.getCartCount())
-                    .purchaseCount(analytics.getPurchaseCount())
-                    .conversionRate(analytics.getConversionRate())
-                    .build();
-                    
-        } catch (Exception e) {
-            log.error("Error converting to TopProductDTO: {}", e.getMessage());
+    private TopProductDTO convertToTopProductDTO(ProductAnalytics analytics, ProductSummary product) {
+        if (product == null) {
+            log.warn("Product not found: {}", analytics.getProductId());
             return null;
         }
+        
+        return TopProductDTO.builder()
+                .productId(product.id())
+                .productName(product.name())
+                .imageId(product.imageId())
+                .price(product.price())
+                .viewCount(analytics.getViewCount())
+                .cartCount(analytics.getCartCount())
+                .purchaseCount(analytics.getPurchaseCount())
+                .conversionRate(analytics.getConversionRate())
+                .build();
     }
     
     /**
      * Convert ProductAnalytics thành AbandonedProductDTO
      */
-    private AbandonedProductDTO convertToAbandonedProductDTO(ProductAnalytics analytics) {
-        try {
-            Optional<Product> productOpt = productRepository.findById(analytics.getProductId());
-            if (productOpt.isEmpty()) {
-                log.warn("Product not found: {}", analytics.getProductId());
-                return null;
-            }
-            
-            Product product = productOpt.get();
-            
-            // Xác định vấn đề
-            String issue = determineIssue(analytics);
-            
-            return AbandonedProductDTO.builder()
-                    .productId(product.getId())
-                    .productName(product.getName())
-                    .imageId(product.getImageId())
-                    .price(product.getPrice())
-                    .viewCount(analytics.getViewCount())
-                    .cartCount(analytics.getCartCount())
-                    .purchaseCount(analytics.getPurchaseCount())
-                    .issue(issue)
-                    .conversionRate(analytics.getConversionRate())
-                    .build();
-                    
-        } catch (Exception e) {
-            log.error("Error converting to AbandonedProductDTO: {}", e.getMessage());
+    private AbandonedProductDTO convertToAbandonedProductDTO(ProductAnalytics analytics, ProductSummary product) {
+        if (product == null) {
+            log.warn("Product not found: {}", analytics.getProductId());
             return null;
         }
+        
+        // Xác định vấn đề
+        String issue = determineIssue(analytics);
+        
+        return AbandonedProductDTO.builder()
+                .productId(product.id())
+                .productName(product.name())
+                .imageId(product.imageId())
+                .price(product.price())
+                .viewCount(analytics.getViewCount())
+                .cartCount(analytics.getCartCount())
+                .purchaseCount(analytics.getPurchaseCount())
+                .issue(issue)
+                .conversionRate(analytics.getConversionRate())
+                .build();
     }
     
     /**
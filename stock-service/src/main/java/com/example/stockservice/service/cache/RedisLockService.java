@@ -1,57 +1,219 @@
 package com.example.stockservice.service.cache;
 
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
 import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.ClassPathResource;
 import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.scripting.support.ResourceScriptSource;
 import org.springframework.stereotype.Service;
 
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
 import java.util.function.Supplier;
 
-
-
-//Hàm này dùng để lock Cache
+/**
+ * Distributed lock trên Redis.
+ *
+ * - Lock lưu token của người giữ (SET NX PX); nhả lock bằng Lua compare-and-delete nên node chậm
+ *   (lock đã hết hạn và thuộc về node khác) không xóa nhầm lock của người khác
+ * - Trong lúc action chạy, watchdog gia hạn lease mỗi lease/3 (cũng chỉ khi token còn khớp)
+ * - Nhả lock PUBLISH lên channel "lock:released"; node đang chờ được đánh thức qua pub/sub thay vì sleep
+ *   cố định, và tự kiểm tra lại sau PTTL của lock nếu người giữ chết không kịp nhả
+ */
 @Service
 @RequiredArgsConstructor
+@Slf4j
 public class RedisLockService {
 
+    private static final String RELEASE_CHANNEL = "lock:released";
+
     private final StringRedisTemplate redisTemplate;
+    private final RedisMessageListenerContainer listenerContainer;
+
+    @Value("${stock.lock.wait-ms:3000}")
+    private long waitMs;
+
+    @Value("${stock.lock.max-poll-ms:200}")
+    private long maxPollMs;
+
+    private DefaultRedisScript<Long> releaseScript;
+    private DefaultRedisScript<Long> extendScript;
+
+    // Các thread đang chờ theo lock key, được đánh thức khi nhận message nhả lock
+    private final Map<String, Queue<CountDownLatch>> waiters = new ConcurrentHashMap<>();
+
+    private final ScheduledExecutorService watchdog = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "redis-lock-watchdog");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    @PostConstruct
+    public void init() {
+        releaseScript = new DefaultRedisScript<>();
+        releaseScript.setScriptSource(new ResourceScriptSource(new ClassPathResource("scripts/lock_release.lua")));
+        releaseScript.setResultType(Long.class);
 
-    public boolean tryLock(String lockKey, long timeout, TimeUnit unit) {
-        Boolean acquired = redisTemplate.opsForValue()
-                .setIfAbsent(lockKey, "1", timeout, unit);
-        return Boolean.TRUE.equals(acquired);
+        extendScript = new DefaultRedisScript<>();
+        extendScript.setScriptSource(new ResourceScriptSource(new ClassPathResource("scripts/lock_extend.lua")));
+        extendScript.setResultType(Long.class);
+
+        listenerContainer.addMessageListener((message, pattern) ->
+                wakeUp(new String(message.getBody(), StandardCharsets.UTF_8)), new ChannelTopic(RELEASE_CHANNEL));
     }
 
+    @PreDestroy
+    public void shutdown() {
+        watchdog.shutdownNow();
+    }
 
-    public void unlock(String lockKey) {
-        redisTemplate.delete(lockKey);
+    /**
+     * Thử lấy lock một lần.
+     *
+     * @return token của người giữ (dùng để unlock/extend), null nếu lock đang bị giữ
+     */
+    public String tryLock(String lockKey, long leaseTime, TimeUnit unit) {
+        String token = UUID.randomUUID().toString();
+        Boolean acquired = redisTemplate.opsForValue().setIfAbsent(lockKey, token, leaseTime, unit);
+        return Boolean.TRUE.equals(acquired) ? token : null;
     }
 
-    public <T> T executeWithLock(String lockKey, int timeoutSeconds, Supplier<T> action) {
-        if (tryLock(lockKey, timeoutSeconds, TimeUnit.SECONDS)) {
-            try {
-                return action.get();
-            } finally {
-                unlock(lockKey);
+    /**
+     * Nhả lock nếu vẫn thuộc về token.
+     *
+     * @return false nếu lock đã hết hạn (có thể node khác đang giữ)
+     */
+    public boolean unlock(String lockKey, String token) {
+        Long released = redisTemplate.execute(releaseScript, List.of(lockKey), token, RELEASE_CHANNEL);
+        if (!Long.valueOf(1).equals(released)) {
+            log.warn("[LOCK] {} expired before release, another node may hold it now", lockKey);
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Gia hạn lease của lock nếu vẫn thuộc về token.
+     */
+    public boolean extend(String lockKey, String token, long leaseTime, TimeUnit unit) {
+        Long extended = redisTemplate.execute(extendScript, List.of(lockKey), token,
+                String.valueOf(unit.toMillis(leaseTime)));
+        return Long.valueOf(1).equals(extended);
+    }
+
+    /**
+     * Chạy action trong lock, chờ tối đa {@code stock.lock.wait-ms} nếu lock đang bị giữ.
+     *
+     * @param leaseSeconds lease của lock, được watchdog gia hạn trong lúc action chạy
+     */
+    public <T> T executeWithLock(String lockKey, int leaseSeconds, Supplier<T> action) {
+        long deadline = System.currentTimeMillis() + waitMs;
+        while (true) {
+            String token = tryLock(lockKey, leaseSeconds, TimeUnit.SECONDS);
+            if (token != null) {
+                return runHolding(lockKey, token, leaseSeconds, action);
             }
-        } else {
-            // Lock busy, wait a bit and retry
-            // Ideally we should throw exception or wait/retry with backoff
-            // For now, let's wait 50ms and recurse once (or throw)
-            try {
-                TimeUnit.MILLISECONDS.sleep(50);
-            } catch (InterruptedException e) {
-                Thread.currentThread().interrupt();
+            if (!awaitRelease(lockKey, deadline)) {
+                throw new RuntimeException("Could not acquire lock for key: " + lockKey);
             }
-            // Retry once
-            if (tryLock(lockKey, timeoutSeconds, TimeUnit.SECONDS)) {
-                try {
-                    return action.get();
-                } finally {
-                    unlock(lockKey);
+        }
+    }
+
+    /**
+     * Single-flight giữa các node: khi {@code isReady} chưa thỏa, chỉ node lấy được lock chạy loader;
+     * các node khác chờ lock được nhả rồi kiểm tra lại {@code isReady}, không tranh lock lần nữa.
+     */
+    public void executeOnce(String lockKey, int leaseSeconds, BooleanSupplier isReady, Runnable loader) {
+        long deadline = System.currentTimeMillis() + waitMs;
+        while (!isReady.getAsBoolean()) {
+            String token = tryLock(lockKey, leaseSeconds, TimeUnit.SECONDS);
+            if (token != null) {
+                runHolding(lockKey, token, leaseSeconds, () -> {
+                    // Double check: node trước có thể vừa nạp xong
+                    if (!isReady.getAsBoolean()) {
+                        loader.run();
+                    }
+                    return null;
+                });
+                return;
+            }
+            if (!awaitRelease(lockKey, deadline)) {
+                throw new RuntimeException("Timed out waiting for lock: " + lockKey);
+            }
+        }
+    }
+
+    private <T> T runHolding(String lockKey, String token, int leaseSeconds, Supplier<T> action) {
+        long renewMs = Math.max(100, TimeUnit.SECONDS.toMillis(leaseSeconds) / 3);
+        ScheduledFuture<?> renewal = watchdog.scheduleAtFixedRate(() -> {
+            try {
+                if (!extend(lockKey, token, leaseSeconds, TimeUnit.SECONDS)) {
+                    log.warn("[LOCK] Lost {} while still running", lockKey);
                 }
+            } catch (Exception e) {
+                log.warn("[LOCK] Failed to extend {}: {}", lockKey, e.getMessage());
             }
-            throw new RuntimeException("Could not acquire lock for key: " + lockKey);
+        }, renewMs, renewMs, TimeUnit.MILLISECONDS);
+        try {
+            return action.get();
+        } finally {
+            renewal.cancel(false);
+            unlock(lockKey, token);
+        }
+    }
+
+    /**
+     * Chờ tới khi lock có thể đã được nhả (message pub/sub hoặc hết PTTL của lock).
+     *
+     * @return false nếu đã quá deadline
+     */
+    private boolean awaitRelease(String lockKey, long deadline) {
+        long remaining = deadline - System.currentTimeMillis();
+        if (remaining <= 0) {
+            return false;
+        }
+        CountDownLatch latch = new CountDownLatch(1);
+        Queue<CountDownLatch> queue = waiters.computeIfAbsent(lockKey, k -> new ConcurrentLinkedQueue<>());
+        queue.add(latch);
+        try {
+            // Kiểm tra sau khi đăng ký để không lỡ message nhả lock đến trước
+            Long pttl = redisTemplate.getExpire(lockKey, TimeUnit.MILLISECONDS);
+            if (pttl == null || pttl == -2) {
+                return true;
+            }
+            long waitFor = Math.min(remaining, pttl > 0 ? pttl : maxPollMs);
+            latch.await(Math.max(1, waitFor), TimeUnit.MILLISECONDS);
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        } finally {
+            queue.remove(latch);
+            waiters.computeIfPresent(lockKey, (k, q) -> q.isEmpty() ? null : q);
+        }
+    }
+
+    private void wakeUp(String lockKey) {
+        Queue<CountDownLatch> queue = waiters.get(lockKey);
+        if (queue != null) {
+            queue.forEach(CountDownLatch::countDown);
         }
     }
 }
@@ -1,51 +1,44 @@
 package com.example.stockservice.service.cart;
 
+import com.example.stockservice.dto.RedisCartDto;
+import com.example.stockservice.dto.RedisCartItemDto;
+import com.example.stockservice.dto.RedisCartProductDto;
 import com.example.stockservice.model.*;
-import com.example.stockservice.repository.CartItemRepository;
-import com.example.stockservice.repository.CartRepository;
-import com.example.stockservice.repository.SizeRepository;
 import com.example.stockservice.request.cart.AddCartItemRequest;
 import com.example.stockservice.request.cart.AddLiveCartItemRequest;
 import com.example.stockservice.request.cart.UpdateCartItemRequest;
-import com.example.stockservice.service.product.ProductService;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
-import org.springframework.transaction.annotation.Transactional;
 
-import java.util.Optional;
+import java.util.*;
 
+/**
+ * Thêm/sửa/xóa item trên giỏ hàng Redis, serialize theo user bằng {@link RedisCartStore#withCartLock}.
+ * Product/size/tồn kho lấy từ {@link CartProductLookup} nên không có round trip DB trên đường ghi.
+ */
 @Service
 @RequiredArgsConstructor
 @Slf4j
 public class CartItemServiceImpl implements CartItemService {
 
-    private final CartRepository cartRepository;
-    private final CartItemRepository cartItemRepository;
-    private final ProductService productService;
-    private final SizeRepository sizeRepository;
+    private final RedisCartStore redisCartStore;
+    private final CartProductLookup cartProductLookup;
+    private final CartViewAssembler cartViewAssembler;
     private final com.example.stockservice.service.flashsale.FlashSaleService flashSaleService;
 
     @Override
-    @Transactional
     public CartItem addCartItem(AddCartItemRequest request, String userId) {
-        Cart cart = getOrCreateCart(userId);
-        Product product = productService.getProductById(request.getProductId());
-        if (product == null) {
-            throw new RuntimeException("Product not found with id: " + request.getProductId());
-        }
+        RedisCartProductDto product = findProduct(request.getProductId());
 
-        Size size = null;
+        RedisCartProductDto.SizeInfo size = null;
         double unitPrice = product.getPrice();
         Double originalPrice = null;
         boolean isFlashSale = false;
 
         if (request.getSizeId() != null && !request.getSizeId().isEmpty()) {
-            size = sizeRepository.findById(request.getSizeId())
-                    .orElseThrow(() -> new RuntimeException("Size not found with id: " + request.getSizeId()));
+            size = findSize(product, request.getSizeId());
             unitPrice = product.getPrice() + size.getPriceModifier();
-        } else if (product.getSizes() != null && !product.getSizes().isEmpty()) {
-
         }
 
         // Check Flash Sale
@@ -58,9 +51,6 @@ public class CartItemServiceImpl implements CartItemService {
                 isFlashSale = true;
 
                 boolean specificPriceFound = false;
-                log.info("Checking Flash Sale sizes for product {}. Found {} sizes.", request.getProductId(),
-                        fsp.getProductSizes() != null ? fsp.getProductSizes().size() : "null");
-
                 if (size != null && fsp.getProductSizes() != null) {
                     for (FlashSaleProductSize fps : fsp.getProductSizes()) {
                         if (fps.getSizeId().equals(size.getId()) && fps.getFlashSalePrice() != null) {
@@ -76,91 +66,77 @@ public class CartItemServiceImpl implements CartItemService {
                 }
 
                 // Validate Flash Sale Stock
-                int currentFlashSaleSoldCount = fsp.getSoldCount();
-                int limit = fsp.getFlashSaleStock();
-                int remaining = limit - currentFlashSaleSoldCount;
+                int remaining = fsp.getFlashSaleStock() - fsp.getSoldCount();
                 if (request.getQuantity() > remaining) {
                     throw new RuntimeException("FLASH_SALE_LIMIT_EXCEEDED: Only " + remaining + " items remaining.");
                 }
             }
         }
 
-        // Initialize availableStock
-        int availableStock = 0;
-        if (size != null) {
-            availableStock = size.getStock();
-        } else if (product.getSizes() != null && !product.getSizes().isEmpty()) {
-            availableStock = product.getSizes().stream()
-                    .mapToInt(Size::getStock)
-                    .sum();
-        }
-
-        // Find existing cart item
-        Optional<CartItem> existingItem = findCartItem(cart.getId(), request.getProductId(), request.getSizeId());
-
-        CartItem cartItem;
-        int newQuantity;
-
-        if (existingItem.isPresent()) {
-            cartItem = existingItem.get();
-            newQuantity = cartItem.getQuantity() + request.getQuantity();
-
-            if (isFlashSale) {
-                cartItem.setUnitPrice(unitPrice);
-                cartItem.setOriginalPrice(originalPrice);
-                cartItem.setFlashSale(true);
+        int availableStock = availableStock(product, size);
+        final double finalUnitPrice = unitPrice;
+        final Double finalOriginalPrice = originalPrice;
+        final boolean finalIsFlashSale = isFlashSale;
+        final String sizeId = size != null ? size.getId() : null;
+        final String sizeName = size != null ? size.getName() : null;
+
+        return redisCartStore.withCartLock(userId, () -> {
+            RedisCartDto cart = redisCartStore.loadOrCreate(userId);
+
+            // Live items are kept separate, only merge with a regular item of the same product/size
+            RedisCartItemDto cartItem = cart.getItems().values().stream()
+                    .filter(item -> !Boolean.TRUE.equals(item.getIsFromLive()))
+                    .filter(item -> matches(item, request.getProductId(), sizeId))
+                    .findFirst()
+                    .orElse(null);
+
+            int newQuantity;
+            if (cartItem != null) {
+                newQuantity = cartItem.getQuantity() + request.getQuantity();
+                if (finalIsFlashSale) {
+                    cartItem.setUnitPrice(finalUnitPrice);
+                    cartItem.setOriginalPrice(finalOriginalPrice);
+                    cartItem.setIsFlashSale(true);
+                }
+            } else {
+                cartItem = RedisCartItemDto.builder()
+                        .cartItemId(UUID.randomUUID().toString())
+                        .productId(product.getId())
+                        .sizeId(sizeId)
+                        .sizeName(sizeName)
+                        .productName(product.getName())
+                        .imageId(product.getImageId())
+                        .unitPrice(finalUnitPrice)
+                        .originalPrice(finalOriginalPrice)
+                        .isFlashSale(finalIsFlashSale)
+                        .build();
+                newQuantity = request.getQuantity();
             }
-        } else {
-            cartItem = CartItem.builder()
-                    .cart(cart)
-                    .product(product)
-                    .size(size)
-                    .quantity(0)
-                    .unitPrice(unitPrice)
-                    .originalPrice(originalPrice)
-                    .isFlashSale(isFlashSale)
-                    .build();
-            newQuantity = request.getQuantity();
-        }
 
-        // Original code stock check:
-        if (newQuantity > availableStock && availableStock > 0) {
-        }
-
-        // Check standard stock
-        if (availableStock > 0 && newQuantity > availableStock) {
-            throw new RuntimeException("INSUFFICIENT_STOCK:" + availableStock);
-        }
-
-        cartItem.setQuantity(newQuantity);
-        cartItem.setTotalPrice(unitPrice * newQuantity);
-
-        cartItem = cartItemRepository.save(cartItem);
+            // Check standard stock
+            if (availableStock > 0 && newQuantity > availableStock) {
+                throw new RuntimeException("INSUFFICIENT_STOCK:" + availableStock);
+            }
 
-        // Update cart total
-        cart.updateTotalAmount();
-        cartRepository.save(cart);
+            cartItem.setQuantity(newQuantity);
+            cartItem.setTotalPrice(cartItem.getUnitPrice() * newQuantity);
+            redisCartStore.saveItems(userId, List.of(cartItem));
 
-        log.info("Added item to cart: userId={}, productId={}, quantity={}, isFlashSale={}", userId,
-                request.getProductId(), newQuantity, isFlashSale);
-        return cartItem;
+            log.info("Added item to cart: userId={}, productId={}, quantity={}, isFlashSale={}", userId,
+                    request.getProductId(), newQuantity, finalIsFlashSale);
+            return cartViewAssembler.toCartItem(cart, cartItem, product);
+        });
     }
 
     @Override
-    @Transactional
     public CartItem addLiveCartItem(AddLiveCartItemRequest request, String userId) {
-        Cart cart = getOrCreateCart(userId);
-        Product product = productService.getProductById(request.getProductId());
-        if (product == null) {
-            throw new RuntimeException("Product not found with id: " + request.getProductId());
-        }
+        RedisCartProductDto product = findProduct(request.getProductId());
 
-        Size size = null;
+        RedisCartProductDto.SizeInfo size = null;
         double finalLivePrice = request.getLivePrice() != null ? request.getLivePrice() : product.getPrice();
 
         if (request.getSizeId() != null && !request.getSizeId().isEmpty()) {
-            size = sizeRepository.findById(request.getSizeId())
-                    .orElseThrow(() -> new RuntimeException("Size not found with id: " + request.getSizeId()));
+            size = findSize(product, request.getSizeId());
             finalLivePrice = request.getLivePrice() != null
                     ? request.getLivePrice()
                     : product.getPrice() + size.getPriceModifier();
@@ -168,10 +144,13 @@ public class CartItemServiceImpl implements CartItemService {
 
         // For live items, we create a new item each time (different liveRoomId makes
         // them unique)
-        CartItem cartItem = CartItem.builder()
-                .cart(cart)
-                .product(product)
-                .size(size)
+        RedisCartItemDto cartItem = RedisCartItemDto.builder()
+                .cartItemId(UUID.randomUUID().toString())
+                .productId(product.getId())
+                .sizeId(size != null ? size.getId() : null)
+                .sizeName(size != null ? size.getName() : null)
+                .productName(product.getName())
+                .imageId(product.getImageId())
                 .quantity(request.getQuantity())
                 .unitPrice(finalLivePrice)
                 .totalPrice(finalLivePrice * request.getQuantity())
@@ -181,138 +160,142 @@ public class CartItemServiceImpl implements CartItemService {
                 .livePrice(request.getLivePrice())
                 .originalPrice(request.getOriginalPrice() != null ? request.getOriginalPrice() : product.getPrice())
                 .isFromLive(true)
+                .isFlashSale(false)
                 .build();
 
-        cartItem = cartItemRepository.save(cartItem);
+        return redisCartStore.withCartLock(userId, () -> {
+            RedisCartDto cart = redisCartStore.loadOrCreate(userId);
+            redisCartStore.saveItems(userId, List.of(cartItem));
 
-        // Update cart total
-        cart.updateTotalAmount();
-        cartRepository.save(cart);
-
-        log.info("Added live item to cart: userId={}, productId={}, liveRoomId={}, livePrice={}",
-                userId, request.getProductId(), request.getLiveRoomId(), request.getLivePrice());
-        return cartItem;
+            log.info("Added live item to cart: userId={}, productId={}, liveRoomId={}, livePrice={}",
+                    userId, request.getProductId(), request.getLiveRoomId(), request.getLivePrice());
+            return cartViewAssembler.toCartItem(cart, cartItem, product);
+        });
     }
 
     @Override
-    @Transactional
     public CartItem updateCartItem(UpdateCartItemRequest request) {
-        Cart cart = cartRepository.findByUserIdWithLock(request.getUserId())
-                .orElseThrow(() -> new RuntimeException("Cart not found for user: " + request.getUserId()));
-
-        Optional<CartItem> existingItem = findCartItem(cart.getId(), request.getProductId(), request.getSizeId());
-        if (existingItem.isEmpty()) {
-            throw new RuntimeException("Item not found in cart for product: " + request.getProductId());
-        }
-
-        CartItem cartItem = existingItem.get();
+        String userId = request.getUserId();
+        RedisCartProductDto product = cartProductLookup.getProducts(List.of(request.getProductId()))
+                .get(request.getProductId());
 
         // Validate stock
         int availableStock = 0;
-        if (request.getSizeId() != null && !request.getSizeId().isEmpty()) {
-            Size size = sizeRepository.findById(request.getSizeId()).orElse(null);
-            if (size != null) {
-                availableStock = size.getStock();
-            }
-        } else {
-            Product product = productService.getProductById(request.getProductId());
-            if (product != null && product.getSizes() != null && !product.getSizes().isEmpty()) {
-                availableStock = product.getSizes().stream()
-                        .mapToInt(Size::getStock)
-                        .sum();
+        if (product != null) {
+            if (request.getSizeId() != null && !request.getSizeId().isEmpty()) {
+                RedisCartProductDto.SizeInfo size = CartViewAssembler.findSize(product, request.getSizeId());
+                if (size != null) {
+                    availableStock = availableStock(product, size);
+                }
+            } else {
+                availableStock = availableStock(product, null);
             }
         }
-
         if (request.getQuantity() > availableStock) {
             throw new RuntimeException("INSUFFICIENT_STOCK:" + availableStock);
         }
 
-        cartItem.setQuantity(request.getQuantity());
-        cartItem.setTotalPrice(cartItem.getUnitPrice() * request.getQuantity());
-
-        cartItem = cartItemRepository.save(cartItem);
-
-        // Update cart total
-        cart.updateTotalAmount();
-        cartRepository.save(cart);
-
-        log.info("Updated cart item: userId={}, productId={}, newQuantity={}",
-                request.getUserId(), request.getProductId(), request.getQuantity());
-        return cartItem;
+        return redisCartStore.withCartLock(userId, () -> {
+            RedisCartDto cart = requireCart(userId);
+            RedisCartItemDto cartItem = cart.getItems().values().stream()
+                    .filter(item -> matches(item, request.getProductId(), request.getSizeId()))
+                    .findFirst()
+                    .orElseThrow(() -> new RuntimeException(
+                            "Item not found in cart for product: " + request.getProductId()));
+
+            cartItem.setQuantity(request.getQuantity());
+            cartItem.setTotalPrice(cartItem.getUnitPrice() * request.getQuantity());
+            redisCartStore.saveItems(userId, List.of(cartItem));
+
+            log.info("Updated cart item: userId={}, productId={}, newQuantity={}",
+                    userId, request.getProductId(), request.getQuantity());
+            return cartViewAssembler.toCartItem(cart, cartItem, product);
+        });
     }
 
     @Override
-    @Transactional
     public void removeCartItem(String userId, String productId, String sizeId) {
         log.info("Removing cart item - userId: {}, productId: {}, sizeId: {}", userId, productId, sizeId);
 
-        Cart cart = cartRepository.findByUserIdWithLock(userId)
-                .orElseThrow(() -> new RuntimeException("Cart not found for user: " + userId));
-
-        Optional<CartItem> existingItem = findCartItem(cart.getId(), productId, sizeId);
-        if (existingItem.isEmpty()) {
-            log.warn("Item not found in cart: productId={}, sizeId={}", productId, sizeId);
-            throw new RuntimeException("Item not found in cart");
-        }
-
-        CartItem cartItem = existingItem.get();
-        cart.removeItem(cartItem);
-        cartItemRepository.delete(cartItem);
-        cartRepository.save(cart);
+        redisCartStore.withCartLock(userId, () -> {
+            RedisCartDto cart = requireCart(userId);
+            RedisCartItemDto cartItem = cart.getItems().values().stream()
+                    .filter(item -> matches(item, productId, sizeId))
+                    .findFirst()
+                    .orElse(null);
+            if (cartItem == null) {
+                log.warn("Item not found in cart: productId={}, sizeId={}", productId, sizeId);
+                throw new RuntimeException("Item not found in cart");
+            }
+            redisCartStore.removeItems(userId, List.of(cartItem.getCartItemId()));
+            return null;
+        });
 
         log.info("Successfully removed cart item for userId: {}", userId);
     }
 
     @Override
-    @Transactional
     public void removeCartItemByCartItemId(String userId, String cartItemId) {
         log.info("Removing cart item by ID - userId: {}, cartItemId: {}", userId, cartItemId);
 
-        Cart cart = cartRepository.findByUserIdWithLock(userId)
-                .orElseThrow(() -> new RuntimeException("Cart not found for user: " + userId));
+        redisCartStore.withCartLock(userId, () -> {
+            // Items are keyed by user, so an item of another user's cart is simply not found
+            RedisCartDto cart = requireCart(userId);
+            if (!cart.getItems().containsKey(cartItemId)) {
+                throw new RuntimeException("CartItem with ID " + cartItemId + " not found");
+            }
+            redisCartStore.removeItems(userId, List.of(cartItemId));
+            return null;
+        });
 
-        CartItem cartItem = cartItemRepository.findById(cartItemId)
-                .orElseThrow(() -> new RuntimeException("CartItem with ID " + cartItemId + " not found"));
+        log.info("Successfully removed cart item: {}", cartItemId);
+    }
 
-        // Verify the item belongs to this user's cart
-        if (!cartItem.getCart().getId().equals(cart.getId())) {
-            throw new RuntimeException("CartItem does not belong to user's cart");
+    private RedisCartDto requireCart(String userId) {
+        RedisCartDto cart = redisCartStore.load(userId);
+        if (cart == null) {
+            throw new RuntimeException("Cart not found for user: " + userId);
         }
+        return cart;
+    }
 
-        cart.removeItem(cartItem);
-        cartItemRepository.delete(cartItem);
-        cartRepository.save(cart);
-
-        log.info("Successfully removed cart item: {}", cartItemId);
+    private RedisCartProductDto findProduct(String productId) {
+        RedisCartProductDto product = cartProductLookup.getProducts(List.of(productId)).get(productId);
+        if (product == null) {
+            throw new RuntimeException("Product not found with id: " + productId);
+        }
+        return product;
     }
 
-    private Cart getOrCreateCart(String userId) {
-        // 1. Try to find with LOCK (Serialize access for this user)
-        Optional<Cart> lockedCart = cartRepository.findByUserIdWithLock(userId);
-        if (lockedCart.isPresent()) {
-            return lockedCart.get();
+    private RedisCartProductDto.SizeInfo findSize(RedisCartProductDto product, String sizeId) {
+        RedisCartProductDto.SizeInfo size = CartViewAssembler.findSize(product, sizeId);
+        if (size == null) {
+            throw new RuntimeException("Size not found with id: " + sizeId);
         }
+        return size;
+    }
 
-        // 2. If not found, create new (Handle unique constraint race condition)
-        try {
-            Cart newCart = Cart.builder()
-                    .userId(userId)
-                    .totalAmount(0.0)
-                    .build();
-            return cartRepository.save(newCart);
-        } catch (org.springframework.dao.DataIntegrityViolationException e) {
-            // Race condition: Someone else created it. Lock and return.
-            log.warn("Race condition creating cart for user {}, retrying with lock...", userId);
-            return cartRepository.findByUserIdWithLock(userId)
-                    .orElseThrow(() -> new RuntimeException("Cart creation failed after retry for user: " + userId));
+    /**
+     * Tồn kho hiện tại: một size, hoặc tổng các size nếu item không chọn size.
+     */
+    private int availableStock(RedisCartProductDto product, RedisCartProductDto.SizeInfo size) {
+        List<RedisCartProductDto.SizeInfo> sizes = size != null ? List.of(size) : product.getSizes();
+        List<String> keys = sizes.stream().map(s -> product.getId() + ":" + s.getId()).toList();
+        Map<String, Integer> liveStock = cartProductLookup.getLiveStock(keys);
+        int total = 0;
+        for (RedisCartProductDto.SizeInfo s : sizes) {
+            total += liveStock.getOrDefault(product.getId() + ":" + s.getId(), s.getStock());
         }
+        return total;
     }
 
-    private Optional<CartItem> findCartItem(String cartId, String productId, String sizeId) {
+    private boolean matches(RedisCartItemDto item, String productId, String sizeId) {
+        if (!productId.equals(item.getProductId())) {
+            return false;
+        }
         if (sizeId != null && !sizeId.isEmpty()) {
-            return cartItemRepository.findByCart_IdAndProduct_IdAndSize_Id(cartId, productId, sizeId);
-        } else {
-            return cartItemRepository.findByCart_IdAndProduct_IdAndSizeIsNull(cartId, productId);
+            return sizeId.equals(item.getSizeId());
         }
+        return item.getSizeId() == null;
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,165 @@
+package com.example.stockservice.service.cart;
+
+import com.example.stockservice.dto.RedisCartDto;
+import com.example.stockservice.dto.RedisCartItemDto;
+import com.example.stockservice.repository.CartItemRepository;
+import com.example.stockservice.repository.CartRepository;
+import com.example.stockservice.repository.ProductRepository;
+import com.example.stockservice.repository.SizeRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * Ghi bất đồng bộ giỏ hàng từ Redis xuống MySQL.
+ *
+ * Mỗi lần ghi trên Redis đánh dấu user vào set {@code cart:dirty}; job này nhận theo lô
+ * (chuyển sang {@code cart:dirty:processing}) và ghi lại toàn bộ giỏ hàng của từng user
+ * (upsert cart + items, xóa item không còn trên Redis), xong mới ack. Instance chết giữa chừng
+ * thì lô được trả lại sau {@code stock.cart.persist-claim-timeout-ms}.
+ * Lỗi thì đánh dấu lại để lần chạy sau thử tiếp, nên request của user không bao giờ chờ DB.
+ * Item trỏ tới product/size đã bị xóa được bỏ khỏi giỏ, tránh lỗi FK lặp lại mãi.
+ */
+@Service
+@Slf4j
+public class CartPersistenceService {
+
+    private final RedisCartStore redisCartStore;
+    private final CartRepository cartRepository;
+    private final CartItemRepository cartItemRepository;
+    private final ProductRepository productRepository;
+    private final SizeRepository sizeRepository;
+    private final TransactionTemplate transactionTemplate;
+
+    @Value("${stock.cart.persist-batch-size:200}")
+    private int batchSize;
+
+    @Value("${stock.cart.persist-claim-timeout-ms:60000}")
+    private long claimTimeoutMs;
+
+    public CartPersistenceService(RedisCartStore redisCartStore, CartRepository cartRepository,
+            CartItemRepository cartItemRepository, ProductRepository productRepository,
+            SizeRepository sizeRepository, PlatformTransactionManager transactionManager) {
+        this.redisCartStore = redisCartStore;
+        this.cartRepository = cartRepository;
+        this.cartItemRepository = cartItemRepository;
+        this.productRepository = productRepository;
+        this.sizeRepository = sizeRepository;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+    }
+
+    @Scheduled(fixedDelayString = "${stock.cart.persist-interval-ms:2000}")
+    public void flushDirtyCarts() {
+        List<String> userIds;
+        try {
+            userIds = redisCartStore.claimDirty(batchSize, claimTimeoutMs);
+        } catch (Exception e) {
+            log.warn("[CART-PERSIST] Failed to read dirty carts: {}", e.getMessage());
+            return;
+        }
+        if (userIds.isEmpty()) {
+            return;
+        }
+
+        int persisted = 0;
+        for (String userId : userIds) {
+            try {
+                persist(userId);
+                persisted++;
+            } catch (Exception e) {
+                log.warn("[CART-PERSIST] Failed to persist cart of user {}, will retry: {}", userId, e.getMessage());
+                try {
+                    redisCartStore.markDirty(userId);
+                } catch (Exception markError) {
+                    // Không ack: hết claim timeout user sẽ được trả lại hàng đợi
+                    continue;
+                }
+            }
+            try {
+                redisCartStore.ackDirty(userId);
+            } catch (Exception e) {
+                log.warn("[CART-PERSIST] Failed to ack cart of user {}: {}", userId, e.getMessage());
+            }
+        }
+        log.debug("[CART-PERSIST] Persisted {}/{} carts", persisted, userIds.size());
+    }
+
+    private void persist(String userId) {
+        RedisCartDto cart = redisCartStore.load(userId);
+        if (cart == null) {
+            return;
+        }
+        Map<String, RedisCartItemDto> items = dropOrphanedItems(userId, cart.getItems());
+        transactionTemplate.executeWithoutResult(status -> {
+            cartRepository.upsertCart(cart.getCartId(), userId, cart.getTotalAmount());
+            if (items.isEmpty()) {
+                cartItemRepository.deleteAllInCart(cart.getCartId());
+                return;
+            }
+            for (RedisCartItemDto item : items.values()) {
+                cartItemRepository.upsertItem(
+                        item.getCartItemId(),
+                        cart.getCartId(),
+                        item.getProductId(),
+                        item.getSizeId(),
+                        item.getQuantity(),
+                        item.getUnitPrice(),
+                        item.getTotalPrice(),
+                        Boolean.TRUE.equals(item.getIsFlashSale()),
+                        item.getLiveRoomId(),
+                        item.getLiveProductId(),
+                        item.getLivePrice(),
+                        item.getOriginalPrice(),
+                        item.getIsFromLive());
+            }
+            cartItemRepository.deleteByCartIdExcept(cart.getCartId(), items.keySet());
+        });
+    }
+
+    /**
+     * Bỏ các item có product hoặc size không còn trong DB (cả trên Redis), trả về phần còn lại.
+     */
+    private Map<String, RedisCartItemDto> dropOrphanedItems(String userId, Map<String, RedisCartItemDto> items) {
+        if (items.isEmpty()) {
+            return items;
+        }
+        Set<String> productIds = new HashSet<>();
+        Set<String> sizeIds = new HashSet<>();
+        for (RedisCartItemDto item : items.values()) {
+            productIds.add(item.getProductId());
+            if (item.getSizeId() != null) {
+                sizeIds.add(item.getSizeId());
+            }
+        }
+        Set<String> existingProducts = new HashSet<>(productRepository.findExistingIds(productIds));
+        Set<String> existingSizes = sizeIds.isEmpty() ? Set.of() : new HashSet<>(sizeRepository.findExistingIds(sizeIds));
+        List<String> orphaned = items.values().stream()
+                .filter(item -> !existingProducts.contains(item.getProductId())
+                        || (item.getSizeId() != null && !existingSizes.contains(item.getSizeId())))
+                .map(RedisCartItemDto::getCartItemId)
+                .filter(Objects::nonNull)
+                .toList();
+        if (orphaned.isEmpty()) {
+            return items;
+        }
+        log.warn("[CART-PERSIST] Dropping {} cart items of user {} whose product/size no longer exists: {}",
+                orphaned.size(), userId, orphaned);
+        redisCartStore.withCartLock(userId, () -> {
+            redisCartStore.removeItems(userId, orphaned);
+            return null;
+        });
+        Map<String, RedisCartItemDto> remaining = new LinkedHashMap<>(items);
+        remaining.keySet().removeAll(orphaned);
+        return remaining;
+    }
+}
@@ -0,0 +1,164 @@
+package com.example.stockservice.service.cart;
+
+import com.example.stockservice.dto.RedisCartProductDto;
+import com.example.stockservice.model.Product;
+import com.example.stockservice.model.Size;
+import com.example.stockservice.repository.ProductRepository;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.connection.StringRedisConnection;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.stereotype.Component;
+
+import java.util.*;
+
+/**
+ * Tra cứu product/size/tồn kho cho toàn bộ giỏ hàng bằng một lần MGET.
+ * Product thiếu trong cache được nạp bằng một query batch ({@code findAllByIdIn}) rồi ghi lại Redis.
+ * Tồn kho ưu tiên key {@code stock:{productId}:{sizeId}} (giá trị realtime của reservation),
+ * fallback về stock trong snapshot nếu key chưa được warm.
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class CartProductLookup {
+
+    private static final String PRODUCT_KEY_PREFIX = "cart:product:";
+    private static final String STOCK_KEY_PREFIX = "stock:";
+
+    private final StringRedisTemplate stringRedisTemplate;
+    private final ProductRepository productRepository;
+    private final ObjectMapper objectMapper;
+
+    @Value("${stock.cart.product-cache-ttl-seconds:120}")
+    private long productCacheTtlSeconds;
+
+    /**
+     * @return productId → snapshot; product không tồn tại sẽ không có trong map
+     */
+    public Map<String, RedisCartProductDto> getProducts(Collection<String> productIds) {
+        List<String> ids = new ArrayList<>(new LinkedHashSet<>(productIds));
+        if (ids.isEmpty()) {
+            return Map.of();
+        }
+
+        Map<String, RedisCartProductDto> result = new HashMap<>();
+        List<String> missing = new ArrayList<>();
+        List<String> cached = stringRedisTemplate.opsForValue()
+                .multiGet(ids.stream().map(id -> PRODUCT_KEY_PREFIX + id).toList());
+        for (int i = 0; i < ids.size(); i++) {
+            RedisCartProductDto snapshot = cached != null ? read(cached.get(i)) : null;
+            if (snapshot != null) {
+                result.put(ids.get(i), snapshot);
+            } else {
+                missing.add(ids.get(i));
+            }
+        }
+
+        if (!missing.isEmpty()) {
+            Map<String, String> toCache = new HashMap<>();
+            for (Product product : productRepository.findAllByIdIn(missing)) {
+                RedisCartProductDto snapshot = toSnapshot(product);
+                result.put(product.getId(), snapshot);
+                toCache.put(PRODUCT_KEY_PREFIX + product.getId(), write(snapshot));
+            }
+            cacheSnapshots(toCache);
+        }
+        return result;
+    }
+
+    /**
+     * Tồn kho realtime theo size. Key: productId + ":" + sizeId; size chưa warm sẽ không có trong map.
+     */
+    public Map<String, Integer> getLiveStock(Collection<String> productSizeKeys) {
+        List<String> keys = new ArrayList<>(new LinkedHashSet<>(productSizeKeys));
+        if (keys.isEmpty()) {
+            return Map.of();
+        }
+        List<String> values = stringRedisTemplate.opsForValue()
+                .multiGet(keys.stream().map(key -> STOCK_KEY_PREFIX + key).toList());
+        Map<String, Integer> result = new HashMap<>();
+        for (int i = 0; values != null && i < keys.size(); i++) {
+            String value = values.get(i);
+            if (value != null) {
+                try {
+                    result.put(keys.get(i), Integer.parseInt(value));
+                } catch (NumberFormatException e) {
+                    log.warn("[CART] Invalid stock value for {}: {}", keys.get(i), value);
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Xóa snapshot khi product thay đổi (giá, trạng thái, sizes).
+     */
+    public void evict(String productId) {
+        stringRedisTemplate.delete(PRODUCT_KEY_PREFIX + productId);
+    }
+
+    private void cacheSnapshots(Map<String, String> toCache) {
+        if (toCache.isEmpty()) {
+            return;
+        }
+        try {
+            stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+                StringRedisConnection conn = (StringRedisConnection) connection;
+                toCache.forEach((key, value) -> conn.setEx(key, productCacheTtlSeconds, value));
+                return null;
+            });
+        } catch (Exception e) {
+            log.warn("[CART] Failed to cache product snapshots: {}", e.getMessage());
+        }
+    }
+
+    private RedisCartProductDto toSnapshot(Product product) {
+        List<RedisCartProductDto.SizeInfo> sizes = new ArrayList<>();
+        if (product.getSizes() != null) {
+            for (Size size : product.getSizes()) {
+                sizes.add(RedisCartProductDto.SizeInfo.builder()
+                        .id(size.getId())
+                        .name(size.getName())
+                        .priceModifier(size.getPriceModifier())
+                        .stock(size.getStock())
+                        .weight(size.getWeight())
+                        .build());
+            }
+        }
+        return RedisCartProductDto.builder()
+                .id(product.getId())
+                .name(product.getName())
+                .description(product.getDescription())
+                .price(product.getPrice())
+                .originalPrice(product.getOriginalPrice())
+                .discountPercent(product.getDiscountPercent())
+                .status(product.getStatus())
+                .imageId(product.getImageId())
+                .userId(product.getUserId())
+                .sizes(sizes)
+                .build();
+    }
+
+    private String write(RedisCartProductDto snapshot) {
+        try {
+            return objectMapper.writeValueAsString(snapshot);
+        } catch (Exception e) {
+            throw new IllegalStateException("Failed to serialize product snapshot " + snapshot.getId(), e);
+        }
+    }
+
+    private RedisCartProductDto read(String json) {
+        if (json == null) {
+            return null;
+        }
+        try {
+            return objectMapper.readValue(json, RedisCartProductDto.class);
+        } catch (Exception e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,87 @@
+package com.example.stockservice.service.cart;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.Set;
+
+/**
+ * Gộp các sự kiện cập nhật product trước khi resync giỏ hàng.
+ *
+ * Mỗi sự kiện đẩy product vào ZSET {@code cart:resync:pending} với score là thời điểm đến hạn:
+ * {@code min(now + debounce, firstSeen + maxWait)}. Nhiều lần sửa liên tiếp chỉ dời hạn chứ không
+ * tạo thêm lần resync, và không product nào phải chờ quá {@code maxWait}.
+ * Job định kỳ lấy các product đã đến hạn; ZREM thành công mới xử lý nên mỗi product chỉ một instance chạy.
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class CartResyncDebouncer {
+
+    private static final String PENDING_KEY = "cart:resync:pending";
+    private static final String FIRST_SEEN_KEY = "cart:resync:first";
+    private static final int DRAIN_BATCH_SIZE = 100;
+
+    private final StringRedisTemplate stringRedisTemplate;
+    private final CartService cartService;
+
+    @Value("${stock.cart.resync-debounce-ms:1000}")
+    private long debounceMs;
+
+    @Value("${stock.cart.resync-max-wait-ms:5000}")
+    private long maxWaitMs;
+
+    /**
+     * Đăng ký resync cho product; gọi nhiều lần trong cửa sổ debounce chỉ resync một lần.
+     */
+    public void request(String productId) {
+        long now = System.currentTimeMillis();
+        stringRedisTemplate.opsForHash().putIfAbsent(FIRST_SEEN_KEY, productId, String.valueOf(now));
+
+        long firstSeen = now;
+        Object stored = stringRedisTemplate.opsForHash().get(FIRST_SEEN_KEY, productId);
+        if (stored != null) {
+            try {
+                firstSeen = Long.parseLong(stored.toString());
+            } catch (NumberFormatException ignored) {
+                // giữ now
+            }
+        }
+
+        long dueAt = Math.min(now + debounceMs, firstSeen + maxWaitMs);
+        stringRedisTemplate.opsForZSet().add(PENDING_KEY, productId, dueAt);
+    }
+
+    @Scheduled(fixedDelayString = "${stock.cart.resync-poll-ms:500}")
+    public void drainDueProducts() {
+        Set<String> due;
+        try {
+            due = stringRedisTemplate.opsForZSet()
+                    .rangeByScore(PENDING_KEY, 0, System.currentTimeMillis(), 0, DRAIN_BATCH_SIZE);
+        } catch (Exception e) {
+            log.warn("[CART-RESYNC] Failed to read pending products: {}", e.getMessage());
+            return;
+        }
+        if (due == null || due.isEmpty()) {
+            return;
+        }
+
+        for (String productId : due) {
+            Long removed = stringRedisTemplate.opsForZSet().remove(PENDING_KEY, productId);
+            if (removed == null || removed == 0) {
+                // Instance khác đã nhận product này
+                continue;
+            }
+            stringRedisTemplate.opsForHash().delete(FIRST_SEEN_KEY, productId);
+            try {
+                cartService.syncCartItemsForProduct(productId);
+            } catch (Exception e) {
+                log.error("[CART-RESYNC] Error syncing cart items for productId: {}", productId, e);
+            }
+        }
+    }
+}
@@ -0,0 +1,208 @@
+package com.example.stockservice.service.cart;
+
+import com.example.stockservice.dto.RedisCartDto;
+import com.example.stockservice.dto.RedisCartItemDto;
+import com.example.stockservice.dto.RedisCartProductDto;
+import com.example.stockservice.enums.ProductStatus;
+import com.example.stockservice.model.Cart;
+import com.example.stockservice.model.CartItem;
+import com.example.stockservice.model.Product;
+import com.example.stockservice.model.Size;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import java.util.*;
+
+/**
+ * Dựng Cart/CartItem (transient, không gắn persistence context) từ giỏ hàng Redis
+ * và gắn các field "Refresh on View" (productAvailable, sizeAvailable, availableStock, priceChanged, oldPrice).
+ * Toàn bộ product/size/stock của giỏ được lấy bằng một lần tra cứu batch qua {@link CartProductLookup}.
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class CartViewAssembler {
+
+    private final CartProductLookup cartProductLookup;
+
+    public Cart toCart(RedisCartDto redisCart) {
+        Collection<RedisCartItemDto> items = redisCart.getItems().values();
+        Map<String, RedisCartProductDto> products = cartProductLookup.getProducts(
+                items.stream().map(RedisCartItemDto::getProductId).toList());
+        Map<String, Integer> liveStock = cartProductLookup.getLiveStock(stockKeys(items, products));
+
+        Cart cart = Cart.builder()
+                .userId(redisCart.getUserId())
+                .items(new LinkedHashSet<>())
+                .build();
+        cart.setId(redisCart.getCartId());
+        for (RedisCartItemDto item : items) {
+            CartItem cartItem = toCartItem(cart, item, products.get(item.getProductId()));
+            refresh(cartItem, item, products.get(item.getProductId()), liveStock);
+            cart.getItems().add(cartItem);
+        }
+        cart.updateTotalAmount();
+        return cart;
+    }
+
+    /**
+     * CartItem trả về sau khi thêm/sửa (không cần refresh availability).
+     */
+    public CartItem toCartItem(RedisCartDto redisCart, RedisCartItemDto item, RedisCartProductDto product) {
+        Cart cart = Cart.builder().userId(redisCart.getUserId()).build();
+        cart.setId(redisCart.getCartId());
+        return toCartItem(cart, item, product);
+    }
+
+    private CartItem toCartItem(Cart cart, RedisCartItemDto item, RedisCartProductDto snapshot) {
+        Product product = toProduct(item, snapshot);
+        Size size = null;
+        if (item.getSizeId() != null) {
+            RedisCartProductDto.SizeInfo sizeInfo = findSize(snapshot, item.getSizeId());
+            size = Size.builder()
+                    .name(sizeInfo != null ? sizeInfo.getName() : item.getSizeName())
+                    .priceModifier(sizeInfo != null ? sizeInfo.getPriceModifier() : 0)
+                    .stock(sizeInfo != null ? sizeInfo.getStock() : 0)
+                    .weight(sizeInfo != null ? sizeInfo.getWeight() : null)
+                    .build();
+            size.setId(item.getSizeId());
+        }
+
+        CartItem cartItem = CartItem.builder()
+                .cart(cart)
+                .product(product)
+                .size(size)
+                .quantity(item.getQuantity())
+                .unitPrice(item.getUnitPrice())
+                .totalPrice(item.getTotalPrice())
+                .isFlashSale(Boolean.TRUE.equals(item.getIsFlashSale()))
+                .liveRoomId(item.getLiveRoomId())
+                .liveProductId(item.getLiveProductId())
+                .livePrice(item.getLivePrice())
+                .originalPrice(item.getOriginalPrice())
+                .isFromLive(item.getIsFromLive())
+                .build();
+        cartItem.setId(item.getCartItemId());
+        return cartItem;
+    }
+
+    private Product toProduct(RedisCartItemDto item, RedisCartProductDto snapshot) {
+        Product product;
+        if (snapshot == null) {
+            // Product đã bị xóa: giữ tên/ảnh lúc thêm vào giỏ để vẫn hiển thị được
+            product = Product.builder()
+                    .name(item.getProductName())
+                    .imageId(item.getImageId())
+                    .build();
+        } else {
+            List<Size> sizes = new ArrayList<>(snapshot.getSizes().size());
+            for (RedisCartProductDto.SizeInfo sizeInfo : snapshot.getSizes()) {
+                Size size = Size.builder()
+                        .name(sizeInfo.getName())
+                        .priceModifier(sizeInfo.getPriceModifier())
+                        .stock(sizeInfo.getStock())
+                        .weight(sizeInfo.getWeight())
+                        .build();
+                size.setId(sizeInfo.getId());
+                sizes.add(size);
+            }
+            product = Product.builder()
+                    .name(snapshot.getName())
+                    .description(snapshot.getDescription())
+                    .price(snapshot.getPrice())
+                    .originalPrice(snapshot.getOriginalPrice())
+                    .discountPercent(snapshot.getDiscountPercent())
+                    .status(snapshot.getStatus())
+                    .imageId(snapshot.getImageId())
+                    .userId(snapshot.getUserId())
+                    .sizes(sizes)
+                    .build();
+        }
+        product.setId(item.getProductId());
+        return product;
+    }
+
+    private void refresh(CartItem cartItem, RedisCartItemDto item, RedisCartProductDto product,
+            Map<String, Integer> liveStock) {
+        // Default values
+        cartItem.setProductAvailable(true);
+        cartItem.setSizeAvailable(true);
+        cartItem.setAvailableStock(Integer.MAX_VALUE);
+        cartItem.setPriceChanged(false);
+        cartItem.setOldPrice(null);
+
+        // Skip live items - they keep their locked price
+        if (Boolean.TRUE.equals(item.getIsFromLive())) {
+            return;
+        }
+
+        if (product == null) {
+            // Product was deleted
+            cartItem.setProductAvailable(false);
+            cartItem.setAvailableStock(0);
+            return;
+        }
+
+        // Check product status (BANNED, SUSPENDED, OUT_OF_STOCK)
+        if (product.getStatus() == ProductStatus.BANNED ||
+                product.getStatus() == ProductStatus.SUSPENDED ||
+                product.getStatus() == ProductStatus.OUT_OF_STOCK) {
+            cartItem.setProductAvailable(false);
+            cartItem.setAvailableStock(0);
+            return;
+        }
+
+        double currentPrice = product.getPrice();
+        int currentStock = 0;
+        if (item.getSizeId() != null) {
+            RedisCartProductDto.SizeInfo size = findSize(product, item.getSizeId());
+            if (size == null) {
+                // Size was deleted
+                cartItem.setSizeAvailable(false);
+                cartItem.setAvailableStock(0);
+                return;
+            }
+            currentPrice = product.getPrice() + size.getPriceModifier();
+            currentStock = liveStock.getOrDefault(product.getId() + ":" + size.getId(), size.getStock());
+        } else {
+            // No size - total stock from all sizes
+            for (RedisCartProductDto.SizeInfo size : product.getSizes()) {
+                currentStock += liveStock.getOrDefault(product.getId() + ":" + size.getId(), size.getStock());
+            }
+        }
+        cartItem.setAvailableStock(currentStock);
+
+        // Only flag the change, the stored unitPrice stays until the user acts on it
+        if (Math.abs(item.getUnitPrice() - currentPrice) > 0.01) {
+            cartItem.setOldPrice(item.getUnitPrice());
+            cartItem.setPriceChanged(true);
+        }
+    }
+
+    private List<String> stockKeys(Collection<RedisCartItemDto> items, Map<String, RedisCartProductDto> products) {
+        List<String> keys = new ArrayList<>();
+        for (RedisCartItemDto item : items) {
+            if (item.getSizeId() != null) {
+                keys.add(item.getProductId() + ":" + item.getSizeId());
+            } else if (products.containsKey(item.getProductId())) {
+                for (RedisCartProductDto.SizeInfo size : products.get(item.getProductId()).getSizes()) {
+                    keys.add(item.getProductId() + ":" + size.getId());
+                }
+            }
+        }
+        return keys;
+    }
+
+    static RedisCartProductDto.SizeInfo findSize(RedisCartProductDto product, String sizeId) {
+        if (product == null || sizeId == null) {
+            return null;
+        }
+        for (RedisCartProductDto.SizeInfo size : product.getSizes()) {
+            if (sizeId.equals(size.getId())) {
+                return size;
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,365 @@
+package com.example.stockservice.service.cart;
+
+import com.example.stockservice.dto.RedisCartDto;
+import com.example.stockservice.dto.RedisCartItemDto;
+import com.example.stockservice.model.Cart;
+import com.example.stockservice.model.CartItem;
+import com.example.stockservice.repository.CartRepository;
+import com.example.stockservice.service.cache.RedisLockService;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.data.redis.connection.StringRedisConnection;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.scripting.support.ResourceScriptSource;
+import org.springframework.stereotype.Component;
+
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Giỏ hàng lưu chính trên Redis, MySQL chỉ là bản lưu bền (ghi bất đồng bộ bởi {@link CartPersistenceService}).
+ *
+ * Key layout:
+ * - cart:id:{userId}               → cartId ("" = user chưa có giỏ hàng), đồng thời là cờ "đã nạp"
+ * - cart:items:{userId}            → hash cartItemId → JSON {@link RedisCartItemDto}
+ * - cart:owner:{cartId}            → userId (cho các API nội bộ đi theo cartId)
+ * - cart:product-users:{productId} → set userId đang có product trong giỏ (phục vụ resync khi product đổi),
+ *                                    SREM khi item bị xóa, TTL bằng TTL giỏ hàng
+ * - cart:dirty                     → set userId có thay đổi chưa ghi xuống DB
+ * - cart:dirty:processing          → zset userId đang được ghi (score = lúc nhận), ack xong mới xóa
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class RedisCartStore {
+
+    private static final String ID_PREFIX = "cart:id:";
+    private static final String ITEMS_PREFIX = "cart:items:";
+    private static final String OWNER_PREFIX = "cart:owner:";
+    private static final String PRODUCT_USERS_PREFIX = "cart:product-users:";
+    private static final String DIRTY_KEY = "cart:dirty";
+    private static final String DIRTY_PROCESSING_KEY = "cart:dirty:processing";
+    private static final String LOCK_PREFIX = "lock:cart:";
+    private static final int LOCK_TIMEOUT_SECONDS = 5;
+    private static final int RESYNC_CARTS_PER_CALL = 200;
+
+    private final StringRedisTemplate stringRedisTemplate;
+    private final CartRepository cartRepository;
+    private final RedisLockService redisLockService;
+    private final ObjectMapper objectMapper;
+
+    @Value("${stock.cart.redis-ttl-days:7}")
+    private long ttlDays;
+
+    private DefaultRedisScript<Long> warmScript;
+    private DefaultRedisScript<Long> resyncScript;
+    @SuppressWarnings("rawtypes")
+    private DefaultRedisScript<List> claimDirtyScript;
+
+    @PostConstruct
+    public void init() {
+        warmScript = new DefaultRedisScript<>();
+        warmScript.setScriptSource(new ResourceScriptSource(new ClassPathResource("scripts/cart_warm.lua")));
+        warmScript.setResultType(Long.class);
+
+        resyncScript = new DefaultRedisScript<>();
+        resyncScript.setScriptSource(new ResourceScriptSource(new ClassPathResource("scripts/cart_resync_product.lua")));
+        resyncScript.setResultType(Long.class);
+
+        claimDirtyScript = new DefaultRedisScript<>();
+        claimDirtyScript.setScriptSource(new ResourceScriptSource(new ClassPathResource("scripts/cart_dirty_claim.lua")));
+        claimDirtyScript.setResultType(List.class);
+    }
+
+    // ==================== READ ====================
+
+    /**
+     * Giỏ hàng của user, nạp từ DB một lần nếu Redis chưa có.
+     *
+     * @return null nếu user chưa có giỏ hàng
+     */
+    public RedisCartDto load(String userId) {
+        String cartId = stringRedisTemplate.opsForValue().get(ID_PREFIX + userId);
+        if (cartId == null) {
+            warmFromDatabase(userId);
+            cartId = stringRedisTemplate.opsForValue().get(ID_PREFIX + userId);
+        }
+        if (cartId == null || cartId.isEmpty()) {
+            return null;
+        }
+
+        Map<String, RedisCartItemDto> items = readItems(userId);
+        RedisCartDto cart = RedisCartDto.builder()
+                .cartId(cartId)
+                .userId(userId)
+                .items(items)
+                .build();
+        cart.calculateTotalAmount();
+        return cart;
+    }
+
+    /**
+     * Giỏ hàng của user; tạo mới (chỉ trên Redis) nếu chưa có. Gọi bên trong {@link #withCartLock}.
+     */
+    public RedisCartDto loadOrCreate(String userId) {
+        RedisCartDto cart = load(userId);
+        if (cart != null) {
+            return cart;
+        }
+        String cartId = UUID.randomUUID().toString();
+        long ttlSeconds = TimeUnit.DAYS.toSeconds(ttlDays);
+        stringRedisTemplate.opsForValue().set(ID_PREFIX + userId, cartId, ttlSeconds, TimeUnit.SECONDS);
+        stringRedisTemplate.opsForValue().set(OWNER_PREFIX + cartId, userId, ttlSeconds, TimeUnit.SECONDS);
+        markDirty(userId);
+        log.info("[CART] Created cart {} for user {} (Redis)", cartId, userId);
+        return RedisCartDto.builder()
+                .cartId(cartId)
+                .userId(userId)
+                .items(new LinkedHashMap<>())
+                .build();
+    }
+
+    /**
+     * userId sở hữu cartId; fallback DB nếu key owner đã hết hạn.
+     */
+    public String findUserIdByCartId(String cartId) {
+        String userId = stringRedisTemplate.opsForValue().get(OWNER_PREFIX + cartId);
+        if (userId != null) {
+            return userId;
+        }
+        return cartRepository.findById(cartId).map(Cart::getUserId).orElse(null);
+    }
+
+    /**
+     * Giỏ hàng của user đang nằm trên Redis (đã nạp hoặc đã tạo).
+     */
+    public boolean isLoaded(String userId) {
+        return Boolean.TRUE.equals(stringRedisTemplate.hasKey(ID_PREFIX + userId));
+    }
+
+    public Set<String> usersHoldingProduct(String productId) {
+        Set<String> users = stringRedisTemplate.opsForSet().members(PRODUCT_USERS_PREFIX + productId);
+        return users != null ? users : Set.of();
+    }
+
+    // ==================== WRITE ====================
+
+    /**
+     * Serialize ghi giỏ hàng của một user giữa các instance.
+     */
+    public <T> T withCartLock(String userId, Supplier<T> action) {
+        return redisLockService.executeWithLock(LOCK_PREFIX + userId, LOCK_TIMEOUT_SECONDS, action);
+    }
+
+    /**
+     * Ghi (thêm/sửa) các item trong một round trip và đánh dấu cần lưu DB.
+     */
+    public void saveItems(String userId, Collection<RedisCartItemDto> items) {
+        if (items.isEmpty()) {
+            return;
+        }
+        Map<String, String> values = new HashMap<>();
+        for (RedisCartItemDto item : items) {
+            values.put(item.getCartItemId(), writeItem(item));
+        }
+        long ttlSeconds = TimeUnit.DAYS.toSeconds(ttlDays);
+        stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            StringRedisConnection conn = (StringRedisConnection) connection;
+            conn.hMSet(ITEMS_PREFIX + userId, values);
+            conn.expire(ITEMS_PREFIX + userId, ttlSeconds);
+            conn.expire(ID_PREFIX + userId, ttlSeconds);
+            for (RedisCartItemDto item : items) {
+                conn.sAdd(PRODUCT_USERS_PREFIX + item.getProductId(), userId);
+                conn.expire(PRODUCT_USERS_PREFIX + item.getProductId(), ttlSeconds);
+            }
+            conn.sAdd(DIRTY_KEY, userId);
+            return null;
+        });
+    }
+
+    /**
+     * Áp giá mới của một product cho mọi giỏ hàng đang chứa nó bằng script Lua, mỗi lần gọi
+     * xử lý {@value #RESYNC_CARTS_PER_CALL} giỏ. Không cần lock theo user vì script nguyên tử.
+     *
+     * @param pricesBySize JSON giá theo sizeId ("_" = không size)
+     * @param sizesByName  JSON sizeName → sizeId của product hiện tại
+     * @return số item đã thay đổi
+     */
+    public long resyncProduct(String productId, String pricesBySize, String sizesByName) {
+        List<String> itemKeys = usersHoldingProduct(productId).stream()
+                .map(userId -> ITEMS_PREFIX + userId)
+                .toList();
+        long updated = 0;
+        for (int from = 0; from < itemKeys.size(); from += RESYNC_CARTS_PER_CALL) {
+            List<String> keys = new ArrayList<>();
+            keys.add(DIRTY_KEY);
+            keys.add(PRODUCT_USERS_PREFIX + productId);
+            keys.addAll(itemKeys.subList(from, Math.min(from + RESYNC_CARTS_PER_CALL, itemKeys.size())));
+            Long changed = stringRedisTemplate.execute(resyncScript, keys,
+                    productId, pricesBySize, sizesByName, String.valueOf(ITEMS_PREFIX.length()));
+            updated += changed != null ? changed : 0;
+        }
+        return updated;
+    }
+
+    /**
+     * Xóa item và bỏ user khỏi {@code cart:product-users} của product không còn item nào trong giỏ.
+     * Gọi bên trong {@link #withCartLock}.
+     */
+    public void removeItems(String userId, Collection<String> cartItemIds) {
+        if (cartItemIds.isEmpty()) {
+            return;
+        }
+        Set<String> releasedProducts = new HashSet<>();
+        Set<String> keptProducts = new HashSet<>();
+        for (Map.Entry<String, RedisCartItemDto> entry : readItems(userId).entrySet()) {
+            String productId = entry.getValue().getProductId();
+            if (cartItemIds.contains(entry.getKey())) {
+                releasedProducts.add(productId);
+            } else {
+                keptProducts.add(productId);
+            }
+        }
+        releasedProducts.removeAll(keptProducts);
+        stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            StringRedisConnection conn = (StringRedisConnection) connection;
+            conn.hDel(ITEMS_PREFIX + userId, cartItemIds.toArray(new String[0]));
+            for (String productId : releasedProducts) {
+                conn.sRem(PRODUCT_USERS_PREFIX + productId, userId);
+            }
+            conn.sAdd(DIRTY_KEY, userId);
+            return null;
+        });
+    }
+
+    /**
+     * Xóa toàn bộ item (checkout / clear). Gọi bên trong {@link #withCartLock}.
+     */
+    public void clear(String userId) {
+        Set<String> productIds = new HashSet<>();
+        for (RedisCartItemDto item : readItems(userId).values()) {
+            productIds.add(item.getProductId());
+        }
+        stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            StringRedisConnection conn = (StringRedisConnection) connection;
+            conn.del(ITEMS_PREFIX + userId);
+            for (String productId : productIds) {
+                conn.sRem(PRODUCT_USERS_PREFIX + productId, userId);
+            }
+            conn.sAdd(DIRTY_KEY, userId);
+            return null;
+        });
+    }
+
+    // ==================== PERSISTENCE QUEUE ====================
+
+    public void markDirty(String userId) {
+        stringRedisTemplate.opsForSet().add(DIRTY_KEY, userId);
+    }
+
+    /**
+     * Nhận một lô user cần ghi: chuyển từ {@code cart:dirty} sang {@code cart:dirty:processing}
+     * (nguyên tử). User bị giữ quá {@code claimTimeoutMs} mà chưa {@link #ackDirty} — instance ghi
+     * đã chết — được trả lại {@code cart:dirty} ở lần nhận sau.
+     */
+    @SuppressWarnings("unchecked")
+    public List<String> claimDirty(int count, long claimTimeoutMs) {
+        List<String> users = stringRedisTemplate.execute(claimDirtyScript,
+                List.of(DIRTY_KEY, DIRTY_PROCESSING_KEY),
+                String.valueOf(count), String.valueOf(System.currentTimeMillis()), String.valueOf(claimTimeoutMs));
+        return users != null ? users : List.of();
+    }
+
+    public void ackDirty(String userId) {
+        stringRedisTemplate.opsForZSet().remove(DIRTY_PROCESSING_KEY, userId);
+    }
+
+    // ==================== INTERNAL ====================
+
+    private Map<String, RedisCartItemDto> readItems(String userId) {
+        Map<Object, Object> raw = stringRedisTemplate.opsForHash().entries(ITEMS_PREFIX + userId);
+        Map<String, RedisCartItemDto> items = new LinkedHashMap<>();
+        for (Map.Entry<Object, Object> entry : raw.entrySet()) {
+            RedisCartItemDto item = readItem((String) entry.getValue());
+            if (item != null) {
+                items.put((String) entry.getKey(), item);
+            }
+        }
+        return items;
+    }
+
+    private void warmFromDatabase(String userId) {
+        Cart cart = cartRepository.findByUserId(userId).orElse(null);
+        List<String> args = new ArrayList<>();
+        args.add(cart != null ? cart.getId() : "");
+        args.add(String.valueOf(TimeUnit.DAYS.toSeconds(ttlDays)));
+        if (cart != null && cart.getItems() != null) {
+            for (CartItem item : cart.getItems()) {
+                RedisCartItemDto dto = toRedisItem(item);
+                args.add(dto.getCartItemId());
+                args.add(writeItem(dto));
+            }
+        }
+
+        Long loaded = stringRedisTemplate.execute(warmScript,
+                List.of(ID_PREFIX + userId, ITEMS_PREFIX + userId), args.toArray());
+        if (cart != null && Long.valueOf(1L).equals(loaded)) {
+            long ttlSeconds = TimeUnit.DAYS.toSeconds(ttlDays);
+            stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+                StringRedisConnection conn = (StringRedisConnection) connection;
+                conn.setEx(OWNER_PREFIX + cart.getId(), ttlSeconds, userId);
+                for (CartItem item : cart.getItems()) {
+                    conn.sAdd(PRODUCT_USERS_PREFIX + item.getProduct().getId(), userId);
+                    conn.expire(PRODUCT_USERS_PREFIX + item.getProduct().getId(), ttlSeconds);
+                }
+                return null;
+            });
+            log.info("[CART] Warmed cart {} for user {} from DB ({} items)",
+                    cart.getId(), userId, cart.getItems().size());
+        }
+    }
+
+    private RedisCartItemDto toRedisItem(CartItem item) {
+        return RedisCartItemDto.builder()
+                .cartItemId(item.getId())
+                .productId(item.getProduct().getId())
+                .sizeId(item.getSize() != null ? item.getSize().getId() : null)
+                .sizeName(item.getSize() != null ? item.getSize().getName() : null)
+                .quantity(item.getQuantity())
+                .unitPrice(item.getUnitPrice())
+                .totalPrice(item.getTotalPrice())
+                .productName(item.getProduct().getName())
+                .imageId(item.getProduct().getImageId())
+                .liveRoomId(item.getLiveRoomId())
+                .liveProductId(item.getLiveProductId())
+                .livePrice(item.getLivePrice())
+                .originalPrice(item.getOriginalPrice())
+                .isFromLive(item.getIsFromLive())
+                .isFlashSale(item.isFlashSale())
+                .build();
+    }
+
+    private String writeItem(RedisCartItemDto item) {
+        try {
+            return objectMapper.writeValueAsString(item);
+        } catch (Exception e) {
+            throw new IllegalStateException("Failed to serialize cart item " + item.getCartItemId(), e);
+        }
+    }
+
+    private RedisCartItemDto readItem(String json) {
+        try {
+            return objectMapper.readValue(json, RedisCartItemDto.class);
+        } catch (Exception e) {
+            log.warn("[CART] Skipping unreadable cart item: {}", e.getMessage());
+            return null;
+        }
+    }
+}
@@ -26,6 +26,7 @@ public class CategoryServiceImpl implements CategoryService {
     private final ProductRepository productRepository;
     private final FileStorageClient fileStorageClient;
     private final ModelMapper modelMapper;
+    private final CategoryTreeCache categoryTreeCache;
 
     @Override
     public CategoryDto createCategory(CategoryCreateRequest request, MultipartFile image) {
@@ -44,13 +45,17 @@ public class CategoryServiceImpl implements CategoryService {
             }
         }
 
+        validateParent(null, request.getParentId());
+
         Category category = Category.builder()
                 .name(request.getName())
                 .description(request.getDescription())
                 .imageId(imageId)
+                .parentId(request.getParentId())
                 .build();
 
         Category saved = categoryRepository.save(category);
+        categoryTreeCache.invalidate();
         log.info("Category created: {}", saved.getId());
         return mapToDtoWithImage(saved);
     }
@@ -69,6 +74,12 @@ public class CategoryServiceImpl implements CategoryService {
         if (request.getDescription() != null) {
             toUpdate.setDescription(request.getDescription());
         }
+        if (request.getParentId() != null) {
+            // Chuỗi rỗng = đưa category về root
+            String parentId = request.getParentId().isBlank() ? null : request.getParentId();
+            validateParent(toUpdate.getId(), parentId);
+            toUpdate.setParentId(parentId);
+        }
 
         // Handle image update
         if (image != null && !image.isEmpty()) {
@@ -91,20 +102,24 @@ public class CategoryServiceImpl implements CategoryService {
         }
 
         Category updated = categoryRepository.save(toUpdate);
+        categoryTreeCache.invalidate();
         log.info("Category updated: {}", updated.getId());
         return mapToDtoWithImage(updated);
     }
 
     @Override
     public List<CategoryDto> getAll() {
-        return categoryRepository.findAll().stream()
-                .map(this::mapToDtoWithImage)
+        // Đọc từ snapshot, không chạm DB (kể cả product count)
+        return categoryTreeCache.all().stream()
+                .map(this::mapToDto)
                 .collect(Collectors.toList());
     }
 
     @Override
     public CategoryDto getCategoryById(String id) {
-        return mapToDtoWithImage(findCategoryById(id));
+        return categoryTreeCache.findById(id)
+                .map(this::mapToDto)
+                .orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_FOUND, "Category not found"));
     }
 
     @Override
@@ -128,6 +143,7 @@ public class CategoryServiceImpl implements CategoryService {
             // Hard delete: No products, safe to delete
             String imageId = category.getImageId();
             categoryRepository.deleteById(id);
+            categoryTreeCache.invalidate();
             log.info("Category hard deleted: {}", id);
 
             // Delete associated image if exists
@@ -137,6 +153,48 @@ public class CategoryServiceImpl implements CategoryService {
         }
     }
 
+    /**
+     * Map snapshot node to CategoryDto
+     */
+    private CategoryDto mapToDto(CategoryTreeCache.Node node) {
+        CategoryDto dto = new CategoryDto();
+        dto.setId(node.id());
+        dto.setName(node.name());
+        dto.setDescription(node.description());
+        if (node.imageId() != null && !node.imageId().isEmpty()) {
+            dto.setImageUrl("/v1/file-storage/get/" + node.imageId());
+        }
+        dto.setProductCount(node.productCount());
+        dto.setParentId(node.parentId());
+        dto.setChildIds(node.childIds());
+        return dto;
+    }
+
+    /**
+     * Parent phải tồn tại và không được là chính nó hoặc category con của nó
+     */
+    private void validateParent(String categoryId, String parentId) {
+        if (parentId == null) {
+            return;
+        }
+        CategoryTreeCache.Snapshot snapshot = categoryTreeCache.get();
+        String cursor = parentId;
+        int hops = 0;
+        while (cursor != null && hops++ <= snapshot.all().size()) {
+            if (cursor.equals(categoryId)) {
+                throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Category cannot be its own ancestor");
+            }
+            CategoryTreeCache.Node node = snapshot.byId().get(cursor);
+            if (node == null) {
+                if (cursor.equals(parentId)) {
+                    throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Parent category not found");
+                }
+                break;
+            }
+            cursor = node.parentId();
+        }
+    }
+
     /**
      * Map Category entity to CategoryDto with imageUrl
      */
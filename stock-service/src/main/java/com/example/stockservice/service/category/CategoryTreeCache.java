@@ -0,0 +1,311 @@
+package com.example.stockservice.service.category;
+
+import com.example.stockservice.model.Category;
+import com.example.stockservice.repository.CategoryRepository;
+import com.example.stockservice.repository.ProductRepository;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.stereotype.Component;
+
+import java.text.Normalizer;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Pattern;
+
+/**
+ * Snapshot danh mục trong bộ nhớ, dùng chung cho category endpoints, search parsing và AI tools.
+ *
+ * Snapshot là immutable (index theo id, theo tên, parent → children, keyword → category).
+ * Ghi category gọi {@link #invalidate()} để tăng version trên Redis; các instance khác
+ * so version theo chu kỳ {@code stock.category-cache.version-check-ms} rồi build lại.
+ * Product count trong snapshot được làm mới sau {@code stock.category-cache.max-age-seconds}.
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class CategoryTreeCache {
+
+    private static final String VERSION_KEY = "category:tree:version";
+    private static final Pattern DIACRITICS = Pattern.compile("\\p{InCombiningDiacriticalMarks}+");
+
+    // Alias keyword → tên category (trước đây nằm cứng trong SmartSearchService)
+    private static final Map<String, String> KEYWORD_ALIASES = Map.ofEntries(
+            Map.entry("máy ảnh", "Camera"),
+            Map.entry("camera", "Camera"),
+            Map.entry("laptop", "Laptop"),
+            Map.entry("máy tính", "Laptop"),
+            Map.entry("điện thoại", "Phone"),
+            Map.entry("phone", "Phone"),
+            Map.entry("smartphone", "Phone"),
+            Map.entry("tai nghe", "Headphones"),
+            Map.entry("headphone", "Headphones"),
+            Map.entry("earphone", "Headphones"),
+            Map.entry("áo", "Clothing"),
+            Map.entry("áo thun", "T-Shirt"),
+            Map.entry("t-shirt", "T-Shirt"),
+            Map.entry("tshirt", "T-Shirt"),
+            Map.entry("quần", "Pants"),
+            Map.entry("pants", "Pants"),
+            Map.entry("jeans", "Jeans"),
+            Map.entry("váy", "Dress"),
+            Map.entry("dress", "Dress"),
+            Map.entry("hoodie", "Hoodie"),
+            Map.entry("áo hoodie", "Hoodie"),
+            Map.entry("đồ gia dụng", "Home & Living"),
+            Map.entry("nội thất", "Furniture"),
+            Map.entry("furniture", "Furniture"),
+            Map.entry("đồ chơi", "Toys"),
+            Map.entry("toy", "Toys"),
+            Map.entry("lego", "Toys"),
+            Map.entry("mỹ phẩm", "Beauty"),
+            Map.entry("makeup", "Beauty"),
+            Map.entry("cosmetic", "Beauty"),
+            Map.entry("sách", "Books"),
+            Map.entry("book", "Books"));
+
+    private final CategoryRepository categoryRepository;
+    private final ProductRepository productRepository;
+    private final StringRedisTemplate stringRedisTemplate;
+
+    @Value("${stock.category-cache.version-check-ms:2000}")
+    private long versionCheckMs;
+
+    @Value("${stock.category-cache.max-age-seconds:60}")
+    private long maxAgeSeconds;
+
+    private volatile Snapshot snapshot;
+    private final AtomicLong nextVersionCheckAt = new AtomicLong();
+    private final Object rebuildLock = new Object();
+
+    public record Node(String id, String name, String description, String imageId, String parentId,
+                       List<String> childIds, long productCount) {
+    }
+
+    /**
+     * Keyword dạng không dấu kèm pattern đã compile, chỉ khớp nguyên từ.
+     */
+    public record Keyword(String key, Pattern pattern, Node node) {
+    }
+
+    public record Snapshot(long version, long builtAt, List<Node> all, List<Node> roots,
+                           Map<String, Node> byId, Map<String, Node> byName,
+                           List<Keyword> keywords, List<Pattern> keywordPatterns) {
+
+        public List<Node> children(String parentId) {
+            Node parent = byId.get(parentId);
+            if (parent == null) {
+                return List.of();
+            }
+            List<Node> result = new ArrayList<>(parent.childIds().size());
+            for (String childId : parent.childIds()) {
+                result.add(byId.get(childId));
+            }
+            return result;
+        }
+    }
+
+    /**
+     * Snapshot hiện tại; chỉ chạm DB khi version thay đổi hoặc snapshot quá hạn.
+     */
+    public Snapshot get() {
+        Snapshot current = snapshot;
+        long now = System.currentTimeMillis();
+        if (current != null && now - current.builtAt() < maxAgeSeconds * 1000 && !versionChanged(current, now)) {
+            return current;
+        }
+        synchronized (rebuildLock) {
+            Snapshot latest = snapshot;
+            if (latest != current && latest != null) {
+                return latest;
+            }
+            Snapshot rebuilt = build(readRemoteVersion());
+            snapshot = rebuilt;
+            return rebuilt;
+        }
+    }
+
+    public List<Node> all() {
+        return get().all();
+    }
+
+    public Optional<Node> findById(String id) {
+        return id == null ? Optional.empty() : Optional.ofNullable(get().byId().get(id));
+    }
+
+    /**
+     * Tìm category theo tên: khớp chính xác (không dấu, không phân biệt hoa thường) trước,
+     * sau đó tới keyword alias, cuối cùng là tên chứa chuỗi tìm kiếm.
+     */
+    public Optional<Node> findByName(String name) {
+        if (name == null || name.isBlank()) {
+            return Optional.empty();
+        }
+        Snapshot current = get();
+        String normalized = normalize(name);
+        Node exact = current.byName().get(normalized);
+        if (exact != null) {
+            return Optional.of(exact);
+        }
+        for (Keyword keyword : current.keywords()) {
+            if (keyword.key().equals(normalized)) {
+                return Optional.of(keyword.node());
+            }
+        }
+        for (Node node : current.all()) {
+            if (node.name() != null && normalize(node.name()).contains(normalized)) {
+                return Optional.of(node);
+            }
+        }
+        return Optional.empty();
+    }
+
+    /**
+     * Các category được nhắc tới trong câu truy vấn (so khớp nguyên từ, keyword dài nhất trước),
+     * để "áo" không khớp "bao" hay "book" không khớp "notebook".
+     */
+    public List<String> resolveCategoryNames(String query) {
+        if (query == null || query.isBlank()) {
+            return List.of();
+        }
+        String normalized = normalize(query);
+        Set<String> found = new LinkedHashSet<>();
+        for (Keyword keyword : get().keywords()) {
+            if (keyword.pattern().matcher(normalized).find()) {
+                found.add(keyword.node().name());
+            }
+        }
+        return new ArrayList<>(found);
+    }
+
+    /**
+     * Xóa các keyword category (nguyên từ) khỏi câu truy vấn.
+     */
+    public String stripCategoryKeywords(String query) {
+        if (query == null) {
+            return null;
+        }
+        String result = query;
+        for (Pattern pattern : get().keywordPatterns()) {
+            result = pattern.matcher(result).replaceAll(" ");
+        }
+        return result.replaceAll("\\s+", " ").trim();
+    }
+
+    /**
+     * Gọi sau khi ghi category: bỏ snapshot local và tăng version để instance khác build lại.
+     */
+    public void invalidate() {
+        try {
+            stringRedisTemplate.opsForValue().increment(VERSION_KEY);
+        } catch (Exception e) {
+            log.warn("[CATEGORY-CACHE] Failed to bump version on Redis: {}", e.getMessage());
+        }
+        synchronized (rebuildLock) {
+            snapshot = null;
+        }
+    }
+
+    private boolean versionChanged(Snapshot current, long now) {
+        long checkAt = nextVersionCheckAt.get();
+        if (now < checkAt || !nextVersionCheckAt.compareAndSet(checkAt, now + versionCheckMs)) {
+            return false;
+        }
+        return readRemoteVersion() != current.version();
+    }
+
+    private long readRemoteVersion() {
+        try {
+            String value = stringRedisTemplate.opsForValue().get(VERSION_KEY);
+            return value != null ? Long.parseLong(value) : 0L;
+        } catch (Exception e) {
+            // Redis lỗi: giữ snapshot hiện tại, chỉ làm mới theo max-age
+            log.warn("[CATEGORY-CACHE] Failed to read version from Redis: {}", e.getMessage());
+            Snapshot current = snapshot;
+            return current != null ? current.version() : 0L;
+        }
+    }
+
+    private Snapshot build(long version) {
+        List<Category> categories = categoryRepository.findAll();
+        Map<String, Long> counts = new HashMap<>();
+        for (Object[] row : productRepository.countGroupByCategoryId()) {
+            counts.put((String) row[0], (Long) row[1]);
+        }
+
+        Map<String, List<String>> childIndex = new HashMap<>();
+        for (Category category : categories) {
+            if (category.getParentId() != null) {
+                childIndex.computeIfAbsent(category.getParentId(), k -> new ArrayList<>()).add(category.getId());
+            }
+        }
+
+        List<Node> all = new ArrayList<>(categories.size());
+        List<Node> roots = new ArrayList<>();
+        Map<String, Node> byId = new HashMap<>();
+        Map<String, Node> byName = new HashMap<>();
+        for (Category category : categories) {
+            Node node = new Node(
+                    category.getId(),
+                    category.getName(),
+                    category.getDescription(),
+                    category.getImageId(),
+                    category.getParentId(),
+                    List.copyOf(childIndex.getOrDefault(category.getId(), List.of())),
+                    counts.getOrDefault(category.getId(), 0L));
+            all.add(node);
+            byId.put(node.id(), node);
+            if (node.name() != null) {
+                byName.putIfAbsent(normalize(node.name()), node);
+            }
+        }
+        for (Node node : all) {
+            // Parent không còn tồn tại thì coi như root
+            if (node.parentId() == null || !byId.containsKey(node.parentId())) {
+                roots.add(node);
+            }
+        }
+
+        // Keyword = tên category + alias, lưu cả dạng gốc (để xóa khỏi query) và dạng không dấu (để so khớp)
+        Map<String, Node> keywordIndex = new HashMap<>(byName);
+        Set<String> rawKeywords = new HashSet<>();
+        for (Node node : all) {
+            if (node.name() != null) {
+                rawKeywords.add(node.name().toLowerCase(Locale.ROOT));
+            }
+        }
+        KEYWORD_ALIASES.forEach((alias, categoryName) -> {
+            Node target = byName.get(normalize(categoryName));
+            if (target != null) {
+                keywordIndex.putIfAbsent(normalize(alias), target);
+                rawKeywords.add(alias);
+                rawKeywords.add(normalize(alias));
+            }
+        });
+        List<Keyword> keywords = new ArrayList<>(keywordIndex.size());
+        keywordIndex.forEach((keyword, node) -> keywords.add(new Keyword(keyword, wordPattern(keyword), node)));
+        keywords.sort((a, b) -> Integer.compare(b.key().length(), a.key().length()));
+        List<Pattern> keywordPatterns = rawKeywords.stream()
+                .sorted((a, b) -> Integer.compare(b.length(), a.length()))
+                .map(CategoryTreeCache::wordPattern)
+                .toList();
+
+        log.info("[CATEGORY-CACHE] Built category snapshot v{}: {} categories, {} keywords",
+                version, all.size(), keywords.size());
+        return new Snapshot(version, System.currentTimeMillis(), List.copyOf(all), List.copyOf(roots),
+                Map.copyOf(byId), Map.copyOf(byName), List.copyOf(keywords), keywordPatterns);
+    }
+
+    // Chỉ khớp khi hai bên không phải chữ cái (kể cả chữ có dấu)
+    private static Pattern wordPattern(String keyword) {
+        return Pattern.compile("(?<!\\p{L})" + Pattern.quote(keyword) + "(?!\\p{L})",
+                Pattern.CASE_INSENSITIVE | Pattern.UNICODE_CASE);
+    }
+
+    static String normalize(String str) {
+        String lower = str.toLowerCase(Locale.ROOT).trim();
+        String stripped = DIACRITICS.matcher(Normalizer.normalize(lower, Normalizer.Form.NFD)).replaceAll("");
+        return stripped.replace('đ', 'd');
+    }
+}
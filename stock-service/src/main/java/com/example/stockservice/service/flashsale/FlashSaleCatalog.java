@@ -0,0 +1,222 @@
+package com.example.stockservice.service.flashsale;
+
+import com.example.stockservice.enums.FlashSaleStatus;
+import com.example.stockservice.model.FlashSaleProduct;
+import com.example.stockservice.model.FlashSaleSession;
+import com.example.stockservice.repository.FlashSaleProductRepository;
+import com.example.stockservice.repository.FlashSaleSessionRepository;
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Snapshot trong bộ nhớ của các sản phẩm flash sale đã duyệt thuộc session ACTIVE chưa kết thúc.
+ *
+ * - Nạp bằng MỘT query (join fetch sizes) mỗi {@code stock.flash-sale.snapshot-refresh-ms}, và ngay sau commit
+ *   khi admin duyệt/từ chối/bật tắt session (thông báo qua channel "flashsale:catalog:changed" cho mọi node)
+ * - Entity trong snapshot đã detach và dùng chung giữa các thread: chỉ đọc, muốn ghi thì load lại từ repository
+ * - Đánh dấu hết hàng theo product/size trên từng node: request vào sản phẩm đã hết bị từ chối không cần gọi Redis.
+ *   Khi stock được trả lại (hủy giữ chỗ, hoàn đơn), node publish "flashsale:restocked" để mọi node bỏ đánh dấu;
+ *   đánh dấu cũng tự hết hạn sau {@code stock.flash-sale.sold-out-cache-seconds} nếu lỡ message
+ */
+@Component
+@Slf4j
+public class FlashSaleCatalog {
+
+    private static final String CHANGED_CHANNEL = "flashsale:catalog:changed";
+    private static final String RESTOCKED_CHANNEL = "flashsale:restocked";
+
+    private final FlashSaleSessionRepository sessionRepository;
+    private final FlashSaleProductRepository flashSaleProductRepository;
+    private final StringRedisTemplate stringRedisTemplate;
+    private final RedisMessageListenerContainer listenerContainer;
+    private final TransactionTemplate transactionTemplate;
+
+    @Value("${stock.flash-sale.sold-out-cache-seconds:60}")
+    private long soldOutCacheSeconds;
+
+    /**
+     * Sản phẩm flash sale kèm khung giờ của session
+     */
+    public record Entry(FlashSaleProduct product, LocalDateTime startTime, LocalDateTime endTime) {
+
+        boolean isOpen(LocalDateTime now) {
+            return now.isAfter(startTime) && now.isBefore(endTime);
+        }
+    }
+
+    // productId -> các entry sắp theo startTime; thay nguyên map khi refresh nên reader không cần lock
+    private volatile Map<String, List<Entry>> snapshot;
+
+    // "{productId}:{sizeId}" -> hết hạn (epoch ms)
+    private final Map<String, Long> soldOut = new ConcurrentHashMap<>();
+
+    public FlashSaleCatalog(FlashSaleSessionRepository sessionRepository,
+            FlashSaleProductRepository flashSaleProductRepository, StringRedisTemplate stringRedisTemplate,
+            RedisMessageListenerContainer listenerContainer, PlatformTransactionManager transactionManager) {
+        this.sessionRepository = sessionRepository;
+        this.flashSaleProductRepository = flashSaleProductRepository;
+        this.stringRedisTemplate = stringRedisTemplate;
+        this.listenerContainer = listenerContainer;
+        // Transaction riêng (kể cả khi được gọi trong transaction khác) để entity nạp ra luôn detach
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.transactionTemplate.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        this.transactionTemplate.setReadOnly(true);
+    }
+
+    @PostConstruct
+    public void init() {
+        listenerContainer.addMessageListener((message, pattern) -> refresh(), new ChannelTopic(CHANGED_CHANNEL));
+        listenerContainer.addMessageListener((message, pattern) ->
+                soldOut.remove(new String(message.getBody(), StandardCharsets.UTF_8)), new ChannelTopic(RESTOCKED_CHANNEL));
+    }
+
+    @Scheduled(fixedDelayString = "${stock.flash-sale.snapshot-refresh-ms:5000}")
+    public void refresh() {
+        try {
+            Map<String, List<Entry>> loaded = transactionTemplate.execute(status -> load());
+            snapshot = loaded != null ? loaded : Map.of();
+        } catch (Exception e) {
+            log.warn("[FS-CATALOG] Failed to refresh flash sale snapshot: {}", e.getMessage());
+        }
+        long now = System.currentTimeMillis();
+        soldOut.values().removeIf(until -> until < now);
+    }
+
+    private Map<String, List<Entry>> load() {
+        LocalDateTime now = LocalDateTime.now();
+        Map<String, FlashSaleSession> sessions = sessionRepository.findByStatus(FlashSaleStatus.ACTIVE).stream()
+                .filter(s -> s.getEndTime().isAfter(now))
+                .collect(Collectors.toMap(FlashSaleSession::getId, Function.identity()));
+        if (sessions.isEmpty()) {
+            return Map.of();
+        }
+
+        Map<String, List<Entry>> loaded = new HashMap<>();
+        for (FlashSaleProduct p : flashSaleProductRepository.findWithSizesBySessionIdInAndStatus(sessions.keySet(),
+                FlashSaleStatus.APPROVED)) {
+            FlashSaleSession session = sessions.get(p.getSessionId());
+            loaded.computeIfAbsent(p.getProductId(), k -> new ArrayList<>())
+                    .add(new Entry(p, session.getStartTime(), session.getEndTime()));
+        }
+        loaded.values().forEach(entries -> entries.sort(Comparator.comparing(Entry::startTime)));
+        log.debug("[FS-CATALOG] Loaded {} flash sale products from {} sessions", loaded.size(), sessions.size());
+        return loaded;
+    }
+
+    /**
+     * Sản phẩm flash sale đang mở bán của product (không query DB)
+     */
+    public Entry findOpen(String productId) {
+        LocalDateTime now = LocalDateTime.now();
+        for (Entry entry : current().getOrDefault(productId, List.of())) {
+            if (entry.isOpen(now)) {
+                return entry;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Các sản phẩm flash sale đang mở bán hoặc bắt đầu trước {@code until}
+     */
+    public List<Entry> startingBefore(LocalDateTime until) {
+        LocalDateTime now = LocalDateTime.now();
+        List<Entry> result = new ArrayList<>();
+        for (List<Entry> entries : current().values()) {
+            for (Entry entry : entries) {
+                if (entry.startTime().isBefore(until) && entry.endTime().isAfter(now)) {
+                    result.add(entry);
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Nạp lại snapshot trên mọi node; trong transaction thì thực hiện sau commit để đọc được dữ liệu mới
+     */
+    public void invalidate() {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    publishChanged();
+                }
+            });
+        } else {
+            publishChanged();
+        }
+    }
+
+    private void publishChanged() {
+        try {
+            stringRedisTemplate.convertAndSend(CHANGED_CHANNEL, "refresh");
+        } catch (Exception e) {
+            // Không publish được: ít nhất node này nạp lại ngay, node khác chờ lần refresh định kỳ
+            log.warn("[FS-CATALOG] Failed to publish snapshot change: {}", e.getMessage());
+            refresh();
+        }
+    }
+
+    public boolean isSoldOut(String productId, String sizeId) {
+        String key = productId + ":" + sizeId;
+        Long until = soldOut.get(key);
+        if (until == null) {
+            return false;
+        }
+        if (until < System.currentTimeMillis()) {
+            soldOut.remove(key, until);
+            return false;
+        }
+        return true;
+    }
+
+    public void markSoldOut(String productId, String sizeId) {
+        soldOut.put(productId + ":" + sizeId, System.currentTimeMillis() + soldOutCacheSeconds * 1000);
+    }
+
+    /**
+     * Stock flash sale của size vừa được trả lại: bỏ đánh dấu hết hàng trên mọi node
+     */
+    public void markRestocked(String productId, String sizeId) {
+        String key = productId + ":" + sizeId;
+        soldOut.remove(key);
+        try {
+            stringRedisTemplate.convertAndSend(RESTOCKED_CHANNEL, key);
+        } catch (Exception e) {
+            log.warn("[FS-CATALOG] Failed to publish restock of {}: {}", key, e.getMessage());
+        }
+    }
+
+    private Map<String, List<Entry>> current() {
+        Map<String, List<Entry>> current = snapshot;
+        if (current == null) {
+            // Lần đọc đầu tiên trước khi job refresh kịp chạy
+            refresh();
+            current = snapshot;
+        }
+        return current != null ? current : Map.of();
+    }
+}
@@ -10,6 +10,7 @@ import org.springframework.core.io.ClassPathResource;
 import org.springframework.data.redis.core.StringRedisTemplate;
 import org.springframework.data.redis.core.script.DefaultRedisScript;
 import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.scripting.support.ResourceScriptSource;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
@@ -53,6 +54,9 @@ public class FlashSaleService {
     private final com.example.stockservice.service.reservation.StockReservationService stockReservationService;
     private final RedisLockService redisLockService;
     private final StockPersistenceService stockPersistenceService;
+    private final com.example.stockservice.service.searchproduct.SearchCacheService searchCacheService;
+    private final FlashSaleCatalog flashSaleCatalog;
+    private final org.springframework.data.redis.listener.RedisMessageListenerContainer listenerContainer;
 
     @org.springframework.beans.factory.annotation.Value("${kafka.topic.product-updates}")
     private String productUpdatesTopic;
@@ -63,6 +67,25 @@ public class FlashSaleService {
     private static final String FLASHSALE_STOCK_KEY_PREFIX = "flashsale:stock:";
     private static final String FLASHSALE_BOUGHT_KEY_PREFIX = "flashsale:bought:";
     private static final String FLASHSALE_RESERVE_KEY_PREFIX = "flashsale:reserve:";
+    private static final String FLASHSALE_LIMIT_KEY_PREFIX = "flashsale:limit:";
+
+    @org.springframework.beans.factory.annotation.Value("${stock.flash-sale.default-limit-per-user:0}")
+    private int defaultLimitPerUser;
+
+    @org.springframework.beans.factory.annotation.Value("${stock.flash-sale.capped-user-cache-seconds:30}")
+    private long cappedUserCacheSeconds;
+
+    // "{userId}:{productId}" -> hết hạn (epoch ms): user đã chạm giới hạn, từ chối ngay không cần gọi Redis
+    private final java.util.concurrent.ConcurrentHashMap<String, Long> cappedUsers = new java.util.concurrent.ConcurrentHashMap<>();
+    private static final int MAX_CAPPED_USERS = 100_000;
+    // Số lượng đã mua được trả lại: publish "{userId}:{productId}" để mọi node bỏ đánh dấu chạm giới hạn
+    private static final String CAPPED_CLEARED_CHANNEL = "flashsale:capped-cleared";
+
+    @org.springframework.beans.factory.annotation.Value("${stock.flash-sale.prewarm-lead-minutes:10}")
+    private long prewarmLeadMinutes;
+
+    // ID các FlashSaleProduct node này đã pre-warm (chỉ giữ các id còn trong snapshot)
+    private final java.util.Set<String> prewarmed = java.util.concurrent.ConcurrentHashMap.newKeySet();
 
     @PostConstruct
     public void init() {
@@ -77,6 +100,10 @@ public class FlashSaleService {
         flashSaleCancelScript.setScriptSource(new ResourceScriptSource(
                 new ClassPathResource("scripts/flashsale_cancel.lua")));
         flashSaleCancelScript.setResultType(Long.class);
+
+        listenerContainer.addMessageListener((message, pattern) ->
+                cappedUsers.remove(new String(message.getBody(), java.nio.charset.StandardCharsets.UTF_8)),
+                new org.springframework.data.redis.listener.ChannelTopic(CAPPED_CLEARED_CHANNEL));
     }
 
     // --- Admin: Session Management ---
@@ -104,6 +131,7 @@ public class FlashSaleService {
 
         session.setStatus(FlashSaleStatus.ACTIVE);
         sessionRepository.save(session);
+        flashSaleCatalog.invalidate();
 
         try {
             notificationClient.broadcastToShops(
@@ -163,7 +191,7 @@ public class FlashSaleService {
                 .salePrice(request.getSalePrice())
                 .flashSaleStock(totalFlashSaleStock)
                 .soldCount(0)
-                .status(FlashSaleStatus.PENDING)
+                .limitPerUser(request.getLimitPerUser())
                 .status(FlashSaleStatus.PENDING)
                 .productSizes(flashSaleSizes)
                 .build();
@@ -225,6 +253,10 @@ public class FlashSaleService {
         // EVENT-DRIVEN WARM-UP: Immediately warm up this single product
         warmUpSingleProduct(saved);
 
+        // Stock của size đã được chuyển sang flash sale: kết quả search cache không còn đúng
+        searchCacheService.invalidateAll();
+        flashSaleCatalog.invalidate();
+
         return saved;
     }
 
@@ -236,6 +268,7 @@ public class FlashSaleService {
         fsp.setStatus(FlashSaleStatus.REJECTED);
         fsp.setRejectionReason(reason);
         FlashSaleProduct saved = flashSaleProductRepository.save(fsp);
+        flashSaleCatalog.invalidate();
 
         // Use TransactionSynchronization to send event AFTER commit
         org.springframework.transaction.support.TransactionSynchronizationManager.registerSynchronization(
@@ -347,6 +380,7 @@ public class FlashSaleService {
                 .salePrice(fsp.getSalePrice())
                 .flashSaleStock(fsp.getFlashSaleStock())
                 .soldCount(fsp.getSoldCount())
+                .limitPerUser(effectiveLimitPerUser(fsp))
                 .status(fsp.getStatus())
                 .rejectionReason(fsp.getRejectionReason())
                 .productName(product != null ? product.getName() : "Unknown Product")
@@ -375,6 +409,7 @@ public class FlashSaleService {
         FlashSaleSession session = sessionRepository.findById(sessionId)
                 .orElseThrow(() -> new RuntimeException("Session not found"));
 
+        flashSaleCatalog.invalidate();
         if (session.getStatus() == FlashSaleStatus.ACTIVE) {
             session.setStatus(FlashSaleStatus.INACTIVE);
             return sessionRepository.save(session);
@@ -395,23 +430,14 @@ public class FlashSaleService {
         }
     }
 
+    /**
+     * Sản phẩm flash sale đang mở bán của product, đọc từ snapshot trong bộ nhớ (FlashSaleCatalog).
+     * Entity trả về dùng chung giữa các request: chỉ đọc; soldCount/flashSaleStock có thể trễ tới một chu kỳ
+     * refresh snapshot (stock thật để giữ chỗ nằm trên Redis).
+     */
     public FlashSaleProduct findActiveFlashSaleProduct(String productId) {
-        List<FlashSaleProduct> products = flashSaleProductRepository.findByProductIdAndStatus(productId,
-                FlashSaleStatus.APPROVED);
-
-        for (FlashSaleProduct p : products) {
-            FlashSaleSession session = sessionRepository.findById(p.getSessionId()).orElse(null);
-            if (session != null && session.getStatus() == FlashSaleStatus.ACTIVE) {
-                LocalDateTime now = LocalDateTime.now();
-                if (now.isAfter(session.getStartTime()) && now.isBefore(session.getEndTime())) {
-                    if (p.getProductSizes() != null) {
-                        p.getProductSizes().size(); // Trigger Lazy Load
-                    }
-                    return p;
-                }
-            }
-        }
-        return null;
+        FlashSaleCatalog.Entry entry = flashSaleCatalog.findOpen(productId);
+        return entry != null ? entry.product() : null;
     }
 
     // --- Redis: SMART Cache Strategy ---
@@ -436,21 +462,53 @@ public class FlashSaleService {
         if (p.getProductSizes() != null) {
             FlashSaleSession session = sessionRepository.findById(p.getSessionId()).orElse(null);
             if (session != null) {
-                long ttl = Duration.between(LocalDateTime.now(), session.getEndTime()).getSeconds();
-                if (ttl < 0)
-                    ttl = 3600;
+                warmUpSingleProduct(p, session.getEndTime());
+            }
+        }
+    }
 
-                for (FlashSaleProductSize size : p.getProductSizes()) {
-                    String stockKey = FLASHSALE_STOCK_KEY_PREFIX + p.getProductId() + ":" + size.getSizeId();
+    private void warmUpSingleProduct(FlashSaleProduct p, LocalDateTime sessionEndTime) {
+        long ttl = Duration.between(LocalDateTime.now(), sessionEndTime).getSeconds();
+        if (ttl < 0)
+            ttl = 3600;
 
-                    // Only set if not exists (NX) to prevent overwriting active stock
-                    Boolean set = stringRedisTemplate.opsForValue().setIfAbsent(stockKey,
-                            String.valueOf(size.getFlashSaleStock()), ttl, TimeUnit.SECONDS);
+        cacheLimitPerUser(p, ttl);
 
-                    if (Boolean.TRUE.equals(set)) {
-                        log.info("[SMART-WARMUP] Cached {} = {}", stockKey, size.getFlashSaleStock());
-                    }
-                }
+        for (FlashSaleProductSize size : p.getProductSizes()) {
+            String stockKey = FLASHSALE_STOCK_KEY_PREFIX + p.getProductId() + ":" + size.getSizeId();
+
+            // Only set if not exists (NX) to prevent overwriting active stock
+            Boolean set = stringRedisTemplate.opsForValue().setIfAbsent(stockKey,
+                    String.valueOf(size.getFlashSaleStock()), ttl, TimeUnit.SECONDS);
+
+            if (Boolean.TRUE.equals(set)) {
+                log.info("[SMART-WARMUP] Cached {} = {}", stockKey, size.getFlashSaleStock());
+            }
+        }
+    }
+
+    /**
+     * Scheduled pre-warm: nạp stock/giới hạn của các sản phẩm thuộc session bắt đầu trong
+     * {@code stock.flash-sale.prewarm-lead-minutes} tới lên Redis TRƯỚC giờ mở bán, để những giây đầu
+     * không request nào rơi vào cache miss. Danh sách lấy từ snapshot, không query DB; NX nên chạy trên
+     * nhiều node cùng lúc vẫn an toàn.
+     */
+    @Scheduled(fixedDelayString = "${stock.flash-sale.prewarm-interval-ms:30000}")
+    public void prewarmUpcomingSessions() {
+        List<FlashSaleCatalog.Entry> entries = flashSaleCatalog
+                .startingBefore(LocalDateTime.now().plusMinutes(prewarmLeadMinutes));
+        prewarmed.retainAll(entries.stream().map(e -> e.product().getId()).toList());
+
+        for (FlashSaleCatalog.Entry entry : entries) {
+            FlashSaleProduct p = entry.product();
+            if (p.getProductSizes() == null || !prewarmed.add(p.getId())) {
+                continue;
+            }
+            try {
+                warmUpSingleProduct(p, entry.endTime());
+            } catch (Exception e) {
+                prewarmed.remove(p.getId());
+                log.warn("[PREWARM] Failed to warm up flash sale product {}: {}", p.getId(), e.getMessage());
             }
         }
     }
@@ -462,25 +520,29 @@ public class FlashSaleService {
         String stockKey = FLASHSALE_STOCK_KEY_PREFIX + productId + ":" + sizeId;
         String boughtKey = FLASHSALE_BOUGHT_KEY_PREFIX + userId + ":" + productId;
         String reserveKey = FLASHSALE_RESERVE_KEY_PREFIX + orderId + ":" + productId + ":" + sizeId;
+        String limitKey = FLASHSALE_LIMIT_KEY_PREFIX + productId;
 
-        // 1. FAST PATH: Check Cache Existence
-        if (!Boolean.TRUE.equals(stringRedisTemplate.hasKey(stockKey))) {
-            // 2. CACHE MISS: Handle Stampede with Distributed Lock
-            handleCacheMissWithLock(stockKey, productId, sizeId);
+        // 0. EARLY REJECT: user vừa chạm giới hạn trên node này, không tốn round trip Redis
+        if (isCapped(userId, productId)) {
+            throw new RuntimeException("Bạn đã đạt giới hạn mua cho sản phẩm này");
         }
 
-        // 3. THỰC THI KỊCH BẢN LUA
-        // Bây giờ bộ nhớ cache được đảm bảo tồn tại (trừ khi sản phẩm không hợp lệ)
-        // FlashSaleProduct fsp = findActiveFlashSaleProduct(productId);
-        int limit = 0; // Đã loại bỏ tính năng giới hạn số lượng
-        long ttl = 900; // Thời gian đặt chỗ
+        // 1. EARLY REJECT: size đã hết hàng (đánh dấu trên node này), không tốn round trip Redis
+        if (flashSaleCatalog.isSoldOut(productId, sizeId)) {
+            log.debug("Flash Sale sold out (local marker): {}[{}]", productId, sizeId);
+            return false;
+        }
 
-        Long result = stringRedisTemplate.execute(
-                flashSaleReserveScript,
-                Arrays.asList(stockKey, boughtKey, reserveKey),
-                String.valueOf(quantity),
-                String.valueOf(limit),
-                String.valueOf(ttl));
+        // 2. THỰC THI KỊCH BẢN LUA
+        // Giới hạn mỗi user được đọc trong script từ limitKey (nạp khi warm-up), không query DB
+        List<String> keys = Arrays.asList(stockKey, boughtKey, reserveKey, limitKey);
+        Long result = executeReserve(keys, quantity);
+
+        if (result != null && result == -1) {
+            // 3. CACHE MISS (stock chưa được pre-warm): nạp single-flight rồi chạy lại một lần
+            handleCacheMissWithLock(stockKey, productId, sizeId);
+            result = executeReserve(keys, quantity);
+        }
 
         if (result != null && result == 1) {
             log.info(" Flash Sale Reserved: {}[{}] x {} for user {}", productId, sizeId, quantity, userId);
@@ -489,54 +551,112 @@ public class FlashSaleService {
             stockPersistenceService.asyncDecrementFlashSaleStock(productId, sizeId, quantity);
             return true;
         } else if (result != null && result == -2) {
-            throw new RuntimeException("Bạn đã đạt giới hạn mua cho sản phẩm này (" + limit + " sản phẩm)");
+            // Đã mua đủ giới hạn: đánh dấu để các request sau bị từ chối ngay trên node này
+            markCapped(userId, productId);
+            throw new RuntimeException("Bạn đã đạt giới hạn mua cho sản phẩm này");
+        } else if (result != null && result == -4) {
+            // Chỉ số lượng lần này vượt phần còn lại, user vẫn mua được ít hơn nên không đánh dấu
+            throw new RuntimeException("Số lượng vượt quá giới hạn mua còn lại cho sản phẩm này");
+        } else if (result != null && result == -3) {
+            flashSaleCatalog.markSoldOut(productId, sizeId);
+            return false;
         } else {
             return false;
         }
     }
 
+    private Long executeReserve(List<String> keys, int quantity) {
+        long ttl = 900; // Thời gian đặt chỗ
+        return stringRedisTemplate.execute(
+                flashSaleReserveScript,
+                keys,
+                String.valueOf(quantity),
+                String.valueOf(defaultLimitPerUser),
+                String.valueOf(ttl));
+    }
+
+    private boolean isCapped(String userId, String productId) {
+        Long until = cappedUsers.get(userId + ":" + productId);
+        if (until == null) {
+            return false;
+        }
+        if (until < System.currentTimeMillis()) {
+            cappedUsers.remove(userId + ":" + productId, until);
+            return false;
+        }
+        return true;
+    }
+
+    private void markCapped(String userId, String productId) {
+        long now = System.currentTimeMillis();
+        if (cappedUsers.size() >= MAX_CAPPED_USERS) {
+            cappedUsers.values().removeIf(until -> until < now);
+        }
+        if (cappedUsers.size() < MAX_CAPPED_USERS) {
+            cappedUsers.put(userId + ":" + productId, now + cappedUserCacheSeconds * 1000);
+        }
+    }
+
+    private void clearCapped(String userId, String productId) {
+        String key = userId + ":" + productId;
+        cappedUsers.remove(key);
+        try {
+            stringRedisTemplate.convertAndSend(CAPPED_CLEARED_CHANNEL, key);
+        } catch (Exception e) {
+            // Node khác tự bỏ đánh dấu khi hết hạn (capped-user-cache-seconds)
+            log.warn("[FLASH-SALE] Failed to publish capped-clear of {}: {}", key, e.getMessage());
+        }
+    }
+
+    private int effectiveLimitPerUser(FlashSaleProduct fsp) {
+        return fsp.getLimitPerUser() != null && fsp.getLimitPerUser() > 0 ? fsp.getLimitPerUser() : defaultLimitPerUser;
+    }
+
+    /**
+     * Nạp giới hạn mỗi user của sản phẩm lên Redis để flashsale_reserve.lua kiểm tra atomic
+     */
+    private void cacheLimitPerUser(FlashSaleProduct fsp, long ttlSeconds) {
+        stringRedisTemplate.opsForValue().set(FLASHSALE_LIMIT_KEY_PREFIX + fsp.getProductId(),
+                String.valueOf(effectiveLimitPerUser(fsp)), ttlSeconds, TimeUnit.SECONDS);
+    }
+
     /**
      * Handle Cache Miss using Distributed Lock
-     * Only ONE thread queries DB, others wait.
+     * Single-flight giữa các node: chỉ MỘT node query DB, các request khác chờ lock được nhả
+     * (pub/sub) rồi dùng cache vừa nạp thay vì bị từ chối.
      */
     private void handleCacheMissWithLock(String stockKey, String productId, String sizeId) {
         String lockKey = "lock:" + stockKey;
         try {
-            // Try acquire lock, wait up to 2s
-            redisLockService.executeWithLock(lockKey, 2, () -> {
-                // Double check inside lock
-                if (!Boolean.TRUE.equals(stringRedisTemplate.hasKey(stockKey))) {
-                    log.warn("[CACHE-MISS] Loading {} from DB", stockKey);
-                    FlashSaleProduct fsp = findActiveFlashSaleProduct(productId);
-                    if (fsp != null && fsp.getProductSizes() != null) {
-                        FlashSaleProductSize size = fsp.getProductSizes().stream()
-                                .filter(s -> s.getSizeId().equals(sizeId))
-                                .findFirst().orElse(null);
-
-                        if (size != null) {
-                            FlashSaleSession session = sessionRepository.findById(fsp.getSessionId()).orElse(null);
-                            long ttl = (session != null)
-                                    ? Duration.between(LocalDateTime.now(), session.getEndTime()).getSeconds()
-                                    : 3600;
-                            if (ttl < 0)
-                                ttl = 300; // Fallback
-
-                            stringRedisTemplate.opsForValue().set(stockKey, String.valueOf(size.getFlashSaleStock()),
-                                    ttl, TimeUnit.SECONDS);
+            redisLockService.executeOnce(lockKey, 2,
+                    () -> Boolean.TRUE.equals(stringRedisTemplate.hasKey(stockKey)),
+                    () -> {
+                        log.warn("[CACHE-MISS] Loading {} from DB", stockKey);
+                        FlashSaleCatalog.Entry entry = flashSaleCatalog.findOpen(productId);
+                        FlashSaleProduct fsp = entry != null ? entry.product() : null;
+                        if (fsp != null && fsp.getProductSizes() != null) {
+                            FlashSaleProductSize size = fsp.getProductSizes().stream()
+                                    .filter(s -> s.getSizeId().equals(sizeId))
+                                    .findFirst().orElse(null);
+
+                            if (size != null) {
+                                long ttl = Duration.between(LocalDateTime.now(), entry.endTime()).getSeconds();
+                                if (ttl < 0)
+                                    ttl = 300; // Fallback
+
+                                cacheLimitPerUser(fsp, ttl);
+                                // NX: không ghi đè stock đang được trừ nếu key đã được nạp ở nơi khác
+                                stringRedisTemplate.opsForValue().setIfAbsent(stockKey,
+                                        String.valueOf(size.getFlashSaleStock()), ttl, TimeUnit.SECONDS);
+                            }
                         }
-                    }
-                }
-                return null;
-            });
+                    });
         } catch (Exception e) {
             log.error("Error handling cache miss for {}: {}", stockKey, e.getMessage());
         }
     }
 
     public void cancelFlashSaleReservation(String orderId, String productId, String sizeId, String userId) {
-        // FlashSaleProduct fsp = findActiveFlashSaleProduct(productId);
-        int limit = 0; // Removed quantity limit feature
-
         String stockKey = FLASHSALE_STOCK_KEY_PREFIX + productId + ":" + sizeId;
         String boughtKey = FLASHSALE_BOUGHT_KEY_PREFIX + userId + ":" + productId;
         String reserveKey = FLASHSALE_RESERVE_KEY_PREFIX + orderId + ":" + productId + ":" + sizeId;
@@ -547,12 +667,14 @@ public class FlashSaleService {
 
         Long result = stringRedisTemplate.execute(
                 flashSaleCancelScript,
-                Arrays.asList(stockKey, boughtKey, reserveKey),
-                String.valueOf(limit));
+                Arrays.asList(stockKey, boughtKey, reserveKey));
 
         log.info("[CANCEL-DEBUG] Lua script result={} for orderId={}", result, orderId);
 
         if (result != null && result == 1) {
+            // Số lượng đã mua được trả lại: bỏ đánh dấu chạm giới hạn và đánh dấu hết hàng trên mọi node
+            clearCapped(userId, productId);
+            flashSaleCatalog.markRestocked(productId, sizeId);
             log.info("✅ Product {} size {} reservation canceled for order {} - Stock restored in Redis",
                     productId, sizeId, orderId);
 
@@ -579,7 +701,9 @@ public class FlashSaleService {
     public void decrementFlashSaleStock(String productId, int quantity) {
         // Legacy method, might be used by order service direct call?
         // Kept for compatibility but logic updated
-        FlashSaleProduct fsp = findActiveFlashSaleProduct(productId);
+        FlashSaleProduct active = findActiveFlashSaleProduct(productId);
+        // Entity của snapshot chỉ đọc: load lại bản managed để ghi
+        FlashSaleProduct fsp = active != null ? flashSaleProductRepository.findById(active.getId()).orElse(null) : null;
         if (fsp != null) {
             fsp.setFlashSaleStock(Math.max(0, fsp.getFlashSaleStock() - quantity));
             fsp.setSoldCount(fsp.getSoldCount() + quantity);
@@ -657,6 +781,7 @@ public class FlashSaleService {
         String stockKey = FLASHSALE_STOCK_KEY_PREFIX + productId + ":" + sizeId;
         try {
             stringRedisTemplate.opsForValue().increment(stockKey, quantity);
+            flashSaleCatalog.markRestocked(productId, sizeId);
             log.info("[RESTORE-FS] ✅ Redis restored: {} +{}", stockKey, quantity);
         } catch (Exception e) {
             log.error("[RESTORE-FS] ❌ Failed to restore Redis: {}", e.getMessage());
@@ -16,7 +16,6 @@ import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
 import java.time.LocalDateTime;
-import java.util.ArrayList;
 import java.util.List;
 
 @Service
@@ -79,28 +78,8 @@ public class InventoryService {
 
     @Transactional(readOnly = true)
     public List<Product> getLowStockProducts(String userId, int threshold) {
-        List<Product> allProducts = productRepository.findByUserId(userId);
-        List<Product> lowStockProducts = new ArrayList<>();
-
-        for (Product product : allProducts) {
-            if (product.getStatus() == ProductStatus.BANNED || product.getStatus() == ProductStatus.SUSPENDED) {
-                continue;
-            }
-
-            boolean isLow = false;
-            if (product.getSizes() != null) {
-                for (Size s : product.getSizes()) {
-                    if (s.getStock() <= threshold) {
-                        isLow = true;
-                        break;
-                    }
-                }
-            }
-            if (isLow) {
-                lowStockProducts.add(product);
-            }
-        }
-        return lowStockProducts;
+        return productRepository.findLowStockByUserId(userId, threshold,
+                List.of(ProductStatus.BANNED, ProductStatus.SUSPENDED));
     }
 
     @Transactional
@@ -0,0 +1,53 @@
+package com.example.stockservice.service.product;
+
+import com.example.stockservice.repository.ProductRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+/**
+ * Dựng lại rating/sold aggregate của product từ reviews và inventory_logs một lần duy nhất
+ * (khi các cột mới được thêm). Sau đó aggregate được cập nhật tăng dần khi có review / đơn hàng.
+ * Key Redis đảm bảo chỉ một instance chạy.
+ */
+@Component
+@Slf4j
+public class ProductAggregateBackfill {
+
+    private static final String BACKFILL_DONE_KEY = "product:aggregates:backfilled";
+
+    private final ProductRepository productRepository;
+    private final StringRedisTemplate stringRedisTemplate;
+    private final TransactionTemplate transactionTemplate;
+
+    public ProductAggregateBackfill(ProductRepository productRepository, StringRedisTemplate stringRedisTemplate,
+            PlatformTransactionManager transactionManager) {
+        this.productRepository = productRepository;
+        this.stringRedisTemplate = stringRedisTemplate;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void backfillOnce() {
+        try {
+            Boolean first = stringRedisTemplate.opsForValue().setIfAbsent(BACKFILL_DONE_KEY, "1");
+            if (!Boolean.TRUE.equals(first)) {
+                return;
+            }
+            transactionTemplate.executeWithoutResult(status -> {
+                int rated = productRepository.rebuildRatingAggregates();
+                int sold = productRepository.rebuildSoldCounts();
+                log.info("[PRODUCT-AGGREGATES] Backfilled rating for {} products, sold count for {} products",
+                        rated, sold);
+            });
+        } catch (Exception e) {
+            // Cho phép chạy lại ở lần khởi động sau
+            stringRedisTemplate.delete(BACKFILL_DONE_KEY);
+            log.error("[PRODUCT-AGGREGATES] Backfill failed: {}", e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,34 @@
+package com.example.stockservice.service.product;
+
+import com.example.stockservice.model.Product;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.Base64;
+
+/**
+ * Cursor keyset cho danh sách sản phẩm của shop: (createdTimestamp, id) của phần tử cuối trang,
+ * mã hóa Base64 URL-safe để client gửi lại nguyên vẹn.
+ */
+record ProductCursor(LocalDateTime createdTimestamp, String id) {
+
+    private static final String SEPARATOR = "|";
+
+    static String encode(Product last) {
+        String raw = last.getCreatedTimestamp() + SEPARATOR + last.getId();
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+
+    static ProductCursor decode(String cursor) {
+        try {
+            String raw = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+            int idx = raw.indexOf(SEPARATOR);
+            return new ProductCursor(LocalDateTime.parse(raw.substring(0, idx)), raw.substring(idx + 1));
+        } catch (RuntimeException e) {
+            // Cursor do client gửi lên: sai định dạng là lỗi 400, không phải 500
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Invalid cursor: " + cursor, e);
+        }
+    }
+}
@@ -49,6 +49,14 @@ public interface ProductService {
 
     Page<Product> searchProductsByUserId(String userId, String keyword, Integer pageNo, Integer pageSize);
 
+    /**
+     * Keyset pagination for a shop's products (newest first), filtered by status/keyword in the database.
+     *
+     * @param cursor nextCursor of the previous page, null/empty for the first page
+     */
+    com.example.stockservice.dto.CursorPageDto<Product> getProductsByUserIdAfter(String userId, String status,
+            String keyword, String cursor, Integer pageSize);
+
     long countProductsByUserId(String userId);
 
     long countProductsByUserIdAndStatus(String userId, com.example.stockservice.enums.ProductStatus status);
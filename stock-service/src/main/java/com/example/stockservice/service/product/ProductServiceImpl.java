@@ -5,7 +5,7 @@ import java.util.List;
 import java.util.stream.Collectors;
 
 import org.springframework.data.domain.Page;
-import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.Sort;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
 import org.springframework.stereotype.Service;
@@ -14,6 +14,7 @@ import org.springframework.web.multipart.MultipartFile;
 
 import com.example.stockservice.client.FileStorageClient;
 import com.example.stockservice.dto.BatchDecreaseStockRequest;
+import com.example.stockservice.dto.CursorPageDto;
 import com.example.stockservice.dto.ProductDto;
 import com.example.stockservice.dto.SizeDto;
 import com.example.stockservice.enums.InventoryLogType;
@@ -56,13 +57,22 @@ public class ProductServiceImpl implements ProductService {
 
     private final InventoryService inventoryService;
     private final org.springframework.data.redis.core.StringRedisTemplate stringRedisTemplate;
+    private final com.example.stockservice.service.searchproduct.SearchCacheService searchCacheService;
 
     @org.springframework.beans.factory.annotation.Value("${kafka.topic.product-updates}")
     private String productUpdatesTopic;
 
+    // Thứ tự cố định cho danh sách của shop, khớp index (user_id, [status,] created_timestamp, id)
+    private static final Sort SELLER_LISTING_SORT = Sort.by(Sort.Order.desc("createdTimestamp"),
+            Sort.Order.desc("id"));
+
     @org.springframework.beans.factory.annotation.Value("${kafka.topic.notification}")
     private String notificationTopic;
 
+    // Giới hạn số sản phẩm mỗi trang cho danh sách của shop (offset và cursor)
+    @org.springframework.beans.factory.annotation.Value("${stock.product.max-page-size:100}")
+    private int maxPageSize;
+
     @Override
     @org.springframework.transaction.annotation.Transactional
     public void decreaseStockBySize(String sizeId, int quantity) {
@@ -76,6 +86,7 @@ public class ProductServiceImpl implements ProductService {
 
         size.setStock(size.getStock() - quantity);
         sizeRepository.save(size);
+        productRepository.increaseSoldCount(size.getProduct().getId(), quantity);
 
         // Update product status
         checkAndUpdateProductStatus(size.getProduct());
@@ -103,6 +114,7 @@ public class ProductServiceImpl implements ProductService {
 
         size.setStock(size.getStock() + quantity);
         sizeRepository.save(size);
+        productRepository.decreaseSoldCount(size.getProduct().getId(), quantity);
 
         // Update product status
         checkAndUpdateProductStatus(size.getProduct());
@@ -130,6 +142,7 @@ public class ProductServiceImpl implements ProductService {
 
         size.setStock(size.getStock() + quantity);
         sizeRepository.save(size);
+        productRepository.decreaseSoldCount(productId, quantity);
 
         // 2. Update Redis cache
         String stockKey = "stock:" + productId + ":" + sizeId;
@@ -291,6 +304,7 @@ public class ProductServiceImpl implements ProductService {
             product.setSizes(sizes);
         }
 
+        searchCacheService.invalidateAll();
         return product;
     }
 
@@ -449,6 +463,7 @@ public class ProductServiceImpl implements ProductService {
             System.err.println("Failed to send Kafka event: " + e.getMessage());
         }
 
+        searchCacheService.invalidateAll();
         return updatedProduct;
     }
 
@@ -466,6 +481,7 @@ public class ProductServiceImpl implements ProductService {
     @Override
     public void deleteProduct(String id) {
         productRepository.deleteById(id);
+        searchCacheService.invalidateAll();
     }
 
     @Override
@@ -475,11 +491,10 @@ public class ProductServiceImpl implements ProductService {
     }
 
     protected Page<Product> fetchPageFromDB(String keyword, Integer pageNo, Integer pageSize) {
-        List<Product> fullList = productRepository.searchProductByName(keyword);
         // Handle both 0-based and 1-based page numbers
         int actualPageNo = pageNo > 0 ? pageNo - 1 : Math.max(0, pageNo);
         Pageable pageable = PageRequest.of(actualPageNo, pageSize);
-        return getProductsPage(pageable, fullList);
+        return productRepository.searchProductByName(keyword, pageable);
     }
 
     @Override
@@ -493,10 +508,8 @@ public class ProductServiceImpl implements ProductService {
     }
 
     public Page<Product> getProductsByUserId(String userId, Integer pageNo) {
-        Pageable pageable = PageRequest.of(pageNo - 1, 10);
-        List<Product> userProducts = productRepository.findByUserId(userId);
-
-        return getProductsPage(pageable, userProducts);
+        Pageable pageable = PageRequest.of(pageNo - 1, 10, SELLER_LISTING_SORT);
+        return productRepository.findByUserId(userId, pageable);
     }
 
     public List<Product> getAllProductsByUserId(String userId) {
@@ -505,7 +518,7 @@ public class ProductServiceImpl implements ProductService {
 
     @Override
     public Page<Product> getProductsByUserIdWithPaging(String userId, Integer pageNo, Integer pageSize, String status) {
-        Pageable pageable = PageRequest.of(pageNo - 1, pageSize);
+        Pageable pageable = PageRequest.of(pageNo - 1, clampPageSize(pageSize), SELLER_LISTING_SORT);
 
         if (status != null && !status.isEmpty() && !status.equalsIgnoreCase("ALL")) {
             try {
@@ -524,14 +537,50 @@ public class ProductServiceImpl implements ProductService {
 
     @Override
     public Page<Product> searchProductsByUserId(String userId, String keyword, Integer pageNo, Integer pageSize) {
-        Pageable pageable = PageRequest.of(pageNo - 1, pageSize);
-        List<Product> allUserProducts = productRepository.findByUserId(userId);
+        Pageable pageable = PageRequest.of(pageNo - 1, clampPageSize(pageSize), SELLER_LISTING_SORT);
+        return productRepository.searchByUserIdAndName(userId, keyword, pageable);
+    }
+
+    @Override
+    public CursorPageDto<Product> getProductsByUserIdAfter(String userId, String status, String keyword,
+            String cursor, Integer pageSize) {
+        ProductStatus productStatus = null;
+        if (status != null && !status.isEmpty() && !status.equalsIgnoreCase("ALL")) {
+            try {
+                productStatus = ProductStatus.valueOf(status.toUpperCase());
+            } catch (IllegalArgumentException e) {
+                // Invalid status: same fallback as the offset listing (all statuses)
+            }
+        }
+        String keywordFilter = keyword != null && !keyword.isBlank() ? keyword.trim() : null;
+
+        int size = clampPageSize(pageSize);
+        // Lấy dư một phần tử để biết còn trang sau hay không
+        Pageable limit = PageRequest.of(0, size + 1);
+        List<Product> rows;
+        if (cursor == null || cursor.isEmpty()) {
+            rows = productRepository.findSellerPageFirst(userId, productStatus, keywordFilter, limit);
+        } else {
+            ProductCursor decoded = ProductCursor.decode(cursor);
+            rows = productRepository.findSellerPageAfter(userId, productStatus, keywordFilter,
+                    decoded.createdTimestamp(), decoded.id(), limit);
+        }
 
-        List<Product> filteredProducts = allUserProducts.stream()
-                .filter(p -> p.getName().toLowerCase().contains(keyword.toLowerCase()))
-                .collect(Collectors.toList());
+        boolean hasNext = rows.size() > size;
+        List<Product> items = hasNext ? rows.subList(0, size) : rows;
+        String nextCursor = hasNext ? ProductCursor.encode(items.get(items.size() - 1)) : null;
+        return CursorPageDto.<Product>builder()
+                .items(items)
+                .nextCursor(nextCursor)
+                .hasNext(hasNext)
+                .build();
+    }
 
-        return getProductsPage(pageable, filteredProducts);
+    private int clampPageSize(Integer pageSize) {
+        if (pageSize == null) {
+            return maxPageSize;
+        }
+        return Math.max(1, Math.min(pageSize, maxPageSize));
     }
 
     @Override
@@ -573,6 +622,8 @@ public class ProductServiceImpl implements ProductService {
                             dto.setImageId(product.getImageId());
                             dto.setUserId(product.getUserId());
                             dto.setImageIds(product.getImageIds());
+                            dto.setSoldCount((int) product.getSoldCount());
+                            dto.setAverageRating(product.getAverageRating());
 
                             if (product.getCategory() != null) {
                                 dto.setCategoryId(product.getCategory().getId());
@@ -632,6 +683,7 @@ public class ProductServiceImpl implements ProductService {
                 // Decrease stock
                 size.setStock(size.getStock() - item.getQuantity());
                 sizeRepository.save(size);
+                productRepository.increaseSoldCount(item.getProductId(), item.getQuantity());
 
                 // Update product status
                 checkAndUpdateProductStatus(size.getProduct());
@@ -687,24 +739,4 @@ public class ProductServiceImpl implements ProductService {
     public List<String> getProductIdsByCategoryName(String name) {
         return productRepository.findIdsByCategoryName(name);
     }
-
-    /**
-     * Helper method to convert a List<Product> to Page<Product> with pagination
-     * 
-     * @param pageable Pagination information
-     * @param fullList Complete list of products to paginate
-     * @return Page of products based on pageable parameters
-     */
-    private Page<Product> getProductsPage(Pageable pageable, List<Product> fullList) {
-        int start = (int) pageable.getOffset();
-        int end = Math.min((start + pageable.getPageSize()), fullList.size());
-        
-        // Handle edge case where start is beyond list size
-        if (start >= fullList.size()) {
-            return new PageImpl<>(new ArrayList<>(), pageable, fullList.size());
-        }
-        
-        List<Product> pageContent = fullList.subList(start, end);
-        return new PageImpl<>(pageContent, pageable, fullList.size());
-    }
 }
\ No newline at end of file
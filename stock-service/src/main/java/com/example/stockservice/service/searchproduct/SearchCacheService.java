@@ -2,92 +2,85 @@ package com.example.stockservice.service.searchproduct;
 
 import com.example.stockservice.dto.ProductDto;
 import com.example.stockservice.dto.search.SearchFilters;
-import com.fasterxml.jackson.core.type.TypeReference;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
-import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.StringRedisTemplate;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
 import java.nio.charset.StandardCharsets;
 import java.security.MessageDigest;
-
+import java.util.HexFormat;
 import java.util.List;
+import java.util.Locale;
+import java.util.Objects;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * Service quản lý Redis cache cho search results
+ *
+ * Key: "search:cache:v{generation}:{hash(query, sortBy, filters)}:{page}:{size}", mỗi key là một trang kết quả
+ * (trang được sắp xếp và phân trang trong DB, cache khi lần đầu được truy vấn).
+ * Invalidate = INCR "search:cache:generation": key của generation cũ không còn được đọc và tự hết hạn theo TTL,
+ * không cần KEYS/SCAN (KEYS chặn cả Redis server, dùng chung với stock và reservation).
+ * Instance khác nhận generation mới sau tối đa {@code stock.search-cache.generation-check-ms}.
  */
 @Service
 @RequiredArgsConstructor
 @Slf4j
 public class SearchCacheService {
 
-    private final RedisTemplate<String, Object> redisTemplate;
+    private final StringRedisTemplate stringRedisTemplate;
     private final ObjectMapper objectMapper;
 
     private static final String SEARCH_CACHE_PREFIX = "search:cache:";
-    private static final long CACHE_TTL_HOURS = 24; // Cache 24 giờ
-    private static final int MAX_CACHED_ITEMS = 20; // Chỉ cache 20 items đầu tiên
+    private static final String GENERATION_KEY = "search:cache:generation";
 
-    /**
-     * Cache search results
-     * 
-     * @param query    Normalized query string
-     * @param filters  Search filters
-     * @param products List products (sẽ chỉ lưu max 20 items)
-     */
-    public void cacheSearchResults(String query, SearchFilters filters, List<ProductDto> products) {
-        if (query == null || query.trim().isEmpty()) {
-            return;
-        }
+    @Value("${stock.search-cache.ttl-minutes:10}")
+    private long ttlMinutes;
 
-        try {
-            String cacheKey = generateCacheKey(query, filters);
+    @Value("${stock.search-cache.max-cached-pages:5}")
+    private int maxCachedPages;
 
-            // Chỉ cache tối đa MAX_CACHED_ITEMS
-            List<ProductDto> toCache = products.size() > MAX_CACHED_ITEMS
-                    ? products.subList(0, MAX_CACHED_ITEMS)
-                    : products;
+    @Value("${stock.search-cache.generation-check-ms:1000}")
+    private long generationCheckMs;
 
-            // Convert to JSON string
-            String json = objectMapper.writeValueAsString(toCache);
+    private volatile long generation = -1;
+    private final AtomicLong nextGenerationCheckAt = new AtomicLong();
 
-            redisTemplate.opsForValue().set(cacheKey, json, CACHE_TTL_HOURS, TimeUnit.HOURS);
-            log.debug("Cached search results for key: {} ({} items)", cacheKey, toCache.size());
-        } catch (Exception e) {
-            log.warn("Failed to cache search results: {}", e.getMessage());
-        }
+    /**
+     * Một trang kết quả đã cache
+     *
+     * @param products sản phẩm của trang
+     * @param total    tổng số kết quả của truy vấn (để tính totalPages)
+     */
+    public record CachedPage(List<ProductDto> products, long total) {
     }
 
     /**
-     * Lấy cached search results
-     * 
-     * @param query   Normalized query string
-     * @param filters Search filters
-     * @return List products hoặc null nếu cache miss
+     * Lấy trang kết quả đã cache
+     *
+     * @return CachedPage hoặc null nếu cache miss
      */
-    public List<ProductDto> getCachedResults(String query, SearchFilters filters) {
-        if (query == null || query.trim().isEmpty()) {
+    public CachedPage getCachedPage(String query, SearchFilters filters, String sortBy, int page, int size) {
+        if (query == null || query.trim().isEmpty() || page >= maxCachedPages) {
             return null;
         }
 
         try {
-            String cacheKey = generateCacheKey(query, filters);
-            Object cached = redisTemplate.opsForValue().get(cacheKey);
-
-            if (cached == null) {
+            String cacheKey = pageKey(currentGeneration(), queryHash(query, filters, sortBy), page, size);
+            String json = stringRedisTemplate.opsForValue().get(cacheKey);
+            if (json == null) {
                 log.debug("Cache miss for key: {}", cacheKey);
                 return null;
             }
-
-            // Parse JSON back to List<ProductDto>
-            String json = cached.toString();
-            List<ProductDto> products = objectMapper.readValue(json, new TypeReference<List<ProductDto>>() {
-            });
-
-            log.debug("Cache hit for key: {} ({} items)", cacheKey, products.size());
-            return products;
+            CachedPage cached = objectMapper.readValue(json, CachedPage.class);
+            log.debug("Cache hit for key: {} ({} items)", cacheKey, cached.products().size());
+            return cached;
         } catch (Exception e) {
             log.warn("Failed to get cached results: {}", e.getMessage());
             return null;
@@ -95,83 +88,120 @@ public class SearchCacheService {
     }
 
     /**
-     * Invalidate cache cho một query
-     * 
-     * @param query Query string
+     * Cache một trang kết quả (chỉ {@code max-cached-pages} trang đầu của mỗi truy vấn)
+     *
+     * @param results sản phẩm của trang, đã sắp xếp và phân trang trong DB
+     * @param total   tổng số kết quả của truy vấn
      */
-    public void invalidateCache(String query) {
-        if (query == null || query.trim().isEmpty()) {
+    public void cachePage(String query, SearchFilters filters, String sortBy, int page, int size,
+            List<ProductDto> results, long total) {
+        if (query == null || query.trim().isEmpty() || results.isEmpty() || size <= 0 || page >= maxCachedPages) {
             return;
         }
 
         try {
-            // Xóa tất cả keys bắt đầu bằng "search:cache:{normalizedQuery}:*"
-            String pattern = SEARCH_CACHE_PREFIX + normalizeQuery(query) + ":*";
-            redisTemplate.keys(pattern).forEach(key -> {
-                redisTemplate.delete(key);
-                log.debug("Invalidated cache key: {}", key);
-            });
+            long gen = currentGeneration();
+            String hash = queryHash(query, filters, sortBy);
+            stringRedisTemplate.opsForValue().set(pageKey(gen, hash, page, size),
+                    objectMapper.writeValueAsString(new CachedPage(results, total)), ttlMinutes, TimeUnit.MINUTES);
+            log.debug("Cached search page {} for hash {} (gen {})", page, hash, gen);
         } catch (Exception e) {
-            log.error("Failed to invalidate cache: {}", e.getMessage());
+            log.warn("Failed to cache search results: {}", e.getMessage());
         }
     }
 
     /**
-     * Generate cache key từ query và filters
-     * Format: "search:cache:{normalizedQuery}:{filterHash}"
+     * Invalidate toàn bộ search cache bằng một lệnh INCR.
+     * Trong transaction thì thực hiện sau commit, để truy vấn chen giữa không cache lại dữ liệu cũ vào generation mới.
      */
-    private String generateCacheKey(String query, SearchFilters filters) {
-        String normalizedQuery = normalizeQuery(query);
-        String filterHash = generateFilterHash(filters);
-        return SEARCH_CACHE_PREFIX + normalizedQuery + ":" + filterHash;
+    public void invalidateAll() {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    bumpGeneration();
+                }
+            });
+        } else {
+            bumpGeneration();
+        }
     }
 
-    /**
-     * Normalize query string (lowercase, trim)
-     */
-    private String normalizeQuery(String query) {
-        if (query == null)
-            return "empty";
-        return query.trim().toLowerCase().replaceAll("\\s+", "_");
+    private void bumpGeneration() {
+        try {
+            Long next = stringRedisTemplate.opsForValue().increment(GENERATION_KEY);
+            if (next != null) {
+                generation = next;
+            }
+            log.debug("Search cache generation bumped to {}", next);
+        } catch (Exception e) {
+            log.warn("Failed to invalidate search cache: {}", e.getMessage());
+        }
     }
 
     /**
-     * Generate hash từ filters để làm cache key
+     * Generation hiện tại; chỉ đọc lại từ Redis mỗi {@code generation-check-ms}
      */
-    private String generateFilterHash(SearchFilters filters) {
-        if (filters == null) {
-            return "nofilters";
+    private long currentGeneration() {
+        long now = System.currentTimeMillis();
+        long checkAt = nextGenerationCheckAt.get();
+        if (generation >= 0 && (now < checkAt || !nextGenerationCheckAt.compareAndSet(checkAt, now + generationCheckMs))) {
+            return generation;
         }
-
         try {
-            // Serialize filters to JSON
-            String filtersJson = objectMapper.writeValueAsString(filters);
-
-            // Generate MD5 hash
-            MessageDigest md = MessageDigest.getInstance("MD5");
-            byte[] hashBytes = md.digest(filtersJson.getBytes(StandardCharsets.UTF_8));
-
-            // Convert to hex string
-            StringBuilder sb = new StringBuilder();
-            for (byte b : hashBytes) {
-                sb.append(String.format("%02x", b));
-            }
-            return sb.toString();
+            String value = stringRedisTemplate.opsForValue().get(GENERATION_KEY);
+            generation = value != null ? Long.parseLong(value) : 0L;
         } catch (Exception e) {
-            log.warn("Failed to generate filter hash: {}", e.getMessage());
-            return "hashfail";
+            log.warn("Failed to read search cache generation: {}", e.getMessage());
+            if (generation < 0) {
+                generation = 0L;
+            }
         }
+        return generation;
+    }
+
+    private String pageKey(long gen, String hash, int page, int size) {
+        return SEARCH_CACHE_PREFIX + "v" + gen + ":" + hash + ":" + page + ":" + size;
     }
 
     /**
-     * Check if cache key exists
+     * Hash của truy vấn đã chuẩn hóa: query (lowercase, gộp khoảng trắng), sortBy và filters
+     * (danh sách được sắp xếp, danh sách rỗng coi như không lọc) để các truy vấn tương đương dùng chung key
      */
-    public boolean isCached(String query, SearchFilters filters) {
-        try {
-            String cacheKey = generateCacheKey(query, filters);
-            return Boolean.TRUE.equals(redisTemplate.hasKey(cacheKey));
-        } catch (Exception e) {
-            return false;
+    private String queryHash(String query, SearchFilters filters, String sortBy) throws Exception {
+        String canonical = normalizeQuery(query) + "|"
+                + (sortBy != null ? sortBy.trim().toLowerCase(Locale.ROOT) : "relevance") + "|"
+                + (filters != null ? objectMapper.writeValueAsString(normalizeFilters(filters)) : "nofilters");
+        MessageDigest md = MessageDigest.getInstance("MD5");
+        return HexFormat.of().formatHex(md.digest(canonical.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    /**
+     * Normalize query string (lowercase, trim, gộp khoảng trắng)
+     */
+    private String normalizeQuery(String query) {
+        return query.trim().toLowerCase(Locale.ROOT).replaceAll("\\s+", " ");
+    }
+
+    private SearchFilters normalizeFilters(SearchFilters filters) {
+        return SearchFilters.builder()
+                .priceMin(filters.getPriceMin())
+                .priceMax(filters.getPriceMax())
+                .categories(sorted(filters.getCategories()))
+                .sizes(sorted(filters.getSizes()))
+                .locations(sorted(filters.getLocations()))
+                .shipping(sorted(filters.getShipping()))
+                .shopTypes(sorted(filters.getShopTypes()))
+                .conditions(sorted(filters.getConditions()))
+                .ratings(sorted(filters.getRatings()))
+                .promotions(sorted(filters.getPromotions()))
+                .build();
+    }
+
+    private static <T extends Comparable<T>> List<T> sorted(List<T> values) {
+        if (values == null || values.isEmpty()) {
+            return null;
         }
+        return values.stream().filter(Objects::nonNull).distinct().sorted().toList();
     }
 }
@@ -6,11 +6,14 @@ import com.example.stockservice.dto.search.*;
 import com.example.stockservice.enums.ProductStatus;
 import com.example.stockservice.model.Product;
 import com.example.stockservice.repository.ProductRepository;
-import com.example.stockservice.repository.ReviewRepository;
 import com.example.stockservice.service.analytic.AnalyticsRedisService;
+import com.example.stockservice.specification.ProductSpecification;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Sort;
 import org.springframework.stereotype.Service;
 
 import java.util.*;
@@ -26,7 +29,6 @@ public class SearchService {
     private final SearchCacheService searchCacheService;
     private final SearchHistoryService searchHistoryService;
     private final AnalyticsRedisService analyticsRedisService;
-    private final ReviewRepository reviewRepository;
 
     /**
      * Main search method
@@ -45,26 +47,28 @@ public class SearchService {
         // 2. Merge với filters từ UI
         mergeFiltersIntoCriteria(criteria, request.getFilters());
 
-        // 3. Check cache
+        // 3. Check cache (theo từng trang)
         String normalizedQuery = request.getQuery() != null ? request.getQuery().trim().toLowerCase() : "";
-        List<ProductDto> cachedProducts = searchCacheService.getCachedResults(normalizedQuery, request.getFilters());
+        int page = request.getPage();
+        int size = request.getSize();
+        SearchCacheService.CachedPage cachedPage = searchCacheService.getCachedPage(normalizedQuery,
+                request.getFilters(), request.getSortBy(), page, size);
 
-        boolean fromCache = false;
-        List<ProductDto> allResults;
+        boolean fromCache = cachedPage != null;
+        List<ProductDto> pageResults;
+        long total;
 
-        if (cachedProducts != null && request.getPage() == 0) {
-            // Cache hit và đang ở page đầu tiên
-            allResults = cachedProducts;
-            fromCache = true;
-            log.debug("Using cached results: {} items", allResults.size());
+        if (fromCache) {
+            pageResults = cachedPage.products();
+            total = cachedPage.total();
+            log.debug("Using cached page {}: {} items", page, pageResults.size());
         } else {
-            // Cache miss hoặc page > 0 → query database
-            allResults = searchDatabase(criteria, request.getSortBy());
-
-            // Cache results cho page đầu tiên
-            if (request.getPage() == 0 && !allResults.isEmpty()) {
-                searchCacheService.cacheSearchResults(normalizedQuery, request.getFilters(), allResults);
-            }
+            // Cache miss → lọc, sắp xếp và phân trang trong DB, cache trang vừa đọc
+            Page<Product> productPage = searchDatabase(criteria, request.getSortBy(), page, size);
+            pageResults = toDtosWithSizes(productPage.getContent());
+            total = productPage.getTotalElements();
+            searchCacheService.cachePage(normalizedQuery, request.getFilters(), request.getSortBy(), page, size,
+                    pageResults, total);
         }
 
         // 4. Save search history (nếu có userId và query không rỗng)
@@ -77,19 +81,13 @@ public class SearchService {
             analyticsRedisService.incrementSearchCount(normalizedQuery);
         }
 
-        // 6. Apply pagination
-        int page = request.getPage();
-        int size = request.getSize();
-        int start = page * size;
-        int end = Math.min(start + size, allResults.size());
-
-        List<ProductDto> pageResults = allResults.subList(start, end);
-        int totalPages = (int) Math.ceil((double) allResults.size() / size);
+        // 6. Pagination metadata
+        int totalPages = (int) Math.ceil((double) total / size);
 
         // 7. Build response
         return SearchResponse.builder()
                 .products(pageResults)
-                .total((long) allResults.size())
+                .total(total)
                 .page(page)
                 .size(size)
                 .totalPages(totalPages)
@@ -213,134 +211,59 @@ public class SearchService {
     }
 
     /**
-     * Search database với criteria
+     * Search database với criteria: lọc, ORDER BY và LIMIT/OFFSET đều chạy trong MySQL
      */
-    private List<ProductDto> searchDatabase(SearchCriteria criteria, String sortBy) {
-        // Get all IN_STOCK products
-        List<Product> allProducts = productRepository.findAllWithSizes();
-
-        // Filter by status
-        List<Product> filtered = allProducts.stream()
-                .filter(p -> p.getStatus() == ProductStatus.IN_STOCK)
-                .collect(Collectors.toList());
-
-        // Apply search criteria filters
-        filtered = applySearchCriteria(filtered, criteria);
-
-        // Sort
-        filtered = applySorting(filtered, sortBy);
-
-        // Convert to DTOs
-        return filtered.stream()
-                .map(this::convertToDto)
-                .collect(Collectors.toList());
+    private Page<Product> searchDatabase(SearchCriteria criteria, String sortBy, int page, int size) {
+        return productRepository.findAll(ProductSpecification.matchesSearch(criteria),
+                PageRequest.of(page, size, toSort(sortBy)));
     }
 
     /**
-     * Apply search criteria filters
+     * Nạp sizes của cả trang bằng một query (JOIN FETCH không dùng chung được với phân trang),
+     * giữ nguyên thứ tự của trang
      */
-    private List<Product> applySearchCriteria(List<Product> products, SearchCriteria criteria) {
+    private List<ProductDto> toDtosWithSizes(List<Product> products) {
+        if (products.isEmpty()) {
+            return List.of();
+        }
+        Map<String, Product> withSizes = productRepository.findAllByIdIn(
+                products.stream().map(Product::getId).collect(Collectors.toList())).stream()
+                .collect(Collectors.toMap(Product::getId, p -> p, (a, b) -> a));
         return products.stream()
-                .filter(p -> matchesKeywords(p, criteria.getKeywords()))
-                .filter(p -> matchesPriceRange(p, criteria.getPriceMin(), criteria.getPriceMax()))
-                .filter(p -> matchesCategories(p, criteria.getCategories()))
-                .filter(p -> matchesSizes(p, criteria.getSizes()))
+                .map(p -> convertToDto(withSizes.getOrDefault(p.getId(), p)))
                 .collect(Collectors.toList());
     }
 
     /**
-     * Check if product matches keywords
+     * Sort theo sortBy, luôn kèm id để thứ tự giữa các trang ổn định
      */
-    private boolean matchesKeywords(Product p, List<String> keywords) {
-        if (keywords == null || keywords.isEmpty()) {
-            return true;
+    private Sort toSort(String sortBy) {
+        Sort idOrder = Sort.by(Sort.Direction.ASC, "id");
+        if (sortBy == null) {
+            return idOrder;
         }
-
-        String productText = (p.getName() + " " + (p.getDescription() != null ? p.getDescription() : ""))
-                .toLowerCase();
-
-        return keywords.stream()
-                .allMatch(kw -> productText.contains(kw.toLowerCase()));
-    }
-
-    /**
-     * Check if product price in range
-     */
-    private boolean matchesPriceRange(Product p, Double min, Double max) {
-        if (min == null && max == null)
-            return true;
-
-        double price = p.getPrice();
-        if (min != null && price < min)
-            return false;
-        if (max != null && price > max)
-            return false;
-
-        return true;
-    }
-
-    /**
-     * Check if product matches categories
-     */
-    private boolean matchesCategories(Product p, List<String> categories) {
-        if (categories == null || categories.isEmpty()) {
-            return true;
-        }
-
-        if (p.getCategory() == null)
-            return false;
-
-        String categoryName = p.getCategory().getName();
-        return categories.stream()
-                .anyMatch(c -> c.equalsIgnoreCase(categoryName));
-    }
-
-    /**
-     * Check if product has matching sizes
-     */
-    private boolean matchesSizes(Product p, List<String> sizes) {
-        if (sizes == null || sizes.isEmpty()) {
-            return true;
-        }
-
-        if (p.getSizes() == null || p.getSizes().isEmpty()) {
-            return false;
-        }
-
-        return p.getSizes().stream()
-                .anyMatch(size -> sizes.stream()
-                        .anyMatch(s -> s.equalsIgnoreCase(size.getName())));
-    }
-
-    /**
-     * Apply sorting
-     */
-    private List<Product> applySorting(List<Product> products, String sortBy) {
-        if (sortBy == null || sortBy.equals("relevance")) {
-            return products; // No specific sorting
-        }
-
-        Comparator<Product> comparator;
+        Sort sort;
         switch (sortBy.toLowerCase()) {
             case "price-asc":
-                comparator = Comparator.comparingDouble(Product::getPrice);
+                sort = Sort.by(Sort.Direction.ASC, "price");
                 break;
             case "price-desc":
-                comparator = Comparator.comparingDouble(Product::getPrice).reversed();
+                sort = Sort.by(Sort.Direction.DESC, "price");
                 break;
             case "newest":
-                comparator = Comparator.comparing(Product::getCreatedTimestamp).reversed();
+                sort = Sort.by(Sort.Direction.DESC, "createdTimestamp");
+                break;
+            case "bestselling":
+                sort = Sort.by(Sort.Direction.DESC, "soldCount");
+                break;
+            case "rating":
+                // MySQL xếp NULL cuối khi DESC: sản phẩm chưa có đánh giá nằm sau
+                sort = Sort.by(Sort.Direction.DESC, "averageRating");
                 break;
-            // case "bestselling": // Cần thêm field soldCount
-            // comparator = Comparator.comparingInt(Product::getSoldCount).reversed();
-            // break;
             default:
-                return products;
+                return idOrder;
         }
-
-        return products.stream()
-                .sorted(comparator)
-                .collect(Collectors.toList());
+        return sort.and(idOrder);
     }
 
     /**
@@ -361,9 +284,9 @@ public class SearchService {
                 .mapToInt(SizeDto::getStock)
                 .sum();
 
-        // Get analytics data
-        Integer soldCount = 0; // TODO: Get from order history if available
-        Double averageRating = reviewRepository.getAverageRatingByProductId(p.getId());
+        // Analytics data: tổng hợp lưu sẵn trên product, không query thêm
+        Integer soldCount = (int) p.getSoldCount();
+        Double averageRating = p.getAverageRating();
 
         return ProductDto.builder()
                 .id(p.getId())
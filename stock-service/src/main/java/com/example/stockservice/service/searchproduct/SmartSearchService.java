@@ -1,6 +1,7 @@
 package com.example.stockservice.service.searchproduct;
 
 import com.example.stockservice.dto.search.SearchCriteria;
+import com.example.stockservice.service.category.CategoryTreeCache;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
@@ -51,52 +52,8 @@ public class SmartSearchService {
     );
     
     // ============ CATEGORY MAPPINGS ============
-    // Map từ keywords → category name (hỗ trợ cả tiếng Việt và tiếng Anh)
-    private static final Map<String, String> CATEGORY_KEYWORDS = new HashMap<>() {{
-        // Electronics
-        put("máy ảnh", "Camera");
-        put("camera", "Camera");
-        put("laptop", "Laptop");
-        put("máy tính", "Laptop");
-        put("điện thoại", "Phone");
-        put("phone", "Phone");
-        put("smartphone", "Phone");
-        put("tai nghe", "Headphones");
-        put("headphone", "Headphones");
-        put("earphone", "Headphones");
-        
-        // Clothing
-        put("áo", "Clothing");
-        put("áo thun", "T-Shirt");
-        put("t-shirt", "T-Shirt");
-        put("tshirt", "T-Shirt");
-        put("quần", "Pants");
-        put("pants", "Pants");
-        put("jeans", "Jeans");
-        put("váy", "Dress");
-        put("dress", "Dress");
-        put("hoodie", "Hoodie");
-        put("áo hoodie", "Hoodie");
-        
-        // Home & Living
-        put("đồ gia dụng", "Home & Living");
-        put("nội thất", "Furniture");
-        put("furniture", "Furniture");
-        
-        // Toys
-        put("đồ chơi", "Toys");
-        put("toy", "Toys");
-        put("lego", "Toys");
-        
-        // Beauty
-        put("mỹ phẩm", "Beauty");
-        put("makeup", "Beauty");
-        put("cosmetic", "Beauty");
-        
-        // Books
-        put("sách", "Books");
-        put("book", "Books");
-    }};
+    // Keyword → category (tên category + alias) lấy từ snapshot dùng chung
+    private final CategoryTreeCache categoryTreeCache;
     
     // ============ SIZE PATTERNS ============
     private static final Pattern SIZE_PATTERN = Pattern.compile(
@@ -260,20 +217,7 @@ public class SmartSearchService {
      * Extract categories từ query
      */
     private List<String> extractCategories(String query) {
-        String normalized = removeVietnameseTones(query.toLowerCase());
-        List<String> found = new ArrayList<>();
-        
-        for (Map.Entry<String, String> entry : CATEGORY_KEYWORDS.entrySet()) {
-            String keyword = entry.getKey();
-            String keywordNormalized = removeVietnameseTones(keyword.toLowerCase());
-            
-            // Check cả có dấu và không dấu
-            if (query.toLowerCase().contains(keyword) || normalized.contains(keywordNormalized)) {
-                found.add(entry.getValue());
-            }
-        }
-        
-        return found.stream().distinct().collect(Collectors.toList());
+        return categoryTreeCache.resolveCategoryNames(query);
     }
     
     /**
@@ -319,10 +263,7 @@ public class SmartSearchService {
      * Remove category keywords từ query
      */
     private String removeCategoryKeywords(String query) {
-        for (String keyword : CATEGORY_KEYWORDS.keySet()) {
-            query = query.replaceAll("(?i)" + Pattern.quote(keyword), " ");
-        }
-        return query.replaceAll("\\s+", " ").trim();
+        return categoryTreeCache.stripCategoryKeywords(query);
     }
     
     /**
@@ -0,0 +1,72 @@
+package com.example.stockservice.specification;
+
+import com.example.stockservice.dto.search.SearchCriteria;
+import com.example.stockservice.enums.ProductStatus;
+import com.example.stockservice.model.Product;
+import com.example.stockservice.model.Size;
+import jakarta.persistence.criteria.JoinType;
+import jakarta.persistence.criteria.Predicate;
+import jakarta.persistence.criteria.Subquery;
+import org.springframework.data.jpa.domain.Specification;
+import org.springframework.util.StringUtils;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+public class ProductSpecification {
+
+    /**
+     * Điều kiện tìm kiếm sản phẩm đang bán theo SearchCriteria, lọc hoàn toàn trong DB
+     * (keyword trên name/description, khoảng giá, tên category, tên size).
+     */
+    public static Specification<Product> matchesSearch(SearchCriteria criteria) {
+        return (root, query, criteriaBuilder) -> {
+            List<Predicate> predicates = new ArrayList<>();
+            predicates.add(criteriaBuilder.equal(root.get("status"), ProductStatus.IN_STOCK));
+
+            // Mỗi keyword phải xuất hiện trong name hoặc description
+            for (String keyword : criteria.getKeywords()) {
+                if (!StringUtils.hasText(keyword)) {
+                    continue;
+                }
+                String like = "%" + escapeLike(keyword.toLowerCase(Locale.ROOT)) + "%";
+                predicates.add(criteriaBuilder.or(
+                        criteriaBuilder.like(criteriaBuilder.lower(root.get("name")), like, '\\'),
+                        criteriaBuilder.like(criteriaBuilder.lower(root.get("description")), like, '\\')));
+            }
+
+            if (criteria.getPriceMin() != null) {
+                predicates.add(criteriaBuilder.ge(root.get("price"), criteria.getPriceMin()));
+            }
+            if (criteria.getPriceMax() != null) {
+                predicates.add(criteriaBuilder.le(root.get("price"), criteria.getPriceMax()));
+            }
+
+            if (criteria.getCategories() != null && !criteria.getCategories().isEmpty()) {
+                predicates.add(criteriaBuilder.lower(root.join("category", JoinType.INNER).get("name"))
+                        .in(lowercase(criteria.getCategories())));
+            }
+
+            // EXISTS thay vì join để không nhân bản dòng khi nhiều size khớp
+            if (criteria.getSizes() != null && !criteria.getSizes().isEmpty()) {
+                Subquery<String> sizes = query.subquery(String.class);
+                var size = sizes.from(Size.class);
+                sizes.select(size.get("id")).where(
+                        criteriaBuilder.equal(size.get("product"), root),
+                        criteriaBuilder.lower(size.get("name")).in(lowercase(criteria.getSizes())));
+                predicates.add(criteriaBuilder.exists(sizes));
+            }
+
+            return criteriaBuilder.and(predicates.toArray(new Predicate[0]));
+        };
+    }
+
+    private static List<String> lowercase(List<String> values) {
+        return values.stream().map(v -> v.toLowerCase(Locale.ROOT)).distinct().toList();
+    }
+
+    private static String escapeLike(String value) {
+        return value.replace("\\", "\\\\").replace("%", "\\%").replace("_", "\\_");
+    }
+}
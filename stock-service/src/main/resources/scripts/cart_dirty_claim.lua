@@ -0,0 +1,31 @@
+-- ================================================================
+-- LUA SCRIPT: NHẬN LÔ GIỎ HÀNG CẦN GHI XUỐNG DB (CLAIM)
+-- Mục đích: Lấy userId khỏi set dirty và ghi sang set đang xử lý trong
+-- cùng một bước, để instance chết giữa chừng không làm mất dấu dirty
+-- ================================================================
+
+-- KEYS[1]: Set user cần ghi xuống DB (cart:dirty)
+-- KEYS[2]: ZSet user đang được ghi, score = thời điểm nhận (cart:dirty:processing)
+-- ARGV[1]: Số user tối đa mỗi lô
+-- ARGV[2]: Thời điểm hiện tại (ms)
+-- ARGV[3]: Thời gian giữ tối đa (ms); quá hạn thì trả lại set dirty
+local dirtyKey = KEYS[1]
+local processingKey = KEYS[2]
+local count = tonumber(ARGV[1])
+local now = tonumber(ARGV[2])
+local timeout = tonumber(ARGV[3])
+
+-- Bước 1: Trả lại các user bị giữ quá hạn (instance ghi đã chết)
+local expired = redis.call('ZRANGEBYSCORE', processingKey, '-inf', now - timeout)
+for _, userId in ipairs(expired) do
+    redis.call('SADD', dirtyKey, userId)
+    redis.call('ZREM', processingKey, userId)
+end
+
+-- Bước 2: Nhận lô mới
+local users = redis.call('SPOP', dirtyKey, count)
+for _, userId in ipairs(users) do
+    redis.call('ZADD', processingKey, now, userId)
+end
+
+return users
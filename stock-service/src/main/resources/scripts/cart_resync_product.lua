@@ -0,0 +1,94 @@
+-- ================================================================
+-- LUA SCRIPT: CẬP NHẬT GIÁ SẢN PHẨM TRONG NHIỀU GIỎ HÀNG (CART RESYNC)
+-- Mục đích: Áp giá mới của một product cho toàn bộ giỏ hàng đang chứa nó
+-- trong một lần gọi, nguyên tử theo từng giỏ (không đè quantity vừa sửa)
+-- ================================================================
+
+-- KEYS[1]: Set các user có giỏ hàng cần ghi xuống DB (cart:dirty)
+-- KEYS[2]: Set user đang giữ product (VD: cart:product-users:prod_1)
+-- KEYS[3..n]: Hash item của từng giỏ hàng (VD: cart:items:user_123)
+-- ARGV[1]: productId
+-- ARGV[2]: JSON giá theo size: {"<sizeId>": {"unitPrice": .., "originalPrice": ..|null, "flashSale": true|false}}
+--          key "_" là giá cho item không chọn size
+-- ARGV[3]: JSON size hiện tại theo tên: {"<sizeName>": "<sizeId>"} (để chuyển item sang size mới cùng tên)
+-- ARGV[4]: Độ dài prefix của key hash item (để lấy userId)
+local dirtyKey = KEYS[1]
+local productUsersKey = KEYS[2]
+local productId = ARGV[1]
+local prices = cjson.decode(ARGV[2])
+local sizesByName = cjson.decode(ARGV[3])
+local prefixLength = tonumber(ARGV[4])
+
+local validSizes = {}
+for _, sizeId in pairs(sizesByName) do
+    validSizes[sizeId] = true
+end
+
+local updated = 0
+for i = 3, #KEYS do
+    local itemsKey = KEYS[i]
+    local fields = redis.call('HGETALL', itemsKey)
+    local changedInCart = 0
+    local holdsProduct = false
+
+    for j = 1, #fields, 2 do
+        local item = cjson.decode(fields[j + 1])
+        -- Bỏ qua item khác product và item từ live (giữ giá đã chốt)
+        if item.productId == productId then
+            holdsProduct = true
+        end
+        if item.productId == productId and item.isFromLive ~= true then
+            local changed = false
+
+            -- Size đã bị thay: chuyển sang size mới cùng tên, không có thì bỏ size
+            if item.sizeId ~= nil and item.sizeId ~= cjson.null and not validSizes[item.sizeId] then
+                local newSizeId = nil
+                if item.sizeName ~= nil and item.sizeName ~= cjson.null then
+                    newSizeId = sizesByName[item.sizeName]
+                end
+                item.sizeId = newSizeId or cjson.null
+                changed = true
+            end
+
+            local priceKey = "_"
+            if item.sizeId ~= nil and item.sizeId ~= cjson.null then
+                priceKey = item.sizeId
+            end
+            local price = prices[priceKey]
+            -- Giá mới thiếu hoặc null (cjson.null): giữ nguyên giá trong giỏ, không cập nhật giá
+            local newUnitPrice = nil
+            if price ~= nil then
+                newUnitPrice = tonumber(price.unitPrice)
+            end
+            if newUnitPrice ~= nil then
+                local flashSale = item.isFlashSale == true
+                local currentUnitPrice = tonumber(item.unitPrice)
+                if currentUnitPrice == nil or math.abs(currentUnitPrice - newUnitPrice) > 0.01
+                        or flashSale ~= price.flashSale then
+                    item.unitPrice = newUnitPrice
+                    item.originalPrice = price.originalPrice
+                    item.isFlashSale = price.flashSale
+                    item.totalPrice = newUnitPrice * (tonumber(item.quantity) or 0)
+                    changed = true
+                end
+            end
+
+            if changed then
+                redis.call('HSET', itemsKey, fields[j], cjson.encode(item))
+                changedInCart = changedInCart + 1
+            end
+        end
+    end
+
+    local userId = string.sub(itemsKey, prefixLength + 1)
+    if changedInCart > 0 then
+        redis.call('SADD', dirtyKey, userId)
+        updated = updated + changedInCart
+    end
+    -- Giỏ đã hết hạn hoặc không còn product này: dọn khỏi set
+    if not holdsProduct then
+        redis.call('SREM', productUsersKey, userId)
+    end
+end
+
+return updated
@@ -0,0 +1,29 @@
+-- ================================================================
+-- LUA SCRIPT: NẠP GIỎ HÀNG TỪ DB LÊN REDIS (CART WARM-UP)
+-- Mục đích: Chỉ một request được nạp giỏ hàng, tránh ghi đè dữ liệu
+-- mới hơn (do request khác vừa thêm/sửa item) bằng dữ liệu cũ từ DB
+-- ================================================================
+
+-- KEYS[1]: Key id giỏ hàng của user (VD: cart:id:user_123)
+-- KEYS[2]: Hash chứa các item (VD: cart:items:user_123)
+-- ARGV[1]: cartId ("" nếu user chưa có giỏ hàng)
+-- ARGV[2]: TTL (giây)
+-- ARGV[3..n]: Cặp field/value (cartItemId, JSON item)
+local idKey = KEYS[1]
+local itemsKey = KEYS[2]
+local cartId = ARGV[1]
+local ttl = tonumber(ARGV[2])
+
+-- Bước 1: Đã có request khác nạp rồi thì bỏ qua
+if redis.call('EXISTS', idKey) == 1 then
+    return 0
+end
+
+-- Bước 2: Ghi toàn bộ item + id giỏ hàng trong cùng một lần
+if #ARGV > 2 then
+    redis.call('HSET', itemsKey, unpack(ARGV, 3))
+    redis.call('EXPIRE', itemsKey, ttl)
+end
+redis.call('SETEX', idKey, ttl, cartId)
+
+return 1
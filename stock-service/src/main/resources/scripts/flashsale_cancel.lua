@@ -1,13 +1,11 @@
 -- flashsale_cancel.lua
--- KEYS[1]: flashsale:stock:{productId}
+-- KEYS[1]: flashsale:stock:{productId}:{sizeId}
 -- KEYS[2]: flashsale:bought:{userId}:{productId}
--- KEYS[3]: flashsale:reserve:{orderId}:{productId}
--- ARGV[1]: limitPerUser (to check if we need to revert usage)
+-- KEYS[3]: flashsale:reserve:{orderId}:{productId}:{sizeId}
 
 local stockKey = KEYS[1]
 local boughtKey = KEYS[2]
 local reserveKey = KEYS[3]
-local limit = tonumber(ARGV[1])
 
 local reservedQty = redis.call('GET', reserveKey)
 
@@ -17,9 +15,14 @@ if reservedQty then
     -- 1. Restore Stock
     redis.call('INCRBY', stockKey, qty)
     
-    -- 2. Restore User Limit (only if limit logic was used)
-    if limit > 0 then
-        redis.call('DECRBY', boughtKey, qty)
+    -- 2. Restore User Limit (bought chỉ tồn tại khi sản phẩm có giới hạn mỗi user)
+    local bought = tonumber(redis.call('GET', boughtKey) or '0')
+    if bought > 0 then
+        if bought > qty then
+            redis.call('DECRBY', boughtKey, qty)
+        else
+            redis.call('DEL', boughtKey)
+        end
     end
     
     -- 3. Delete Reservation
@@ -1,43 +1,61 @@
 -- flashsale_reserve.lua
--- KEYS[1]: flashsale:stock:{productId}
+-- KEYS[1]: flashsale:stock:{productId}:{sizeId}
 -- KEYS[2]: flashsale:bought:{userId}:{productId}
--- KEYS[3]: flashsale:reserve:{orderId}:{productId}
+-- KEYS[3]: flashsale:reserve:{orderId}:{productId}:{sizeId}
+-- KEYS[4]: flashsale:limit:{productId} (giới hạn mỗi user của sản phẩm, nạp cùng stock khi warm-up)
 -- ARGV[1]: quantity
--- ARGV[2]: limitPerUser (0 or <0 means unlimited)
+-- ARGV[2]: default limitPerUser khi chưa có KEYS[4] (0 or <0 means unlimited)
 -- ARGV[3]: ttl
 
 local stockKey = KEYS[1]
 local boughtKey = KEYS[2]
 local reserveKey = KEYS[3]
+local limitKey = KEYS[4]
 
 local quantity = tonumber(ARGV[1])
-local limit = tonumber(ARGV[2])
 local ttl = tonumber(ARGV[3])
 
--- 1. Check User Limit (if limit > 0)
+-- 0. Stock chưa được nạp: báo cache miss (trước khi đọc limit, vì limit cũng được nạp cùng stock)
+local stockValue = redis.call('GET', stockKey)
+if not stockValue then
+    return -1 -- Cache miss
+end
+
+local limit = tonumber(redis.call('GET', limitKey) or ARGV[2])
+
+-- 1. Check User Limit (if limit > 0) - kiểm tra trước stock để user đã đủ giới hạn bị loại ngay
 if limit > 0 then
     local currentBought = tonumber(redis.call('GET', boughtKey) or '0')
+    if currentBought >= limit then
+        return -2 -- Limit reached: user không thể mua thêm
+    end
     if (currentBought + quantity) > limit then
-        return -2 -- Limit exceeded
+        return -4 -- Quantity exceeds remaining allowance: vẫn mua được số lượng nhỏ hơn
     end
 end
 
 -- 2. Check Stock
-local currentStock = tonumber(redis.call('GET', stockKey) or '0')
+local currentStock = tonumber(stockValue)
+if currentStock <= 0 then
+    return -3 -- Sold out
+end
 if currentStock < quantity then
     return 0 -- Insufficient stock
 end
 
 -- 3. Execute Reservation
-redis.call('DECRBY', stockKey, quantity) 
--- Note: We DON'T increment boughtKey here yet, we only increment it upon CONFIRMATION or we can increment now?
--- Better to increment NOW to prevent race condition of same user spamming requests.
--- If reservation is cancelled/expires, we must decrement boughtKey back.
+redis.call('DECRBY', stockKey, quantity)
+-- Tăng bought ngay khi giữ chỗ để user không spam nhiều request song song;
+-- reservation bị hủy thì flashsale_cancel.lua trả lại.
 if limit > 0 then
     redis.call('INCRBY', boughtKey, quantity)
-    -- Extend TTL for boughtKey to match session duration (or long enough)
-    -- Assuming session duration is managed elsewhere, but set a safe TTL like 24h
-    redis.call('EXPIRE', boughtKey, 86400) 
+    -- bought sống bằng thời gian còn lại của flash sale (TTL của stock key), tối thiểu 24h nếu stock không có TTL
+    local stockTtl = redis.call('PTTL', stockKey)
+    if stockTtl > 0 then
+        redis.call('PEXPIRE', boughtKey, stockTtl)
+    else
+        redis.call('EXPIRE', boughtKey, 86400)
+    end
 end
 
 redis.call('SETEX', reserveKey, ttl, quantity)
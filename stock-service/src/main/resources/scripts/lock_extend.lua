@@ -0,0 +1,10 @@
+-- lock_extend.lua
+-- KEYS[1]: lock key
+-- ARGV[1]: owner token
+-- ARGV[2]: lease mới (ms)
+-- Gia hạn lock khi công việc còn chạy; trả 0 nếu lock không còn thuộc về token này
+
+if redis.call('GET', KEYS[1]) == ARGV[1] then
+    return redis.call('PEXPIRE', KEYS[1], ARGV[2])
+end
+return 0
@@ -0,0 +1,13 @@
+-- lock_release.lua
+-- KEYS[1]: lock key
+-- ARGV[1]: owner token
+-- ARGV[2]: channel thông báo lock được nhả
+-- Chỉ xóa lock nếu token khớp (lock có thể đã hết hạn và thuộc về node khác)
+
+if redis.call('GET', KEYS[1]) == ARGV[1] then
+    redis.call('DEL', KEYS[1])
+    -- Đánh thức các node đang chờ lock này
+    redis.call('PUBLISH', ARGV[2], KEYS[1])
+    return 1
+end
+return 0
@@ -0,0 +1,132 @@
+package com.example.stockservice.repository;
+
+import com.example.stockservice.enums.ProductStatus;
+import com.example.stockservice.model.Product;
+import jakarta.persistence.EntityManager;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.testcontainers.containers.MySQLContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Keyset pagination của danh sách sản phẩm shop (findSellerPageFirst/findSellerPageAfter):
+ * đi hết các trang theo (createdTimestamp, id) không trùng, không sót, kể cả khi nhiều sản phẩm cùng timestamp.
+ * Chạy trên MySQL thật (cùng image với docker-compose); không có Docker thì bị bỏ qua.
+ */
+@DataJpaTest(properties = {"spring.cloud.config.enabled=false", "spring.jpa.hibernate.ddl-auto=create-drop"})
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+@Testcontainers(disabledWithoutDocker = true)
+class ProductRepositoryKeysetTest {
+
+    @Container
+    static final MySQLContainer<?> MYSQL = new MySQLContainer<>("mysql:8.0");
+
+    @DynamicPropertySource
+    static void datasource(DynamicPropertyRegistry registry) {
+        registry.add("spring.datasource.url", MYSQL::getJdbcUrl);
+        registry.add("spring.datasource.username", MYSQL::getUsername);
+        registry.add("spring.datasource.password", MYSQL::getPassword);
+    }
+
+    private static final String SELLER = "seller-1";
+    private static final LocalDateTime BASE = LocalDateTime.of(2026, 1, 1, 12, 0);
+
+    @Autowired
+    private ProductRepository productRepository;
+
+    @Autowired
+    private EntityManager entityManager;
+
+    private final List<Product> sellerProducts = new ArrayList<>();
+
+    @BeforeEach
+    void setUp() {
+        // 7 sản phẩm, từng cặp cùng createdTimestamp để phải phân xử bằng id
+        for (int i = 0; i < 7; i++) {
+            ProductStatus status = i % 3 == 0 ? ProductStatus.OUT_OF_STOCK : ProductStatus.IN_STOCK;
+            sellerProducts.add(save(SELLER, "Áo thun " + i, status, BASE.minusMinutes(i / 2)));
+        }
+        save("seller-2", "Áo thun khác shop", ProductStatus.IN_STOCK, BASE);
+        entityManager.flush();
+        entityManager.clear();
+    }
+
+    @Test
+    void pagesCoverEveryProductOnceInKeysetOrder() {
+        List<String> expected = sellerProducts.stream()
+                .sorted(Comparator.comparing(Product::getCreatedTimestamp).thenComparing(Product::getId).reversed())
+                .map(Product::getId)
+                .toList();
+
+        assertThat(collectPages(null, null, 3)).containsExactlyElementsOf(expected);
+        assertThat(collectPages(null, null, 2)).containsExactlyElementsOf(expected);
+    }
+
+    @Test
+    void filtersApplyOnEveryPage() {
+        List<String> expected = sellerProducts.stream()
+                .filter(p -> p.getStatus() == ProductStatus.IN_STOCK)
+                .sorted(Comparator.comparing(Product::getCreatedTimestamp).thenComparing(Product::getId).reversed())
+                .map(Product::getId)
+                .toList();
+
+        assertThat(collectPages(ProductStatus.IN_STOCK, null, 2)).containsExactlyElementsOf(expected);
+        assertThat(collectPages(null, "thun 4", 2)).containsExactly(sellerProducts.get(4).getId());
+    }
+
+    @Test
+    void pageAfterTheLastProductIsEmpty() {
+        Product oldest = sellerProducts.stream()
+                .min(Comparator.comparing(Product::getCreatedTimestamp).thenComparing(Product::getId))
+                .orElseThrow();
+
+        assertThat(productRepository.findSellerPageAfter(SELLER, null, null, oldest.getCreatedTimestamp(),
+                oldest.getId(), PageRequest.of(0, 10))).isEmpty();
+    }
+
+    /**
+     * Đi qua các trang như ProductServiceImpl: mỗi trang bắt đầu sau phần tử cuối của trang trước
+     */
+    private List<String> collectPages(ProductStatus status, String keyword, int pageSize) {
+        List<String> ids = new ArrayList<>();
+        List<Product> page = productRepository.findSellerPageFirst(SELLER, status, keyword,
+                PageRequest.of(0, pageSize));
+        while (!page.isEmpty()) {
+            page.forEach(p -> ids.add(p.getId()));
+            Product last = page.get(page.size() - 1);
+            page = productRepository.findSellerPageAfter(SELLER, status, keyword, last.getCreatedTimestamp(),
+                    last.getId(), PageRequest.of(0, pageSize));
+        }
+        return ids;
+    }
+
+    private Product save(String userId, String name, ProductStatus status, LocalDateTime createdAt) {
+        Product product = productRepository.save(Product.builder()
+                .name(name)
+                .userId(userId)
+                .status(status)
+                .build());
+        entityManager.flush();
+        // createdTimestamp do @CreationTimestamp gán khi insert, đặt lại để tạo các bản ghi cùng timestamp
+        entityManager.createQuery("UPDATE products p SET p.createdTimestamp = :createdAt WHERE p.id = :id")
+                .setParameter("createdAt", createdAt)
+                .setParameter("id", product.getId())
+                .executeUpdate();
+        product.setCreatedTimestamp(createdAt);
+        return product;
+    }
+}
@@ -0,0 +1,166 @@
+package com.example.stockservice.service.ai;
+
+import com.example.stockservice.dto.AIChatRequest;
+import com.example.stockservice.dto.AIChatResponse;
+import com.example.stockservice.service.category.CategoryTreeCache;
+import com.example.stockservice.service.product.ProductService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.MockedStatic;
+import org.springframework.ai.chat.messages.AssistantMessage;
+import org.springframework.ai.chat.messages.Message;
+import org.springframework.ai.chat.messages.SystemMessage;
+import org.springframework.ai.chat.model.ChatModel;
+import org.springframework.ai.chat.model.ChatResponse;
+import org.springframework.ai.chat.model.Generation;
+import org.springframework.ai.chat.prompt.Prompt;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.CALLS_REAL_METHODS;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.mockStatic;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * AIChatService với ChatModel giả: mỗi lượt chat model "gọi" tool getTrendingProducts,
+ * kiểm tra kết quả tool và context Flash Sale được lấy từ ToolResultCache, system prompt được
+ * render từ template đã compile sẵn và lịch sử hội thoại nằm trong ngân sách token.
+ */
+class AIChatServiceTest {
+
+    private final ProductService productService = mock(ProductService.class);
+    private final FlashSaleTools flashSaleTools = mock(FlashSaleTools.class);
+    private final AtomicInteger flashSaleLoads = new AtomicInteger();
+
+    private StubChatModel chatModel;
+    private ConversationMemory conversationMemory;
+    private AIChatService service;
+
+    @BeforeEach
+    void setUp() {
+        ToolResultCache toolResultCache = new ToolResultCache();
+        ReflectionTestUtils.setField(toolResultCache, "ttlSeconds", 30L);
+        ReflectionTestUtils.setField(toolResultCache, "maxEntries", 100);
+
+        conversationMemory = new ConversationMemory(null, null);
+        ReflectionTestUtils.setField(conversationMemory, "store", "memory");
+        ReflectionTestUtils.setField(conversationMemory, "ttlMinutes", 30L);
+        ReflectionTestUtils.setField(conversationMemory, "maxConversations", 100);
+        ReflectionTestUtils.setField(conversationMemory, "recentMessages", 6);
+        ReflectionTestUtils.setField(conversationMemory, "summaryMaxChars", 600);
+        ReflectionTestUtils.setField(conversationMemory, "maxMessageChars", 1000);
+
+        CategoryTreeCache categoryTreeCache = mock(CategoryTreeCache.class);
+        when(categoryTreeCache.all()).thenReturn(List.of());
+        when(productService.getAllProducts(1, 100)).thenReturn(new PageImpl<>(List.of()));
+        when(flashSaleTools.getCurrentFlashSales()).thenReturn(request -> {
+            flashSaleLoads.incrementAndGet();
+            return new FlashSaleTools.GetCurrentFlashSalesResponse(List.of(), 0, "");
+        });
+
+        AdvancedProductTools advancedProductTools = new AdvancedProductTools(productService, categoryTreeCache,
+                toolResultCache);
+        chatModel = new StubChatModel(() -> advancedProductTools.getTrendingProducts()
+                .apply(new AdvancedProductTools.GetTrendingProductsRequest(5)));
+
+        service = new AIChatService(chatModel, new LanguageFilter(), mock(ProductTools.class), productService,
+                categoryTreeCache, mock(ContextualSuggestTool.class), flashSaleTools, advancedProductTools,
+                mock(LiveSessionTools.class), conversationMemory, toolResultCache);
+        ReflectionTestUtils.setField(service, "contextTokenBudget", 1500);
+    }
+
+    @Test
+    void repeatedToolCallsAreServedFromCache() {
+        for (int i = 0; i < 3; i++) {
+            AIChatResponse response = service.chat(request("Sản phẩm nào đang hot?", "conv-cache"));
+            assertThat(response.isSuccess()).isTrue();
+        }
+
+        assertThat(chatModel.prompts).hasSize(3);
+        // Catalog của tool trending và context Flash Sale chỉ được nạp một lần trong TTL
+        verify(productService, times(1)).getAllProducts(1, 100);
+        assertThat(flashSaleLoads).hasValue(1);
+    }
+
+    @Test
+    void systemPromptIsRenderedFromTemplateCompiledOnce() {
+        // Template được compile khi nạp class AIChatService (đã xảy ra ở setUp), không compile lại mỗi lượt
+        try (MockedStatic<CompiledPrompt> compiled = mockStatic(CompiledPrompt.class, CALLS_REAL_METHODS)) {
+            service.chat(request("Xin chào", "conv-prompt"));
+            service.chat(request("Có Flash Sale không?", "conv-prompt"));
+
+            compiled.verify(() -> CompiledPrompt.compile(anyString(), anyList()), never());
+        }
+
+        assertThat(chatModel.prompts).hasSize(2);
+        for (Prompt prompt : chatModel.prompts) {
+            String system = systemText(prompt);
+            assertThat(system).contains("User ID: user-1");
+            assertThat(system).doesNotContain("{user_id}", "{current_time}", "{conversation_history}");
+        }
+    }
+
+    @Test
+    void conversationHistoryStaysWithinTokenBudget() {
+        ReflectionTestUtils.setField(service, "contextTokenBudget", 100);
+        String longMessage = "a".repeat(500);
+        for (int i = 0; i < 5; i++) {
+            conversationMemory.append("conv-budget", longMessage, longMessage);
+        }
+
+        service.chat(request("Xin chào", "conv-empty"));
+        service.chat(request("Xin chào", "conv-budget"));
+
+        int withoutHistory = systemText(chatModel.prompts.get(0)).length();
+        int withHistory = systemText(chatModel.prompts.get(1)).length();
+        // 100 token * 3 ký tự/token, cộng tiêu đề của phần tóm tắt và lịch sử
+        assertThat(withHistory - withoutHistory).isLessThanOrEqualTo(300 + 100);
+    }
+
+    private static AIChatRequest request(String message, String conversationId) {
+        return AIChatRequest.builder()
+                .message(message)
+                .conversationId(conversationId)
+                .userId("user-1")
+                .build();
+    }
+
+    private static String systemText(Prompt prompt) {
+        return prompt.getInstructions().stream()
+                .filter(SystemMessage.class::isInstance)
+                .map(Message::getContent)
+                .findFirst()
+                .orElseThrow();
+    }
+
+    /**
+     * ChatModel giả: ghi lại prompt và chạy "tool call" như model thật sẽ làm trước khi trả lời
+     */
+    private static class StubChatModel implements ChatModel {
+
+        private final List<Prompt> prompts = new ArrayList<>();
+        private final Runnable toolCall;
+
+        StubChatModel(Runnable toolCall) {
+            this.toolCall = toolCall;
+        }
+
+        @Override
+        public ChatResponse call(Prompt prompt) {
+            prompts.add(prompt);
+            toolCall.run();
+            return new ChatResponse(List.of(new Generation(new AssistantMessage("ok"))));
+        }
+    }
+}
@@ -0,0 +1,117 @@
+package com.example.stockservice.service.cache;
+
+import com.example.stockservice.RedisContainerTest;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * RedisLockService với lock_release.lua / lock_extend.lua: chỉ người giữ token nhả/gia hạn được lock,
+ * watchdog giữ lease trong lúc action chạy và node chờ được đánh thức qua pub/sub khi lock được nhả.
+ */
+class RedisLockServiceTest extends RedisContainerTest {
+
+    private static final String LOCK_KEY = "lock:test";
+
+    private RedisMessageListenerContainer listenerContainer;
+    private RedisLockService lockService;
+
+    @BeforeEach
+    void setUp() {
+        listenerContainer = new RedisMessageListenerContainer();
+        listenerContainer.setConnectionFactory(connectionFactory);
+        listenerContainer.afterPropertiesSet();
+        listenerContainer.start();
+
+        lockService = new RedisLockService(redisTemplate, listenerContainer);
+        ReflectionTestUtils.setField(lockService, "waitMs", 5000L);
+        ReflectionTestUtils.setField(lockService, "maxPollMs", 200L);
+        lockService.init();
+    }
+
+    @AfterEach
+    void tearDown() throws Exception {
+        lockService.shutdown();
+        listenerContainer.destroy();
+    }
+
+    @Test
+    void releaseWithStaleTokenKeepsTheNewOwnersLock() {
+        String staleToken = lockService.tryLock(LOCK_KEY, 10, TimeUnit.SECONDS);
+        assertThat(staleToken).isNotNull();
+        assertThat(lockService.tryLock(LOCK_KEY, 10, TimeUnit.SECONDS)).isNull();
+
+        // Lease của người giữ cũ hết hạn, node khác lấy được lock
+        redisTemplate.delete(LOCK_KEY);
+        String ownerToken = lockService.tryLock(LOCK_KEY, 10, TimeUnit.SECONDS);
+
+        assertThat(lockService.unlock(LOCK_KEY, staleToken)).isFalse();
+        assertThat(redisTemplate.opsForValue().get(LOCK_KEY)).isEqualTo(ownerToken);
+
+        assertThat(lockService.unlock(LOCK_KEY, ownerToken)).isTrue();
+        assertThat(redisTemplate.hasKey(LOCK_KEY)).isFalse();
+    }
+
+    @Test
+    void extendOnlyRenewsTheOwnersLease() {
+        String token = lockService.tryLock(LOCK_KEY, 2, TimeUnit.SECONDS);
+
+        assertThat(lockService.extend(LOCK_KEY, "other-token", 30, TimeUnit.SECONDS)).isFalse();
+        assertThat(redisTemplate.getExpire(LOCK_KEY, TimeUnit.MILLISECONDS)).isLessThanOrEqualTo(2000L);
+
+        assertThat(lockService.extend(LOCK_KEY, token, 30, TimeUnit.SECONDS)).isTrue();
+        assertThat(redisTemplate.getExpire(LOCK_KEY, TimeUnit.MILLISECONDS)).isGreaterThan(25_000L);
+
+        redisTemplate.delete(LOCK_KEY);
+        assertThat(lockService.extend(LOCK_KEY, token, 30, TimeUnit.SECONDS)).isFalse();
+        assertThat(redisTemplate.hasKey(LOCK_KEY)).isFalse();
+    }
+
+    @Test
+    void watchdogKeepsTheLockWhileTheActionOutlivesTheLease() {
+        Boolean stillHeld = lockService.executeWithLock(LOCK_KEY, 1, () -> {
+            sleep(2500);
+            return redisTemplate.hasKey(LOCK_KEY);
+        });
+
+        assertThat(stillHeld).isTrue();
+        assertThat(redisTemplate.hasKey(LOCK_KEY)).isFalse();
+    }
+
+    @Test
+    void waiterIsWokenByTheReleaseMessageBeforeTheLeaseExpires() throws Exception {
+        CountDownLatch holding = new CountDownLatch(1);
+        CompletableFuture<Void> holder = CompletableFuture.runAsync(() ->
+                lockService.executeWithLock(LOCK_KEY, 30, () -> {
+                    holding.countDown();
+                    sleep(300);
+                    return null;
+                }));
+        assertThat(holding.await(5, TimeUnit.SECONDS)).isTrue();
+
+        long start = System.nanoTime();
+        String result = lockService.executeWithLock(LOCK_KEY, 30, () -> "acquired");
+        long waitedMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+        holder.get(5, TimeUnit.SECONDS);
+        assertThat(result).isEqualTo("acquired");
+        // Lease 30s nhưng lock được nhả sau ~300ms: node chờ phải tỉnh nhờ message, không chờ hết PTTL
+        assertThat(waitedMs).isLessThan(3000L);
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
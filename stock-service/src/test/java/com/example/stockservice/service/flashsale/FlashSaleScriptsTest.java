@@ -0,0 +1,127 @@
+package com.example.stockservice.service.flashsale;
+
+import com.example.stockservice.RedisContainerTest;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * flashsale_reserve.lua / flashsale_cancel.lua: giới hạn mua mỗi user và hoàn trả khi hủy.
+ */
+class FlashSaleScriptsTest extends RedisContainerTest {
+
+    private static final String STOCK_KEY = "flashsale:stock:p1:s1";
+    private static final String LIMIT_KEY = "flashsale:limit:p1";
+    private static final String RESERVE_TTL = "900";
+
+    private final DefaultRedisScript<Long> reserveScript = script("flashsale_reserve.lua");
+    private final DefaultRedisScript<Long> cancelScript = script("flashsale_cancel.lua");
+
+    @Test
+    void reserveDecrementsStockAndTracksBoughtWithTheSaleTtl() {
+        redisTemplate.opsForValue().set(STOCK_KEY, "10", 1, TimeUnit.HOURS);
+        redisTemplate.opsForValue().set(LIMIT_KEY, "3");
+
+        assertThat(reserve("u1", "o1", 2, 0)).isEqualTo(1L);
+
+        assertThat(redisTemplate.opsForValue().get(STOCK_KEY)).isEqualTo("8");
+        assertThat(redisTemplate.opsForValue().get(boughtKey("u1"))).isEqualTo("2");
+        assertThat(redisTemplate.opsForValue().get(reserveKey("o1"))).isEqualTo("2");
+        // bought hết hạn cùng flash sale (TTL của stock key), không phải 24h cố định
+        assertThat(redisTemplate.getExpire(boughtKey("u1"), TimeUnit.SECONDS)).isBetween(3500L, 3600L);
+        assertThat(redisTemplate.getExpire(reserveKey("o1"), TimeUnit.SECONDS)).isBetween(890L, 900L);
+    }
+
+    @Test
+    void reserveRejectsQuantityOverRemainingAllowanceButAllowsSmallerOne() {
+        redisTemplate.opsForValue().set(STOCK_KEY, "10");
+        redisTemplate.opsForValue().set(LIMIT_KEY, "3");
+        reserve("u1", "o1", 2, 0);
+
+        assertThat(reserve("u1", "o2", 2, 0)).isEqualTo(-4L);
+        assertThat(reserve("u1", "o3", 1, 0)).isEqualTo(1L);
+        assertThat(reserve("u1", "o4", 1, 0)).isEqualTo(-2L);
+
+        assertThat(redisTemplate.opsForValue().get(STOCK_KEY)).isEqualTo("7");
+        assertThat(redisTemplate.opsForValue().get(boughtKey("u1"))).isEqualTo("3");
+        // Giới hạn tính riêng cho từng user
+        assertThat(reserve("u2", "o5", 3, 0)).isEqualTo(1L);
+    }
+
+    @Test
+    void limitKeyOverridesDefaultAndZeroMeansUnlimited() {
+        redisTemplate.opsForValue().set(STOCK_KEY, "10");
+
+        // Chưa có limit key: dùng default truyền vào
+        assertThat(reserve("u1", "o1", 2, 2)).isEqualTo(1L);
+        assertThat(reserve("u1", "o2", 1, 2)).isEqualTo(-2L);
+
+        // limit key = 0: không giới hạn, không tạo bought counter
+        redisTemplate.opsForValue().set(LIMIT_KEY, "0");
+        assertThat(reserve("u2", "o3", 5, 2)).isEqualTo(1L);
+        assertThat(redisTemplate.hasKey(boughtKey("u2"))).isFalse();
+    }
+
+    @Test
+    void reserveReturnsZeroWhenStockIsInsufficient() {
+        redisTemplate.opsForValue().set(STOCK_KEY, "1");
+
+        assertThat(reserve("u1", "o1", 2, 0)).isEqualTo(0L);
+        assertThat(redisTemplate.opsForValue().get(STOCK_KEY)).isEqualTo("1");
+        assertThat(redisTemplate.hasKey(reserveKey("o1"))).isFalse();
+    }
+
+    @Test
+    void cancelRestoresStockAndAllowanceOnce() {
+        redisTemplate.opsForValue().set(STOCK_KEY, "10");
+        redisTemplate.opsForValue().set(LIMIT_KEY, "3");
+        reserve("u1", "o1", 1, 0);
+        reserve("u1", "o2", 2, 0);
+
+        assertThat(cancel("u1", "o2")).isEqualTo(1L);
+        assertThat(redisTemplate.opsForValue().get(STOCK_KEY)).isEqualTo("9");
+        assertThat(redisTemplate.opsForValue().get(boughtKey("u1"))).isEqualTo("1");
+        assertThat(redisTemplate.hasKey(reserveKey("o2"))).isFalse();
+
+        // Hủy lại reservation đã hủy không trả stock lần nữa
+        assertThat(cancel("u1", "o2")).isEqualTo(0L);
+        assertThat(redisTemplate.opsForValue().get(STOCK_KEY)).isEqualTo("9");
+
+        // Hủy hết: bought counter bị xóa, user mua lại được đủ giới hạn
+        assertThat(cancel("u1", "o1")).isEqualTo(1L);
+        assertThat(redisTemplate.hasKey(boughtKey("u1"))).isFalse();
+        assertThat(reserve("u1", "o3", 3, 0)).isEqualTo(1L);
+    }
+
+    @Test
+    void cancelWithoutLimitOnlyRestoresStock() {
+        redisTemplate.opsForValue().set(STOCK_KEY, "5");
+        reserve("u1", "o1", 2, 0);
+
+        assertThat(cancel("u1", "o1")).isEqualTo(1L);
+        assertThat(redisTemplate.opsForValue().get(STOCK_KEY)).isEqualTo("5");
+        assertThat(redisTemplate.hasKey(boughtKey("u1"))).isFalse();
+    }
+
+    private Long reserve(String userId, String orderId, int quantity, int defaultLimit) {
+        return redisTemplate.execute(reserveScript,
+                List.of(STOCK_KEY, boughtKey(userId), reserveKey(orderId), LIMIT_KEY),
+                String.valueOf(quantity), String.valueOf(defaultLimit), RESERVE_TTL);
+    }
+
+    private Long cancel(String userId, String orderId) {
+        return redisTemplate.execute(cancelScript, List.of(STOCK_KEY, boughtKey(userId), reserveKey(orderId)));
+    }
+
+    private static String boughtKey(String userId) {
+        return "flashsale:bought:" + userId + ":p1";
+    }
+
+    private static String reserveKey(String orderId) {
+        return "flashsale:reserve:" + orderId + ":p1:s1";
+    }
+}
@@ -5,8 +5,9 @@ import org.springframework.cloud.openfeign.FeignClient;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestParam;
 
-@FeignClient(name = "auth-service", path = "/v1/auth")
+@FeignClient(name = "auth-service", path = "/v1/auth", configuration = AuthServiceClientConfig.class)
 public interface AuthServiceClient {
 
         @PostMapping(value = "/sendUserUpdateEmail", headers = "X-Internal-Call=true")
@@ -15,4 +16,8 @@ public interface AuthServiceClient {
         @PostMapping(value = "/sendUserLockStatusEmail", headers = "X-Internal-Call=true")
         ResponseEntity<?> sendUserLockStatusEmail(
                         @RequestBody com.example.userservice.dto.SendUserLockStatusEmailRequest request);
+
+        // Báo auth-service xóa credential cache khi password / trạng thái khóa / role thay đổi
+        @PostMapping(value = "/internal/user-changed", headers = "X-Internal-Call=true")
+        ResponseEntity<?> notifyUserChanged(@RequestParam("email") String email);
 }
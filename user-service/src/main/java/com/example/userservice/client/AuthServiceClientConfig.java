@@ -0,0 +1,17 @@
+package com.example.userservice.client;
+
+import feign.RequestInterceptor;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+
+/**
+ * Chỉ dùng cho AuthServiceClient (không gắn @Configuration để không áp cho các Feign client khác):
+ * gửi secret nội bộ mà auth-service yêu cầu ở /internal/user-changed.
+ */
+public class AuthServiceClientConfig {
+
+    @Bean
+    public RequestInterceptor authInternalSecretInterceptor(@Value("${auth.internal.secret}") String secret) {
+        return template -> template.header("X-Internal-Secret", secret);
+    }
+}
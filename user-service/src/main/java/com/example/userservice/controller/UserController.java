@@ -141,6 +141,17 @@ public class UserController {
         return ResponseEntity.ok(userService.getAllActiveUserIds());
     }
 
+    /**
+     * Get many users by ID in one call
+     * Used by notification-service to resolve chat participants without one call per user
+     */
+    @PostMapping("/getUsersByIds")
+    public ResponseEntity<java.util.List<UserDto>> getUsersByIds(@RequestBody java.util.List<String> ids) {
+        return ResponseEntity.ok(userService.getUsersByIds(ids).stream()
+                .map(user -> modelMapper.map(user, UserDto.class))
+                .toList());
+    }
+
     @GetMapping("/stats/locations")
     public ResponseEntity<java.util.List<UserLocationStatDto>> getUserLocationStats() {
         return ResponseEntity.ok(userService.getUserLocationStats());
@@ -1,5 +1,6 @@
 package com.example.userservice.service.role;
 
+import com.example.userservice.client.AuthServiceClient;
 import com.example.userservice.dto.FullShopRegistrationRequest;
 import com.example.userservice.enums.*;
 import com.example.userservice.exception.NotFoundException;
@@ -17,6 +18,8 @@ import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
 import java.time.LocalDateTime;
 import java.util.List;
@@ -30,6 +33,7 @@ public class RoleRequestService {
     private final ShopOwnerRepository shopOwnerRepository;
     private final TaxInfoRepository taxInfoRepository;
     private final IdentificationRepository identificationRepository;
+    private final AuthServiceClient authServiceClient;
 
     public RoleRequest getRoleRequestById(String requestId) {
         return roleRequestRepository.findById(requestId)
@@ -194,6 +198,7 @@ public class RoleRequestService {
             // Add role to user
             user.getRoles().add(requestedRole);
             userRepository.saveAndFlush(user);
+            notifyAuthUserChangedAfterCommit(user.getEmail());
         }
 
         // Create ShopOwner profile if role is SHOP_OWNER
@@ -332,4 +337,21 @@ public class RoleRequestService {
 
         identificationRepository.save(identification);
     }
+
+    /**
+     * New role must be visible to auth-service's credential cache only after commit,
+     * otherwise a concurrent login could re-cache the old roles.
+     */
+    private void notifyAuthUserChangedAfterCommit(String email) {
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                try {
+                    authServiceClient.notifyUserChanged(email);
+                } catch (Exception e) {
+                    log.warn("Failed to notify auth-service about role change for {}: {}", email, e.getMessage());
+                }
+            }
+        });
+    }
 }
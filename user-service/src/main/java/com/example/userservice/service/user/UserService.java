@@ -62,5 +62,11 @@ public interface UserService {
      */
     List<String> getAllActiveUserIds();
 
+    /**
+     * Get many users in one query (missing IDs are skipped)
+     * Used by notification-service to resolve chat participants in batch
+     */
+    List<User> getUsersByIds(List<String> ids);
+
     List<com.example.userservice.dto.UserLocationStatDto> getUserLocationStats();
 }
@@ -13,6 +13,8 @@ import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.stereotype.Service;
 import org.springframework.web.multipart.MultipartFile;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
 import com.example.userservice.client.AuthServiceClient;
 import com.example.userservice.client.FileStorageClient;
@@ -170,13 +172,16 @@ public class UserServiceImpl implements UserService {
     }
 
     @Override
+    @Transactional
     public void deleteUserById(String id) {
         User toDelete = findUserById(id);
         toDelete.setActive(Active.INACTIVE);
         userRepository.save(toDelete);
+        notifyAuthUserChanged(toDelete.getEmail());
     }
 
     @Override
+    @Transactional
     public User toggleActiveStatus(String id) {
         User user = findUserById(id);
 
@@ -193,6 +198,7 @@ public class UserServiceImpl implements UserService {
         }
 
         User savedUser = userRepository.save(user);
+        notifyAuthUserChanged(savedUser.getEmail());
 
         // Send email notification about lock status
         try {
@@ -274,10 +280,38 @@ public class UserServiceImpl implements UserService {
     }
 
     @Override
+    @Transactional
     public void updatePasswordByEmail(String email, String rawPassword) {
         User user = findUserByEmail(email);
         user.setPassword(passwordEncoder.encode(rawPassword));
         userRepository.save(user);
+        notifyAuthUserChanged(user.getEmail());
+    }
+
+    /**
+     * auth-service caches credentials/roles for login; tell it to drop this user.
+     * Sent after commit so a concurrent login cannot re-cache the old row;
+     * failure only delays the change until the cache TTL expires.
+     */
+    private void notifyAuthUserChanged(String email) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            sendAuthUserChanged(email);
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                sendAuthUserChanged(email);
+            }
+        });
+    }
+
+    private void sendAuthUserChanged(String email) {
+        try {
+            authServiceClient.notifyUserChanged(email);
+        } catch (Exception e) {
+            System.err.println("Failed to notify auth-service about user change " + email + ": " + e.getMessage());
+        }
     }
 
     @Override
@@ -337,6 +371,14 @@ public class UserServiceImpl implements UserService {
         return userRepository.findAllActiveUserIds();
     }
 
+    @Override
+    public List<User> getUsersByIds(List<String> ids) {
+        if (ids == null || ids.isEmpty()) {
+            return List.of();
+        }
+        return userRepository.findAllById(ids);
+    }
+
     @Override
     public List<com.example.userservice.dto.UserLocationStatDto> getUserLocationStats() {
         return addressRepository.getUserLocationStats();